@@ -1,13 +1,23 @@
 package com.keshav.NotificationService.config;
 
+import com.keshav.NotificationService.dto.SmsEnvelope;
+import com.keshav.NotificationService.service.AsyncSmsDispatcher;
+import com.keshav.NotificationService.service.ProviderUnavailableException;
+import com.keshav.NotificationService.utils.SmsEnvelopeDeserializer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.KafkaException;
 import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.util.backoff.FixedBackOff;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -16,22 +26,112 @@ import java.util.Map;
 @Configuration
 public class KafkaConsumerConfig {
 
+    @Value("${notification.kafka.consumer.provider-unavailable-backoff-ms:1000}")
+    private long providerUnavailableBackoffMs;
+
+    @Value("${notification.kafka.consumer.retry-unavailable-backoff-ms:10000}")
+    private long retryUnavailableBackoffMs;
+
+    @Value("${notification.kafka.consumer.batch.max-poll-records:500}")
+    private int batchMaxPollRecords;
+
+    @Value("${notification.kafka.consumer.batch.error-backoff-ms:5000}")
+    private long batchErrorBackoffMs;
+
+    @Value("${notification.kafka.consumer.async.max-poll-records:500}")
+    private int asyncMaxPollRecords;
+
     @Bean
-    public ConsumerFactory<String, String> consumerFactory() {
+    public ConsumerFactory<String, SmsEnvelope> consumerFactory() {
         Map<String, Object> configProps = new HashMap<>();
         configProps.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
         configProps.put(ConsumerConfig.GROUP_ID_CONFIG, "notification-group");
         configProps.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        configProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        configProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
+        configProps.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, SmsEnvelopeDeserializer.class);
         configProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
         return new DefaultKafkaConsumerFactory<>(configProps);
     }
 
+    /**
+     * Container factory for record listeners, see {@link #recordErrorHandler()}.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, SmsEnvelope> kafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, SmsEnvelope> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.setCommonErrorHandler(recordErrorHandler());
+        return factory;
+    }
+
+    /**
+     * Error handler for record listeners. A record whose provider call was shed by the provider gate is retried with
+     * a fixed backoff for as long as the provider stays unavailable. A record whose failed provider call could not be
+     * scheduled for a retry, because the retry topics are unreachable, is retried with a longer fixed backoff for as
+     * long as they stay unreachable, so that the request is never left pending without a retry. Other failures keep
+     * the default handling.
+     */
+    private DefaultErrorHandler recordErrorHandler() {
+        DefaultErrorHandler errorHandler = new DefaultErrorHandler();
+        FixedBackOff providerUnavailableBackOff = new FixedBackOff(providerUnavailableBackoffMs, FixedBackOff.UNLIMITED_ATTEMPTS);
+        FixedBackOff retryUnavailableBackOff = new FixedBackOff(retryUnavailableBackoffMs, FixedBackOff.UNLIMITED_ATTEMPTS);
+        errorHandler.setBackOffFunction((record, e) -> {
+            if (e.getCause() instanceof ProviderUnavailableException) {
+                return providerUnavailableBackOff;
+            }
+            return e.getCause() instanceof KafkaException ? retryUnavailableBackOff : null;
+        });
+        return errorHandler;
+    }
+
+    /**
+     * Container factory for batch listeners. Offsets are acknowledged manually by the listener once
+     * the statuses of the whole batch have been persisted. The listener only throws before any message of the batch
+     * was sent, typically because MySQL or Redis is unreachable, so the batch is redelivered with a fixed backoff for
+     * as long as it keeps failing.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, SmsEnvelope> batchKafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, SmsEnvelope> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.setBatchListener(true);
+        factory.setCommonErrorHandler(new DefaultErrorHandler(new FixedBackOff(batchErrorBackoffMs, FixedBackOff.UNLIMITED_ATTEMPTS)));
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().getKafkaConsumerProperties()
+                .setProperty(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(batchMaxPollRecords));
+        return factory;
+    }
+
+    /**
+     * Container factory for the async listener. Records are acknowledged manually from worker threads by
+     * {@link AsyncSmsDispatcher}, which is also notified of revoked partitions.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, SmsEnvelope> asyncKafkaListenerContainerFactory(
+            AsyncSmsDispatcher asyncSmsDispatcher) {
+        ConcurrentKafkaListenerContainerFactory<String, SmsEnvelope> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setConsumerRebalanceListener(asyncSmsDispatcher);
+        factory.getContainerProperties().getKafkaConsumerProperties()
+                .setProperty(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(asyncMaxPollRecords));
+        return factory;
+    }
+
+    /**
+     * Container factory for the retry listeners. Records are acknowledged manually, so that a retry which is not
+     * yet due can be redelivered after a pause. Failures are handled as for the record listeners.
+     */
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, String> kafkaListenerContainerFactory() {
-        ConcurrentKafkaListenerContainerFactory<String, String> factory =
+    public ConcurrentKafkaListenerContainerFactory<String, SmsEnvelope> retryKafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, SmsEnvelope> factory =
                 new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory());
+        factory.setCommonErrorHandler(recordErrorHandler());
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
         return factory;
     }
 }
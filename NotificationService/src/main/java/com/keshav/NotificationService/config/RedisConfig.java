@@ -1,11 +1,20 @@
 package com.keshav.NotificationService.config;
 
+import com.keshav.NotificationService.service.BlacklistService;
+import com.keshav.NotificationService.service.BlacklistStore;
+import com.keshav.NotificationService.service.BucketedBlacklistStore;
+import com.keshav.NotificationService.service.KeyBlacklistStore;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.nio.charset.StandardCharsets;
+
 @Configuration
 public class RedisConfig {
 
@@ -21,6 +30,42 @@ public class RedisConfig {
 
         redisTemplate.setKeySerializer(new StringRedisSerializer());
         redisTemplate.setValueSerializer(new StringRedisSerializer());
+        redisTemplate.setHashKeySerializer(new StringRedisSerializer());
+        redisTemplate.setHashValueSerializer(new StringRedisSerializer());
         return redisTemplate;
     }
+
+    /**
+     * Chooses the layout of the blacklist in Redis: {@code keys} (the default) stores one key per number,
+     * {@code buckets} packs numbers into small hashes and migrates numbers still stored as keys. Buckets are opt-in,
+     * as switching starts an online migration of the blacklist and needs Redis' {@code hash-max-listpack-entries}
+     * raised to the bucket size, see {@link BucketedBlacklistStore}.
+     */
+    @Bean
+    public BlacklistStore blacklistStore(@Value("${notification.blacklist.storage:keys}") String storage,
+                                         @Value("${notification.blacklist.buckets.suffix-digits:3}") int suffixDigits,
+                                         @Value("${notification.blacklist.buckets.migrate:true}") boolean migrate,
+                                         @Value("${notification.blacklist.buckets.batch-size:1000}") int batchSize,
+                                         @Value("${notification.blacklist.buckets.lock-timeout-ms:30000}") long lockTimeoutMs) {
+        if ("buckets".equalsIgnoreCase(storage)) {
+            return new BucketedBlacklistStore(redisTemplate(), suffixDigits, migrate, batchSize, lockTimeoutMs);
+        }
+        if (!"keys".equalsIgnoreCase(storage)) {
+            throw new IllegalArgumentException("Unknown blacklist storage: " + storage);
+        }
+        return new KeyBlacklistStore(redisTemplate());
+    }
+
+    /**
+     * Subscribes to blacklist changes made on any node, so that the local blacklist cache drops stale entries.
+     */
+    @Bean
+    public RedisMessageListenerContainer blacklistInvalidationListenerContainer(BlacklistService blacklistService) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory());
+        container.addMessageListener(
+                (message, pattern) -> blacklistService.onInvalidation(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(BlacklistService.INVALIDATION_CHANNEL));
+        return container;
+    }
 }
@@ -0,0 +1,33 @@
+package com.keshav.NotificationService.config;
+
+import com.keshav.NotificationService.utils.ProviderGate;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SMS provider backends, bound from {@code notification.provider.backends[n].*}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "notification.provider")
+public class SmsProviderProperties {
+
+    private List<Backend> backends = new ArrayList<>();
+
+    @Getter
+    @Setter
+    public static class Backend {
+        private String name;
+        private String baseUrl;
+        private String key;
+        /**
+         * Maximum number of messages per second sent to this provider, or 0 for no cap.
+         */
+        private int maxRatePerSecond;
+        private ProviderGate.Settings gate = new ProviderGate.Settings();
+    }
+}
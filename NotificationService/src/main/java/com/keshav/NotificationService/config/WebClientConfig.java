@@ -1,16 +1,84 @@
 package com.keshav.NotificationService.config;
 
+import com.keshav.NotificationService.service.HttpSmsProvider;
+import com.keshav.NotificationService.service.SmsProviderRouter;
+import com.keshav.NotificationService.utils.ProviderGate;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 @Configuration
+@EnableConfigurationProperties(SmsProviderProperties.class)
 public class WebClientConfig {
 
-    @Bean
-    public WebClient webClient(WebClient.Builder builder) {
-        return builder.baseUrl("https://api.imiconnect.in/resources/v1/messaging")
-                .defaultHeader("Key", "93ceffda-5941-11ea-9da9-025282c394f2") // Set the required API key
+    @Value("${notification.provider.http.max-connections:5000}")
+    private int maxConnections;
+
+    @Value("${notification.provider.http.pending-acquire-max-count:10000}")
+    private int pendingAcquireMaxCount;
+
+    @Value("${notification.provider.http.pending-acquire-timeout-ms:5000}")
+    private long pendingAcquireTimeoutMs;
+
+    @Value("${notification.provider.http.max-idle-time-ms:30000}")
+    private long maxIdleTimeMs;
+
+    @Value("${notification.provider.http.connect-timeout-ms:2000}")
+    private int connectTimeoutMs;
+
+    @Value("${notification.provider.http.response-timeout-ms:5000}")
+    private long responseTimeoutMs;
+
+    /**
+     * Dedicated connection pool for SMS provider calls, so provider traffic cannot exhaust or be starved by
+     * other WebClient users. Acquires beyond the pending queue or its timeout fail fast instead of piling up.
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider smsProviderConnectionProvider() {
+        return ConnectionProvider.builder("sms-provider")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofMillis(maxIdleTimeMs))
+                .evictInBackground(Duration.ofMillis(maxIdleTimeMs))
                 .build();
     }
+
+    /**
+     * Router over the configured SMS providers. Each provider gets its own WebClient with its base URL and key,
+     * sharing the dedicated connection pool, and its own gate and throughput cap.
+     */
+    @Bean
+    public SmsProviderRouter smsProviderRouter(WebClient.Builder builder, ConnectionProvider smsProviderConnectionProvider,
+                                               SmsProviderProperties properties, MeterRegistry meterRegistry) {
+        HttpClient httpClient = HttpClient.create(smsProviderConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true)
+                .responseTimeout(Duration.ofMillis(responseTimeoutMs));
+        ReactorClientHttpConnector connector = new ReactorClientHttpConnector(httpClient);
+
+        List<SmsProviderRouter.Route> routes = new ArrayList<>();
+        for (SmsProviderProperties.Backend backend : properties.getBackends()) {
+            WebClient webClient = builder.clone()
+                    .baseUrl(backend.getBaseUrl())
+                    .defaultHeader("Key", backend.getKey())
+                    .clientConnector(connector)
+                    .build();
+            routes.add(new SmsProviderRouter.Route(new HttpSmsProvider(backend.getName(), webClient),
+                    new ProviderGate(backend.getGate()), backend.getMaxRatePerSecond(), meterRegistry));
+        }
+        return new SmsProviderRouter(routes);
+    }
 }
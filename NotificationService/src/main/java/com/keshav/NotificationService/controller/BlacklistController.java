@@ -1,29 +1,58 @@
 package com.keshav.NotificationService.controller;
 
+import com.keshav.NotificationService.dto.BlacklistImportStatus;
+import com.keshav.NotificationService.dto.BlacklistPage;
 import com.keshav.NotificationService.dto.BlacklistRequestDto;
+import com.keshav.NotificationService.service.BlacklistImportService;
 import com.keshav.NotificationService.service.BlacklistService;
 import com.keshav.NotificationService.utils.ErrorResponseUtil;
 import com.keshav.NotificationService.utils.ValidationErrorUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
-import java.util.Map;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/v1/blacklist")
 public class BlacklistController {
     private static final Logger log = LoggerFactory.getLogger(BlacklistController.class);
+    private static final int EXPORT_PAGE_SIZE = 1000;
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     private final BlacklistService blacklistService;
+    private final BlacklistImportService blacklistImportService;
+    private final int maxPageSize;
+    private final int maxCheckSize;
 
-    public BlacklistController(BlacklistService blacklistService) {
+    public BlacklistController(BlacklistService blacklistService,
+                               BlacklistImportService blacklistImportService,
+                               @Value("${notification.blacklist.max-page-size:1000}") int maxPageSize,
+                               @Value("${notification.blacklist.max-check-size:50000}") int maxCheckSize) {
         this.blacklistService = blacklistService;
+        this.blacklistImportService = blacklistImportService;
+        this.maxPageSize = maxPageSize;
+        this.maxCheckSize = maxCheckSize;
     }
 
     @PostMapping
@@ -71,21 +100,187 @@ public class BlacklistController {
         }
     }
 
+    /**
+     * Returns the blacklisted subset of the given phone numbers, looked up in one pipelined round trip.
+     */
+    @PostMapping("/check")
+    public ResponseEntity<?> checkBlacklist(@Valid @RequestBody BlacklistRequestDto blacklistRequestDto, BindingResult bindingResult) {
+        ResponseEntity<?> errorResponse = ValidationErrorUtil.handleValidationErrors(bindingResult);
+        if(errorResponse != null){
+            return errorResponse;
+        }
+
+        List<String> phoneNumbers = blacklistRequestDto.getPhoneNumbers();
+        log.info("Received request to check numbers against the blacklist: [Numbers: {}]", phoneNumbers.size());
+
+        if (phoneNumbers.size() > maxCheckSize) {
+            Map<String, Object> sizeErrorResponse = new HashMap<>();
+            Map<String, String> errorDetails = new HashMap<>();
+            errorDetails.put("code", "BAD_REQUEST");
+            errorDetails.put("message", "A check cannot contain more than " + maxCheckSize + " numbers.");
+            sizeErrorResponse.put("error", errorDetails);
+            return ResponseEntity.badRequest().body(sizeErrorResponse);
+        }
+
+        try {
+            Set<String> blacklisted = blacklistService.findBlacklisted(new LinkedHashSet<>(phoneNumbers));
+            log.info("Found {} blacklisted numbers among {}.", blacklisted.size(), phoneNumbers.size());
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("data", blacklisted);
+            return ResponseEntity.ok().body(response);
+
+        } catch (Exception e) {
+            log.error("Error checking numbers against blacklist: {}", e.getMessage(), e);
+            return ErrorResponseUtil.getErrorResponseEntity("Failed to check numbers against the blacklist. Please try again later.");
+        }
+    }
+
     @GetMapping
-    public ResponseEntity<?> getBlacklist() {
-        log.info("Received request to fetch the list of blacklisted numbers.");
+    public ResponseEntity<?> getBlacklist(@RequestParam(defaultValue = "0") String cursor,
+                                          @RequestParam(defaultValue = "100") int limit) {
+        log.info("Received request to fetch blacklisted numbers: [Cursor: {}, Limit: {}]", cursor, limit);
+
+        if (!cursor.matches("[A-Za-z0-9:]+") || limit < 1 || limit > maxPageSize) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            Map<String, String> errorDetails = new HashMap<>();
+            errorDetails.put("code", "BAD_REQUEST");
+            errorDetails.put("message", "The cursor must be one returned by a previous page and the limit between 1 and " + maxPageSize + ".");
+            errorResponse.put("error", errorDetails);
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
 
         try {
-            List<String> blacklistedNumbers = blacklistService.getBlacklist();
-            log.info("Returning {} blacklisted numbers.", blacklistedNumbers.size());
+            BlacklistPage page = blacklistService.getBlacklistPage(cursor, limit);
+            log.info("Returning {} blacklisted numbers.", page.getPhoneNumbers().size());
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("data", page.getPhoneNumbers());
 
-            Map<String, List<String>> blacklistMap = new HashMap<>();
-            blacklistMap.put("data", blacklistedNumbers);
-            return ResponseEntity.ok().body(blacklistMap);
+            Map<String, Object> pagination = new HashMap<>();
+            pagination.put("cursor", cursor);
+            pagination.put("nextCursor", page.getNextCursor());
+            pagination.put("limit", limit);
+            response.put("pagination", pagination);
+            return ResponseEntity.ok().body(response);
 
         } catch (Exception e) {
             log.error("Error fetching blacklist: {}", e.getMessage(), e);
             return ErrorResponseUtil.getErrorResponseEntity("Failed to fetch blacklist. Please try again later.");
         }
     }
+
+    /**
+     * Streams the whole blacklist as NDJSON or CSV, writing each page as soon as it has been scanned, so memory use
+     * does not grow with the size of the blacklist.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<?> exportBlacklist(@RequestParam(defaultValue = "ndjson") String format) {
+        log.info("Received request to export the blacklist: [Format: {}]", format);
+
+        boolean csv = "csv".equalsIgnoreCase(format);
+        if (!csv && !"ndjson".equalsIgnoreCase(format)) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            Map<String, String> errorDetails = new HashMap<>();
+            errorDetails.put("code", "BAD_REQUEST");
+            errorDetails.put("message", "The format must be either ndjson or csv.");
+            errorResponse.put("error", errorDetails);
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+
+        StreamingResponseBody body = outputStream -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            if (csv) {
+                writer.write("phoneNumber\n");
+            }
+            long exported = 0;
+            String cursor = "0";
+            try {
+                do {
+                    BlacklistPage page = blacklistService.getBlacklistPage(cursor, EXPORT_PAGE_SIZE);
+                    for (String phoneNumber : page.getPhoneNumbers()) {
+                        writer.write(csv ? toCsvLine(phoneNumber) : toNdjsonLine(phoneNumber));
+                    }
+                    writer.flush();
+                    exported += page.getPhoneNumbers().size();
+                    cursor = page.getNextCursor();
+                } while (cursor != null);
+            } catch (RuntimeException e) {
+                // The response has already started, so the only way to signal the failure is to abort it.
+                log.error("Error exporting blacklist after {} numbers: {}", exported, e.getMessage(), e);
+                throw new IOException("Failed to export blacklist", e);
+            }
+            log.info("Exported {} blacklisted numbers.", exported);
+        };
+
+        return ResponseEntity.ok()
+                .contentType(csv ? TEXT_CSV : APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"blacklist." + (csv ? "csv" : "ndjson") + "\"")
+                .body(body);
+    }
+
+    /**
+     * Starts importing a CSV file of phone numbers in the background, or resumes a failed import when the same file
+     * is uploaded again with its import ID.
+     */
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> importBlacklist(@RequestParam("file") MultipartFile file,
+                                             @RequestParam(required = false) String importId) {
+        log.info("Received request to import blacklist: [File: {}, Size: {}, Import ID: {}]",
+                file.getOriginalFilename(), file.getSize(), importId);
+
+        try {
+            BlacklistImportStatus status = blacklistImportService.startImport(file, importId);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("data", status);
+            return ResponseEntity.accepted().body(response);
+
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            Map<String, String> errorDetails = new HashMap<>();
+            errorDetails.put("code", e instanceof IllegalStateException ? "CONFLICT" : "BAD_REQUEST");
+            errorDetails.put("message", e.getMessage());
+            errorResponse.put("error", errorDetails);
+            return ResponseEntity.status(e instanceof IllegalStateException ? HttpStatus.CONFLICT : HttpStatus.BAD_REQUEST)
+                    .body(errorResponse);
+        } catch (Exception e) {
+            log.error("Error starting blacklist import: {}", e.getMessage(), e);
+            return ErrorResponseUtil.getErrorResponseEntity("Failed to start blacklist import. Please try again later.");
+        }
+    }
+
+    @GetMapping("/import/{importId}")
+    public ResponseEntity<?> getImportStatus(@PathVariable String importId) {
+        try {
+            BlacklistImportStatus status = blacklistImportService.getStatus(importId);
+            if (status == null) {
+                Map<String, Object> errorResponse = new HashMap<>();
+                Map<String, String> errorDetails = new HashMap<>();
+                errorDetails.put("code", "NOT_FOUND");
+                errorDetails.put("message", "No blacklist import with ID " + importId + ".");
+                errorResponse.put("error", errorDetails);
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
+            }
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("data", status);
+            return ResponseEntity.ok().body(response);
+
+        } catch (Exception e) {
+            log.error("Error fetching blacklist import status: {}", e.getMessage(), e);
+            return ErrorResponseUtil.getErrorResponseEntity("Failed to fetch blacklist import status. Please try again later.");
+        }
+    }
+
+    private static String toCsvLine(String phoneNumber) {
+        if (phoneNumber.contains(",") || phoneNumber.contains("\"") || phoneNumber.contains("\n")) {
+            return "\"" + phoneNumber.replace("\"", "\"\"") + "\"\n";
+        }
+        return phoneNumber + "\n";
+    }
+
+    private static String toNdjsonLine(String phoneNumber) {
+        return "{\"phoneNumber\":\"" + phoneNumber.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}\n";
+    }
 }
@@ -1,5 +1,7 @@
 package com.keshav.NotificationService.controller;
 
+import com.keshav.NotificationService.dto.SmsBatchItemResultDto;
+import com.keshav.NotificationService.dto.SmsBatchRequestDto;
 import com.keshav.NotificationService.dto.SmsRequestDto;
 import com.keshav.NotificationService.model.SmsRequest;
 import com.keshav.NotificationService.service.SmsService;
@@ -7,13 +9,19 @@ import com.keshav.NotificationService.utils.ErrorResponseUtil;
 import com.keshav.NotificationService.utils.ValidationErrorUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
+import javax.validation.Validator;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/v1/sms")
@@ -21,9 +29,14 @@ public class SmsController {
     Logger log = LoggerFactory.getLogger(SmsController.class);
 
     private final SmsService smsService;
+    private final Validator validator;
+    private final int maxBatchSize;
 
-    public SmsController(SmsService smsService) {
+    public SmsController(SmsService smsService, Validator validator,
+                         @Value("${notification.sms.batch.max-size:5000}") int maxBatchSize) {
         this.smsService = smsService;
+        this.validator = validator;
+        this.maxBatchSize = maxBatchSize;
     }
 
     @PostMapping("/send")
@@ -52,6 +65,66 @@ public class SmsController {
         }
     }
 
+    @PostMapping("/send-batch")
+    public ResponseEntity<?> sendSmsBatch(@Valid @RequestBody SmsBatchRequestDto smsBatchRequestDto, BindingResult bindingResult) {
+        ResponseEntity<?> errorResponse = ValidationErrorUtil.handleValidationErrors(bindingResult);
+        if(errorResponse != null){
+            return errorResponse;
+        }
+
+        List<SmsRequestDto> messages = smsBatchRequestDto.getMessages();
+        log.info("Received API request: [Endpoint: /v1/sms/send-batch, Messages: {}]", messages.size());
+
+        if (messages.size() > maxBatchSize) {
+            Map<String, Object> sizeErrorResponse = new HashMap<>();
+            Map<String, String> errorDetails = new HashMap<>();
+            errorDetails.put("code", "BAD_REQUEST");
+            errorDetails.put("message", "A batch cannot contain more than " + maxBatchSize + " messages.");
+            sizeErrorResponse.put("error", errorDetails);
+            return ResponseEntity.badRequest().body(sizeErrorResponse);
+        }
+
+        try {
+            List<SmsBatchItemResultDto> results = new ArrayList<>(messages.size());
+            List<SmsRequestDto> validMessages = new ArrayList<>(messages.size());
+            List<SmsBatchItemResultDto> validResults = new ArrayList<>(messages.size());
+
+            for (int i = 0; i < messages.size(); i++) {
+                SmsBatchItemResultDto result = new SmsBatchItemResultDto();
+                result.setIndex(i);
+                results.add(result);
+
+                String validationError = validate(messages.get(i));
+                if (validationError != null) {
+                    Map<String, String> errorDetails = new HashMap<>();
+                    errorDetails.put("code", "BAD_REQUEST");
+                    errorDetails.put("message", validationError);
+                    result.setError(errorDetails);
+                } else {
+                    validMessages.add(messages.get(i));
+                    validResults.add(result);
+                }
+            }
+
+            if (!validMessages.isEmpty()) {
+                List<String> requestIds = smsService.sendSmsBatch(validMessages);
+                for (int i = 0; i < requestIds.size(); i++) {
+                    validResults.get(i).setRequestId(requestIds.get(i));
+                }
+            }
+            log.info("Processed batch request: [Accepted: {}, Rejected: {}]",
+                    validMessages.size(), messages.size() - validMessages.size());
+
+            Map<String, Object> responseMap = new HashMap<>();
+            responseMap.put("data", results);
+
+            return ResponseEntity.ok().body(responseMap);
+        } catch (Exception e) {
+            log.warn("Error while processing batch request: {}", e.getMessage(), e);
+            return ErrorResponseUtil.getErrorResponseEntity("Failed to process batch request. Please try again later");
+        }
+    }
+
     @GetMapping("/{requestId}")
     public ResponseEntity<?> getSmsRequestById(@PathVariable String requestId) {
         log.info("Received API request: [Endpoint: /v1/sms/{requestId}, RequestId: {}]", requestId);
@@ -78,4 +151,14 @@ public class SmsController {
         }
     }
 
-}
\ No newline at end of file
+    private String validate(SmsRequestDto smsRequestDto) {
+        if (smsRequestDto == null) {
+            return "Message cannot be null.";
+        }
+        Set<ConstraintViolation<SmsRequestDto>> violations = validator.validate(smsRequestDto);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.iterator().next().getMessage();
+    }
+}
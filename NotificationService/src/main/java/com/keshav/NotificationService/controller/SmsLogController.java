@@ -1,16 +1,31 @@
 package com.keshav.NotificationService.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.keshav.NotificationService.dto.SmsLogPage;
+import com.keshav.NotificationService.dto.SmsSendAnalytics;
 import com.keshav.NotificationService.model.SmsLog;
+import com.keshav.NotificationService.service.SmsAnalyticsService;
+import com.keshav.NotificationService.service.SmsLogMigrationService;
 import com.keshav.NotificationService.service.SmsLogService;
 import com.keshav.NotificationService.utils.ErrorResponseUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
@@ -19,10 +34,24 @@ import java.util.Map;
 @RestController
 public class SmsLogController {
     private static final Logger log = LoggerFactory.getLogger(SmsLogController.class);
-    private final SmsLogService smsLogService;
+    private static final int EXPORT_PAGE_SIZE = 1000;
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final int MAX_TOP_RECIPIENTS = 100;
 
-    public SmsLogController(SmsLogService smsLogService) {
+    private final SmsLogService smsLogService;
+    private final SmsLogMigrationService smsLogMigrationService;
+    private final SmsAnalyticsService smsAnalyticsService;
+    private final ObjectMapper objectMapper;
+    private final int maxPageSize;
+
+    public SmsLogController(SmsLogService smsLogService, SmsLogMigrationService smsLogMigrationService,
+                            SmsAnalyticsService smsAnalyticsService, ObjectMapper objectMapper,
+                            @Value("${notification.sms.log.max-page-size:1000}") int maxPageSize) {
         this.smsLogService = smsLogService;
+        this.smsLogMigrationService = smsLogMigrationService;
+        this.smsAnalyticsService = smsAnalyticsService;
+        this.objectMapper = objectMapper;
+        this.maxPageSize = maxPageSize;
     }
 
     @GetMapping("/v1/sms-logs")
@@ -30,12 +59,15 @@ public class SmsLogController {
             @RequestParam String phoneNumber,
             @RequestParam String startTime,
             @RequestParam String endTime,
-            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(required = false) String cursor,
             @RequestParam(defaultValue = "10") int size) {
 
-        log.info("Received request to fetch SMS logs for PhoneNumber: {}, StartTime: {}, EndTime: {}, Page: {}, Size: {}",
-                phoneNumber, startTime, endTime, page, size);
+        log.info("Received request to fetch SMS logs for PhoneNumber: {}, StartTime: {}, EndTime: {}, Cursor: {}, Size: {}",
+                phoneNumber, startTime, endTime, cursor != null, size);
 
+        if (size < 1 || size > maxPageSize) {
+            return getBadRequestResponseEntity("The size must be between 1 and " + maxPageSize + ".");
+        }
 
         try {
             // Convert request parameters to LocalDateTime
@@ -43,11 +75,12 @@ public class SmsLogController {
             LocalDateTime start = LocalDateTime.parse(startTime, formatter);
             LocalDateTime end = LocalDateTime.parse(endTime, formatter);
 
-            // Fetch paginated results
-            Page<SmsLog> smsLogs = smsLogService.getSmsLogsByPhoneNumberAndDateRange(phoneNumber, start, end, page, size);
+            SmsLogPage smsLogs = smsLogService.getSmsLogsByPhoneNumberAndDateRange(phoneNumber, start, end, cursor, size);
 
-            log.info("Fetched {} SMS logs for PhoneNumber: {}", smsLogs.getTotalElements(), phoneNumber);
-            return getResponseEntity(smsLogs);
+            log.info("Fetched {} SMS logs for PhoneNumber: {}", smsLogs.getSmsLogs().size(), phoneNumber);
+            return getResponseEntity(smsLogs, cursor, size);
+        } catch (IllegalArgumentException | DateTimeException e) {
+            return getBadRequestResponseEntity(e.getMessage());
         } catch (Exception e) {
             log.error("Error occurred while fetching SMS logs: {}", e.getMessage(), e);
             return ErrorResponseUtil.getErrorResponseEntity("Unable to fetch SMS logs between " + startTime + " and " + endTime + ". Please try again later.");
@@ -55,33 +88,167 @@ public class SmsLogController {
     }
 
     @GetMapping("/v1/sms-logs/search")
-    public ResponseEntity<?> getSmsLogsByPhoneNumber(@RequestParam String text, @RequestParam(defaultValue = "0") int page,
+    public ResponseEntity<?> getSmsLogsByPhoneNumber(@RequestParam String text,
+                                                     @RequestParam(required = false) String cursor,
                                                      @RequestParam(defaultValue = "10") int size) {
-        log.info("Received request to search SMS logs containing text: '{}', Page: {}, Size: {}", text, page, size);
+        log.info("Received request to search SMS logs containing text: '{}', Continued: {}, Size: {}", text, cursor != null, size);
+
+        if (size < 1 || size > maxPageSize) {
+            return getBadRequestResponseEntity("The size must be between 1 and " + maxPageSize + ".");
+        }
 
         try {
-            Page<SmsLog> smsLogs = smsLogService.getSmsLogsByText(text, page, size);
+            SmsLogPage smsLogs = smsLogService.getSmsLogsByText(text, cursor, size);
 
-            log.info("Fetched {} SMS logs containing text: '{}'", smsLogs.getTotalElements(), text);
-            return getResponseEntity(smsLogs);
+            log.info("Fetched {} SMS logs containing text: '{}'", smsLogs.getSmsLogs().size(), text);
+            return getResponseEntity(smsLogs, cursor, size);
+        } catch (IllegalArgumentException e) {
+            return getBadRequestResponseEntity(e.getMessage());
         } catch (Exception e) {
             log.error("Error occurred while searching SMS logs: {}", e.getMessage(), e);
             return ErrorResponseUtil.getErrorResponseEntity("Unable to fetch SMS logs with text '" + text + "'. Please try again later.");
         }
     }
 
-    private ResponseEntity<?> getResponseEntity(Page<SmsLog> smsLogs) {
+    /**
+     * Streams every SMS log for a phone number within a date range as NDJSON, oldest first, writing each page as
+     * soon as it has been fetched, so memory use does not grow with the number of logs.
+     */
+    @GetMapping("/v1/sms-logs/export")
+    public ResponseEntity<?> exportSmsLogs(@RequestParam String phoneNumber,
+                                           @RequestParam String startTime,
+                                           @RequestParam String endTime) {
+        log.info("Received request to export SMS logs for PhoneNumber: {}, StartTime: {}, EndTime: {}",
+                phoneNumber, startTime, endTime);
+
+        LocalDateTime start;
+        LocalDateTime end;
+        try {
+            start = LocalDateTime.parse(startTime, DateTimeFormatter.ISO_DATE_TIME);
+            end = LocalDateTime.parse(endTime, DateTimeFormatter.ISO_DATE_TIME);
+        } catch (DateTimeException e) {
+            return getBadRequestResponseEntity(e.getMessage());
+        }
+
+        StreamingResponseBody body = outputStream -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            long exported = 0;
+            String cursor = null;
+            try {
+                do {
+                    SmsLogPage page = smsLogService.getSmsLogsByPhoneNumberAndDateRange(phoneNumber, start, end, cursor, EXPORT_PAGE_SIZE);
+                    for (SmsLog smsLog : page.getSmsLogs()) {
+                        writer.write(objectMapper.writeValueAsString(smsLog));
+                        writer.write('\n');
+                    }
+                    writer.flush();
+                    exported += page.getSmsLogs().size();
+                    cursor = page.getNextCursor();
+                } while (cursor != null);
+            } catch (RuntimeException e) {
+                // The response has already started, so the only way to signal the failure is to abort it.
+                log.error("Error exporting SMS logs after {} logs: {}", exported, e.getMessage(), e);
+                throw new IOException("Failed to export SMS logs", e);
+            }
+            log.info("Exported {} SMS logs for PhoneNumber: {}", exported, phoneNumber);
+        };
+
+        return ResponseEntity.ok()
+                .contentType(APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"sms-logs.ndjson\"")
+                .body(body);
+    }
+
+    /**
+     * Counts the SMS sent within a date range per interval, optionally only to one phone number or to the numbers
+     * with a prefix, along with the most frequent recipients.
+     */
+    @GetMapping("/v1/sms-logs/analytics")
+    public ResponseEntity<?> getSendAnalytics(@RequestParam String startTime,
+                                              @RequestParam String endTime,
+                                              @RequestParam(defaultValue = "1h") String interval,
+                                              @RequestParam(required = false) String phoneNumber,
+                                              @RequestParam(required = false) String phonePrefix,
+                                              @RequestParam(defaultValue = "10") int top) {
+        log.info("Received request for SMS send analytics: [StartTime: {}, EndTime: {}, Interval: {}, PhoneNumber: {}, PhonePrefix: {}, Top: {}]",
+                startTime, endTime, interval, phoneNumber, phonePrefix, top);
+
+        if (phoneNumber != null && phonePrefix != null) {
+            return getBadRequestResponseEntity("Only one of phoneNumber and phonePrefix may be given.");
+        }
+        if (top < 0 || top > MAX_TOP_RECIPIENTS) {
+            return getBadRequestResponseEntity("The top must be between 0 and " + MAX_TOP_RECIPIENTS + ".");
+        }
+
+        try {
+            LocalDateTime start = LocalDateTime.parse(startTime, DateTimeFormatter.ISO_DATE_TIME);
+            LocalDateTime end = LocalDateTime.parse(endTime, DateTimeFormatter.ISO_DATE_TIME);
+
+            SmsSendAnalytics analytics = smsAnalyticsService.getSendAnalytics(start, end, interval, phoneNumber, phonePrefix, top);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("data", analytics);
+            return ResponseEntity.ok().body(response);
+        } catch (IllegalArgumentException | DateTimeException e) {
+            return getBadRequestResponseEntity(e.getMessage());
+        } catch (Exception e) {
+            log.error("Error occurred while computing SMS send analytics: {}", e.getMessage(), e);
+            return ErrorResponseUtil.getErrorResponseEntity("Unable to compute SMS send analytics between " + startTime + " and " + endTime + ". Please try again later.");
+        }
+    }
+
+    /**
+     * Starts moving SMS logs written with an earlier index mapping into the current indices.
+     * @return The status of every migration, by old index.
+     */
+    @PostMapping("/v1/sms-logs/migration")
+    public ResponseEntity<?> startMigration() {
+        log.info("Received request to migrate SMS log indices");
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("data", smsLogMigrationService.start());
+            return ResponseEntity.accepted().body(response);
+        } catch (Exception e) {
+            log.error("Error occurred while starting SMS log migration: {}", e.getMessage(), e);
+            return ErrorResponseUtil.getErrorResponseEntity("Unable to start SMS log migration. Please try again later.");
+        }
+    }
+
+    /**
+     * @return The status of every SMS log index migration, by old index.
+     */
+    @GetMapping("/v1/sms-logs/migration")
+    public ResponseEntity<?> getMigrationStatus() {
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("data", smsLogMigrationService.getStatus());
+            return ResponseEntity.ok().body(response);
+        } catch (Exception e) {
+            log.error("Error occurred while fetching SMS log migration status: {}", e.getMessage(), e);
+            return ErrorResponseUtil.getErrorResponseEntity("Unable to fetch SMS log migration status. Please try again later.");
+        }
+    }
+
+    private ResponseEntity<?> getResponseEntity(SmsLogPage smsLogs, String cursor, int size) {
         Map<String, Object> response = new HashMap<>();
-        response.put("data", smsLogs.getContent());
+        response.put("data", smsLogs.getSmsLogs());
 
         Map<String, Object> pagination = new HashMap<>();
-        pagination.put("currentPage", smsLogs.getNumber());
-        pagination.put("pageSize", smsLogs.getSize());
-        pagination.put("totalPages", smsLogs.getTotalPages());
-        pagination.put("totalItems", smsLogs.getTotalElements());
+        pagination.put("cursor", cursor);
+        pagination.put("nextCursor", smsLogs.getNextCursor());
+        pagination.put("pageSize", size);
 
         response.put("pagination", pagination);
 
         return ResponseEntity.ok().body(response);
     }
+
+    private ResponseEntity<?> getBadRequestResponseEntity(String message) {
+        Map<String, Object> errorResponse = new HashMap<>();
+        Map<String, String> errorDetails = new HashMap<>();
+        errorDetails.put("code", "BAD_REQUEST");
+        errorDetails.put("message", message);
+        errorResponse.put("error", errorDetails);
+        return ResponseEntity.badRequest().body(errorResponse);
+    }
 }
@@ -0,0 +1,29 @@
+package com.keshav.NotificationService.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Progress of a bulk blacklist import. {@code linesProcessed} only counts lines whose numbers are known to be in
+ * Redis, so a resumed import continues after that line.
+ */
+@Getter
+@Setter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BlacklistImportStatus {
+    public static final String QUEUED = "QUEUED";
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+
+    private String importId;
+    private String status;
+    private String fileName;
+    private long fileSize;
+    private long linesProcessed;
+    private long imported;
+    private long invalid;
+    private String error;
+    private long updatedAt;
+}
@@ -0,0 +1,17 @@
+package com.keshav.NotificationService.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * One page of a cursor-paginated blacklist listing.
+ * A null {@code nextCursor} means the listing is complete.
+ */
+@Getter
+@AllArgsConstructor
+public class BlacklistPage {
+    private final List<String> phoneNumbers;
+    private final String nextCursor;
+}
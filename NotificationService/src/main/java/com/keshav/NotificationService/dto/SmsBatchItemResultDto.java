@@ -0,0 +1,16 @@
+package com.keshav.NotificationService.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Map;
+
+@Getter
+@Setter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SmsBatchItemResultDto {
+    private int index;
+    private String requestId;
+    private Map<String, String> error;
+}
@@ -0,0 +1,15 @@
+package com.keshav.NotificationService.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.constraints.NotEmpty;
+import java.util.List;
+
+@Getter
+@Setter
+public class SmsBatchRequestDto {
+
+    @NotEmpty(message = "Messages list cannot be empty.")
+    private List<SmsRequestDto> messages;
+}
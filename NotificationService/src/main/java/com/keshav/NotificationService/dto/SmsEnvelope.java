@@ -0,0 +1,62 @@
+package com.keshav.NotificationService.dto;
+
+import com.keshav.NotificationService.model.SmsRequest;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Kafka payload for an SMS request. It carries everything needed to send the SMS, so the consumer does not
+ * have to read the request back from the database. Envelopes decoded from legacy messages only carry the request ID.
+ * Retried envelopes also carry the number of failed attempts so far and the time at which they are due again,
+ * both transported as record headers.
+ */
+@Getter
+@Setter
+public class SmsEnvelope {
+    private String requestId;
+    private String phoneNumber;
+    private String message;
+    private LocalDateTime createdAt;
+    private int attempt;
+    private long dueAt;
+
+    public static SmsEnvelope from(SmsRequest smsRequest) {
+        SmsEnvelope envelope = new SmsEnvelope();
+        envelope.setRequestId(smsRequest.getId());
+        envelope.setPhoneNumber(smsRequest.getPhoneNumber());
+        envelope.setMessage(smsRequest.getMessage());
+        envelope.setCreatedAt(smsRequest.getCreatedAt());
+        return envelope;
+    }
+
+    public static SmsEnvelope ofRequestId(String requestId) {
+        SmsEnvelope envelope = new SmsEnvelope();
+        envelope.setRequestId(requestId);
+        return envelope;
+    }
+
+    /**
+     * @param attempt The number of failed attempts so far.
+     * @param dueAt Epoch millis before which the retry must not be processed.
+     * @return A copy of this envelope to be published for a retry.
+     */
+    public SmsEnvelope retry(int attempt, long dueAt) {
+        SmsEnvelope envelope = new SmsEnvelope();
+        envelope.setRequestId(requestId);
+        envelope.setPhoneNumber(phoneNumber);
+        envelope.setMessage(message);
+        envelope.setCreatedAt(createdAt);
+        envelope.setAttempt(attempt);
+        envelope.setDueAt(dueAt);
+        return envelope;
+    }
+
+    /**
+     * @return {@code true} if the envelope carries the phone number and message, {@code false} for legacy ID-only envelopes.
+     */
+    public boolean isComplete() {
+        return phoneNumber != null && message != null;
+    }
+}
@@ -0,0 +1,18 @@
+package com.keshav.NotificationService.dto;
+
+import com.keshav.NotificationService.model.SmsLog;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * One page of a cursor-paginated SMS log search.
+ * A null {@code nextCursor} means the search is complete.
+ */
+@Getter
+@AllArgsConstructor
+public class SmsLogPage {
+    private final List<SmsLog> smsLogs;
+    private final String nextCursor;
+}
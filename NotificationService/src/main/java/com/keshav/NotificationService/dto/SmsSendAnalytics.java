@@ -0,0 +1,36 @@
+package com.keshav.NotificationService.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Sent SMS counts over a time range, per interval and for the most frequent recipients.
+ * {@code source} tells whether they were served from the in-process rollup or from Elasticsearch.
+ */
+@Getter
+@AllArgsConstructor
+public class SmsSendAnalytics {
+    public static final String ROLLUP = "ROLLUP";
+    public static final String ELASTICSEARCH = "ELASTICSEARCH";
+
+    private final String source;
+    private final String interval;
+    private final List<IntervalCount> sends;
+    private final List<RecipientCount> topRecipients;
+
+    @Getter
+    @AllArgsConstructor
+    public static class IntervalCount {
+        private final String start;
+        private final long count;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class RecipientCount {
+        private final String phoneNumber;
+        private final long count;
+    }
+}
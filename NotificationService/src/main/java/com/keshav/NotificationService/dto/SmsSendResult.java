@@ -0,0 +1,72 @@
+package com.keshav.NotificationService.dto;
+
+import lombok.Getter;
+
+/**
+ * Outcome of one SMS provider call.
+ */
+@Getter
+public class SmsSendResult {
+
+    public enum Status {
+        SENT,
+        FAILED,
+        REJECTED
+    }
+
+    private final Status status;
+    private final String error;
+    private final long latencyMs;
+    private final boolean providerError;
+    private final boolean unreachable;
+
+    private SmsSendResult(Status status, String error, long latencyMs, boolean providerError, boolean unreachable) {
+        this.status = status;
+        this.error = error;
+        this.latencyMs = latencyMs;
+        this.providerError = providerError;
+        this.unreachable = unreachable;
+    }
+
+    public static SmsSendResult sent(long latencyMs) {
+        return new SmsSendResult(Status.SENT, null, latencyMs, false, false);
+    }
+
+    /**
+     * The provider call itself failed, e.g. a read timeout or an error response, possibly after the provider had
+     * accepted the message.
+     */
+    public static SmsSendResult failed(String error, long latencyMs) {
+        return new SmsSendResult(Status.FAILED, error, latencyMs, true, false);
+    }
+
+    /**
+     * The provider call failed before the provider could have accepted the message, e.g. the connection could not be
+     * established. The message can safely be sent through another provider.
+     */
+    public static SmsSendResult unreachable(String error, long latencyMs) {
+        return new SmsSendResult(Status.FAILED, error, latencyMs, true, true);
+    }
+
+    /**
+     * The provider handled the call but did not accept this message.
+     */
+    public static SmsSendResult declined(String error, long latencyMs) {
+        return new SmsSendResult(Status.FAILED, error, latencyMs, false, false);
+    }
+
+    /**
+     * The call was shed before reaching the provider. The message should stay queued.
+     */
+    public static SmsSendResult rejected(String reason) {
+        return new SmsSendResult(Status.REJECTED, reason, 0, false, false);
+    }
+
+    public boolean isSuccess() {
+        return status == Status.SENT;
+    }
+
+    public boolean isRejected() {
+        return status == Status.REJECTED;
+    }
+}
@@ -0,0 +1,28 @@
+package com.keshav.NotificationService.dto;
+
+import com.keshav.NotificationService.model.SmsStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A status change for an SMS request, applied together with others in one batched write.
+ * A null {@code attempts} leaves the request's attempt count unchanged. The change only applies if the request is in
+ * one of the status's allowed predecessors.
+ */
+@Getter
+@AllArgsConstructor
+public class SmsStatusUpdate {
+    private final String requestId;
+    private final SmsStatus status;
+    private final String failureCode;
+    private final String failureComments;
+    private final Integer attempts;
+
+    public SmsStatusUpdate(String requestId, SmsStatus status, String failureCode, String failureComments) {
+        this(requestId, status, failureCode, failureComments, null);
+    }
+
+    public static SmsStatusUpdate of(String requestId, SmsStatus status) {
+        return new SmsStatusUpdate(requestId, status, null, null);
+    }
+}
@@ -7,21 +7,26 @@ import org.springframework.data.elasticsearch.annotations.DateFormat;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.annotations.Field;
 import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.InnerField;
+import org.springframework.data.elasticsearch.annotations.MultiField;
 
 import java.time.LocalDateTime;
 
 @Setter
 @Getter
-@Document(indexName = "sms-logs")
+// Logs are written to time-partitioned indices and read through their alias, see SmsLogIndexManager.
+@Document(indexName = "sms-logs-read", createIndex = false)
 public class SmsLog {
 
     @Id
     private String id;
 
-    @Field(type = FieldType.Text)
+    @Field(type = FieldType.Keyword)
     private String phoneNumber;
 
-    @Field(type = FieldType.Text)
+    // Full-text searchable, with a keyword sub-field for exact matches and aggregations on short messages.
+    @MultiField(mainField = @Field(type = FieldType.Text),
+            otherFields = @InnerField(suffix = "keyword", type = FieldType.Keyword, ignoreAbove = 256))
     private String message;
 
     @Field(type = FieldType.Date, format = DateFormat.custom, pattern = "yyyy-MM-dd'T'HH:mm:ss")
@@ -0,0 +1,48 @@
+package com.keshav.NotificationService.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Outbox row for an SMS request that still has to be published to Kafka.
+ * Written in the same transaction as the {@link SmsRequest} and deleted by the relay once published.
+ */
+@Setter
+@Getter
+@Entity
+@Table(name = "sms_outbox", indexes = @Index(name = "idx_sms_outbox_created_at", columnList = "created_at"))
+public class SmsOutboxEvent implements Persistable<String> {
+
+    @Id
+    @Column(name = "request_id")
+    private String requestId;
+
+    @Column(name = "topic", nullable = false)
+    private String topic;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    @Transient
+    private boolean isNew = true;
+
+    @Override
+    public String getId() {
+        return requestId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+}
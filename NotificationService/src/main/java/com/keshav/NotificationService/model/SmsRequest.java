@@ -1,20 +1,26 @@
 package com.keshav.NotificationService.model;
 
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Getter;
 import lombok.Setter;
+import org.springframework.data.domain.Persistable;
 
 import javax.persistence.*;
 import java.time.LocalDateTime;
 
-
+/**
+ * An SMS request, keyed by a time-ordered UUID so that new rows are appended to the primary key index.
+ * New requests are persisted without the SELECT a merge would issue for their assigned ID.
+ */
 @Setter
 @Getter
 @Entity
 @Table(name = "sms_requests")
-public class SmsRequest {
+public class SmsRequest implements Persistable<String> {
 
     @Id
+    @Column(name = "id", length = 36)
     private String id;
 
     @Column(name = "phone_number", nullable = false)
@@ -23,8 +29,9 @@ public class SmsRequest {
     @Column(name = "message", nullable = false)
     private String message;
 
+    @Enumerated(EnumType.STRING)
     @Column(name = "status", nullable = false)
-    private String status;
+    private SmsStatus status;
 
     @Column(name = "failure_code")
     private String failureCode;
@@ -32,10 +39,32 @@ public class SmsRequest {
     @Column(name = "failure_comments")
     private String failureComments;
 
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
     @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt = LocalDateTime.now();
 
     @Column(name = "updated_at")
     private LocalDateTime updatedAt = LocalDateTime.now();
 
+    @Transient
+    private boolean isNew = true;
+
+    @Override
+    @JsonIgnore
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+
+    @PreUpdate
+    void touch() {
+        this.updatedAt = LocalDateTime.now();
+    }
 }
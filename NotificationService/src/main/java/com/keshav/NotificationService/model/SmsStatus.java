@@ -0,0 +1,38 @@
+package com.keshav.NotificationService.model;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Lifecycle of an SMS request. A request is {@code PENDING} until it has been sent or has failed for good, and
+ * stays {@code PENDING} while a retry is scheduled. {@code SENT} and {@code FAILED} are final, so a late retry or a
+ * redelivered message can never overwrite them.
+ */
+public enum SmsStatus {
+    PENDING,
+    SENT,
+    FAILED;
+
+    private Set<SmsStatus> allowedPredecessors;
+
+    static {
+        PENDING.allowedPredecessors = Collections.unmodifiableSet(EnumSet.of(PENDING));
+        SENT.allowedPredecessors = Collections.unmodifiableSet(EnumSet.of(PENDING));
+        FAILED.allowedPredecessors = Collections.unmodifiableSet(EnumSet.of(PENDING));
+    }
+
+    /**
+     * @return The statuses a request may move to this status from.
+     */
+    public Set<SmsStatus> getAllowedPredecessors() {
+        return allowedPredecessors;
+    }
+
+    /**
+     * @return Whether a request may move from the given status to this one.
+     */
+    public boolean canTransitionFrom(SmsStatus from) {
+        return allowedPredecessors.contains(from);
+    }
+}
@@ -0,0 +1,33 @@
+package com.keshav.NotificationService.repository;
+
+import com.keshav.NotificationService.model.SmsOutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface SmsOutboxRepository extends JpaRepository<SmsOutboxEvent, String> {
+
+    List<SmsOutboxEvent> findAllByOrderByCreatedAtAscRequestIdAsc(Pageable pageable);
+
+    /**
+     * Tries to take the named MySQL lock without waiting. The lock belongs to the current connection,
+     * so it must be taken and released inside the same transaction.
+     * @return 1 if the lock was taken, 0 if another connection holds it.
+     */
+    @Query(value = "SELECT GET_LOCK(:name, 0)", nativeQuery = true)
+    Long acquireLease(@Param("name") String name);
+
+    /**
+     * Releases a named MySQL lock taken by {@link #acquireLease(String)} on the current connection.
+     */
+    @Query(value = "SELECT RELEASE_LOCK(:name)", nativeQuery = true)
+    Long releaseLease(@Param("name") String name);
+
+    Optional<SmsOutboxEvent> findFirstByOrderByCreatedAtAsc();
+}
@@ -5,5 +5,5 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface SmsRequestRepository extends JpaRepository<SmsRequest, String> {
+public interface SmsRequestRepository extends JpaRepository<SmsRequest, String>, SmsRequestRepositoryCustom {
 }
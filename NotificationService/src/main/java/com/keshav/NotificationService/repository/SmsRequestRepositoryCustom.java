@@ -0,0 +1,24 @@
+package com.keshav.NotificationService.repository;
+
+import com.keshav.NotificationService.dto.SmsStatusUpdate;
+import com.keshav.NotificationService.model.SmsStatus;
+
+import java.util.List;
+
+public interface SmsRequestRepositoryCustom {
+
+    /**
+     * Moves a request to the given status with one conditional UPDATE, if it is in one of the status's allowed
+     * predecessors, setting its failure details and update time.
+     * @return Whether the request was found in an allowed predecessor and updated.
+     */
+    boolean transitionStatus(String requestId, SmsStatus status, String failureCode, String failureComments);
+
+    /**
+     * Applies the given status updates as JDBC batches, one per target status, each update only applying to a
+     * request in one of its status's allowed predecessors.
+     * @return The number of rows updated for each status update, in order, or {@link java.sql.Statement#SUCCESS_NO_INFO}
+     * where the driver does not report it.
+     */
+    int[] batchUpdateStatus(List<SmsStatusUpdate> statusUpdates);
+}
@@ -0,0 +1,77 @@
+package com.keshav.NotificationService.repository;
+
+import com.keshav.NotificationService.dto.SmsStatusUpdate;
+import com.keshav.NotificationService.model.SmsStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SmsRequestRepositoryImpl implements SmsRequestRepositoryCustom {
+    private static final Map<SmsStatus, String> UPDATE_STATUS_SQL = new EnumMap<>(SmsStatus.class);
+
+    static {
+        for (SmsStatus status : SmsStatus.values()) {
+            String predecessors = String.join(", ", Collections.nCopies(status.getAllowedPredecessors().size(), "?"));
+            UPDATE_STATUS_SQL.put(status,
+                    "UPDATE sms_requests SET status = ?, failure_code = ?, failure_comments = ?, attempts = COALESCE(?, attempts), "
+                            + "updated_at = ? WHERE id = ? AND status IN (" + predecessors + ")");
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SmsRequestRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public boolean transitionStatus(String requestId, SmsStatus status, String failureCode, String failureComments) {
+        SmsStatusUpdate statusUpdate = new SmsStatusUpdate(requestId, status, failureCode, failureComments);
+        Timestamp updatedAt = Timestamp.valueOf(LocalDateTime.now());
+        return jdbcTemplate.update(UPDATE_STATUS_SQL.get(status), args(statusUpdate, updatedAt)) > 0;
+    }
+
+    @Override
+    public int[] batchUpdateStatus(List<SmsStatusUpdate> statusUpdates) {
+        Timestamp updatedAt = Timestamp.valueOf(LocalDateTime.now());
+        // Updates to different statuses have different predecessors, so they are sent as separate batches.
+        Map<SmsStatus, List<Integer>> positionsByStatus = new LinkedHashMap<>();
+        for (int i = 0; i < statusUpdates.size(); i++) {
+            positionsByStatus.computeIfAbsent(statusUpdates.get(i).getStatus(), status -> new ArrayList<>()).add(i);
+        }
+
+        int[] updated = new int[statusUpdates.size()];
+        for (Map.Entry<SmsStatus, List<Integer>> entry : positionsByStatus.entrySet()) {
+            List<Object[]> batchArgs = new ArrayList<>(entry.getValue().size());
+            for (int position : entry.getValue()) {
+                batchArgs.add(args(statusUpdates.get(position), updatedAt));
+            }
+            int[] rows = jdbcTemplate.batchUpdate(UPDATE_STATUS_SQL.get(entry.getKey()), batchArgs);
+            for (int i = 0; i < rows.length; i++) {
+                updated[entry.getValue().get(i)] = rows[i];
+            }
+        }
+        return updated;
+    }
+
+    private static Object[] args(SmsStatusUpdate statusUpdate, Timestamp updatedAt) {
+        List<Object> args = new ArrayList<>();
+        args.add(statusUpdate.getStatus().name());
+        args.add(statusUpdate.getFailureCode());
+        args.add(statusUpdate.getFailureComments());
+        args.add(statusUpdate.getAttempts());
+        args.add(updatedAt);
+        args.add(statusUpdate.getRequestId());
+        for (SmsStatus predecessor : statusUpdate.getStatus().getAllowedPredecessors()) {
+            args.add(predecessor.name());
+        }
+        return args.toArray();
+    }
+}
@@ -0,0 +1,210 @@
+package com.keshav.NotificationService.service;
+
+import com.keshav.NotificationService.dto.SmsEnvelope;
+import com.keshav.NotificationService.utils.InFlightOffsetTracker;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands SMS records off to a bounded worker pool so provider calls do not run on the Kafka poll thread.
+ * Offsets are committed through {@link InFlightOffsetTracker}, only up to the lowest unfinished record of each
+ * partition. When the in-flight limit is reached the listener container is paused, and it is resumed once the
+ * number of in-flight records drops back below the resume threshold. Records whose provider call was shed by the
+ * provider gate, or that failed without being scheduled for a retry, stay in flight and are processed again after
+ * a backoff. Status updates go through the
+ * {@link SmsStatusWriter} write-behind buffer, and a record only counts as processed once its status has been written.
+ */
+@Service
+public class AsyncSmsDispatcher implements ConsumerAwareRebalanceListener {
+    private static final Logger log = LoggerFactory.getLogger(AsyncSmsDispatcher.class);
+
+    static final String LISTENER_ID = "sms-async-listener";
+
+    private final SmsProcessingService smsProcessingService;
+    private final KafkaListenerEndpointRegistry registry;
+    private final InFlightOffsetTracker tracker = new InFlightOffsetTracker();
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService retryScheduler;
+    private final long providerUnavailableBackoffMs;
+    private final int maxInFlight;
+    private final int resumeThreshold;
+
+    /**
+     * Constructor for AsyncSmsDispatcher.
+     * @param smsProcessingService Service that processes each SMS record.
+     * @param registry Registry used to pause and resume the async listener container.
+     * @param meterRegistry Registry where the number of in-flight records is exposed.
+     * @param threads Number of worker threads processing records.
+     * @param maxInFlight Number of in-flight records at which the listener is paused.
+     * @param maxPollRecords Records that can still arrive from the current poll after the listener is paused.
+     * @param providerUnavailableBackoffMs Delay before a record deferred by the provider gate is processed again.
+     */
+    public AsyncSmsDispatcher(SmsProcessingService smsProcessingService, KafkaListenerEndpointRegistry registry,
+                              MeterRegistry meterRegistry,
+                              @Value("${notification.kafka.consumer.async.threads:200}") int threads,
+                              @Value("${notification.kafka.consumer.async.max-in-flight:500}") int maxInFlight,
+                              @Value("${notification.kafka.consumer.async.max-poll-records:500}") int maxPollRecords,
+                              @Value("${notification.kafka.consumer.provider-unavailable-backoff-ms:1000}") long providerUnavailableBackoffMs) {
+        this.smsProcessingService = smsProcessingService;
+        this.registry = registry;
+        this.maxInFlight = maxInFlight;
+        this.resumeThreshold = maxInFlight * 3 / 4;
+
+        // Pausing only takes effect on the next poll, so the queue also has room for the rest of the current one.
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(maxInFlight + maxPollRecords), new WorkerThreadFactory(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sms-worker-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.providerUnavailableBackoffMs = providerUnavailableBackoffMs;
+
+        Gauge.builder("sms.consumer.async.in-flight", tracker, InFlightOffsetTracker::getInFlight)
+                .description("SMS records handed off to workers and not yet processed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Hands a record off to the worker pool. Called on the listener thread. A record that could not be deserialized
+     * has no value; it is logged and completed at once.
+     * @param record The consumed record.
+     * @param acknowledgment The record's acknowledgment, used once every earlier record of the partition is done.
+     */
+    public void dispatch(ConsumerRecord<String, SmsEnvelope> record, Acknowledgment acknowledgment) {
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        tracker.track(partition, record.offset());
+        if (record.value() == null) {
+            log.error("Skipping SMS message that could not be deserialized: [Partition: {}, Offset: {}]", partition, record.offset());
+            complete(partition, record.offset(), acknowledgment);
+            return;
+        }
+        if (tracker.getInFlight() >= maxInFlight) {
+            pause();
+            // Workers may have drained below the threshold before the pause was requested.
+            if (tracker.getInFlight() <= resumeThreshold) {
+                resume();
+            }
+        }
+
+        executor.execute(() -> process(partition, record, acknowledgment));
+    }
+
+    private void process(TopicPartition partition, ConsumerRecord<String, SmsEnvelope> record, Acknowledgment acknowledgment) {
+        if (!tracker.isPending(partition, record.offset())) {
+            // The partition was revoked while the record waited for a retry.
+            return;
+        }
+        CompletableFuture<Void> persisted;
+        try {
+            persisted = smsProcessingService.processSmsRequestWriteBehind(record.value());
+        } catch (ProviderUnavailableException e) {
+            retryLater(partition, record, acknowledgment);
+            return;
+        } catch (RuntimeException e) {
+            // Neither sent nor scheduled for a retry, e.g. the retry could not be published.
+            log.error("Failed to process Request ID: {}, retrying in {} ms: {}",
+                    record.value().getRequestId(), providerUnavailableBackoffMs, e.getMessage(), e);
+            retryLater(partition, record, acknowledgment);
+            return;
+        }
+        persisted.whenComplete((ignored, error) -> {
+            if (error == null) {
+                complete(partition, record.offset(), acknowledgment);
+            } else {
+                log.warn("Status of Request ID: {} was not written, leaving offset {} uncommitted",
+                        record.value().getRequestId(), record.offset());
+            }
+        });
+    }
+
+    /**
+     * Keeps the record in flight and processes it again after the backoff.
+     */
+    private void retryLater(TopicPartition partition, ConsumerRecord<String, SmsEnvelope> record, Acknowledgment acknowledgment) {
+        retryScheduler.schedule(() -> executor.execute(() -> process(partition, record, acknowledgment)),
+                providerUnavailableBackoffMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void complete(TopicPartition partition, long offset, Acknowledgment acknowledgment) {
+        Acknowledgment committable = tracker.complete(partition, offset, acknowledgment);
+        if (committable != null) {
+            committable.acknowledge();
+        }
+        if (tracker.getInFlight() <= resumeThreshold) {
+            resume();
+        }
+    }
+
+    private void pause() {
+        MessageListenerContainer container = registry.getListenerContainer(LISTENER_ID);
+        if (container != null && !container.isPauseRequested()) {
+            log.info("Pausing SMS consumer: {} records in flight", tracker.getInFlight());
+            container.pause();
+        }
+    }
+
+    private void resume() {
+        MessageListenerContainer container = registry.getListenerContainer(LISTENER_ID);
+        if (container != null && container.isPauseRequested()) {
+            log.info("Resuming SMS consumer: {} records in flight", tracker.getInFlight());
+            container.resume();
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        tracker.revoke(partitions);
+    }
+
+    /**
+     * @return The number of records handed off and not yet processed.
+     */
+    public int getInFlight() {
+        return tracker.getInFlight();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        retryScheduler.shutdownNow();
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("SMS workers did not finish in time, unfinished records will be redelivered");
+            executor.shutdownNow();
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "sms-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
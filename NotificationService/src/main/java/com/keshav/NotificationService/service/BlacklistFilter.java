@@ -0,0 +1,314 @@
+package com.keshav.NotificationService.service;
+
+import com.keshav.NotificationService.dto.BlacklistPage;
+import com.keshav.NotificationService.utils.BloomFilter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bloom filter over the blacklisted phone numbers, answering "definitely not blacklisted" without a Redis round trip.
+ * <p>
+ * The canonical filter is a Redis bitmap. {@link BlacklistService#addToBlacklist} sets a number's bits in the same
+ * transaction that blacklists it, so the bitmap is always complete and a starting node loads it with a single
+ * {@code GET} instead of scanning the blacklist. Each node keeps a local copy, sets the bits of numbers announced on
+ * the blacklist invalidation channel, and reloads the bitmap periodically, which bounds how long a missed
+ * announcement can go unnoticed.
+ * <p>
+ * Removed numbers keep their bits and only cost a fall-through to Redis. The bitmap is rebuilt from the blacklist
+ * periodically, by one node at a time, to clear them. The rebuild scans the whole blacklist, so it runs on the
+ * filter's own thread rather than holding up the shared scheduler. Until a complete bitmap exists, every lookup
+ * falls through.
+ */
+@Service
+public class BlacklistFilter {
+    private static final Logger log = LoggerFactory.getLogger(BlacklistFilter.class);
+
+    private static final String KEY_PREFIX = "blacklist-filter";
+    // Sets the given bits only if the bitmap already exists, so that a partial bitmap is never taken as complete.
+    private static final byte[] SET_BITS_SCRIPT = ("if redis.call('exists', KEYS[1]) == 1 then "
+            + "for _, offset in ipairs(ARGV) do redis.call('setbit', KEYS[1], offset, 1) end end "
+            + "return 0").getBytes(StandardCharsets.UTF_8);
+    private static final int SCAN_COUNT = 1000;
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final BlacklistStore blacklistStore;
+    private final boolean enabled;
+    private final long expectedInsertions;
+    private final long bitSize;
+    private final int hashCount;
+    private final String key;
+    private final String lockKey;
+    private final Duration lockTimeout;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final AtomicLong negatives = new AtomicLong();
+    private final AtomicLong possibleHits = new AtomicLong();
+    private final Object lock = new Object();
+    private final ExecutorService rebuilder;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    private volatile BloomFilter filter;
+    // Numbers announced while a reload or rebuild is in progress, one list per load, to be applied to its result.
+    // A reload and a rebuild can overlap, as the rebuild runs on its own thread.
+    private final Set<List<String>> announcedDuringLoads = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Constructor for BlacklistFilter.
+     * @param redisTemplate Template used to read and write the bitmap.
+     * @param blacklistStore Store the bitmap is rebuilt from.
+     * @param meterRegistry Registry where the filter's lookup counts are exposed.
+     * @param enabled Whether lookups should be filtered at all.
+     * @param expectedInsertions The number of blacklisted numbers the filter is sized for.
+     * @param falsePositiveRate The share of non-blacklisted numbers still checked in Redis at that size.
+     * @param rebuildLockTimeoutMs Maximum time one node may hold the rebuild lock.
+     */
+    public BlacklistFilter(RedisTemplate<String, String> redisTemplate,
+                           BlacklistStore blacklistStore,
+                           MeterRegistry meterRegistry,
+                           @Value("${notification.blacklist.filter.enabled:true}") boolean enabled,
+                           @Value("${notification.blacklist.filter.expected-insertions:1000000}") long expectedInsertions,
+                           @Value("${notification.blacklist.filter.false-positive-rate:0.01}") double falsePositiveRate,
+                           @Value("${notification.blacklist.filter.rebuild-lock-timeout-ms:300000}") long rebuildLockTimeoutMs) {
+        this.redisTemplate = redisTemplate;
+        this.blacklistStore = blacklistStore;
+        this.enabled = enabled;
+        this.expectedInsertions = expectedInsertions;
+        this.bitSize = BloomFilter.optimalBitSize(expectedInsertions, falsePositiveRate);
+        this.hashCount = BloomFilter.optimalHashCount(expectedInsertions, bitSize);
+        // The size is part of the key, so that nodes with different settings never share a bitmap.
+        this.key = KEY_PREFIX + ":" + bitSize + ":" + hashCount;
+        this.lockKey = key + ":rebuild-lock";
+        this.lockTimeout = Duration.ofMillis(rebuildLockTimeoutMs);
+        this.rebuilder = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "blacklist-filter-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        FunctionCounter.builder("blacklist.filter.requests", negatives, AtomicLong::get)
+                .description("Blacklist lookups answered locally as not blacklisted")
+                .tag("result", "negative")
+                .register(meterRegistry);
+        FunctionCounter.builder("blacklist.filter.requests", possibleHits, AtomicLong::get)
+                .description("Blacklist lookups passed on to the cache or Redis")
+                .tag("result", "possible")
+                .register(meterRegistry);
+        Gauge.builder("blacklist.filter.loaded", this, f -> f.filter != null ? 1 : 0)
+                .description("Whether the blacklist filter is loaded, 1 or 0")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param phoneNumber the phone number to check
+     * @return {@code false} if the number is definitely not blacklisted, {@code true} if it has to be checked
+     */
+    public boolean mightBeBlacklisted(String phoneNumber) {
+        BloomFilter current = filter;
+        if (current == null) {
+            return true;
+        }
+        if (current.mightContain(phoneNumber)) {
+            possibleHits.incrementAndGet();
+            return true;
+        }
+        negatives.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Queues, on a connection inside a transaction or pipeline, the commands setting the bits of the given numbers
+     * in the Redis bitmap.
+     * @param connection the connection the transaction or pipeline runs on
+     * @param phoneNumbers the numbers being blacklisted
+     */
+    public void addBits(RedisConnection connection, Collection<String> phoneNumbers) {
+        if (!enabled || phoneNumbers.isEmpty()) {
+            return;
+        }
+        List<byte[]> keyAndOffsets = new ArrayList<>();
+        keyAndOffsets.add(key.getBytes(StandardCharsets.UTF_8));
+        for (String phoneNumber : phoneNumbers) {
+            for (long offset : BloomFilter.bitOffsets(phoneNumber, bitSize, hashCount)) {
+                keyAndOffsets.add(Long.toString(offset).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        connection.eval(SET_BITS_SCRIPT, ReturnType.INTEGER, 1, keyAndOffsets.toArray(new byte[0][]));
+    }
+
+    /**
+     * Sets the bits of numbers whose blacklist state changed on any node. Numbers that were removed are added too,
+     * which only costs a fall-through to Redis until the next rebuild.
+     * @param phoneNumbers the changed numbers
+     */
+    public void onChanged(Collection<String> phoneNumbers) {
+        synchronized (lock) {
+            BloomFilter current = filter;
+            for (String phoneNumber : phoneNumbers) {
+                if (current != null) {
+                    current.put(phoneNumber);
+                }
+                for (List<String> announced : announcedDuringLoads) {
+                    announced.add(phoneNumber);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the local copy with the bitmap from Redis, building the bitmap first if it does not exist.
+     */
+    @Scheduled(fixedDelayString = "${notification.blacklist.filter.reload-interval-ms:60000}")
+    public void reload() {
+        if (!enabled) {
+            return;
+        }
+        List<String> announced = startLoad();
+        try {
+            byte[] bytes = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                    connection.get(key.getBytes(StandardCharsets.UTF_8)));
+            if (bytes == null) {
+                finishLoad(announced, null);
+                scheduleRebuild();
+                return;
+            }
+            finishLoad(announced, BloomFilter.fromByteArray(bytes, bitSize, hashCount));
+        } catch (Exception e) {
+            finishLoad(announced, null);
+            log.warn("Failed to reload blacklist filter, keeping the current one: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Starts a {@link #rebuild()} on the filter's own thread, unless one is already running on this node.
+     */
+    @Scheduled(fixedDelayString = "${notification.blacklist.filter.rebuild-interval-ms:21600000}",
+            initialDelayString = "${notification.blacklist.filter.rebuild-interval-ms:21600000}")
+    public void scheduleRebuild() {
+        if (!enabled || !rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        rebuilder.execute(() -> {
+            try {
+                rebuild();
+            } finally {
+                rebuilding.set(false);
+            }
+        });
+    }
+
+    /**
+     * Rebuilds the bitmap from the blacklist, clearing the bits of numbers removed since the last rebuild. Only one
+     * node rebuilds at a time; the others skip the rebuild.
+     */
+    public void rebuild() {
+        if (!enabled || !Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(lockKey, nodeId, lockTimeout))) {
+            return;
+        }
+        BloomFilter rebuilt = null;
+        List<String> announced = startLoad();
+        try {
+            rebuilt = new BloomFilter(bitSize, hashCount);
+            long count = scanBlacklist(rebuilt);
+            if (count > expectedInsertions) {
+                log.warn("Blacklist has {} numbers, more than the {} the filter is sized for", count, expectedInsertions);
+            }
+
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            byte[] tempKey = (key + ":" + nodeId).getBytes(StandardCharsets.UTF_8);
+            byte[] bytes = rebuilt.toByteArray();
+            redisTemplate.execute((RedisCallback<Object>) connection -> {
+                connection.set(tempKey, bytes);
+                connection.rename(tempKey, keyBytes);
+                return null;
+            });
+            log.info("Rebuilt blacklist filter: [Numbers: {}, Bits: {}, Hashes: {}]", count, bitSize, hashCount);
+        } catch (Exception e) {
+            rebuilt = null;
+            log.error("Failed to rebuild blacklist filter: {}", e.getMessage(), e);
+        } finally {
+            // Numbers blacklisted during the rebuild may have missed the scan and were skipped or overwritten in
+            // the bitmap; they were announced, so set them again.
+            finishLoad(announced, rebuilt);
+            if (rebuilt != null && !announced.isEmpty()) {
+                redisTemplate.execute((RedisCallback<Object>) connection -> {
+                    addBits(connection, announced);
+                    return null;
+                });
+            }
+            if (nodeId.equals(redisTemplate.opsForValue().get(lockKey))) {
+                redisTemplate.delete(lockKey);
+            }
+        }
+    }
+
+    private long scanBlacklist(BloomFilter target) {
+        long scanned = 0;
+        String cursor = "0";
+        do {
+            BlacklistPage page = blacklistStore.scan(cursor, SCAN_COUNT);
+            for (String phoneNumber : page.getPhoneNumbers()) {
+                target.put(phoneNumber);
+            }
+            scanned += page.getPhoneNumbers().size();
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return scanned;
+    }
+
+    /**
+     * @return the list collecting the numbers announced while this load is in progress
+     */
+    private List<String> startLoad() {
+        synchronized (lock) {
+            List<String> announced = new ArrayList<>();
+            announcedDuringLoads.add(announced);
+            return announced;
+        }
+    }
+
+    /**
+     * Swaps in a loaded filter, first applying the numbers announced while it was loading.
+     * @param announced the list returned by {@link #startLoad()} for this load
+     * @param loaded the loaded filter, or {@code null} to keep the current one
+     */
+    private void finishLoad(List<String> announced, BloomFilter loaded) {
+        synchronized (lock) {
+            announcedDuringLoads.remove(announced);
+            if (loaded != null) {
+                for (String phoneNumber : announced) {
+                    loaded.put(phoneNumber);
+                }
+                filter = loaded;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuilder.shutdownNow();
+    }
+}
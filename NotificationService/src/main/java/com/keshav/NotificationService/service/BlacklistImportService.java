@@ -0,0 +1,260 @@
+package com.keshav.NotificationService.service;
+
+import com.keshav.NotificationService.dto.BlacklistImportStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Imports large blacklists, such as regulator-provided DND lists, from uploaded CSV files.
+ * <p>
+ * The upload is spooled to disk and read line by line in the background, so heap use does not depend on the size of
+ * the file. The first column of each line is taken as a phone number, and numbers are written to Redis in pipelined
+ * chunks. Progress is kept in Redis after every chunk, so it can be polled from any node, and a failed import can be
+ * resumed by uploading the same file again with its import ID: lines before the last completed chunk are skipped.
+ */
+@Service
+public class BlacklistImportService {
+    private static final Logger log = LoggerFactory.getLogger(BlacklistImportService.class);
+
+    private static final String KEY_PREFIX = "blacklist-import:";
+    private static final long PROGRESS_TTL_DAYS = 7;
+    private static final Pattern PHONE_NUMBER = Pattern.compile("^\\+?[0-9]{7,15}$");
+
+    private final BlacklistService blacklistService;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final int chunkSize;
+    private final Path spoolDir;
+    private final long staleAfterMs;
+    private final ExecutorService executor;
+
+    /**
+     * Constructor for BlacklistImportService.
+     * @param blacklistService Service used to write each chunk of numbers.
+     * @param redisTemplate Template used to keep the progress of imports.
+     * @param chunkSize Number of phone numbers written to Redis per pipelined round trip.
+     * @param spoolDir Directory where uploads are kept while they are imported.
+     * @param concurrency Number of imports running at the same time; further imports are queued.
+     * @param staleAfterMs Time without progress after which a running import is taken to have died and may be resumed.
+     */
+    public BlacklistImportService(BlacklistService blacklistService,
+                                  RedisTemplate<String, String> redisTemplate,
+                                  @Value("${notification.blacklist.import.chunk-size:1000}") int chunkSize,
+                                  @Value("${notification.blacklist.import.spool-dir:${java.io.tmpdir}}") String spoolDir,
+                                  @Value("${notification.blacklist.import.concurrency:1}") int concurrency,
+                                  @Value("${notification.blacklist.import.stale-after-ms:60000}") long staleAfterMs) {
+        this.blacklistService = blacklistService;
+        this.redisTemplate = redisTemplate;
+        this.chunkSize = chunkSize;
+        this.spoolDir = Paths.get(spoolDir);
+        this.staleAfterMs = staleAfterMs;
+        this.executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "blacklist-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts a new import, or resumes a failed one, of the given file.
+     * @param file The uploaded CSV file.
+     * @param importId The ID of the import to resume, or {@code null} to start a new one.
+     * @return The status of the queued import.
+     * @throws IllegalArgumentException If the import to resume does not exist or was started with a different file.
+     * @throws IllegalStateException If the import to resume is still running.
+     * @throws IOException If the upload could not be spooled to disk.
+     */
+    public BlacklistImportStatus startImport(MultipartFile file, String importId) throws IOException {
+        BlacklistImportStatus status;
+        if (importId == null) {
+            status = new BlacklistImportStatus();
+            status.setImportId(UUID.randomUUID().toString());
+            status.setFileName(file.getOriginalFilename());
+            status.setFileSize(file.getSize());
+        } else {
+            status = getStatus(importId);
+            if (status == null) {
+                throw new IllegalArgumentException("No blacklist import with ID " + importId + ".");
+            }
+            if (status.getFileSize() != file.getSize()) {
+                throw new IllegalArgumentException("The file does not match the one blacklist import " + importId + " was started with.");
+            }
+            if (BlacklistImportStatus.COMPLETED.equals(status.getStatus())) {
+                return status;
+            }
+            if (!BlacklistImportStatus.FAILED.equals(status.getStatus())
+                    && System.currentTimeMillis() - status.getUpdatedAt() < staleAfterMs) {
+                throw new IllegalStateException("Blacklist import " + importId + " is still in progress.");
+            }
+            log.info("Resuming blacklist import: [Import ID: {}, Lines processed: {}]", importId, status.getLinesProcessed());
+        }
+
+        Path spooled = Files.createTempFile(spoolDir, "blacklist-import-", ".csv");
+        try {
+            file.transferTo(spooled);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(spooled);
+            throw e;
+        }
+
+        status.setStatus(BlacklistImportStatus.QUEUED);
+        status.setError(null);
+        saveStatus(status);
+        executor.submit(() -> runImport(status, spooled));
+        return status;
+    }
+
+    /**
+     * @param importId The ID of the import.
+     * @return The progress of the import, or {@code null} if no such import exists.
+     */
+    public BlacklistImportStatus getStatus(String importId) {
+        Map<Object, Object> fields = redisTemplate.opsForHash().entries(KEY_PREFIX + importId);
+        if (fields == null || fields.isEmpty()) {
+            return null;
+        }
+        BlacklistImportStatus status = new BlacklistImportStatus();
+        status.setImportId(importId);
+        status.setStatus((String) fields.get("status"));
+        status.setFileName(emptyToNull(fields.get("fileName")));
+        status.setFileSize(parseLong(fields.get("fileSize")));
+        status.setLinesProcessed(parseLong(fields.get("linesProcessed")));
+        status.setImported(parseLong(fields.get("imported")));
+        status.setInvalid(parseLong(fields.get("invalid")));
+        status.setError(emptyToNull(fields.get("error")));
+        status.setUpdatedAt(parseLong(fields.get("updatedAt")));
+        return status;
+    }
+
+    void runImport(BlacklistImportStatus status, Path spooled) {
+        status.setStatus(BlacklistImportStatus.RUNNING);
+        saveStatus(status);
+        log.info("Started blacklist import: [Import ID: {}, File: {}]", status.getImportId(), status.getFileName());
+
+        try (BufferedReader reader = Files.newBufferedReader(spooled, StandardCharsets.UTF_8)) {
+            List<String> chunk = new ArrayList<>(chunkSize);
+            long invalidInChunk = 0;
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber <= status.getLinesProcessed()) {
+                    continue;
+                }
+                String phoneNumber = parsePhoneNumber(line);
+                if (phoneNumber != null) {
+                    chunk.add(phoneNumber);
+                } else if (lineNumber > 1 && !line.trim().isEmpty()) {
+                    // An unparsable first line is taken to be a header.
+                    invalidInChunk++;
+                }
+
+                if (chunk.size() >= chunkSize) {
+                    writeChunk(status, chunk, invalidInChunk, lineNumber);
+                    chunk = new ArrayList<>(chunkSize);
+                    invalidInChunk = 0;
+                }
+            }
+            writeChunk(status, chunk, invalidInChunk, lineNumber);
+
+            status.setStatus(BlacklistImportStatus.COMPLETED);
+            saveStatus(status);
+            log.info("Completed blacklist import: [Import ID: {}, Imported: {}, Invalid: {}]",
+                    status.getImportId(), status.getImported(), status.getInvalid());
+        } catch (Exception e) {
+            log.error("Blacklist import failed, it can be resumed: [Import ID: {}, Lines processed: {}]: {}",
+                    status.getImportId(), status.getLinesProcessed(), e.getMessage(), e);
+            status.setStatus(BlacklistImportStatus.FAILED);
+            status.setError(e.getMessage());
+            try {
+                saveStatus(status);
+            } catch (Exception saveFailure) {
+                log.error("Failed to record blacklist import failure: [Import ID: {}]", status.getImportId(), saveFailure);
+            }
+        } finally {
+            try {
+                Files.deleteIfExists(spooled);
+            } catch (IOException e) {
+                log.warn("Failed to delete spooled blacklist import {}: {}", spooled, e.getMessage());
+            }
+        }
+    }
+
+    private void writeChunk(BlacklistImportStatus status, List<String> chunk, long invalid, long lineNumber) {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new IllegalStateException("Import interrupted by shutdown");
+        }
+        if (!chunk.isEmpty()) {
+            blacklistService.addToBlacklistPipelined(chunk);
+        }
+        status.setImported(status.getImported() + chunk.size());
+        status.setInvalid(status.getInvalid() + invalid);
+        status.setLinesProcessed(lineNumber);
+        saveStatus(status);
+    }
+
+    private void saveStatus(BlacklistImportStatus status) {
+        status.setUpdatedAt(System.currentTimeMillis());
+        Map<String, String> fields = new HashMap<>();
+        fields.put("status", status.getStatus());
+        fields.put("fileName", status.getFileName() != null ? status.getFileName() : "");
+        fields.put("fileSize", Long.toString(status.getFileSize()));
+        fields.put("linesProcessed", Long.toString(status.getLinesProcessed()));
+        fields.put("imported", Long.toString(status.getImported()));
+        fields.put("invalid", Long.toString(status.getInvalid()));
+        fields.put("error", status.getError() != null ? status.getError() : "");
+        fields.put("updatedAt", Long.toString(status.getUpdatedAt()));
+
+        String key = KEY_PREFIX + status.getImportId();
+        redisTemplate.opsForHash().putAll(key, fields);
+        redisTemplate.expire(key, PROGRESS_TTL_DAYS, TimeUnit.DAYS);
+    }
+
+    /**
+     * @return The phone number in the first column of a CSV line, or {@code null} if there is none.
+     */
+    static String parsePhoneNumber(String line) {
+        int comma = line.indexOf(',');
+        String field = (comma >= 0 ? line.substring(0, comma) : line).trim();
+        if (field.length() >= 2 && field.startsWith("\"") && field.endsWith("\"")) {
+            field = field.substring(1, field.length() - 1).trim();
+        }
+        return PHONE_NUMBER.matcher(field).matches() ? field : null;
+    }
+
+    private static String emptyToNull(Object value) {
+        return value == null || ((String) value).isEmpty() ? null : (String) value;
+    }
+
+    private static long parseLong(Object value) {
+        return value == null || ((String) value).isEmpty() ? 0 : Long.parseLong((String) value);
+    }
+
+    /**
+     * Stops running imports; they are recorded as failed and can be resumed.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
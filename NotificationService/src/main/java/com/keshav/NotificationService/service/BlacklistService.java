@@ -1,37 +1,88 @@
 package com.keshav.NotificationService.service;
 
+import com.keshav.NotificationService.dto.BlacklistPage;
 import com.keshav.NotificationService.dto.BlacklistRequestDto;
+import com.keshav.NotificationService.utils.NearCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
 import javax.validation.constraints.NotNull;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 /**
  * Service class for managing blacklisted phone numbers using Redis.
  * This class provides methods to add, remove, and check blacklisted phone numbers,
  * as well as retrieve the entire blacklist.
+ * <p>
+ * Numbers that the {@link BlacklistFilter} rules out are answered without any lookup. Other lookups are served
+ * from a bounded in-process {@link NearCache} where possible. Every change to the blacklist is
+ * published on {@link #INVALIDATION_CHANNEL}, and each node drops the affected numbers from its cache when it
+ * receives the message. Cached entries also expire after a configurable time, which bounds how stale a node can be
+ * if it misses an invalidation, e.g. while its subscription is reconnecting.
  */
 @Service
 public class BlacklistService {
     private static final Logger log = LoggerFactory.getLogger(BlacklistService.class);
 
+    public static final String INVALIDATION_CHANNEL = "blacklist-invalidation";
+    // Invalidation message asking every node to drop its whole cache.
+    private static final String INVALIDATE_ALL = "*";
+
+    public static final long BLACKLIST_TTL_SECONDS = TimeUnit.DAYS.toSeconds(7);
+
     private final RedisTemplate<String, String> redisTemplate;
-    private final String BLACKLIST_KEY = "blacklist";
+    private final BlacklistStore blacklistStore;
+    private final BlacklistFilter blacklistFilter;
+    private final NearCache<String, Boolean> cache;
 
     /**
      * Constructs a new BlacklistService with the specified RedisTemplate.
      * @param redisTemplate the RedisTemplate to be used for Redis operations
+     * @param blacklistStore the layout of the blacklist in Redis
+     * @param blacklistFilter the filter ruling out numbers that are definitely not blacklisted
+     * @param meterRegistry registry where the cache hit and miss counts are exposed
+     * @param cacheEnabled whether lookups should be cached locally
+     * @param cacheTtlMs time after which a cached lookup expires, i.e. the maximum staleness of a lookup
+     * @param cacheMaxSize maximum number of cached phone numbers
      */
-    public BlacklistService(RedisTemplate<String, String> redisTemplate) {
+    public BlacklistService(RedisTemplate<String, String> redisTemplate,
+                            BlacklistStore blacklistStore,
+                            BlacklistFilter blacklistFilter,
+                            MeterRegistry meterRegistry,
+                            @Value("${notification.blacklist.cache.enabled:true}") boolean cacheEnabled,
+                            @Value("${notification.blacklist.cache.ttl-ms:30000}") long cacheTtlMs,
+                            @Value("${notification.blacklist.cache.max-size:100000}") int cacheMaxSize) {
         this.redisTemplate = redisTemplate;
+        this.blacklistStore = blacklistStore;
+        this.blacklistFilter = blacklistFilter;
+        this.cache = cacheEnabled ? new NearCache<>(cacheMaxSize, cacheTtlMs) : null;
+
+        if (cache != null) {
+            FunctionCounter.builder("blacklist.cache.requests", cache, NearCache::getHits)
+                    .description("Blacklist lookups served from the local cache")
+                    .tag("result", "hit")
+                    .register(meterRegistry);
+            FunctionCounter.builder("blacklist.cache.requests", cache, NearCache::getMisses)
+                    .description("Blacklist lookups that had to query Redis")
+                    .tag("result", "miss")
+                    .register(meterRegistry);
+            Gauge.builder("blacklist.cache.size", cache, NearCache::size)
+                    .description("Phone numbers currently in the local blacklist cache")
+                    .register(meterRegistry);
+        }
     }
 
     /**
@@ -47,11 +98,8 @@ public class BlacklistService {
         redisTemplate.execute((RedisCallback<Object>) connection -> {
             connection.multi();
             try {
-                for (String phoneNumber : phoneNumbers) {
-                    byte[] key = redisTemplate.getStringSerializer().serialize("blacklist:" + phoneNumber);
-                    byte[] value = redisTemplate.getStringSerializer().serialize("BLACKLISTED");
-                    connection.setEx(key, TimeUnit.DAYS.toSeconds(7), value);
-                }
+                blacklistStore.add(connection, phoneNumbers, BLACKLIST_TTL_SECONDS);
+                blacklistFilter.addBits(connection, phoneNumbers);
                 return connection.exec();
             } catch (Exception e) {
                 connection.discard();
@@ -59,9 +107,30 @@ public class BlacklistService {
             }
         });
 
+        publishInvalidation(phoneNumbers);
         log.info("Successfully added numbers to blacklist: {}", phoneNumbers);
     }
 
+    /**
+     * Adds a chunk of phone numbers to the blacklist in a single pipelined round trip, for bulk imports where one
+     * transaction over all numbers would be too large. Unlike {@link #addToBlacklist}, the chunk is not atomic: if
+     * the call fails, some of the numbers may have been added. Adding a number again is harmless, so a failed chunk
+     * can simply be retried.
+     * @param phoneNumbers the phone numbers to be blacklisted
+     * @throws org.springframework.dao.DataAccessException if the pipeline fails
+     */
+    public void addToBlacklistPipelined(List<String> phoneNumbers) {
+        if (phoneNumbers.isEmpty()) {
+            return;
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            blacklistStore.add(connection, phoneNumbers, BLACKLIST_TTL_SECONDS);
+            blacklistFilter.addBits(connection, phoneNumbers);
+            return null;
+        });
+        publishInvalidation(phoneNumbers);
+    }
+
 
     /**
      * Removes the provided phone numbers from the blacklist in Redis.
@@ -75,10 +144,7 @@ public class BlacklistService {
         redisTemplate.execute((RedisCallback<Object>) connection -> {
             connection.multi();
             try {
-                for (String phoneNumber : phoneNumbers) {
-                    byte[] key = redisTemplate.getStringSerializer().serialize(BLACKLIST_KEY + ":" + phoneNumber);
-                    connection.del(key);
-                }
+                blacklistStore.remove(connection, phoneNumbers);
                 return connection.exec();
             } catch (Exception e) {
                 connection.discard();
@@ -86,24 +152,22 @@ public class BlacklistService {
             }
         });
 
+        publishInvalidation(phoneNumbers);
         log.info("Successfully removed numbers from blacklist: {}", phoneNumbers);
     }
 
 
     /**
-     * Retrieves all the phone numbers currently in the blacklist.
-     * @return a list of blacklisted phone numbers
+     * Retrieves one page of the blacklist using {@code SCAN}, which unlike {@code KEYS} never blocks Redis for long.
+     * Pages hold at least {@code limit} numbers unless the listing is complete, and may hold somewhat more, since a
+     * batch returned by Redis cannot be split without losing the position. As with {@code SCAN}, a number blacklisted
+     * or removed during the listing may or may not be returned, and a number may occasionally be returned twice.
+     * @param cursor the cursor returned with the previous page, or {@code "0"} for the first page
+     * @param limit the number of phone numbers requested
+     * @return the page, with the cursor of the next page
      */
-    public List<String> getBlacklist() {
-        Set<String> keys = redisTemplate.keys(BLACKLIST_KEY + ":*");
-
-        if (keys.isEmpty()) {
-            return new ArrayList<>();
-        }
-
-        return keys.stream()
-                .map(key -> key.replace(BLACKLIST_KEY + ":", ""))
-                .collect(Collectors.toList());
+    public BlacklistPage getBlacklistPage(String cursor, int limit) {
+        return blacklistStore.scan(cursor, limit);
     }
 
     /**
@@ -112,6 +176,94 @@ public class BlacklistService {
      * @return true if the phone number is blacklisted, false otherwise
      */
     public boolean isBlacklisted(String phoneNumber) {
-        return redisTemplate.hasKey(BLACKLIST_KEY + ":" + phoneNumber);
+        if (!blacklistFilter.mightBeBlacklisted(phoneNumber)) {
+            return false;
+        }
+        if (cache == null) {
+            return blacklistStore.contains(phoneNumber);
+        }
+        Boolean cached = cache.get(phoneNumber);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = cache.generation();
+        boolean blacklisted = blacklistStore.contains(phoneNumber);
+        cache.put(phoneNumber, blacklisted, generation);
+        return blacklisted;
+    }
+
+    /**
+     * Checks which of the given phone numbers are blacklisted. Numbers not answered by the filter or the cache are
+     * looked up together in a single pipelined round trip, so this is the primitive to use for many numbers at once.
+     * @param phoneNumbers the phone numbers to check
+     * @return the subset of the given phone numbers that are blacklisted
+     */
+    public Set<String> findBlacklisted(Collection<String> phoneNumbers) {
+        Set<String> blacklisted = new HashSet<>();
+        if (phoneNumbers.isEmpty()) {
+            return blacklisted;
+        }
+
+        List<String> numbers = new ArrayList<>(phoneNumbers.size());
+        for (String phoneNumber : phoneNumbers) {
+            if (!blacklistFilter.mightBeBlacklisted(phoneNumber)) {
+                continue;
+            }
+            Boolean cached = cache != null ? cache.get(phoneNumber) : null;
+            if (cached == null) {
+                numbers.add(phoneNumber);
+            } else if (cached) {
+                blacklisted.add(phoneNumber);
+            }
+        }
+        if (numbers.isEmpty()) {
+            return blacklisted;
+        }
+
+        long generation = cache != null ? cache.generation() : 0;
+        Set<String> found = blacklistStore.findBlacklisted(numbers);
+        blacklisted.addAll(found);
+        if (cache != null) {
+            for (String phoneNumber : numbers) {
+                cache.put(phoneNumber, found.contains(phoneNumber), generation);
+            }
+        }
+        return blacklisted;
+    }
+
+    /**
+     * Handles a message received on {@link #INVALIDATION_CHANNEL} by dropping the listed phone numbers from the
+     * local cache and adding them to the local filter.
+     * @param message the comma-separated phone numbers, or {@code *} for all of them
+     */
+    public void onInvalidation(String message) {
+        if (INVALIDATE_ALL.equals(message)) {
+            if (cache != null) {
+                cache.invalidateAll();
+            }
+            return;
+        }
+        List<String> phoneNumbers = Arrays.asList(message.split(","));
+        blacklistFilter.onChanged(phoneNumbers);
+        if (cache != null) {
+            for (String phoneNumber : phoneNumbers) {
+                cache.invalidate(phoneNumber);
+            }
+        }
+    }
+
+    /**
+     * Drops the given phone numbers from this node's cache and asks every other node to do the same.
+     * A failed publish is only logged, since the change itself is already in Redis and other nodes pick it up
+     * once their cached entries expire.
+     */
+    private void publishInvalidation(List<String> phoneNumbers) {
+        String message = String.join(",", phoneNumbers);
+        onInvalidation(message);
+        try {
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL, message);
+        } catch (Exception e) {
+            log.warn("Failed to publish blacklist invalidation: {}", e.getMessage());
+        }
     }
 }
@@ -0,0 +1,52 @@
+package com.keshav.NotificationService.service;
+
+import com.keshav.NotificationService.dto.BlacklistPage;
+import org.springframework.data.redis.connection.RedisConnection;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Layout of the blacklist in Redis. {@link BlacklistService} takes care of transactions, caching and invalidation,
+ * and leaves reading and writing the entries to the store.
+ */
+public interface BlacklistStore {
+
+    /**
+     * Queues, on a connection inside a transaction or pipeline, the commands blacklisting the given numbers.
+     * @param connection the connection the transaction or pipeline runs on
+     * @param phoneNumbers the numbers to blacklist
+     * @param ttlSeconds the time after which each number is no longer blacklisted
+     */
+    void add(RedisConnection connection, Collection<String> phoneNumbers, long ttlSeconds);
+
+    /**
+     * Queues, on a connection inside a transaction or pipeline, the commands removing the given numbers.
+     * @param connection the connection the transaction or pipeline runs on
+     * @param phoneNumbers the numbers to remove
+     */
+    void remove(RedisConnection connection, Collection<String> phoneNumbers);
+
+    /**
+     * @param phoneNumber the phone number to check
+     * @return true if the phone number is blacklisted
+     */
+    boolean contains(String phoneNumber);
+
+    /**
+     * @param phoneNumbers the phone numbers to check
+     * @return the subset of the given phone numbers that are blacklisted
+     */
+    Set<String> findBlacklisted(List<String> phoneNumbers);
+
+    /**
+     * Retrieves one page of the blacklist without blocking Redis. Pages hold at least {@code limit} numbers unless
+     * the listing is complete, and may hold somewhat more. A number blacklisted or removed during the listing may or
+     * may not be returned, and a number may occasionally be returned twice.
+     * @param cursor the cursor returned with the previous page, or {@code "0"} for the first page
+     * @param limit the number of phone numbers requested
+     * @return the page, with the cursor of the next page
+     */
+    BlacklistPage scan(String cursor, int limit);
+}
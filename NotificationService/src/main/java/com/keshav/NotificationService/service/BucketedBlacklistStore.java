@@ -0,0 +1,427 @@
+package com.keshav.NotificationService.service;
+
+import com.keshav.NotificationService.dto.BlacklistPage;
+import com.keshav.NotificationService.utils.RedisScanUtil;
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.ScanArgs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Packs blacklisted numbers into small hashes, one per number prefix: {@code blacklist-bucket:<prefix>} maps the
+ * last digits of each number to the epoch second at which its entry expires. Kept below Redis'
+ * {@code hash-max-listpack-entries}, each bucket is stored as a compact listpack, which takes several times less
+ * memory than one key per number.
+ * <p>
+ * This only pays off when buckets hold many entries each. A key costs roughly 100 bytes of overhead and a listpack
+ * entry roughly 10, and Indian mobile numbers span about 4 * 10^9 values, so a blacklist of tens of millions of
+ * numbers averages under one entry per bucket with 2 suffix digits (no saving), about 7 with 3 (several times less
+ * memory) and about 75 with 4. With {@code suffixDigits} digits a bucket can hold up to {@code 10^suffixDigits}
+ * entries, so Redis' {@code hash-max-listpack-entries} (128 by default) must be raised to at least that, e.g. to
+ * 1000 for the default of 3; larger buckets are still correct but fall back to a regular hash table.
+ * <p>
+ * Redis cannot expire single hash fields, so every read checks the expiry, each bucket expires as a whole once its
+ * last entry has, and a periodic sweep removes expired entries from buckets that are still in use. The sweep scans
+ * every bucket, so it runs on the store's own thread rather than holding up the shared scheduler.
+ * <p>
+ * Numbers still stored in the per-number layout of {@link KeyBlacklistStore} can be migrated online: a background
+ * step moves one {@code SCAN} batch at a time into the buckets, keeping each entry's remaining TTL, while reads fall
+ * back to the old layout for numbers not found in a bucket. The migration repeats its pass until a pass finds
+ * nothing left to move, which also picks up entries written by nodes still running the old layout during a rolling
+ * deployment.
+ */
+public class BucketedBlacklistStore implements BlacklistStore {
+    private static final Logger log = LoggerFactory.getLogger(BucketedBlacklistStore.class);
+
+    static final String BUCKET_PREFIX = "blacklist-bucket:";
+    private static final String LEGACY_CURSOR_PREFIX = "legacy:";
+    private static final String MIGRATION_KEY = "blacklist-migration";
+    private static final String MIGRATION_LOCK_KEY = "blacklist-migration:lock";
+    private static final String SWEEP_LOCK_KEY = "blacklist-sweep:lock";
+    // Numbers per bucket are far fewer than keys per bucket scanned, so list pages scan fewer buckets per step.
+    private static final int NUMBERS_PER_BUCKET_ESTIMATE = 20;
+
+    // Moves one legacy key into its bucket with its remaining TTL, unless it was removed in the meantime.
+    private static final byte[] MIGRATE_SCRIPT = ("local ttl = redis.call('ttl', KEYS[1]) "
+            + "if ttl == -2 then return 0 end "
+            + "if ttl == -1 then ttl = tonumber(ARGV[2]) end "
+            + "local now = tonumber(redis.call('time')[1]) "
+            + "redis.call('hset', KEYS[2], ARGV[1], now + ttl) "
+            + "if redis.call('ttl', KEYS[2]) < ttl then redis.call('expire', KEYS[2], ttl) end "
+            + "redis.call('del', KEYS[1]) "
+            + "return 1").getBytes(StandardCharsets.UTF_8);
+    // Removes the expired entries of one bucket.
+    private static final byte[] SWEEP_SCRIPT = ("local now = tonumber(redis.call('time')[1]) "
+            + "local entries = redis.call('hgetall', KEYS[1]) "
+            + "local removed = 0 "
+            + "for i = 1, #entries, 2 do "
+            + "if tonumber(entries[i + 1]) <= now then redis.call('hdel', KEYS[1], entries[i]) removed = removed + 1 end "
+            + "end "
+            + "return removed").getBytes(StandardCharsets.UTF_8);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final KeyBlacklistStore legacyStore;
+    private final int suffixDigits;
+    private final int batchSize;
+    private final Duration lockTimeout;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ExecutorService sweeper;
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private volatile boolean legacyFallback;
+
+    /**
+     * Constructor for BucketedBlacklistStore.
+     * @param redisTemplate Template used for all Redis operations.
+     * @param suffixDigits Number of trailing digits stored in each bucket; {@code 10^suffixDigits} must not exceed
+     *                     Redis' {@code hash-max-listpack-entries} for buckets to stay compact.
+     * @param migrate Whether to migrate numbers from the per-number layout and fall back to it until done.
+     * @param batchSize Number of keys scanned per migration or sweep step.
+     * @param lockTimeoutMs Maximum time one node may hold the migration or sweep lock without renewing it.
+     */
+    public BucketedBlacklistStore(RedisTemplate<String, String> redisTemplate, int suffixDigits, boolean migrate,
+                                  int batchSize, long lockTimeoutMs) {
+        this.redisTemplate = redisTemplate;
+        this.legacyStore = new KeyBlacklistStore(redisTemplate);
+        this.suffixDigits = suffixDigits;
+        this.legacyFallback = migrate;
+        this.batchSize = batchSize;
+        this.lockTimeout = Duration.ofMillis(lockTimeoutMs);
+        this.sweeper = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "blacklist-sweep");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void add(RedisConnection connection, Collection<String> phoneNumbers, long ttlSeconds) {
+        byte[] expiresAt = serialize(Long.toString(nowSeconds() + ttlSeconds));
+        Set<String> buckets = new HashSet<>();
+        for (String phoneNumber : phoneNumbers) {
+            String bucket = bucketKey(phoneNumber);
+            connection.hSet(serialize(bucket), serialize(suffix(phoneNumber)), expiresAt);
+            buckets.add(bucket);
+        }
+        // Every entry is added with the same TTL, so the newest one expires last.
+        for (String bucket : buckets) {
+            connection.expire(serialize(bucket), ttlSeconds);
+        }
+    }
+
+    @Override
+    public void remove(RedisConnection connection, Collection<String> phoneNumbers) {
+        for (String phoneNumber : phoneNumbers) {
+            connection.hDel(serialize(bucketKey(phoneNumber)), serialize(suffix(phoneNumber)));
+        }
+        if (legacyFallback) {
+            legacyStore.remove(connection, phoneNumbers);
+        }
+    }
+
+    @Override
+    public boolean contains(String phoneNumber) {
+        Object expiresAt = redisTemplate.opsForHash().get(bucketKey(phoneNumber), suffix(phoneNumber));
+        if (expiresAt != null) {
+            return isLive(expiresAt, nowSeconds());
+        }
+        return legacyFallback && legacyStore.contains(phoneNumber);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Numbers sharing a bucket are read with one {@code HMGET}, and all buckets in one pipelined round trip.
+     */
+    @Override
+    public Set<String> findBlacklisted(List<String> phoneNumbers) {
+        Map<String, List<String>> byBucket = new LinkedHashMap<>();
+        for (String phoneNumber : phoneNumbers) {
+            byBucket.computeIfAbsent(bucketKey(phoneNumber), bucket -> new ArrayList<>()).add(phoneNumber);
+        }
+        List<Object> values = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<String, List<String>> bucket : byBucket.entrySet()) {
+                byte[][] suffixes = bucket.getValue().stream().map(n -> serialize(suffix(n))).toArray(byte[][]::new);
+                connection.hMGet(serialize(bucket.getKey()), suffixes);
+            }
+            return null;
+        });
+
+        Set<String> blacklisted = new HashSet<>();
+        List<String> misses = new ArrayList<>();
+        long now = nowSeconds();
+        int bucketIndex = 0;
+        for (List<String> numbers : byBucket.values()) {
+            List<?> expiries = (List<?>) values.get(bucketIndex++);
+            for (int i = 0; i < numbers.size(); i++) {
+                Object expiresAt = expiries.get(i);
+                if (expiresAt == null) {
+                    misses.add(numbers.get(i));
+                } else if (isLive(expiresAt, now)) {
+                    blacklisted.add(numbers.get(i));
+                }
+            }
+        }
+        if (legacyFallback && !misses.isEmpty()) {
+            blacklisted.addAll(legacyStore.findBlacklisted(misses));
+        }
+        return blacklisted;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * While a migration is running, the buckets are listed first and the per-number keys after them, so a number
+     * moved from the latter to the former during the listing may be missed.
+     */
+    @Override
+    public BlacklistPage scan(String cursor, int limit) {
+        if (cursor.startsWith(LEGACY_CURSOR_PREFIX)) {
+            BlacklistPage page = legacyStore.scan(cursor.substring(LEGACY_CURSOR_PREFIX.length()), limit);
+            String nextCursor = page.getNextCursor() != null ? LEGACY_CURSOR_PREFIX + page.getNextCursor() : null;
+            return new BlacklistPage(page.getPhoneNumbers(), nextCursor);
+        }
+
+        List<String> phoneNumbers = new ArrayList<>();
+        ScanArgs scanArgs = ScanArgs.Builder.matches(BUCKET_PREFIX + "*")
+                .limit(Math.max(limit / NUMBERS_PER_BUCKET_ESTIMATE, 10));
+        while (phoneNumbers.size() < limit) {
+            KeyScanCursor<byte[]> page = RedisScanUtil.scan(redisTemplate, cursor, scanArgs);
+            readBuckets(page.getKeys(), phoneNumbers);
+            if (page.isFinished()) {
+                return new BlacklistPage(phoneNumbers, legacyFallback ? LEGACY_CURSOR_PREFIX + "0" : null);
+            }
+            cursor = page.getCursor();
+        }
+        return new BlacklistPage(phoneNumbers, cursor);
+    }
+
+    private void readBuckets(List<byte[]> bucketKeys, List<String> phoneNumbersOut) {
+        if (bucketKeys.isEmpty()) {
+            return;
+        }
+        List<Object> buckets = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (byte[] bucketKey : bucketKeys) {
+                connection.hGetAll(bucketKey);
+            }
+            return null;
+        });
+        long now = nowSeconds();
+        for (int i = 0; i < bucketKeys.size(); i++) {
+            String prefix = new String(bucketKeys.get(i), StandardCharsets.UTF_8).substring(BUCKET_PREFIX.length());
+            @SuppressWarnings("unchecked")
+            Map<Object, Object> entries = (Map<Object, Object>) buckets.get(i);
+            if (entries == null) {
+                continue;
+            }
+            for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+                if (isLive(entry.getValue(), now)) {
+                    phoneNumbersOut.add(prefix + entry.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves one batch of numbers from the per-number layout into the buckets. Only one node migrates at a time, and
+     * the position is kept in Redis, so the migration carries on where it stopped after a restart.
+     */
+    @Scheduled(fixedDelayString = "${notification.blacklist.buckets.migration-interval-ms:100}")
+    public void migrateStep() {
+        if (!legacyFallback) {
+            return;
+        }
+        try {
+            if (redisTemplate.opsForHash().get(MIGRATION_KEY, "done") != null) {
+                legacyFallback = false;
+                log.info("Blacklist migration to buckets is complete, no longer reading per-number keys");
+                return;
+            }
+            if (!acquireLock(MIGRATION_LOCK_KEY)) {
+                return;
+            }
+
+            Object storedCursor = redisTemplate.opsForHash().get(MIGRATION_KEY, "cursor");
+            String cursor = storedCursor != null ? (String) storedCursor : "0";
+            ScanArgs scanArgs = ScanArgs.Builder.matches(KeyBlacklistStore.BLACKLIST_KEY + ":*").limit(batchSize);
+            KeyScanCursor<byte[]> page = RedisScanUtil.scan(redisTemplate, cursor, scanArgs);
+
+            long migrated = migrate(page.getKeys());
+            Long migratedInPass = redisTemplate.opsForHash().increment(MIGRATION_KEY, "migratedInPass", migrated);
+            if (!page.isFinished()) {
+                redisTemplate.opsForHash().put(MIGRATION_KEY, "cursor", page.getCursor());
+                return;
+            }
+
+            if (migratedInPass == null || migratedInPass == 0) {
+                redisTemplate.opsForHash().put(MIGRATION_KEY, "done", Long.toString(System.currentTimeMillis()));
+                redisTemplate.delete(MIGRATION_LOCK_KEY);
+                legacyFallback = false;
+                log.info("Blacklist migration to buckets is complete");
+            } else {
+                // Start another pass to pick up numbers written to the old layout while this one was running.
+                redisTemplate.opsForHash().put(MIGRATION_KEY, "cursor", "0");
+                redisTemplate.opsForHash().put(MIGRATION_KEY, "migratedInPass", "0");
+                log.info("Blacklist migration pass moved {} numbers to buckets, starting another pass", migratedInPass);
+            }
+        } catch (Exception e) {
+            log.warn("Blacklist migration step failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    private long migrate(List<byte[]> legacyKeys) {
+        if (legacyKeys.isEmpty()) {
+            return 0;
+        }
+        byte[] defaultTtl = serialize(Long.toString(BlacklistService.BLACKLIST_TTL_SECONDS));
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (byte[] legacyKey : legacyKeys) {
+                String phoneNumber = new String(legacyKey, StandardCharsets.UTF_8)
+                        .substring(KeyBlacklistStore.BLACKLIST_KEY.length() + 1);
+                connection.eval(MIGRATE_SCRIPT, ReturnType.INTEGER, 2, legacyKey,
+                        serialize(bucketKey(phoneNumber)), serialize(suffix(phoneNumber)), defaultTtl);
+            }
+            return null;
+        });
+        long migrated = 0;
+        for (Object result : results) {
+            if (result instanceof Long) {
+                migrated += (Long) result;
+            }
+        }
+        return migrated;
+    }
+
+    /**
+     * Starts a {@link #sweepExpired()} on the store's own thread, unless one is already running on this node.
+     */
+    @Scheduled(fixedDelayString = "${notification.blacklist.buckets.sweep-interval-ms:3600000}",
+            initialDelayString = "${notification.blacklist.buckets.sweep-interval-ms:3600000}")
+    public void scheduleSweep() {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        sweeper.execute(() -> {
+            try {
+                sweepExpired();
+            } finally {
+                sweeping.set(false);
+            }
+        });
+    }
+
+    /**
+     * Removes expired entries from buckets that still hold live ones. Only one node sweeps at a time.
+     */
+    public void sweepExpired() {
+        try {
+            if (!acquireLock(SWEEP_LOCK_KEY)) {
+                return;
+            }
+        } catch (Exception e) {
+            log.warn("Failed to acquire the blacklist sweep lock: {}", e.getMessage());
+            return;
+        }
+        long removed = 0;
+        try {
+            ScanArgs scanArgs = ScanArgs.Builder.matches(BUCKET_PREFIX + "*").limit(batchSize);
+            String cursor = "0";
+            KeyScanCursor<byte[]> page;
+            do {
+                page = RedisScanUtil.scan(redisTemplate, cursor, scanArgs);
+                removed += sweep(page.getKeys());
+                redisTemplate.expire(SWEEP_LOCK_KEY, lockTimeout);
+                cursor = page.getCursor();
+            } while (!page.isFinished());
+            log.info("Swept {} expired blacklist entries", removed);
+        } catch (Exception e) {
+            log.warn("Blacklist sweep failed after removing {} entries: {}", removed, e.getMessage());
+        } finally {
+            redisTemplate.delete(SWEEP_LOCK_KEY);
+        }
+    }
+
+    private long sweep(List<byte[]> bucketKeys) {
+        if (bucketKeys.isEmpty()) {
+            return 0;
+        }
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (byte[] bucketKey : bucketKeys) {
+                connection.eval(SWEEP_SCRIPT, ReturnType.INTEGER, 1, bucketKey);
+            }
+            return null;
+        });
+        long removed = 0;
+        for (Object result : results) {
+            if (result instanceof Long) {
+                removed += (Long) result;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Takes the lock, or extends it if this node already holds it.
+     */
+    private boolean acquireLock(String lockKey) {
+        if (Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(lockKey, nodeId, lockTimeout))) {
+            return true;
+        }
+        if (nodeId.equals(redisTemplate.opsForValue().get(lockKey))) {
+            redisTemplate.expire(lockKey, lockTimeout);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return {@code true} while numbers not found in a bucket are still looked up in the per-number layout.
+     */
+    public boolean isMigrating() {
+        return legacyFallback;
+    }
+
+    String bucketKey(String phoneNumber) {
+        return BUCKET_PREFIX + phoneNumber.substring(0, Math.max(0, phoneNumber.length() - suffixDigits));
+    }
+
+    String suffix(String phoneNumber) {
+        return phoneNumber.substring(Math.max(0, phoneNumber.length() - suffixDigits));
+    }
+
+    private byte[] serialize(String value) {
+        return redisTemplate.getStringSerializer().serialize(value);
+    }
+
+    private static boolean isLive(Object expiresAt, long nowSeconds) {
+        return Long.parseLong((String) expiresAt) > nowSeconds;
+    }
+
+    private static long nowSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+}
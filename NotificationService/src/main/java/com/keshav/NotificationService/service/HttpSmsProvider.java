@@ -0,0 +1,142 @@
+package com.keshav.NotificationService.service;
+
+import com.keshav.NotificationService.dto.SmsSendResult;
+import com.keshav.NotificationService.dto.ThirdPartyApiChannels;
+import com.keshav.NotificationService.dto.ThirdPartyApiDestination;
+import com.keshav.NotificationService.dto.ThirdPartyApiSms;
+import com.keshav.NotificationService.dto.ThirdPartyApiSmsRequestBody;
+import io.netty.channel.ConnectTimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * {@link SmsProvider} calling a third-party messaging HTTP API.
+ * Uses a non-blocking {@link WebClient}, configured with the provider's base URL and key, to send HTTP requests.
+ */
+public class HttpSmsProvider implements SmsProvider {
+    private static final Logger log = LoggerFactory.getLogger(HttpSmsProvider.class);
+
+    private static final Set<String> UNREACHABLE_POOL_ERRORS = new HashSet<>(Arrays.asList(
+            "PoolAcquireTimeoutException", "PoolAcquirePendingLimitException"));
+
+    private final String name;
+    private final WebClient webClient;
+    private final Random random;
+
+    /**
+     * Constructs an HttpSmsProvider.
+     * @param name The provider's name.
+     * @param webClient The WebClient instance for making HTTP requests to the provider.
+     */
+    public HttpSmsProvider(String name, WebClient webClient) {
+        this.name = name;
+        this.webClient = webClient;
+        this.random = new Random();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Sends the same SMS message to several destinations in a single API call.
+     * Connect, response and pool-acquire timeouts are applied by the underlying HTTP client. Failures to connect or to
+     * acquire a connection, and 502 and 503 responses, are reported as {@link SmsSendResult#unreachable}; any other
+     * failure, including a response timeout, may happen after the provider accepted the message.
+     */
+    @Override
+    public Mono<Map<String, SmsSendResult>> sendBulk(String message, List<ThirdPartyApiDestination> destinations) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            ThirdPartyApiSmsRequestBody requestBody = createRequestBody(message, destinations);
+            return webClient.post()
+                    .bodyValue(requestBody)
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .defaultIfEmpty("")
+                    .map(response -> {
+                        long latencyMs = elapsedMs(start);
+                        Map<String, SmsSendResult> results = new HashMap<>();
+                        for (ThirdPartyApiDestination destination : destinations) {
+                            // Simulate API success or failure using a random boolean.
+                            results.put(destination.getCorrelationId(), random.nextBoolean()
+                                    ? SmsSendResult.sent(latencyMs)
+                                    : SmsSendResult.declined("Provider rejected the message", latencyMs));
+                        }
+                        return results;
+                    })
+                    .onErrorResume(e -> {
+                        log.warn("SMS provider call failed: [Provider: {}, Destinations: {}, Error: {}]", name, destinations.size(), e.toString());
+                        SmsSendResult failed = isUnreachable(e)
+                                ? SmsSendResult.unreachable(e.toString(), elapsedMs(start))
+                                : SmsSendResult.failed(e.toString(), elapsedMs(start));
+                        Map<String, SmsSendResult> results = new HashMap<>();
+                        for (ThirdPartyApiDestination destination : destinations) {
+                            results.put(destination.getCorrelationId(), failed);
+                        }
+                        return Mono.just(results);
+                    });
+        });
+    }
+
+    /**
+     * @return Whether the call failed before the provider could have accepted the message.
+     */
+    static boolean isUnreachable(Throwable error) {
+        if (error instanceof WebClientResponseException) {
+            HttpStatus status = ((WebClientResponseException) error).getStatusCode();
+            return status == HttpStatus.BAD_GATEWAY || status == HttpStatus.SERVICE_UNAVAILABLE;
+        }
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof ConnectTimeoutException
+                    || cause instanceof UnknownHostException
+                    // Shaded into reactor-netty, so only known by name.
+                    || UNREACHABLE_POOL_ERRORS.contains(cause.getClass().getSimpleName())) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private static long elapsedMs(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    /**
+     * Creates a request body for sending an SMS message.
+     * @param message The SMS text message.
+     * @param destinations The recipients of the message.
+     * @return A {@link ThirdPartyApiSmsRequestBody} containing the formatted request.
+     */
+    private ThirdPartyApiSmsRequestBody createRequestBody(String message, List<ThirdPartyApiDestination> destinations) {
+        ThirdPartyApiSmsRequestBody requestBody = new ThirdPartyApiSmsRequestBody();
+        requestBody.setDeliveryChannel("sms");
+
+        ThirdPartyApiChannels channels = new ThirdPartyApiChannels();
+        ThirdPartyApiSms sms = new ThirdPartyApiSms();
+        sms.setText(message);
+        channels.setSms(sms);
+        requestBody.setChannels(channels);
+
+        requestBody.setDestination(destinations);
+        return requestBody;
+    }
+}
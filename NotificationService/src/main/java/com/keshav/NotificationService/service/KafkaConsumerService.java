@@ -1,36 +1,139 @@
 package com.keshav.NotificationService.service;
 
+import com.keshav.NotificationService.dto.SmsEnvelope;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Service to consume messages from Kafka and process SMS requests.
  * Listens to the topic `notification.send_sms` and triggers SMS processing.
+ * The `notification.kafka.consumer.mode` property selects which listener is started:
+ * `record` (default) processes one message at a time, `batch` processes each poll as a unit and
+ * `async` hands each message off to a bounded worker pool.
  */
 @Service
 public class KafkaConsumerService {
     private static final Logger log = LoggerFactory.getLogger(KafkaConsumerService.class);
 
     private final SmsProcessingService smsProcessingService;
+    private final AsyncSmsDispatcher asyncSmsDispatcher;
+    private final Duration providerUnavailableBackoff;
+    private final long retryMaxPauseMs;
 
     /**
      * Constructor for KafkaConsumerService.
      * @param smsProcessingService The service responsible for processing SMS requests.
+     * @param asyncSmsDispatcher The dispatcher handing messages off to workers in `async` mode.
+     * @param providerUnavailableBackoffMs Delay before messages deferred by the provider gate are redelivered.
+     * @param retryMaxPauseMs Longest time a retry listener pauses in one go while waiting for a retry to become due.
      */
-    public KafkaConsumerService(SmsProcessingService smsProcessingService) {
+    public KafkaConsumerService(SmsProcessingService smsProcessingService, AsyncSmsDispatcher asyncSmsDispatcher,
+                                @Value("${notification.kafka.consumer.provider-unavailable-backoff-ms:1000}") long providerUnavailableBackoffMs,
+                                @Value("${notification.sms.retry.max-pause-ms:30000}") long retryMaxPauseMs) {
         this.smsProcessingService = smsProcessingService;
+        this.asyncSmsDispatcher = asyncSmsDispatcher;
+        this.providerUnavailableBackoff = Duration.ofMillis(providerUnavailableBackoffMs);
+        this.retryMaxPauseMs = retryMaxPauseMs;
     }
 
     /**
      * Kafka listener method to consume messages from the `notification.send_sms` topic.
-     * Extracts the request ID and delegates the processing to {@link SmsProcessingService}.
-     * @param requestId The unique identifier of the SMS request.
+     * Delegates the processing of the SMS envelope to {@link SmsProcessingService}.
+     * @param envelope The SMS envelope, or an ID-only envelope for legacy messages.
+     */
+    @KafkaListener(id = "sms-record-listener", topics = "notification.send_sms", groupId = "notification-group",
+            autoStartup = "#{'${notification.kafka.consumer.mode:record}' == 'record'}")
+    public void consumeMessage(SmsEnvelope envelope) {
+        log.info("Consuming Kafka message for Request ID: {}", envelope.getRequestId());
+        smsProcessingService.processSmsRequest(envelope);
+    }
+
+    /**
+     * Kafka batch listener for the `notification.send_sms` topic, used when the consumer mode is `batch`.
+     * The whole poll is processed by {@link SmsProcessingService#processSmsBatch} and its offsets are committed
+     * only after the batch's outcome has been persisted. A failure before any message was sent is rethrown, and the
+     * batch is redelivered by the container's error handler after a backoff. If the provider gate deferred every
+     * message, nothing was sent and the whole batch is redelivered after a backoff. Messages that could not be
+     * deserialized arrive as {@code null} and are logged and skipped.
+     * @param envelopes The SMS envelopes returned by one poll.
+     * @param acknowledgment Used to commit the batch's offsets.
      */
-    @KafkaListener(topics = "notification.send_sms", groupId = "notification-group")
-    public void consumeMessage(String requestId) {
-        log.info("Consuming Kafka message for Request ID: {}", requestId);
-        smsProcessingService.processSmsRequest(requestId);
+    @KafkaListener(id = "sms-batch-listener", topics = "notification.send_sms", groupId = "notification-group",
+            containerFactory = "batchKafkaListenerContainerFactory",
+            autoStartup = "#{'${notification.kafka.consumer.mode:record}' == 'batch'}")
+    public void consumeBatch(List<SmsEnvelope> envelopes, Acknowledgment acknowledgment) {
+        log.info("Consuming Kafka batch of {} messages", envelopes.size());
+        List<SmsEnvelope> valid = new ArrayList<>(envelopes.size());
+        for (SmsEnvelope envelope : envelopes) {
+            if (envelope != null) {
+                valid.add(envelope);
+            }
+        }
+        if (valid.size() < envelopes.size()) {
+            log.error("Skipping {} SMS messages of the batch that could not be deserialized", envelopes.size() - valid.size());
+        }
+
+        List<SmsEnvelope> deferred = valid.isEmpty() ? valid : smsProcessingService.processSmsBatch(valid);
+        if (!deferred.isEmpty()) {
+            log.warn("Redelivering SMS batch in {} ms", providerUnavailableBackoff.toMillis());
+            acknowledgment.nack(0, providerUnavailableBackoff);
+            return;
+        }
+        acknowledgment.acknowledge();
+    }
+
+    /**
+     * Kafka listener for the `notification.send_sms` topic, used when the consumer mode is `async`.
+     * The message is handed off to {@link AsyncSmsDispatcher}, which acknowledges it once it and every
+     * earlier message of its partition have been processed.
+     * @param record The consumed record.
+     * @param acknowledgment Used to commit the record's offset.
+     */
+    @KafkaListener(id = AsyncSmsDispatcher.LISTENER_ID, topics = "notification.send_sms", groupId = "notification-group",
+            containerFactory = "asyncKafkaListenerContainerFactory",
+            autoStartup = "#{'${notification.kafka.consumer.mode:record}' == 'async'}")
+    public void consumeAsync(ConsumerRecord<String, SmsEnvelope> record, Acknowledgment acknowledgment) {
+        log.debug("Dispatching Kafka message: [Partition: {}, Offset: {}]", record.partition(), record.offset());
+        asyncSmsDispatcher.dispatch(record, acknowledgment);
+    }
+
+    /**
+     * Kafka listener for the retry topics, each consumed by its own container so that a long wait on one tier never
+     * delays another. A retry that is not yet due is redelivered after pausing for the remaining time, at most the
+     * configured maximum pause; otherwise it is processed like any other message.
+     * @param record The consumed record.
+     * @param acknowledgment Used to commit the record's offset, or to redeliver it later.
+     */
+    @KafkaListener(id = "sms-retry-10s-listener", topics = SmsRetryService.RETRY_TOPIC_10S, groupId = "notification-group",
+            containerFactory = "retryKafkaListenerContainerFactory")
+    @KafkaListener(id = "sms-retry-1m-listener", topics = SmsRetryService.RETRY_TOPIC_1M, groupId = "notification-group",
+            containerFactory = "retryKafkaListenerContainerFactory")
+    @KafkaListener(id = "sms-retry-10m-listener", topics = SmsRetryService.RETRY_TOPIC_10M, groupId = "notification-group",
+            containerFactory = "retryKafkaListenerContainerFactory")
+    public void consumeRetry(ConsumerRecord<String, SmsEnvelope> record, Acknowledgment acknowledgment) {
+        SmsEnvelope envelope = record.value();
+        long remainingMs = envelope.getDueAt() - System.currentTimeMillis();
+        if (remainingMs > 0) {
+            acknowledgment.nack(Duration.ofMillis(Math.min(remainingMs, retryMaxPauseMs)));
+            return;
+        }
+
+        log.info("Consuming SMS retry for Request ID: {}, Attempt: {}", envelope.getRequestId(), envelope.getAttempt());
+        try {
+            smsProcessingService.processSmsRequest(envelope);
+        } catch (ProviderUnavailableException e) {
+            acknowledgment.nack(providerUnavailableBackoff);
+            return;
+        }
+        acknowledgment.acknowledge();
     }
 }
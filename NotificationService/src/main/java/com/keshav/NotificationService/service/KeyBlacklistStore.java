@@ -0,0 +1,116 @@
+package com.keshav.NotificationService.service;
+
+import com.keshav.NotificationService.dto.BlacklistPage;
+import com.keshav.NotificationService.utils.RedisScanUtil;
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.ScanArgs;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Stores every blacklisted number as its own key, {@code blacklist:<number>}, expiring with the entry.
+ */
+public class KeyBlacklistStore implements BlacklistStore {
+
+    static final String BLACKLIST_KEY = "blacklist";
+    private static final int MGET_CHUNK_SIZE = 500;
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    public KeyBlacklistStore(RedisTemplate<String, String> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public void add(RedisConnection connection, Collection<String> phoneNumbers, long ttlSeconds) {
+        byte[] value = redisTemplate.getStringSerializer().serialize("BLACKLISTED");
+        for (String phoneNumber : phoneNumbers) {
+            byte[] key = redisTemplate.getStringSerializer().serialize(BLACKLIST_KEY + ":" + phoneNumber);
+            connection.setEx(key, ttlSeconds, value);
+        }
+    }
+
+    @Override
+    public void remove(RedisConnection connection, Collection<String> phoneNumbers) {
+        for (String phoneNumber : phoneNumbers) {
+            byte[] key = redisTemplate.getStringSerializer().serialize(BLACKLIST_KEY + ":" + phoneNumber);
+            connection.del(key);
+        }
+    }
+
+    @Override
+    public boolean contains(String phoneNumber) {
+        return Boolean.TRUE.equals(redisTemplate.hasKey(BLACKLIST_KEY + ":" + phoneNumber));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Large lookups are split into several {@code MGET}s, so that no single command holds up Redis for long, and
+     * sent together in one pipelined round trip.
+     */
+    @Override
+    public Set<String> findBlacklisted(List<String> phoneNumbers) {
+        List<String> keys = phoneNumbers.stream()
+                .map(phoneNumber -> BLACKLIST_KEY + ":" + phoneNumber)
+                .collect(Collectors.toList());
+
+        List<Object> values;
+        if (keys.size() <= MGET_CHUNK_SIZE) {
+            List<String> chunk = redisTemplate.opsForValue().multiGet(keys);
+            values = chunk != null ? new ArrayList<>(chunk) : Collections.emptyList();
+        } else {
+            List<Object> chunks = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (int from = 0; from < keys.size(); from += MGET_CHUNK_SIZE) {
+                    List<String> chunk = keys.subList(from, Math.min(keys.size(), from + MGET_CHUNK_SIZE));
+                    connection.mGet(chunk.stream().map(this::serialize).toArray(byte[][]::new));
+                }
+                return null;
+            });
+            values = new ArrayList<>(keys.size());
+            for (Object chunk : chunks) {
+                values.addAll((List<?>) chunk);
+            }
+        }
+
+        Set<String> blacklisted = new HashSet<>();
+        for (int i = 0; i < values.size(); i++) {
+            if (values.get(i) != null) {
+                blacklisted.add(phoneNumbers.get(i));
+            }
+        }
+        return blacklisted;
+    }
+
+    private byte[] serialize(String value) {
+        return redisTemplate.getStringSerializer().serialize(value);
+    }
+
+    @Override
+    public BlacklistPage scan(String cursor, int limit) {
+        List<String> phoneNumbers = new ArrayList<>();
+        ScanArgs scanArgs = ScanArgs.Builder.matches(BLACKLIST_KEY + ":*").limit(Math.max(limit, 10));
+
+        while (phoneNumbers.size() < limit) {
+            KeyScanCursor<byte[]> page = RedisScanUtil.scan(redisTemplate, cursor, scanArgs);
+            for (byte[] key : page.getKeys()) {
+                phoneNumbers.add(new String(key, StandardCharsets.UTF_8).substring(BLACKLIST_KEY.length() + 1));
+            }
+            if (page.isFinished()) {
+                return new BlacklistPage(phoneNumbers, null);
+            }
+            cursor = page.getCursor();
+        }
+        return new BlacklistPage(phoneNumbers, cursor);
+    }
+}
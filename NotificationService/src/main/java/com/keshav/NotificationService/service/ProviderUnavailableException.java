@@ -0,0 +1,12 @@
+package com.keshav.NotificationService.service;
+
+/**
+ * Thrown when an SMS was not sent because no provider gate admitted the call. The message is still pending and
+ * should be retried later rather than marked as failed.
+ */
+public class ProviderUnavailableException extends RuntimeException {
+
+    public ProviderUnavailableException(String message) {
+        super(message);
+    }
+}
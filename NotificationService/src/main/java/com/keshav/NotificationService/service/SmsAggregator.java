@@ -0,0 +1,176 @@
+package com.keshav.NotificationService.service;
+
+import com.keshav.NotificationService.dto.SmsSendResult;
+import com.keshav.NotificationService.dto.ThirdPartyApiDestination;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregation stage in front of {@link ThirdPartyApiService}. Pending messages with identical text are grouped
+ * for up to a short time window, or until the group reaches its maximum size, and sent as a single
+ * multi-destination provider call. Each message keeps its own correlation ID, and the per-destination result
+ * is handed back to the caller that submitted it. Messages submitted twice with the same correlation ID within
+ * a group (e.g. a redelivered record) are sent once and share the result.
+ * Aggregation only pays off when many messages are in flight at once, i.e. with the `batch` or `async` consumer
+ * mode; in `record` mode each message waits for its own result, so every group has a single destination.
+ */
+@Service
+public class SmsAggregator {
+    private static final Logger log = LoggerFactory.getLogger(SmsAggregator.class);
+
+    private final ThirdPartyApiService thirdPartyApiService;
+    private final boolean enabled;
+    private final long windowMs;
+    private final int maxDestinations;
+    private final Map<String, PendingGroup> groups = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Constructor for SmsAggregator.
+     * @param thirdPartyApiService Service used to send each aggregated group.
+     * @param enabled Whether messages should be aggregated at all.
+     * @param windowMs Maximum time a message waits for others with the same text.
+     * @param maxDestinations Maximum number of destinations in one provider call.
+     * @param consumerMode The Kafka consumer mode, used to warn when aggregation cannot group anything.
+     */
+    public SmsAggregator(ThirdPartyApiService thirdPartyApiService,
+                         @Value("${notification.provider.aggregation.enabled:false}") boolean enabled,
+                         @Value("${notification.provider.aggregation.window-ms:50}") long windowMs,
+                         @Value("${notification.provider.aggregation.max-destinations:100}") int maxDestinations,
+                         @Value("${notification.kafka.consumer.mode:record}") String consumerMode) {
+        if (enabled && "record".equals(consumerMode)) {
+            log.warn("SMS aggregation is enabled with the 'record' consumer mode, where every message is sent on its own; "
+                    + "each message will only be delayed by up to {} ms. Use the 'batch' or 'async' mode to aggregate.", windowMs);
+        }
+        this.thirdPartyApiService = thirdPartyApiService;
+        this.enabled = enabled;
+        this.windowMs = windowMs;
+        this.maxDestinations = maxDestinations;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sms-aggregator");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return {@code true} if messages should be submitted here rather than sent one by one.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Adds a message to the pending group for its text.
+     * @param message The message content to be sent.
+     * @param phoneNumber The recipient's phone number.
+     * @param correlationId A unique identifier for tracking the message.
+     * @return A {@link Mono} emitting this message's result once its group has been sent.
+     */
+    public Mono<SmsSendResult> submit(String message, String phoneNumber, String correlationId) {
+        return Mono.create(sink -> {
+            ThirdPartyApiDestination destination = ThirdPartyApiService.createDestination(phoneNumber, correlationId);
+            while (true) {
+                PendingGroup group = groups.computeIfAbsent(message, this::openGroup);
+                int size = group.add(destination, sink);
+                if (size < 0) {
+                    // The group was flushed concurrently, start a new one.
+                    continue;
+                }
+                if (size >= maxDestinations) {
+                    flush(message, group);
+                }
+                return;
+            }
+        });
+    }
+
+    private PendingGroup openGroup(String message) {
+        PendingGroup group = new PendingGroup();
+        scheduler.schedule(() -> flush(message, group), windowMs, TimeUnit.MILLISECONDS);
+        return group;
+    }
+
+    private void flush(String message, PendingGroup group) {
+        groups.remove(message, group);
+        List<ThirdPartyApiDestination> destinations = new ArrayList<>();
+        List<MonoSink<SmsSendResult>> sinks = new ArrayList<>();
+        if (!group.close(destinations, sinks)) {
+            return;
+        }
+
+        Map<String, ThirdPartyApiDestination> uniqueDestinations = new LinkedHashMap<>();
+        for (ThirdPartyApiDestination destination : destinations) {
+            uniqueDestinations.putIfAbsent(destination.getCorrelationId(), destination);
+        }
+
+        log.debug("Sending aggregated SMS to {} destinations", uniqueDestinations.size());
+        thirdPartyApiService.sendBulk(message, new ArrayList<>(uniqueDestinations.values())).subscribe(results -> {
+            for (int i = 0; i < destinations.size(); i++) {
+                SmsSendResult result = results.get(destinations.get(i).getCorrelationId());
+                sinks.get(i).success(result != null ? result : SmsSendResult.failed("No result for destination", 0));
+            }
+        }, e -> {
+            for (MonoSink<SmsSendResult> sink : sinks) {
+                sink.success(SmsSendResult.failed(e.toString(), 0));
+            }
+        });
+    }
+
+    /**
+     * Sends every pending group before the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        for (Map.Entry<String, PendingGroup> entry : groups.entrySet()) {
+            flush(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static class PendingGroup {
+        private final List<ThirdPartyApiDestination> destinations = new ArrayList<>();
+        private final List<MonoSink<SmsSendResult>> sinks = new ArrayList<>();
+        private boolean closed;
+
+        /**
+         * @return The group size after adding, or -1 if the group has already been flushed.
+         */
+        synchronized int add(ThirdPartyApiDestination destination, MonoSink<SmsSendResult> sink) {
+            if (closed) {
+                return -1;
+            }
+            destinations.add(destination);
+            sinks.add(sink);
+            return destinations.size();
+        }
+
+        /**
+         * Closes the group and copies out its contents.
+         * @return {@code false} if the group had already been closed.
+         */
+        synchronized boolean close(List<ThirdPartyApiDestination> destinationsOut, List<MonoSink<SmsSendResult>> sinksOut) {
+            if (closed) {
+                return false;
+            }
+            closed = true;
+            destinationsOut.addAll(destinations);
+            sinksOut.addAll(sinks);
+            return true;
+        }
+    }
+}
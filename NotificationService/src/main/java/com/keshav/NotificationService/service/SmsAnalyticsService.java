@@ -0,0 +1,227 @@
+package com.keshav.NotificationService.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.keshav.NotificationService.dto.SmsSendAnalytics;
+import com.keshav.NotificationService.utils.RollingCounter;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Counts of sent SMS over time, per interval and by recipient, for dashboards.
+ * <p>
+ * Counts are computed by Elasticsearch with a {@code date_histogram} and a {@code terms} aggregation over the SMS
+ * logs, so no log is returned. While the range includes old indices not migrated yet, whose phone numbers are
+ * mapped as text, recipients are aggregated on a runtime field instead. Sends are also counted in process, per minute, over the last {@code window-minutes};
+ * a query whose range lies entirely in that window, and after this instance started, is answered from those counts
+ * without calling Elasticsearch. The in-process counts only cover this instance's sends, so the rollup is disabled
+ * by default and should only be enabled when a single instance consumes the SMS topic.
+ * <p>
+ * Send times are local times without a zone, as in the SMS logs, and intervals are aligned as Elasticsearch aligns
+ * fixed intervals: from the epoch, reading those times as UTC.
+ */
+@Service
+public class SmsAnalyticsService {
+
+    // The format sentAt is mapped with.
+    private static final DateTimeFormatter SENT_AT_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+    private static final Pattern INTERVAL = Pattern.compile("(\\d+)([mhd])");
+    // Reads the recipient from doc values in current indices and from the source in old, text-mapped ones.
+    private static final String RECIPIENT_SCRIPT = "if (doc['_index'].value.startsWith('" + SmsLogIndexManager.INDEX_PREFIX + "')) {"
+            + " if (doc['phoneNumber'].size() > 0) { emit(doc['phoneNumber'].value); } }"
+            + " else if (params._source.phoneNumber != null) { emit(params._source.phoneNumber); }";
+    private static final long ROLLUP_BUCKET_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final RestClient restClient;
+    private final SmsLogIndexManager smsLogIndexManager;
+    private final ObjectMapper objectMapper;
+    private final int maxIntervals;
+    private final RollingCounter rollup;
+
+    /**
+     * Constructor for SmsAnalyticsService.
+     * @param restClient Client used to run the aggregations.
+     * @param smsLogIndexManager Manager of the SMS log indices, used to address only the indices of the queried range.
+     * @param objectMapper Mapper used to build the aggregation requests and read their results.
+     * @param rollupEnabled Whether recent queries should be answered from in-process counts.
+     * @param windowMinutes Number of minutes the in-process counts cover.
+     * @param maxRecipientsPerMinute Maximum number of distinct recipients counted in process per minute.
+     * @param maxIntervals Maximum number of intervals in one query.
+     */
+    public SmsAnalyticsService(RestClient restClient,
+                               SmsLogIndexManager smsLogIndexManager,
+                               ObjectMapper objectMapper,
+                               @Value("${notification.sms.analytics.rollup.enabled:false}") boolean rollupEnabled,
+                               @Value("${notification.sms.analytics.rollup.window-minutes:60}") int windowMinutes,
+                               @Value("${notification.sms.analytics.rollup.max-recipients-per-minute:10000}") int maxRecipientsPerMinute,
+                               @Value("${notification.sms.analytics.max-intervals:1000}") int maxIntervals) {
+        this(restClient, smsLogIndexManager, objectMapper, rollupEnabled, windowMinutes, maxRecipientsPerMinute, maxIntervals,
+                Clock.systemDefaultZone());
+    }
+
+    SmsAnalyticsService(RestClient restClient, SmsLogIndexManager smsLogIndexManager, ObjectMapper objectMapper,
+                        boolean rollupEnabled, int windowMinutes, int maxRecipientsPerMinute, int maxIntervals, Clock clock) {
+        this.restClient = restClient;
+        this.smsLogIndexManager = smsLogIndexManager;
+        this.objectMapper = objectMapper;
+        this.maxIntervals = maxIntervals;
+        this.rollup = rollupEnabled
+                ? new RollingCounter(ROLLUP_BUCKET_MS, windowMinutes, maxRecipientsPerMinute, () -> epochMillis(LocalDateTime.now(clock)))
+                : null;
+    }
+
+    /**
+     * Counts an SMS sent now to the given phone number.
+     */
+    public void recordSend(String phoneNumber) {
+        if (rollup != null) {
+            rollup.increment(phoneNumber);
+        }
+    }
+
+    /**
+     * Counts the SMS sent in a time range, per interval and for the most frequent recipients. The range is extended
+     * back to the start of its first interval.
+     * @param start The start of the range.
+     * @param end The end of the range, inclusive.
+     * @param interval The width of each interval, such as {@code 5m}, {@code 1h} or {@code 1d}.
+     * @param phoneNumber The phone number to count sends to, or {@code null}.
+     * @param phonePrefix The prefix of the phone numbers to count sends to, or {@code null}.
+     * @param top The number of most frequent recipients to return.
+     * @return The counts.
+     * @throws IllegalArgumentException If the interval or range is invalid, or spans too many intervals.
+     */
+    public SmsSendAnalytics getSendAnalytics(LocalDateTime start, LocalDateTime end, String interval,
+                                             String phoneNumber, String phonePrefix, int top) throws IOException {
+        long intervalMs = parseInterval(interval);
+        long endMs = epochMillis(end);
+        long startMs = epochMillis(start);
+        startMs -= Math.floorMod(startMs, intervalMs);
+        if (endMs < startMs) {
+            throw new IllegalArgumentException("The end time must not be before the start time.");
+        }
+        if ((endMs - startMs) / intervalMs >= maxIntervals) {
+            throw new IllegalArgumentException("The range must not span more than " + maxIntervals + " intervals.");
+        }
+
+        Predicate<String> recipients = phoneNumber != null ? phoneNumber::equals
+                : phonePrefix != null ? number -> number.startsWith(phonePrefix) : null;
+        if (rollup != null && rollup.covers(startMs, recipients != null || top > 0)) {
+            return fromRollup(startMs, endMs, intervalMs, interval, recipients, top);
+        }
+        return fromElasticsearch(startMs, endMs, interval, phoneNumber, phonePrefix, top);
+    }
+
+    private SmsSendAnalytics fromRollup(long startMs, long endMs, long intervalMs, String interval,
+                                        Predicate<String> recipients, int top) {
+        List<SmsSendAnalytics.IntervalCount> sends = new ArrayList<>();
+        for (Map.Entry<Long, Long> entry : rollup.counts(startMs, endMs, intervalMs, recipients).entrySet()) {
+            sends.add(new SmsSendAnalytics.IntervalCount(format(entry.getKey()), entry.getValue()));
+        }
+        List<SmsSendAnalytics.RecipientCount> topRecipients = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : rollup.top(startMs, endMs, top, recipients).entrySet()) {
+            topRecipients.add(new SmsSendAnalytics.RecipientCount(entry.getKey(), entry.getValue()));
+        }
+        return new SmsSendAnalytics(SmsSendAnalytics.ROLLUP, interval, sends, topRecipients);
+    }
+
+    private SmsSendAnalytics fromElasticsearch(long startMs, long endMs, String interval,
+                                               String phoneNumber, String phonePrefix, int top) throws IOException {
+        BoolQueryBuilder query = QueryBuilders.boolQuery()
+                .filter(QueryBuilders.rangeQuery("sentAt").gte(format(startMs)).lte(format(endMs)));
+        if (phoneNumber != null) {
+            query.filter(SmsLogIndexManager.phoneNumberQuery(phoneNumber));
+        } else if (phonePrefix != null) {
+            query.filter(SmsLogIndexManager.phoneNumberPrefixQuery(phonePrefix));
+        }
+        IndexCoordinates indices = smsLogIndexManager.indicesFor(localDateTime(startMs), localDateTime(endMs));
+
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("size", 0);
+        body.put("track_total_hits", false);
+        body.set("query", objectMapper.readTree(query.toString()));
+        ObjectNode aggregations = body.putObject("aggs");
+        ObjectNode histogram = aggregations.putObject("sends").putObject("date_histogram");
+        histogram.put("field", "sentAt");
+        histogram.put("fixed_interval", interval);
+        histogram.put("min_doc_count", 0);
+        histogram.putObject("extended_bounds").put("min", format(startMs)).put("max", format(endMs));
+        if (top > 0) {
+            String field = "phoneNumber";
+            if (smsLogIndexManager.includesUnmigrated(indices)) {
+                // Old indices map the phone number as text, which has no doc values to aggregate on.
+                field = "recipient";
+                body.putObject("runtime_mappings").putObject(field).put("type", "keyword")
+                        .putObject("script").put("source", RECIPIENT_SCRIPT);
+            }
+            aggregations.putObject("top_recipients").putObject("terms").put("field", field).put("size", top);
+        }
+
+        Request request = new Request("POST", "/" + String.join(",", indices.getIndexNames()) + "/_search");
+        // Indices of periods without any logs were never created.
+        request.addParameter("ignore_unavailable", "true");
+        request.setJsonEntity(body.toString());
+        JsonNode response = read(restClient.performRequest(request)).path("aggregations");
+
+        List<SmsSendAnalytics.IntervalCount> sends = new ArrayList<>();
+        for (JsonNode bucket : response.path("sends").path("buckets")) {
+            sends.add(new SmsSendAnalytics.IntervalCount(bucket.path("key_as_string").asText(), bucket.path("doc_count").asLong()));
+        }
+        List<SmsSendAnalytics.RecipientCount> topRecipients = new ArrayList<>();
+        for (JsonNode bucket : response.path("top_recipients").path("buckets")) {
+            topRecipients.add(new SmsSendAnalytics.RecipientCount(bucket.path("key").asText(), bucket.path("doc_count").asLong()));
+        }
+        return new SmsSendAnalytics(SmsSendAnalytics.ELASTICSEARCH, interval, sends, topRecipients);
+    }
+
+    private JsonNode read(Response response) throws IOException {
+        try (InputStream content = response.getEntity().getContent()) {
+            return objectMapper.readTree(content);
+        }
+    }
+
+    /**
+     * @return The width of an interval given as an Elasticsearch fixed interval in minutes, hours or days.
+     */
+    static long parseInterval(String interval) {
+        Matcher matcher = INTERVAL.matcher(interval);
+        if (!matcher.matches() || Long.parseLong(matcher.group(1)) < 1) {
+            throw new IllegalArgumentException("The interval must be a number of minutes, hours or days, such as 5m, 1h or 1d.");
+        }
+        TimeUnit unit = matcher.group(2).equals("m") ? TimeUnit.MINUTES : matcher.group(2).equals("h") ? TimeUnit.HOURS : TimeUnit.DAYS;
+        return unit.toMillis(Long.parseLong(matcher.group(1)));
+    }
+
+    private static long epochMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime localDateTime(long epochMillis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochMillis, 1000), 0, ZoneOffset.UTC);
+    }
+
+    private static String format(long epochMillis) {
+        return SENT_AT_FORMAT.format(localDateTime(epochMillis));
+    }
+}
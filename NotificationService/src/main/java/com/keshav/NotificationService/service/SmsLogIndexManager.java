@@ -0,0 +1,319 @@
+package com.keshav.NotificationService.service;
+
+import com.keshav.NotificationService.model.SmsLog;
+import org.elasticsearch.index.query.Operator;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexInformation;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.index.AliasAction;
+import org.springframework.data.elasticsearch.core.index.AliasActionParameters;
+import org.springframework.data.elasticsearch.core.index.AliasActions;
+import org.springframework.data.elasticsearch.core.index.AliasData;
+import org.springframework.data.elasticsearch.core.index.PutTemplateRequest;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Manages the time-partitioned SMS log indices.
+ * <p>
+ * Each log is written to the index for the period it was sent in, named {@code sms-logs-v2-<period>} with the period
+ * formatted by {@code date-pattern} ({@code yyyy.MM.dd} for daily, {@code yyyy.MM} for monthly indices). The pattern
+ * must start with the year and sort chronologically. An index template gives every such index the SMS log mapping and
+ * adds it to the {@link #READ_ALIAS}, which queries without a time range go through. Queries with a time range only
+ * address the indices of the periods they overlap.
+ * <p>
+ * Maintenance creates today's and tomorrow's indices ahead of the first write, and drops the indices whose whole
+ * period is older than the retention, which is much cheaper than deleting their logs by query.
+ * <p>
+ * The {@code v2} in the index names is the version of the mapping, which cannot be changed on existing indices. Logs
+ * written with an earlier mapping, to the unpartitioned {@link #LEGACY_INDEX} or to {@code sms-logs-<period>}
+ * indices, are moved over by {@link SmsLogMigrationService}. Until an old index has been migrated, queries with a time
+ * range also address it, and maintenance adds it to the read alias, so that its logs stay searchable throughout the
+ * migration. Old indices map {@code phoneNumber} as analyzed text, which drops the leading {@code +}, so queries on it
+ * have to be built with {@link #phoneNumberQuery} and {@link #phoneNumberPrefixQuery}.
+ */
+@Service
+public class SmsLogIndexManager {
+    private static final Logger log = LoggerFactory.getLogger(SmsLogIndexManager.class);
+
+    public static final String INDEX_PREFIX = "sms-logs-v2-";
+    public static final String READ_ALIAS = "sms-logs-read";
+    public static final String LEGACY_INDEX = "sms-logs";
+    public static final String TEMPLATE_NAME = "sms-logs";
+    // Prefix of the partitioned indices written with the first, text-only mapping.
+    static final String V1_INDEX_PREFIX = "sms-logs-";
+    private static final int TEMPLATE_VERSION = 2;
+
+    // Beyond this many indices a time-range query goes through the read alias, keeping the request line short.
+    private static final int MAX_QUERY_INDICES = 62;
+
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final String datePattern;
+    private final DateTimeFormatter periodFormat;
+    private final int retentionDays;
+    private final Clock clock;
+
+    // Old indices still to be migrated, refreshed by maintenance and whenever they are listed.
+    private volatile List<String> unmigratedIndices;
+
+    /**
+     * Constructor for SmsLogIndexManager.
+     * @param elasticsearchOperations Operations used to manage the template and indices.
+     * @param datePattern Pattern of the period in index names, determining the size of the partitions.
+     * @param retentionDays Number of days logs are kept for.
+     */
+    public SmsLogIndexManager(ElasticsearchOperations elasticsearchOperations,
+                              @Value("${notification.sms.log.index.date-pattern:yyyy.MM.dd}") String datePattern,
+                              @Value("${notification.sms.log.index.retention-days:90}") int retentionDays) {
+        this(elasticsearchOperations, datePattern, retentionDays, Clock.systemDefaultZone());
+    }
+
+    SmsLogIndexManager(ElasticsearchOperations elasticsearchOperations, String datePattern, int retentionDays, Clock clock) {
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.datePattern = datePattern;
+        this.periodFormat = DateTimeFormatter.ofPattern(datePattern);
+        this.retentionDays = retentionDays;
+        this.clock = clock;
+    }
+
+    /**
+     * @param sentAt The time the SMS was sent, or {@code null} for now.
+     * @return The name of the index the log belongs in.
+     */
+    public String indexFor(LocalDateTime sentAt) {
+        LocalDate date = sentAt != null ? sentAt.toLocalDate() : LocalDate.now(clock);
+        return INDEX_PREFIX + periodFormat.format(date);
+    }
+
+    /**
+     * @return The pattern of the period in index names.
+     */
+    public String getDatePattern() {
+        return datePattern;
+    }
+
+    /**
+     * @return The indices holding logs sent between the given times, which may include indices that do not exist.
+     * Old indices not migrated yet are included if their period overlaps the range, or if it is unknown.
+     */
+    public IndexCoordinates indicesFor(LocalDateTime start, LocalDateTime end) {
+        Set<String> names = new LinkedHashSet<>();
+        for (LocalDate date = start.toLocalDate(); !date.isAfter(end.toLocalDate()); date = date.plusDays(1)) {
+            names.add(indexFor(date.atStartOfDay()));
+            if (names.size() > MAX_QUERY_INDICES) {
+                return IndexCoordinates.of(READ_ALIAS);
+            }
+        }
+
+        String firstPeriod = periodFormat.format(start.toLocalDate());
+        String lastPeriod = periodFormat.format(end.toLocalDate());
+        for (String index : unmigratedIndices()) {
+            String period = period(index);
+            if (period == null || (period.compareTo(firstPeriod) >= 0 && period.compareTo(lastPeriod) <= 0)) {
+                names.add(index);
+            }
+        }
+        return IndexCoordinates.of(names.toArray(new String[0]));
+    }
+
+    /**
+     * @return Whether the given indices may include old indices that have not been migrated yet.
+     */
+    public boolean includesUnmigrated(IndexCoordinates indices) {
+        for (String index : indices.getIndexNames()) {
+            if (index.equals(READ_ALIAS) ? !unmigratedIndices().isEmpty() : !index.startsWith(INDEX_PREFIX)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return A filter for the logs sent to the given phone number, looking it up as a term in current indices and
+     * matching it against the analyzed text in old ones.
+     */
+    public static QueryBuilder phoneNumberQuery(String phoneNumber) {
+        return byMapping(QueryBuilders.termQuery("phoneNumber", phoneNumber),
+                QueryBuilders.matchQuery("phoneNumber", phoneNumber).operator(Operator.AND));
+    }
+
+    /**
+     * @return A filter for the logs sent to phone numbers starting with the given prefix. In old indices the prefix
+     * is normalized the way the standard analyzer normalized the numbers, without the leading {@code +}.
+     */
+    public static QueryBuilder phoneNumberPrefixQuery(String prefix) {
+        String analyzed = (prefix.startsWith("+") ? prefix.substring(1) : prefix).toLowerCase(Locale.ROOT);
+        return byMapping(QueryBuilders.prefixQuery("phoneNumber", prefix),
+                QueryBuilders.prefixQuery("phoneNumber", analyzed));
+    }
+
+    private static QueryBuilder byMapping(QueryBuilder current, QueryBuilder old) {
+        QueryBuilder currentIndices = QueryBuilders.prefixQuery("_index", INDEX_PREFIX);
+        return QueryBuilders.boolQuery()
+                .should(QueryBuilders.boolQuery().filter(currentIndices).filter(current))
+                .should(QueryBuilders.boolQuery().mustNot(currentIndices).filter(old))
+                .minimumShouldMatch(1);
+    }
+
+    private List<String> unmigratedIndices() {
+        List<String> indices = unmigratedIndices;
+        if (indices != null) {
+            return indices;
+        }
+        try {
+            return indicesToMigrate();
+        } catch (Exception e) {
+            log.warn("Failed to list SMS log indices to migrate: {}", e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Puts the index template, creates today's and tomorrow's indices and drops expired indices.
+     */
+    @Scheduled(fixedDelayString = "${notification.sms.log.index.maintenance-interval-ms:3600000}")
+    public void maintain() {
+        try {
+            putTemplate();
+            LocalDate today = LocalDate.now(clock);
+            createIfMissing(indexFor(today.atStartOfDay()));
+            createIfMissing(indexFor(today.plusDays(1).atStartOfDay()));
+            deleteExpired(today);
+            addToReadAlias(indicesToMigrate());
+        } catch (Exception e) {
+            log.error("Failed to maintain SMS log indices: {}", e.getMessage(), e);
+        }
+    }
+
+    private void putTemplate() {
+        IndexOperations indexOps = elasticsearchOperations.indexOps(SmsLog.class);
+        AliasActions aliases = new AliasActions(new AliasAction.Add(
+                AliasActionParameters.builderForTemplate().withAliases(READ_ALIAS).build()));
+        elasticsearchOperations.indexOps(IndexCoordinates.of(INDEX_PREFIX + "*")).putTemplate(
+                PutTemplateRequest.builder(TEMPLATE_NAME, INDEX_PREFIX + "*")
+                        .withMappings(indexOps.createMapping(SmsLog.class))
+                        .withAliasActions(aliases)
+                        .withVersion(TEMPLATE_VERSION)
+                        .build());
+    }
+
+    private void createIfMissing(String index) {
+        IndexOperations indexOps = elasticsearchOperations.indexOps(IndexCoordinates.of(index));
+        if (!indexOps.exists()) {
+            indexOps.create();
+            log.info("Created SMS log index: [Index: {}]", index);
+        }
+    }
+
+    /**
+     * Drops the indices, of either mapping version, whose period ends before the retention cutoff. As the period
+     * pattern sorts chronologically, these are the indices whose period sorts before the cutoff date's.
+     */
+    private void deleteExpired(LocalDate today) {
+        String cutoffPeriod = periodFormat.format(today.minusDays(retentionDays));
+        for (String index : partitionIndices()) {
+            if (period(index).compareTo(cutoffPeriod) < 0) {
+                elasticsearchOperations.indexOps(IndexCoordinates.of(index)).delete();
+                log.info("Deleted expired SMS log index: [Index: {}]", index);
+            }
+        }
+    }
+
+    /**
+     * Adds the old indices that are not in the read alias yet, as the template only adds new ones. The migration
+     * takes each out again when it drops it.
+     */
+    private void addToReadAlias(List<String> indices) {
+        if (indices.isEmpty()) {
+            return;
+        }
+        String[] names = indices.toArray(new String[0]);
+        IndexOperations indexOps = elasticsearchOperations.indexOps(IndexCoordinates.of(names));
+        Map<String, Set<AliasData>> aliases = indexOps.getAliasesForIndex(names);
+        List<String> missing = new ArrayList<>();
+        for (String index : indices) {
+            boolean aliased = false;
+            for (AliasData alias : aliases.getOrDefault(index, Collections.emptySet())) {
+                aliased |= READ_ALIAS.equals(alias.getAlias());
+            }
+            if (!aliased) {
+                missing.add(index);
+            }
+        }
+        if (!missing.isEmpty()) {
+            indexOps.alias(new AliasActions(new AliasAction.Add(AliasActionParameters.builder()
+                    .withIndices(missing.toArray(new String[0]))
+                    .withAliases(READ_ALIAS)
+                    .build())));
+            log.info("Added SMS log indices to the read alias: [Indices: {}]", missing);
+        }
+    }
+
+    /**
+     * @return The existing indices that were written with an earlier mapping and still have to be migrated.
+     * Also refreshes the list of them that queries address.
+     */
+    public List<String> indicesToMigrate() {
+        List<String> indices = new ArrayList<>();
+        if (elasticsearchOperations.indexOps(IndexCoordinates.of(LEGACY_INDEX)).exists()) {
+            indices.add(LEGACY_INDEX);
+        }
+        for (String index : partitionIndices()) {
+            if (!index.startsWith(INDEX_PREFIX)) {
+                indices.add(index);
+            }
+        }
+        unmigratedIndices = indices;
+        return indices;
+    }
+
+    /**
+     * @return The existing partition indices of either mapping version.
+     */
+    private List<String> partitionIndices() {
+        List<IndexInformation> indices = elasticsearchOperations.indexOps(IndexCoordinates.of(V1_INDEX_PREFIX + "*")).getInformation();
+        List<String> partitions = new ArrayList<>();
+        for (IndexInformation index : indices) {
+            if (period(index.getName()) != null) {
+                partitions.add(index.getName());
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * @return The period of a partition index, or {@code null} if the index is not one.
+     */
+    private String period(String index) {
+        String prefix = index.startsWith(INDEX_PREFIX) ? INDEX_PREFIX : V1_INDEX_PREFIX;
+        if (!index.startsWith(prefix)) {
+            return null;
+        }
+        String period = index.substring(prefix.length());
+        try {
+            periodFormat.parse(period);
+            return period;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.keshav.NotificationService.service;
+
+import com.keshav.NotificationService.model.SmsLog;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.BulkFailureException;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind buffer indexing SMS logs into Elasticsearch through the bulk API.
+ * <p>
+ * Logs are queued and written by a single flusher thread, in bulk requests of up to {@code max-actions} documents,
+ * or of whatever has been queued once {@code flush-interval-ms} has passed since the first of them. Documents
+ * rejected by a bulk request, or all of them if the request itself failed, are retried with exponential backoff and
+ * handed to the {@link SmsLogSpool} after {@code max-retries} retries. Bulk requests do not refresh the index; logs
+ * become searchable with the index's own refresh interval.
+ * <p>
+ * The queue is bounded. While Elasticsearch falls behind it fills up, and further logs go straight to the spool, so
+ * consumption carries on at its own pace. Without a spool, callers block for up to {@code offer-timeout-ms} instead,
+ * which slows down consumption rather than growing the heap. A log that can neither be queued nor spooled is dropped.
+ * On shutdown the queue is drained for up to {@code shutdown-timeout-ms}, and whatever is left is spooled.
+ */
+@Service
+public class SmsLogIndexer {
+    private static final Logger log = LoggerFactory.getLogger(SmsLogIndexer.class);
+
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final SmsLogIndexManager smsLogIndexManager;
+    private final SmsLogSpool smsLogSpool;
+    private final boolean enabled;
+    private final int maxActions;
+    private final long flushIntervalMs;
+    private final long offerTimeoutMs;
+    private final int maxRetries;
+    private final long retryBackoffMs;
+    private final long shutdownTimeoutMs;
+    private final BlockingQueue<Pending> queue;
+    private final ExecutorService flusher;
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile boolean running;
+
+    /**
+     * Constructor for SmsLogIndexer.
+     * @param elasticsearchOperations Operations used to send the bulk requests.
+     * @param smsLogIndexManager Manager naming the time-partitioned index each log belongs in.
+     * @param smsLogSpool Spool taking the logs that cannot be indexed.
+     * @param meterRegistry Registry where the indexing counts and queue size are exposed.
+     * @param enabled Whether logs should be buffered; if not, each log is indexed on the caller's thread.
+     * @param maxActions Maximum number of documents in one bulk request.
+     * @param flushIntervalMs Maximum time a queued log waits for others to fill its bulk request.
+     * @param queueCapacity Maximum number of logs waiting to be indexed.
+     * @param offerTimeoutMs Maximum time a caller waits for room in a full queue, when there is no spool.
+     * @param maxRetries Number of retries after which a rejected document is spooled.
+     * @param retryBackoffMs Delay before the first retry, doubled for each further retry.
+     * @param shutdownTimeoutMs Maximum time spent indexing the queued logs on shutdown.
+     */
+    public SmsLogIndexer(ElasticsearchOperations elasticsearchOperations,
+                         SmsLogIndexManager smsLogIndexManager,
+                         SmsLogSpool smsLogSpool,
+                         MeterRegistry meterRegistry,
+                         @Value("${notification.sms.log.bulk.enabled:true}") boolean enabled,
+                         @Value("${notification.sms.log.bulk.max-actions:1000}") int maxActions,
+                         @Value("${notification.sms.log.bulk.flush-interval-ms:1000}") long flushIntervalMs,
+                         @Value("${notification.sms.log.bulk.queue-capacity:20000}") int queueCapacity,
+                         @Value("${notification.sms.log.bulk.offer-timeout-ms:5000}") long offerTimeoutMs,
+                         @Value("${notification.sms.log.bulk.max-retries:3}") int maxRetries,
+                         @Value("${notification.sms.log.bulk.retry-backoff-ms:1000}") long retryBackoffMs,
+                         @Value("${notification.sms.log.bulk.shutdown-timeout-ms:30000}") long shutdownTimeoutMs) {
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.smsLogIndexManager = smsLogIndexManager;
+        this.smsLogSpool = smsLogSpool;
+        this.enabled = enabled;
+        this.maxActions = maxActions;
+        this.flushIntervalMs = flushIntervalMs;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.maxRetries = maxRetries;
+        this.retryBackoffMs = retryBackoffMs;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.flusher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sms-log-indexer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        FunctionCounter.builder("sms.log.index.documents", indexed, AtomicLong::get)
+                .description("SMS logs indexed into Elasticsearch")
+                .tag("result", "indexed")
+                .register(meterRegistry);
+        FunctionCounter.builder("sms.log.index.documents", retried, AtomicLong::get)
+                .description("SMS logs rejected by a bulk request and retried")
+                .tag("result", "retried")
+                .register(meterRegistry);
+        FunctionCounter.builder("sms.log.index.documents", dropped, AtomicLong::get)
+                .description("SMS logs dropped because they could neither be indexed nor spooled")
+                .tag("result", "dropped")
+                .register(meterRegistry);
+        Gauge.builder("sms.log.index.queue.size", queue, BlockingQueue::size)
+                .description("SMS logs waiting to be indexed")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            running = true;
+            flusher.execute(this::run);
+        }
+    }
+
+    /**
+     * Queues a log for indexing, spooling it if the queue is full.
+     * @param smsLog The log to index.
+     */
+    public void index(SmsLog smsLog) {
+        if (!running) {
+            try {
+                elasticsearchOperations.save(smsLog, IndexCoordinates.of(smsLogIndexManager.indexFor(smsLog.getSentAt())));
+            } catch (Exception e) {
+                log.warn("Failed to index SMS log, spooling it: [Request ID: {}]: {}", smsLog.getId(), e.getMessage());
+                spill(Collections.singletonList(smsLog));
+            }
+            return;
+        }
+        try {
+            long timeoutMs = smsLogSpool.isEnabled() ? 0 : offerTimeoutMs;
+            if (queue.offer(new Pending(smsLog), timeoutMs, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+            log.warn("SMS log queue full, spooling log: [Request ID: {}]", smsLog.getId());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while queueing SMS log, spooling log: [Request ID: {}]", smsLog.getId());
+        }
+        spill(Collections.singletonList(smsLog));
+    }
+
+    /**
+     * Spools logs that could not be indexed, dropping those the spool cannot take.
+     */
+    private void spill(List<SmsLog> smsLogs) {
+        int lost = smsLogs.size() - smsLogSpool.spill(smsLogs);
+        if (lost > 0) {
+            dropped.addAndGet(lost);
+            log.error("Failed to spool {} of {} SMS logs, dropping them: [First Request ID: {}]",
+                    lost, smsLogs.size(), smsLogs.get(smsLogs.size() - lost).getId());
+        }
+    }
+
+    private void run() {
+        List<Pending> retries = new ArrayList<>();
+        try {
+            while (running || !queue.isEmpty() || !retries.isEmpty()) {
+                List<Pending> batch = new ArrayList<>(maxActions);
+                batch.addAll(retries);
+                fill(batch, retries.isEmpty() && running);
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                retries = flush(batch);
+                if (!retries.isEmpty()) {
+                    Thread.sleep(backoffMs(retries));
+                }
+            }
+        } catch (InterruptedException e) {
+            List<SmsLog> remaining = new ArrayList<>();
+            for (Pending pending : retries) {
+                remaining.add(pending.smsLog);
+            }
+            for (Pending pending : queue) {
+                remaining.add(pending.smsLog);
+            }
+            log.warn("SMS log indexer stopped before indexing {} queued logs, spooling them", remaining.size());
+            spill(remaining);
+        } catch (Exception e) {
+            log.error("SMS log indexer failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Adds queued logs to the batch until it is full or, if {@code wait} is set, the flush interval has passed.
+     */
+    private void fill(List<Pending> batch, boolean wait) throws InterruptedException {
+        if (!wait) {
+            queue.drainTo(batch, maxActions - batch.size());
+            return;
+        }
+        Pending first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.currentTimeMillis() + flushIntervalMs;
+        while (batch.size() < maxActions) {
+            // Drain before checking for a shutdown, so that logs queued before it are not split into another batch.
+            queue.drainTo(batch, maxActions - batch.size());
+            long remaining = deadline - System.currentTimeMillis();
+            if (batch.size() >= maxActions || remaining <= 0 || !running) {
+                return;
+            }
+            Pending next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    /**
+     * Sends one bulk request, each log addressed to its own time-partitioned index.
+     * @return The documents to retry.
+     */
+    private List<Pending> flush(List<Pending> batch) {
+        List<IndexQuery> queries = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            queries.add(new IndexQueryBuilder()
+                    .withId(pending.smsLog.getId())
+                    .withObject(pending.smsLog)
+                    .withIndex(smsLogIndexManager.indexFor(pending.smsLog.getSentAt()))
+                    .build());
+        }
+
+        Set<String> failedIds;
+        try {
+            elasticsearchOperations.bulkIndex(queries, IndexCoordinates.of(SmsLogIndexManager.READ_ALIAS));
+            failedIds = Collections.emptySet();
+        } catch (BulkFailureException e) {
+            failedIds = e.getFailedDocuments().keySet();
+            log.warn("Bulk indexing rejected {} of {} SMS logs: {}", failedIds.size(), batch.size(), e.getFailedDocuments());
+        } catch (Exception e) {
+            failedIds = null;
+            log.warn("Bulk indexing of {} SMS logs failed: {}", batch.size(), e.getMessage());
+        }
+
+        List<Pending> retries = new ArrayList<>();
+        List<SmsLog> exhausted = new ArrayList<>();
+        for (Pending pending : batch) {
+            if (failedIds != null && !failedIds.contains(pending.smsLog.getId())) {
+                indexed.incrementAndGet();
+            } else if (++pending.retries > maxRetries) {
+                exhausted.add(pending.smsLog);
+            } else {
+                retried.incrementAndGet();
+                retries.add(pending);
+            }
+        }
+        if (!exhausted.isEmpty()) {
+            log.warn("SMS log retries exhausted, spooling {} logs", exhausted.size());
+            spill(exhausted);
+        }
+        return retries;
+    }
+
+    private long backoffMs(List<Pending> retries) {
+        int maxRetriesSoFar = 0;
+        for (Pending pending : retries) {
+            maxRetriesSoFar = Math.max(maxRetriesSoFar, pending.retries);
+        }
+        return retryBackoffMs << Math.min(maxRetriesSoFar - 1, 20);
+    }
+
+    /**
+     * Indexes the queued logs before the application shuts down. Logs arriving afterwards are indexed directly.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        flusher.shutdown();
+        if (!flusher.awaitTermination(shutdownTimeoutMs, TimeUnit.MILLISECONDS)) {
+            log.warn("SMS log indexer did not finish in time, spooling the remaining logs");
+            flusher.shutdownNow();
+            // Give the interrupted flusher time to spool what it still holds.
+            flusher.awaitTermination(shutdownTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static class Pending {
+        private final SmsLog smsLog;
+        private int retries;
+
+        private Pending(SmsLog smsLog) {
+            this.smsLog = smsLog;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.keshav.NotificationService.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.index.AliasAction;
+import org.springframework.data.elasticsearch.core.index.AliasActionParameters;
+import org.springframework.data.elasticsearch.core.index.AliasActions;
+import org.springframework.data.elasticsearch.core.index.AliasData;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.reindex.ReindexRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Moves SMS logs written with an earlier mapping into the current {@code sms-logs-v2-<period>} indices.
+ * <p>
+ * Each old index is reindexed by an Elasticsearch task, with a script routing every log to the index of the period
+ * it was sent in. The old index stays searchable, through {@link SmsLogIndexManager#indicesFor} and the read alias,
+ * until its task has completed without failures; it is then taken out of the read alias and dropped in one atomic
+ * {@code _aliases} request. While a task runs, searches may return a log from both indices. Logs already present in
+ * the new indices are left as they are. A failed task leaves its index in place and can be restarted.
+ * <p>
+ * The task of each old index and its status are kept in the {@link #MIGRATION_INDEX} index, so that any node can
+ * follow and complete a migration, also after the node that started it has restarted.
+ */
+@Service
+public class SmsLogMigrationService {
+    private static final Logger log = LoggerFactory.getLogger(SmsLogMigrationService.class);
+
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+    public static final String MIGRATION_INDEX = "sms-log-migrations";
+
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final RestClient restClient;
+    private final SmsLogIndexManager smsLogIndexManager;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Constructor for SmsLogMigrationService.
+     * @param elasticsearchOperations Operations used to start the reindex tasks and drop migrated indices.
+     * @param restClient Client used to follow the reindex tasks and keep track of the migrations.
+     * @param smsLogIndexManager Manager of the SMS log indices.
+     */
+    public SmsLogMigrationService(ElasticsearchOperations elasticsearchOperations,
+                                  RestClient restClient,
+                                  SmsLogIndexManager smsLogIndexManager) {
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.restClient = restClient;
+        this.smsLogIndexManager = smsLogIndexManager;
+    }
+
+    /**
+     * Starts a reindex task for every old index that is not already being migrated.
+     * @return The status of every migration, by old index.
+     * @throws IOException If the migrations could not be read or recorded.
+     */
+    public Map<String, String> start() throws IOException {
+        Map<String, Migration> migrations = loadMigrations();
+        for (String index : smsLogIndexManager.indicesToMigrate()) {
+            Migration current = migrations.get(index);
+            if (current != null && !FAILED.equals(current.status)) {
+                continue;
+            }
+            ReindexRequest request = ReindexRequest.builder(IndexCoordinates.of(index),
+                            IndexCoordinates.of(smsLogIndexManager.indexFor(null)))
+                    .withScript(routingScript(smsLogIndexManager.getDatePattern()), "painless")
+                    .withDestOpType(IndexQuery.OpType.CREATE)
+                    .withConflicts(ReindexRequest.Conflicts.PROCEED)
+                    .build();
+            String taskId = elasticsearchOperations.submitReindex(request);
+            Migration migration = new Migration(taskId, RUNNING);
+            saveMigration(index, migration);
+            migrations.put(index, migration);
+            log.info("Started SMS log migration: [Index: {}, Task: {}]", index, taskId);
+        }
+        return statusOf(migrations);
+    }
+
+    /**
+     * @return The status of every migration, by old index.
+     * @throws IOException If the migrations could not be read.
+     */
+    public Map<String, String> getStatus() throws IOException {
+        return statusOf(loadMigrations());
+    }
+
+    /**
+     * Checks the running reindex tasks, dropping the old index of each one that completed without failures.
+     */
+    @Scheduled(fixedDelayString = "${notification.sms.log.migration.check-interval-ms:60000}")
+    public void checkTasks() {
+        Map<String, Migration> migrations;
+        try {
+            migrations = loadMigrations();
+        } catch (Exception e) {
+            log.warn("Failed to read SMS log migrations: {}", e.getMessage());
+            return;
+        }
+        for (Map.Entry<String, Migration> entry : migrations.entrySet()) {
+            String index = entry.getKey();
+            Migration migration = entry.getValue();
+            if (!RUNNING.equals(migration.status)) {
+                continue;
+            }
+            try {
+                JsonNode task = getTask(migration.taskId);
+                if (!task.path("completed").asBoolean()) {
+                    continue;
+                }
+                JsonNode failures = task.path("response").path("failures");
+                if (task.has("error") || failures.size() > 0) {
+                    saveMigration(index, new Migration(migration.taskId, FAILED));
+                    log.error("SMS log migration failed, keeping the index: [Index: {}, Task: {}, Error: {}]",
+                            index, migration.taskId, task.has("error") ? task.get("error") : failures.get(0));
+                    continue;
+                }
+                dropIndex(index);
+                saveMigration(index, new Migration(migration.taskId, COMPLETED));
+                smsLogIndexManager.indicesToMigrate();
+                log.info("Completed SMS log migration: [Index: {}, Logs: {}]", index, task.path("response").path("total").asLong());
+            } catch (Exception e) {
+                log.warn("Failed to check SMS log migration: [Index: {}, Task: {}]: {}", index, migration.taskId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return A reindex script sending each log to the index of the period it was sent in, skipping logs without a
+     * send time.
+     */
+    static String routingScript(String datePattern) {
+        return "if (ctx._source.sentAt == null) { ctx.op = 'noop'; } else { "
+                + "ctx._index = '" + SmsLogIndexManager.INDEX_PREFIX + "' + "
+                + "DateTimeFormatter.ofPattern('" + datePattern + "').format(LocalDateTime.parse(ctx._source.sentAt)); }";
+    }
+
+    /**
+     * Takes a migrated index out of the read alias and drops it in one atomic request, so that searches through the
+     * alias never miss its logs in between.
+     */
+    private void dropIndex(String index) {
+        IndexOperations indexOps = elasticsearchOperations.indexOps(IndexCoordinates.of(index));
+        List<AliasAction> actions = new ArrayList<>();
+        Set<AliasData> aliases = indexOps.getAliasesForIndex(index).getOrDefault(index, Collections.emptySet());
+        for (AliasData alias : aliases) {
+            if (SmsLogIndexManager.READ_ALIAS.equals(alias.getAlias())) {
+                actions.add(new AliasAction.Remove(AliasActionParameters.builder()
+                        .withIndices(index)
+                        .withAliases(SmsLogIndexManager.READ_ALIAS)
+                        .build()));
+            }
+        }
+        actions.add(new AliasAction.RemoveIndex(AliasActionParameters.builder().withIndices(index).build()));
+        indexOps.alias(new AliasActions(actions.toArray(new AliasAction[0])));
+    }
+
+    private Map<String, Migration> loadMigrations() throws IOException {
+        Request request = new Request("GET", "/" + MIGRATION_INDEX + "/_search");
+        request.addParameter("size", "10000");
+        // The index is created by the first migration.
+        request.addParameter("ignore_unavailable", "true");
+        Map<String, Migration> migrations = new TreeMap<>();
+        for (JsonNode hit : read(restClient.performRequest(request)).path("hits").path("hits")) {
+            JsonNode source = hit.path("_source");
+            migrations.put(hit.path("_id").asText(), new Migration(source.path("taskId").asText(), source.path("status").asText()));
+        }
+        return migrations;
+    }
+
+    private void saveMigration(String index, Migration migration) throws IOException {
+        Request request = new Request("PUT", "/" + MIGRATION_INDEX + "/_doc/" + index);
+        request.addParameter("refresh", "wait_for");
+        request.setJsonEntity(objectMapper.createObjectNode()
+                .put("taskId", migration.taskId)
+                .put("status", migration.status)
+                .toString());
+        restClient.performRequest(request);
+    }
+
+    private static Map<String, String> statusOf(Map<String, Migration> migrations) {
+        Map<String, String> status = new TreeMap<>();
+        for (Map.Entry<String, Migration> entry : migrations.entrySet()) {
+            status.put(entry.getKey(), entry.getValue().status);
+        }
+        return status;
+    }
+
+    private JsonNode getTask(String taskId) throws IOException {
+        return read(restClient.performRequest(new Request("GET", "/_tasks/" + taskId)));
+    }
+
+    private JsonNode read(Response response) throws IOException {
+        try (InputStream content = response.getEntity().getContent()) {
+            return objectMapper.readTree(content);
+        }
+    }
+
+    private static class Migration {
+        private final String taskId;
+        private final String status;
+
+        private Migration(String taskId, String status) {
+            this.taskId = taskId;
+            this.status = status;
+        }
+    }
+}
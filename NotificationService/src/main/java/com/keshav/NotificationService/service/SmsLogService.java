@@ -1,35 +1,78 @@
 package com.keshav.NotificationService.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.keshav.NotificationService.dto.SmsLogPage;
 import com.keshav.NotificationService.model.SmsLog;
-import com.keshav.NotificationService.repository.SmsLogRepository;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
 
 /**
  * Service class responsible for managing and retrieving SMS logs.
- * This service handles the creation and retrieval of SMS logs from the `SmsLogRepository`.
- * It provides methods to save SMS log entries and search logs based on different parameters
- * like phone number, date range, or message content.
+ * This service queues new SMS logs for bulk indexing into Elasticsearch, and searches logs by phone number and
+ * date range, or by message content.
+ * <p>
+ * Searches are paginated with cursors rather than page numbers. The first page opens a point in time over the
+ * searched indices, and each page continues after the sort values of the previous page's last hit, so a page costs
+ * the same however deep it is, no result window applies, and the pages form a consistent snapshot. The cursor
+ * carries the point in time ID and those sort values; the point in time expires {@code keep-alive} after the last
+ * page was fetched.
  */
 @Service
 public class SmsLogService {
+    private static final Logger log = LoggerFactory.getLogger(SmsLogService.class);
 
-    private final SmsLogRepository smsLogRepository;
+    // The format sentAt is mapped with.
+    private static final DateTimeFormatter SENT_AT_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+    private final SmsLogIndexer smsLogIndexer;
+    private final SmsLogIndexManager smsLogIndexManager;
+    private final RestClient restClient;
+    private final ObjectMapper objectMapper;
+    private final String keepAlive;
 
     /**
-     * Constructor to initialize the SmsLogService with the required SmsLogRepository dependency.
-     * @param smsLogRepository The repository for persisting and querying SMS logs.
+     * Constructor to initialize the SmsLogService with the required dependencies.
+     * @param smsLogIndexer The buffer through which new SMS logs are bulk indexed.
+     * @param smsLogIndexManager The manager of the time-partitioned SMS log indices.
+     * @param restClient The client used to run point in time searches.
+     * @param objectMapper The mapper used to read SMS logs and cursors.
+     * @param keepAlive How long a search's point in time is kept after each page, as an Elasticsearch time value.
      */
-    public SmsLogService(SmsLogRepository smsLogRepository) {
-        this.smsLogRepository = smsLogRepository;
+    public SmsLogService(SmsLogIndexer smsLogIndexer,
+                         SmsLogIndexManager smsLogIndexManager,
+                         RestClient restClient,
+                         ObjectMapper objectMapper,
+                         @Value("${notification.sms.log.search.keep-alive:2m}") String keepAlive) {
+        this.smsLogIndexer = smsLogIndexer;
+        this.smsLogIndexManager = smsLogIndexManager;
+        this.restClient = restClient;
+        this.objectMapper = objectMapper;
+        this.keepAlive = keepAlive;
     }
 
     /**
-     * Saves a new SMS log entry with the given details (ID, phone number, message, sent timestamp).
+     * Queues a new SMS log entry with the given details (ID, phone number, message, sent timestamp) for indexing.
      * @param id The unique identifier of the SMS request.
      * @param phoneNumber The phone number that received the SMS.
      * @param message The SMS message content.
@@ -41,36 +84,138 @@ public class SmsLogService {
         smsLog.setMessage(message);
         smsLog.setSentAt(LocalDateTime.now());
 
-        smsLogRepository.save(smsLog);
+        smsLogIndexer.index(smsLog);
     }
 
     /**
-     * Retrieves a paginated list of SMS logs for a specific phone number and within a date range.
+     * Retrieves a page of SMS logs for a specific phone number and within a date range, oldest first. Only the
+     * indices of the periods overlapping the range are searched, with non-scoring filters that Elasticsearch can
+     * cache. Old indices not migrated yet are matched on the analyzed phone number rather than the term.
      * @param phoneNumber The phone number to filter logs by.
      * @param start       The start of the date range for filtering.
      * @param end         The end of the date range for filtering.
-     * @param page        The page number to retrieve (starting from 0).
+     * @param cursor      The cursor returned with the previous page, or {@code null} for the first page.
      * @param size        The number of records per page.
      * @return A page of SMS logs matching the criteria.
+     * @throws IllegalArgumentException If the cursor is invalid or has expired.
      */
-    public Page<SmsLog> getSmsLogsByPhoneNumberAndDateRange(
-            String phoneNumber, LocalDateTime start, LocalDateTime end, int page, int size) {
+    public SmsLogPage getSmsLogsByPhoneNumberAndDateRange(
+            String phoneNumber, LocalDateTime start, LocalDateTime end, String cursor, int size) throws IOException {
 
-        Pageable pageable = PageRequest.of(page, size);
-        return smsLogRepository.findByPhoneNumberAndSentAtBetween(phoneNumber, start, end, pageable);
+        QueryBuilder query = QueryBuilders.boolQuery()
+                .filter(SmsLogIndexManager.phoneNumberQuery(phoneNumber))
+                .filter(QueryBuilders.rangeQuery("sentAt")
+                        .gte(SENT_AT_FORMAT.format(start))
+                        .lte(SENT_AT_FORMAT.format(end)));
+        return search(query, smsLogIndexManager.indicesFor(start, end), cursor, size);
     }
 
     /**
-     * Retrieves a paginated list of SMS logs that contain a specific text phrase in the message.
-     * @param text The text phrase to search for in the SMS message.
-     * @param page The page number to retrieve (starting from 0).
-     * @param size The number of records per page.
+     * Retrieves a page of SMS logs that contain a specific text phrase in the message, oldest first.
+     * @param text   The text phrase to search for in the SMS message.
+     * @param cursor The cursor returned with the previous page, or {@code null} for the first page.
+     * @param size   The number of records per page.
      * @return A page of SMS logs containing the text phrase.
+     * @throws IllegalArgumentException If the cursor is invalid or has expired.
      */
-    public Page<SmsLog> getSmsLogsByText(String text, int page, int size) {
+    public SmsLogPage getSmsLogsByText(String text, String cursor, int size) throws IOException {
+        return search(QueryBuilders.matchPhraseQuery("message", text),
+                IndexCoordinates.of(SmsLogIndexManager.READ_ALIAS), cursor, size);
+    }
+
+    private SmsLogPage search(QueryBuilder query, IndexCoordinates indices, String cursor, int size) throws IOException {
+        String pitId;
+        JsonNode searchAfter = null;
+        if (cursor == null) {
+            pitId = openPointInTime(indices);
+        } else {
+            JsonNode decoded = decodeCursor(cursor);
+            pitId = decoded.path("pit").asText();
+            searchAfter = decoded.path("after");
+        }
+
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("size", size);
+        body.set("query", objectMapper.readTree(query.toString()));
+        body.putObject("pit").put("id", pitId).put("keep_alive", keepAlive);
+        // The point in time adds the shard and document order as a tiebreaker, and returns it in each hit's sort.
+        body.putArray("sort").addObject().put("sentAt", "asc");
+        body.put("track_total_hits", false);
+        if (searchAfter != null) {
+            body.set("search_after", searchAfter);
+        }
+
+        JsonNode response;
+        try {
+            Request request = new Request("POST", "/_search");
+            request.setJsonEntity(body.toString());
+            response = read(restClient.performRequest(request));
+        } catch (ResponseException e) {
+            if (cursor != null && e.getResponse().getStatusLine().getStatusCode() == 404) {
+                throw new IllegalArgumentException("The cursor has expired.");
+            }
+            throw e;
+        }
 
-        Pageable pageable = PageRequest.of(page, size);
-        return smsLogRepository.findByMessagePhrase(text, pageable);
+        JsonNode hits = response.path("hits").path("hits");
+        List<SmsLog> smsLogs = new ArrayList<>(hits.size());
+        for (JsonNode hit : hits) {
+            SmsLog smsLog = objectMapper.treeToValue(hit.path("_source"), SmsLog.class);
+            smsLog.setId(hit.path("_id").asText());
+            smsLogs.add(smsLog);
+        }
+
+        // The point in time ID may change from one page to the next.
+        pitId = response.path("pit_id").asText(pitId);
+        if (hits.size() < size) {
+            closePointInTime(pitId);
+            return new SmsLogPage(smsLogs, null);
+        }
+        return new SmsLogPage(smsLogs, encodeCursor(pitId, hits.get(hits.size() - 1).path("sort")));
+    }
+
+    private String openPointInTime(IndexCoordinates indices) throws IOException {
+        Request request = new Request("POST", "/" + String.join(",", indices.getIndexNames()) + "/_pit");
+        request.addParameter("keep_alive", keepAlive);
+        // Indices of periods without any logs were never created.
+        request.addParameter("ignore_unavailable", "true");
+        return read(restClient.performRequest(request)).path("id").asText();
     }
-}
 
+    private void closePointInTime(String pitId) {
+        try {
+            Request request = new Request("DELETE", "/_pit");
+            request.setJsonEntity(objectMapper.createObjectNode().put("id", pitId).toString());
+            restClient.performRequest(request);
+        } catch (Exception e) {
+            // It expires on its own.
+            log.warn("Failed to close point in time: {}", e.getMessage());
+        }
+    }
+
+    private JsonNode read(Response response) throws IOException {
+        try (InputStream content = response.getEntity().getContent()) {
+            return objectMapper.readTree(content);
+        }
+    }
+
+    String encodeCursor(String pitId, JsonNode sortValues) {
+        ObjectNode cursor = objectMapper.createObjectNode();
+        cursor.put("pit", pitId);
+        cursor.set("after", sortValues);
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(cursor.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    JsonNode decodeCursor(String cursor) {
+        try {
+            JsonNode decoded = objectMapper.readTree(Base64.getUrlDecoder().decode(cursor));
+            if (decoded.path("pit").isTextual() && decoded.path("after") instanceof ArrayNode) {
+                return decoded;
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            // Reported below.
+        }
+        throw new IllegalArgumentException("The cursor must be one returned by a previous page.");
+    }
+}
@@ -0,0 +1,239 @@
+package com.keshav.NotificationService.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.keshav.NotificationService.model.SmsLog;
+import com.keshav.NotificationService.utils.SegmentedJournal;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.BulkFailureException;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local disk spool for the SMS logs that {@link SmsLogIndexer} cannot get into Elasticsearch, so that an outage
+ * neither loses them nor holds up the consumers.
+ * <p>
+ * Logs are appended as JSON to a {@link SegmentedJournal} in {@code directory}, which takes at most {@code max-bytes}
+ * of disk; once it is full, further logs are dropped. Every {@code replay-interval-ms} the journal is forced to disk
+ * and replayed from its checkpoint in bulk requests of {@code replay-batch-size} logs, each committed once
+ * Elasticsearch has accepted it. While Elasticsearch is unavailable, or rejects logs for lack of capacity, the
+ * checkpoint stays where it is and the batch is replayed again on the next run; logs rejected for any other reason are
+ * dropped. A log replayed twice overwrites itself.
+ * <p>
+ * The spool is only as durable as {@code directory}, so it must be on persistent storage that survives restarts and
+ * redeployments (a mounted volume in containers), not a temporary directory the OS or the platform may clear.
+ */
+@Service
+public class SmsLogSpool {
+    private static final Logger log = LoggerFactory.getLogger(SmsLogSpool.class);
+
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final SmsLogIndexManager smsLogIndexManager;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final String directory;
+    private final int segmentBytes;
+    private final long maxBytes;
+    private final int replayBatchSize;
+    private final long replayIntervalMs;
+    private final ScheduledExecutorService replayer;
+    private final AtomicLong spooled = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile SegmentedJournal journal;
+
+    /**
+     * Constructor for SmsLogSpool.
+     * @param elasticsearchOperations Operations used to replay the spooled logs.
+     * @param smsLogIndexManager Manager naming the time-partitioned index each log belongs in.
+     * @param objectMapper Mapper used to write the logs to the journal and read them back.
+     * @param meterRegistry Registry where the spool counts and size are exposed.
+     * @param enabled Whether logs that cannot be indexed should be spooled; if not, they are dropped.
+     * @param directory Directory of the journal, on persistent storage.
+     * @param segmentBytes Size of each journal segment file.
+     * @param maxBytes Maximum disk space taken by the journal.
+     * @param replayBatchSize Maximum number of logs in one replayed bulk request.
+     * @param replayIntervalMs Delay between replays.
+     */
+    public SmsLogSpool(ElasticsearchOperations elasticsearchOperations,
+                       SmsLogIndexManager smsLogIndexManager,
+                       ObjectMapper objectMapper,
+                       MeterRegistry meterRegistry,
+                       @Value("${notification.sms.log.spool.enabled:true}") boolean enabled,
+                       @Value("${notification.sms.log.spool.directory:./data/sms-log-spool}") String directory,
+                       @Value("${notification.sms.log.spool.segment-bytes:67108864}") int segmentBytes,
+                       @Value("${notification.sms.log.spool.max-bytes:1073741824}") long maxBytes,
+                       @Value("${notification.sms.log.spool.replay-batch-size:1000}") int replayBatchSize,
+                       @Value("${notification.sms.log.spool.replay-interval-ms:5000}") long replayIntervalMs) {
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.smsLogIndexManager = smsLogIndexManager;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        this.replayBatchSize = replayBatchSize;
+        this.replayIntervalMs = replayIntervalMs;
+        this.replayer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sms-log-spool");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        FunctionCounter.builder("sms.log.spool.records", spooled, AtomicLong::get)
+                .description("SMS logs spooled to disk")
+                .tag("result", "spooled")
+                .register(meterRegistry);
+        FunctionCounter.builder("sms.log.spool.records", replayed, AtomicLong::get)
+                .description("Spooled SMS logs replayed into Elasticsearch")
+                .tag("result", "replayed")
+                .register(meterRegistry);
+        FunctionCounter.builder("sms.log.spool.records", dropped, AtomicLong::get)
+                .description("Spooled SMS logs dropped because Elasticsearch rejected them on replay")
+                .tag("result", "dropped")
+                .register(meterRegistry);
+        Gauge.builder("sms.log.spool.bytes", this, spool -> spool.journal != null ? spool.journal.sizeBytes() : 0)
+                .description("Disk space taken by the SMS log spool")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            journal = new SegmentedJournal(Paths.get(directory), segmentBytes, maxBytes);
+        } catch (IOException e) {
+            log.error("Failed to open SMS log spool, SMS logs will be dropped while Elasticsearch is unavailable: [Directory: {}]: {}",
+                    directory, e.getMessage(), e);
+            return;
+        }
+        replayer.scheduleWithFixedDelay(this::replay, replayIntervalMs, replayIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return Whether logs can be spooled.
+     */
+    public boolean isEnabled() {
+        return journal != null;
+    }
+
+    /**
+     * Spools logs, in order, until the spool is full.
+     * @param smsLogs The logs to spool.
+     * @return The number of logs spooled, from the start of the list; the caller drops the others.
+     */
+    public int spill(List<SmsLog> smsLogs) {
+        SegmentedJournal current = journal;
+        int count = 0;
+        if (current != null) {
+            try {
+                for (SmsLog smsLog : smsLogs) {
+                    if (!current.append(objectMapper.writeValueAsBytes(smsLog))) {
+                        log.error("SMS log spool full: [Max Bytes: {}]", maxBytes);
+                        break;
+                    }
+                    count++;
+                }
+            } catch (Exception e) {
+                log.error("Failed to spool SMS log: {}", e.getMessage(), e);
+            }
+        }
+        spooled.addAndGet(count);
+        return count;
+    }
+
+    /**
+     * Forces the spool to disk and replays it into Elasticsearch, until it is empty or a bulk request fails.
+     */
+    void replay() {
+        try {
+            journal.sync();
+            List<byte[]> records;
+            while (!(records = journal.read(replayBatchSize)).isEmpty()) {
+                if (!replayBatch(records)) {
+                    return;
+                }
+                journal.commit();
+            }
+        } catch (Exception e) {
+            log.error("SMS log spool replay failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return Whether the batch can be committed, with every log either indexed or rejected for good.
+     */
+    private boolean replayBatch(List<byte[]> records) {
+        List<IndexQuery> queries = new ArrayList<>(records.size());
+        for (byte[] record : records) {
+            try {
+                SmsLog smsLog = objectMapper.readValue(record, SmsLog.class);
+                queries.add(new IndexQueryBuilder()
+                        .withId(smsLog.getId())
+                        .withObject(smsLog)
+                        .withIndex(smsLogIndexManager.indexFor(smsLog.getSentAt()))
+                        .build());
+            } catch (IOException e) {
+                dropped.incrementAndGet();
+                log.error("Dropping unreadable spooled SMS log: {}", e.getMessage());
+            }
+        }
+        if (queries.isEmpty()) {
+            return true;
+        }
+
+        try {
+            elasticsearchOperations.bulkIndex(queries, IndexCoordinates.of(SmsLogIndexManager.READ_ALIAS));
+            replayed.addAndGet(queries.size());
+        } catch (BulkFailureException e) {
+            for (String reason : e.getFailedDocuments().values()) {
+                if (reason != null && reason.contains("rejected_execution")) {
+                    log.warn("Elasticsearch is overloaded, replaying the SMS log spool later: {}", reason);
+                    return false;
+                }
+            }
+            int failed = e.getFailedDocuments().size();
+            replayed.addAndGet(queries.size() - failed);
+            dropped.addAndGet(failed);
+            log.error("Replay rejected {} of {} spooled SMS logs, dropping them: {}", failed, queries.size(), e.getFailedDocuments());
+        } catch (Exception e) {
+            log.warn("Elasticsearch is unavailable, replaying the SMS log spool later: {}", e.getMessage());
+            return false;
+        }
+        log.info("Replayed spooled SMS logs: [Logs: {}]", queries.size());
+        return true;
+    }
+
+    /**
+     * Stops replaying and forces the spool to disk. Logs still spooled are replayed after the next start.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        replayer.shutdown();
+        replayer.awaitTermination(replayIntervalMs, TimeUnit.MILLISECONDS);
+        if (journal != null) {
+            journal.sync();
+        }
+    }
+}
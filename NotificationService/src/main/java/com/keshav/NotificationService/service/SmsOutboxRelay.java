@@ -0,0 +1,243 @@
+package com.keshav.NotificationService.service;
+
+import com.keshav.NotificationService.dto.SmsEnvelope;
+import com.keshav.NotificationService.model.SmsOutboxEvent;
+import com.keshav.NotificationService.model.SmsRequest;
+import com.keshav.NotificationService.repository.SmsOutboxRepository;
+import com.keshav.NotificationService.repository.SmsRequestRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Background relay that drains the `sms_outbox` table to Kafka.
+ * Each cycle takes the relay lease (a MySQL named lock, so only one node relays at a time), reads the oldest pending
+ * rows, loads their SMS requests in one query, publishes them in order as {@link SmsEnvelope}s keyed by request ID in
+ * one producer batch, waits for the broker acknowledgements and deletes the published rows in the same transaction.
+ * Only the rows before the first failed publish are deleted; the failed row and every row after it stay in the outbox
+ * and are published again on the next cycle, so a row is never lost or committed ahead of an older one, though a
+ * retry or a crash between publish and commit can publish rows twice.
+ * The lease and the database connection are held while waiting for the acknowledgements, for at most
+ * {@code send-timeout-ms} per row; other nodes skip the cycle instead of waiting for the lease.
+ */
+@Service
+public class SmsOutboxRelay {
+    private static final Logger log = LoggerFactory.getLogger(SmsOutboxRelay.class);
+    private static final String RELAY_LEASE = "sms_outbox_relay";
+
+    private final SmsOutboxRepository smsOutboxRepository;
+    private final SmsRequestRepository smsRequestRepository;
+    private final KafkaTemplate<String, SmsEnvelope> kafkaTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long sendTimeoutMs;
+    private final long maxRunMs;
+
+    private final AtomicReference<String> lastRelayedRequestId = new AtomicReference<>();
+    private final AtomicReference<LocalDateTime> lastRelayedCreatedAt = new AtomicReference<>();
+    private final AtomicLong pendingCount = new AtomicLong();
+    private final AtomicLong oldestPendingAgeMs = new AtomicLong();
+    private final Counter relayedCounter;
+
+    /**
+     * Constructor for SmsOutboxRelay.
+     * @param smsOutboxRepository Repository for the outbox rows.
+     * @param smsRequestRepository Repository the relayed SMS requests are loaded from.
+     * @param kafkaTemplate The Kafka template used to publish the SMS envelopes.
+     * @param transactionManager Transaction manager used to lease, publish and delete each batch atomically.
+     * @param meterRegistry Registry where the relay position and outbox lag are exposed.
+     * @param batchSize Maximum number of rows relayed per transaction.
+     * @param sendTimeoutMs Maximum time to wait for the broker to acknowledge a batch.
+     * @param maxRunMs Time after which a run stops starting new batches, so that a long backlog does not hold a
+     *                 scheduler thread for good.
+     */
+    public SmsOutboxRelay(SmsOutboxRepository smsOutboxRepository, SmsRequestRepository smsRequestRepository,
+                          KafkaTemplate<String, SmsEnvelope> kafkaTemplate,
+                          PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                          @Value("${notification.outbox.relay.batch-size:500}") int batchSize,
+                          @Value("${notification.outbox.relay.send-timeout-ms:10000}") long sendTimeoutMs,
+                          @Value("${notification.outbox.relay.max-run-ms:1000}") long maxRunMs) {
+        this.smsOutboxRepository = smsOutboxRepository;
+        this.smsRequestRepository = smsRequestRepository;
+        this.kafkaTemplate = kafkaTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.sendTimeoutMs = sendTimeoutMs;
+        this.maxRunMs = maxRunMs;
+
+        this.relayedCounter = Counter.builder("sms.outbox.relayed")
+                .description("Outbox rows published to Kafka")
+                .register(meterRegistry);
+        Gauge.builder("sms.outbox.pending", pendingCount, AtomicLong::get)
+                .description("Outbox rows waiting to be published")
+                .register(meterRegistry);
+        Gauge.builder("sms.outbox.lag", oldestPendingAgeMs, value -> value.get() / 1000.0)
+                .description("Age in seconds of the oldest outbox row waiting to be published")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Drains the outbox until a batch comes back smaller than the batch size, a publish fails, another node holds
+     * the relay lease or the run has taken {@code max-run-ms}; the next run carries on after the relay interval.
+     */
+    @Scheduled(fixedDelayString = "${notification.outbox.relay.interval-ms:100}")
+    public void relay() {
+        try {
+            long deadline = System.currentTimeMillis() + maxRunMs;
+            int relayed;
+            do {
+                Integer result = transactionTemplate.execute(status -> relayBatchUnderLease());
+                relayed = result == null ? 0 : result;
+            } while (relayed == batchSize && System.currentTimeMillis() < deadline);
+        } catch (Exception e) {
+            log.error("Failed to relay outbox to Kafka: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Relays one batch while holding the relay lease, or nothing if another node holds it.
+     * Must be called inside a transaction so the lease is taken and released on the same connection.
+     */
+    private int relayBatchUnderLease() {
+        if (!Long.valueOf(1).equals(smsOutboxRepository.acquireLease(RELAY_LEASE))) {
+            log.debug("Outbox relay lease is held by another node, skipping");
+            return 0;
+        }
+        try {
+            return relayBatch();
+        } finally {
+            smsOutboxRepository.releaseLease(RELAY_LEASE);
+        }
+    }
+
+    /**
+     * Publishes one batch of outbox rows and deletes the rows acknowledged by the broker up to the first failure.
+     * Must be called inside a transaction while holding the relay lease.
+     * @return The number of rows published, or -1 if any row in the batch failed to publish.
+     */
+    int relayBatch() {
+        List<SmsOutboxEvent> events = smsOutboxRepository.findAllByOrderByCreatedAtAscRequestIdAsc(PageRequest.of(0, batchSize));
+        if (events.isEmpty()) {
+            return 0;
+        }
+
+        List<String> requestIds = new ArrayList<>(events.size());
+        for (SmsOutboxEvent event : events) {
+            requestIds.add(event.getRequestId());
+        }
+        Map<String, SmsRequest> smsRequests = new HashMap<>();
+        for (SmsRequest smsRequest : smsRequestRepository.findAllById(requestIds)) {
+            smsRequests.put(smsRequest.getId(), smsRequest);
+        }
+
+        List<ListenableFuture<SendResult<String, SmsEnvelope>>> futures = new ArrayList<>(events.size());
+        for (SmsOutboxEvent event : events) {
+            SmsRequest smsRequest = smsRequests.get(event.getRequestId());
+            SmsEnvelope envelope = smsRequest != null ? SmsEnvelope.from(smsRequest) : SmsEnvelope.ofRequestId(event.getRequestId());
+            futures.add(kafkaTemplate.send(event.getTopic(), event.getRequestId(), envelope));
+        }
+        kafkaTemplate.flush();
+
+        List<String> publishedIds = new ArrayList<>(events.size());
+        SmsOutboxEvent lastPublished = null;
+        for (int i = 0; i < events.size(); i++) {
+            SmsOutboxEvent event = events.get(i);
+            if (!isPublished(event.getRequestId(), futures.get(i))) {
+                break;
+            }
+            publishedIds.add(event.getRequestId());
+            lastPublished = event;
+        }
+
+        if (!publishedIds.isEmpty()) {
+            smsOutboxRepository.deleteAllByIdInBatch(publishedIds);
+            relayedCounter.increment(publishedIds.size());
+            lastRelayedRequestId.set(lastPublished.getRequestId());
+            lastRelayedCreatedAt.set(lastPublished.getCreatedAt());
+        }
+        log.info("Relayed {} of {} outbox rows to Kafka", publishedIds.size(), events.size());
+
+        return publishedIds.size() == events.size() ? events.size() : -1;
+    }
+
+    /**
+     * Refreshes the outbox lag figures exposed by {@link #getPendingCount()} and {@link #getLag()}.
+     */
+    @Scheduled(fixedDelayString = "${notification.outbox.lag.refresh-interval-ms:5000}")
+    public void refreshLag() {
+        try {
+            pendingCount.set(smsOutboxRepository.count());
+            oldestPendingAgeMs.set(smsOutboxRepository.findFirstByOrderByCreatedAtAsc()
+                    .map(event -> Math.max(0, Duration.between(event.getCreatedAt(), LocalDateTime.now()).toMillis()))
+                    .orElse(0L));
+        } catch (Exception e) {
+            log.warn("Failed to refresh outbox lag: {}", e.getMessage());
+        }
+    }
+
+    private boolean isPublished(String requestId, ListenableFuture<SendResult<String, SmsEnvelope>> future) {
+        try {
+            future.get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while waiting for Kafka publish of Request ID: {}", requestId);
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            log.error("Kafka Publish Error for Request ID: {} - {}", requestId, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return The request ID of the last outbox row published to Kafka by this node, or null if none yet.
+     */
+    public String getLastRelayedRequestId() {
+        return lastRelayedRequestId.get();
+    }
+
+    /**
+     * @return The creation time of the last outbox row published to Kafka by this node, or null if none yet.
+     */
+    public LocalDateTime getLastRelayedCreatedAt() {
+        return lastRelayedCreatedAt.get();
+    }
+
+    /**
+     * @return The number of outbox rows waiting to be published, as of the last lag refresh.
+     */
+    public long getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * @return The age of the oldest outbox row waiting to be published, as of the last lag refresh.
+     */
+    public Duration getLag() {
+        return Duration.ofMillis(oldestPendingAgeMs.get());
+    }
+}
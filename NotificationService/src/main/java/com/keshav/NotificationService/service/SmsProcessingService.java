@@ -1,9 +1,29 @@
 package com.keshav.NotificationService.service;
 
+import com.keshav.NotificationService.dto.SmsEnvelope;
+import com.keshav.NotificationService.dto.SmsSendResult;
+import com.keshav.NotificationService.dto.SmsStatusUpdate;
 import com.keshav.NotificationService.model.SmsRequest;
+import com.keshav.NotificationService.model.SmsStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.KafkaException;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 /**
  * Service responsible for processing SMS requests.
@@ -18,6 +38,13 @@ public class SmsProcessingService {
     private final BlacklistService blacklistService;
     private final ThirdPartyApiService thirdPartyApiService;
     private final SmsLogService smsLogService;
+    private final SmsAggregator smsAggregator;
+    private final SmsRetryService smsRetryService;
+    private final SmsAnalyticsService smsAnalyticsService;
+    private final SmsStatusWriter smsStatusWriter;
+    private final int batchSendConcurrency;
+    private final long batchDeferDelayMs;
+    private final long batchPersistRetryBackoffMs;
 
     /**
      * Constructor for SmsProcessingService.
@@ -25,56 +52,123 @@ public class SmsProcessingService {
      * @param blacklistService Service to check if a phone number is blacklisted.
      * @param thirdPartyApiService Service to send SMS through a third-party API.
      * @param smsLogService Service to log sent SMS messages to Elasticsearch.
+     * @param smsAggregator Aggregation stage that groups identical messages into multi-destination calls.
+     * @param smsRetryService Service scheduling delayed retries of failed provider calls.
+     * @param smsAnalyticsService Service counting sent SMS for the analytics rollup.
+     * @param smsStatusWriter Write-behind buffer for status updates of messages processed out of order.
+     * @param batchSendConcurrency Maximum number of concurrent third-party API calls while processing a batch.
+     * @param batchDeferDelayMs Delay before messages of a batch that no provider admitted are processed again.
+     * @param batchPersistRetryBackoffMs Delay between attempts to persist the outcome of a batch that was sent.
      */
     public SmsProcessingService(SmsService smsService, BlacklistService blacklistService,
-                                ThirdPartyApiService thirdPartyApiService, SmsLogService smsLogService) {
+                                ThirdPartyApiService thirdPartyApiService, SmsLogService smsLogService,
+                                SmsAggregator smsAggregator, SmsRetryService smsRetryService,
+                                SmsAnalyticsService smsAnalyticsService, SmsStatusWriter smsStatusWriter,
+                                @Value("${notification.kafka.consumer.batch.send-concurrency:64}") int batchSendConcurrency,
+                                @Value("${notification.kafka.consumer.provider-unavailable-backoff-ms:1000}") long batchDeferDelayMs,
+                                @Value("${notification.kafka.consumer.batch.persist-retry-backoff-ms:1000}") long batchPersistRetryBackoffMs) {
         this.smsService = smsService;
         this.blacklistService = blacklistService;
         this.thirdPartyApiService = thirdPartyApiService;
         this.smsLogService = smsLogService;
+        this.smsAggregator = smsAggregator;
+        this.smsRetryService = smsRetryService;
+        this.smsAnalyticsService = smsAnalyticsService;
+        this.smsStatusWriter = smsStatusWriter;
+        this.batchSendConcurrency = batchSendConcurrency;
+        this.batchDeferDelayMs = batchDeferDelayMs;
+        this.batchPersistRetryBackoffMs = batchPersistRetryBackoffMs;
+    }
+
+    /**
+     * Processes an SMS request by checking for blacklisting, sending the SMS, updating the request status,
+     * and logging the SMS if successful. The request details are taken from the envelope; only legacy
+     * ID-only envelopes are looked up in the database. A failed provider call is scheduled for a
+     * delayed retry through {@link SmsRetryService}.
+     * @param envelope The SMS envelope consumed from Kafka.
+     * @throws ProviderUnavailableException If no provider admitted the call. The request stays pending.
+     * @throws KafkaException If a retry could not be scheduled.
+     */
+    public void processSmsRequest(SmsEnvelope envelope) {
+        process(envelope, false);
     }
 
     /**
-     * Processes an SMS request by validating the request ID, checking for blacklisting,
-     * sending the SMS, updating the request status, and logging the SMS if successful.
-     * @param requestId The unique identifier of the SMS request.
+     * Processes an SMS request like {@link #processSmsRequest}, but hands its status update to
+     * {@link SmsStatusWriter} instead of waiting for it to be written, when write-behind is enabled. Used by
+     * consumers that commit each message's offset on its own once the returned future completes.
+     * @param envelope The SMS envelope consumed from Kafka.
+     * @return A future completing once the request's status has been written, or at once if there is nothing to write.
+     * It completes exceptionally if the writer is shut down before the status could be written.
+     * @throws ProviderUnavailableException If no provider admitted the call. The request stays pending.
+     * @throws KafkaException If a retry could not be scheduled.
      */
-    public void processSmsRequest(String requestId) {
+    public CompletableFuture<Void> processSmsRequestWriteBehind(SmsEnvelope envelope) {
+        return process(envelope, smsStatusWriter.isEnabled());
+    }
+
+    private CompletableFuture<Void> process(SmsEnvelope envelope, boolean writeBehind) {
+        CompletableFuture<Void> persisted = CompletableFuture.completedFuture(null);
+        String requestId = envelope.getRequestId();
 
         try {
-            // Fetch SMS request details from DB
-            SmsRequest smsRequest = smsService.getSmsRequestById(requestId);
-            String phoneNumber = smsRequest.getPhoneNumber();
-            String id = smsRequest.getId();
-            String message = smsRequest.getMessage();
-            log.info("Fetched SMS Request: [Request ID: {}, Phone Number: {}]", requestId, phoneNumber);
+            if (!envelope.isComplete()) {
+                // Legacy message carrying only the request ID, fetch SMS request details from DB
+                SmsRequest smsRequest = smsService.getSmsRequestById(requestId);
+                envelope = SmsEnvelope.from(smsRequest);
+                log.info("Fetched SMS Request: [Request ID: {}, Phone Number: {}]", requestId, envelope.getPhoneNumber());
+            }
+            String phoneNumber = envelope.getPhoneNumber();
+            String id = envelope.getRequestId();
+            String message = envelope.getMessage();
 
             // Check if the phone number is blacklisted
             if (blacklistService.isBlacklisted(phoneNumber)) {
                 log.warn("Phone number is blacklisted: [Phone Number: {}, Request ID: {}]", phoneNumber, requestId);
-                smsService.updateSmsRequestStatusWithFailure(requestId, "FAILED", "BLACKLISTED", "Phone number is blacklisted.");
-                return;
+                if (writeBehind) {
+                    return smsStatusWriter.submit(new SmsStatusUpdate(requestId, SmsStatus.FAILED, "BLACKLISTED", "Phone number is blacklisted."));
+                }
+                smsService.updateSmsRequestStatusWithFailure(requestId, SmsStatus.FAILED, "BLACKLISTED", "Phone number is blacklisted.");
+                return persisted;
             }
 
             // Send SMS using the third-party API
-            boolean success = thirdPartyApiService.sendSms(phoneNumber, id, message);
-            if (success) {
+            SmsSendResult result = send(message, phoneNumber, id).block();
+            if (result != null && result.isRejected()) {
+                log.warn("SMS provider unavailable, leaving request pending: [Request ID: {}, Reason: {}]", requestId, result.getError());
+                throw new ProviderUnavailableException(result.getError());
+            }
+            if (result != null && result.isSuccess()) {
                 log.info("SMS sent successfully: [Request ID: {}, Phone Number: {}]", requestId, phoneNumber);
-                smsService.updateSmsRequestStatus(requestId, "SENT");
+                if (writeBehind) {
+                    persisted = smsStatusWriter.submit(SmsStatusUpdate.of(requestId, SmsStatus.SENT));
+                } else {
+                    smsService.updateSmsRequestStatus(requestId, SmsStatus.SENT);
+                }
             } else {
                 log.error("Failed to send SMS: [Request ID: {}, Phone Number: {}]", requestId, phoneNumber);
-                smsService.updateSmsRequestStatusWithFailure(requestId, "FAILED", "API_ERROR", "Failed to send SMS.");
-                return;
+                Map<SmsEnvelope, String> failure = Collections.singletonMap(envelope, result != null ? result.getError() : null);
+                List<SmsStatusUpdate> statusUpdates = smsRetryService.scheduleRetries(failure);
+                if (writeBehind) {
+                    return smsStatusWriter.submit(statusUpdates);
+                }
+                smsService.updateSmsRequestStatuses(statusUpdates);
+                return persisted;
             }
 
+            smsAnalyticsService.recordSend(phoneNumber);
+
             // Save SMS log to Elasticsearch
             try {
                 smsLogService.saveSmsLog(requestId, phoneNumber, message);
-                log.info("Saved SMS log to Elasticsearch: [Request ID: {}, Phone Number: {}]", requestId, phoneNumber);
+                log.info("Queued SMS log for Elasticsearch: [Request ID: {}, Phone Number: {}]", requestId, phoneNumber);
             } catch (Exception e) {
                 log.error("Failed to save SMS log to Elasticsearch for Request ID: {}. Error: {}", requestId, e.getMessage(), e);
             }
 
+        } catch (ProviderUnavailableException | KafkaException e) {
+            // Not sent and not scheduled for a retry, let the container redeliver the message.
+            throw e;
         } catch (IllegalArgumentException e) {
             log.error("Invalid Request ID: {}", requestId, e);
         } catch (Exception e) {
@@ -82,5 +176,172 @@ public class SmsProcessingService {
         }
 
         log.info("Finished processing Kafka message for Request ID: {}", requestId);
+        return persisted;
+    }
+
+    /**
+     * Processes a batch of SMS requests as one unit: one query loading the batch's requests, one multi-key
+     * blacklist lookup, concurrent third-party API calls and batched status writes for the whole batch.
+     * Requests that a redelivered batch already processed, being no longer pending or having a retry scheduled, are
+     * skipped, as are requests that do not exist. Failures before any provider call is made are rethrown so that the caller does not
+     * commit the batch's offsets.
+     * <p>
+     * Once provider calls have been made, the batch must not be redelivered, or its recipients would get their SMS
+     * again. The statuses of the sent and blacklisted requests are written first, then failed calls are scheduled for
+     * delayed retries and messages that no provider admitted are republished to a retry topic without counting an
+     * attempt; each of these steps is retried every {@code persist-retry-backoff-ms} until it succeeds. A step still
+     * failing after {@code max.poll.interval.ms} costs the consumer its partitions, and requests whose status was not
+     * written yet are sent again by the consumer that takes the batch over.
+     * <p>
+     * If every provider is unavailable when the batch arrives, or none admitted any call of it, nothing was sent and
+     * the whole batch is returned for the caller to redeliver.
+     * @param envelopes The SMS envelopes consumed from Kafka in one poll.
+     * @return The envelopes to redeliver, either all of them or none.
+     */
+    public List<SmsEnvelope> processSmsBatch(List<SmsEnvelope> envelopes) {
+        if (thirdPartyApiService.isUnavailable()) {
+            log.warn("SMS provider unavailable, deferring batch of {} messages", envelopes.size());
+            return envelopes;
+        }
+        List<SmsEnvelope> resolved = resolveEnvelopes(envelopes);
+        if (resolved.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<String> phoneNumbers = new ArrayList<>(resolved.size());
+        for (SmsEnvelope envelope : resolved) {
+            phoneNumbers.add(envelope.getPhoneNumber());
+        }
+        Set<String> blacklisted = blacklistService.findBlacklisted(phoneNumbers);
+
+        List<SmsStatusUpdate> statusUpdates = new ArrayList<>(resolved.size());
+        List<SmsEnvelope> toSend = new ArrayList<>(resolved.size());
+        for (SmsEnvelope envelope : resolved) {
+            if (blacklisted.contains(envelope.getPhoneNumber())) {
+                log.warn("Phone number is blacklisted: [Phone Number: {}, Request ID: {}]", envelope.getPhoneNumber(), envelope.getRequestId());
+                statusUpdates.add(new SmsStatusUpdate(envelope.getRequestId(), SmsStatus.FAILED, "BLACKLISTED", "Phone number is blacklisted."));
+            } else {
+                toSend.add(envelope);
+            }
+        }
+
+        // Stay within the providers' current limits so that healthy providers do not shed part of the batch.
+        int concurrency = Math.max(1, Math.min(batchSendConcurrency, thirdPartyApiService.getAvailableConcurrency()));
+        List<Tuple2<SmsEnvelope, SmsSendResult>> results = Flux.fromIterable(toSend)
+                .flatMap(envelope -> send(envelope.getMessage(), envelope.getPhoneNumber(), envelope.getRequestId())
+                        .map(result -> Tuples.of(envelope, result)), concurrency)
+                .collectList()
+                .block();
+
+        List<SmsEnvelope> sent = new ArrayList<>(toSend.size());
+        List<SmsEnvelope> deferred = new ArrayList<>();
+        Map<SmsEnvelope, String> failures = new LinkedHashMap<>();
+        if (results != null) {
+            for (Tuple2<SmsEnvelope, SmsSendResult> result : results) {
+                SmsEnvelope envelope = result.getT1();
+                if (result.getT2().isRejected()) {
+                    deferred.add(envelope);
+                } else if (result.getT2().isSuccess()) {
+                    statusUpdates.add(SmsStatusUpdate.of(envelope.getRequestId(), SmsStatus.SENT));
+                    sent.add(envelope);
+                } else {
+                    log.error("Failed to send SMS: [Request ID: {}, Phone Number: {}]", envelope.getRequestId(), envelope.getPhoneNumber());
+                    failures.put(envelope, result.getT2().getError());
+                }
+            }
+        }
+        if (statusUpdates.isEmpty() && failures.isEmpty()) {
+            log.warn("SMS provider unavailable, deferring batch of {} messages", envelopes.size());
+            return envelopes;
+        }
+
+        // Provider calls were made, from here on nothing is rethrown.
+        if (!statusUpdates.isEmpty()) {
+            retryUntilDone("write SMS batch statuses", () -> smsService.updateSmsRequestStatuses(statusUpdates));
+        }
+        if (!failures.isEmpty()) {
+            List<SmsStatusUpdate> retryUpdates = retryUntilDone("schedule SMS retries", () -> smsRetryService.scheduleRetries(failures));
+            retryUntilDone("write SMS retry statuses", () -> smsService.updateSmsRequestStatuses(retryUpdates));
+        }
+        if (!deferred.isEmpty()) {
+            retryUntilDone("defer SMS messages", () -> {
+                smsRetryService.defer(deferred, batchDeferDelayMs);
+                return null;
+            });
+        }
+        log.info("Processed SMS batch: [Messages: {}, Sent: {}, Blacklisted: {}, Deferred: {}]",
+                resolved.size(), sent.size(), blacklisted.size(), deferred.size());
+
+        for (SmsEnvelope envelope : sent) {
+            smsAnalyticsService.recordSend(envelope.getPhoneNumber());
+            try {
+                smsLogService.saveSmsLog(envelope.getRequestId(), envelope.getPhoneNumber(), envelope.getMessage());
+            } catch (Exception e) {
+                log.error("Failed to save SMS log to Elasticsearch for Request ID: {}. Error: {}", envelope.getRequestId(), e.getMessage(), e);
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Runs a step of a batch that was already sent, retrying it every {@code persist-retry-backoff-ms} until it
+     * succeeds.
+     * @throws IllegalStateException If the thread is interrupted, e.g. because the container is stopping.
+     */
+    private <T> T retryUntilDone(String action, Supplier<T> step) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return step.get();
+            } catch (RuntimeException e) {
+                log.error("Failed to {} after sending the batch, retrying in {} ms: [Attempt: {}, Error: {}]",
+                        action, batchPersistRetryBackoffMs, attempt, e.getMessage(), e);
+            }
+            try {
+                Thread.sleep(batchPersistRetryBackoffMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while retrying to " + action, e);
+            }
+        }
+    }
+
+    /**
+     * Sends a single SMS, through the aggregation stage when it is enabled.
+     */
+    private Mono<SmsSendResult> send(String message, String phoneNumber, String requestId) {
+        if (smsAggregator.isEnabled()) {
+            return smsAggregator.submit(message, phoneNumber, requestId);
+        }
+        return thirdPartyApiService.sendSms(message, phoneNumber, requestId);
+    }
+
+    /**
+     * Loads the batch's requests with a single query, completes legacy ID-only envelopes from them and drops the
+     * envelopes whose request cannot be found, is no longer pending or already has a retry scheduled.
+     */
+    private List<SmsEnvelope> resolveEnvelopes(List<SmsEnvelope> envelopes) {
+        List<String> requestIds = new ArrayList<>(envelopes.size());
+        for (SmsEnvelope envelope : envelopes) {
+            requestIds.add(envelope.getRequestId());
+        }
+
+        Map<String, SmsRequest> smsRequests = new HashMap<>();
+        for (SmsRequest smsRequest : smsService.getSmsRequestsByIds(requestIds)) {
+            smsRequests.put(smsRequest.getId(), smsRequest);
+        }
+
+        List<SmsEnvelope> resolved = new ArrayList<>(envelopes.size());
+        for (SmsEnvelope envelope : envelopes) {
+            SmsRequest smsRequest = smsRequests.get(envelope.getRequestId());
+            if (smsRequest == null) {
+                log.error("Invalid Request ID: {}", envelope.getRequestId());
+            } else if (smsRequest.getStatus() != SmsStatus.PENDING || smsRequest.getAttempts() > envelope.getAttempt()) {
+                log.warn("Skipping SMS request that was already processed: [Request ID: {}, Status: {}, Attempts: {}]",
+                        envelope.getRequestId(), smsRequest.getStatus(), smsRequest.getAttempts());
+            } else {
+                resolved.add(envelope.isComplete() ? envelope : SmsEnvelope.from(smsRequest));
+            }
+        }
+        return resolved;
     }
 }
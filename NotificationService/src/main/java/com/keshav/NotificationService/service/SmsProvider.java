@@ -0,0 +1,28 @@
+package com.keshav.NotificationService.service;
+
+import com.keshav.NotificationService.dto.SmsSendResult;
+import com.keshav.NotificationService.dto.ThirdPartyApiDestination;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A backend able to deliver SMS messages. Backends are selected per call by {@link SmsProviderRouter}.
+ */
+public interface SmsProvider {
+
+    /**
+     * @return The name identifying this provider in configuration, logs and metrics.
+     */
+    String getName();
+
+    /**
+     * Sends the same SMS message to several destinations in a single call.
+     * @param message The message content to be sent.
+     * @param destinations The recipients, each with its phone number and correlation ID.
+     * @return A {@link Mono} emitting the outcome for each destination keyed by correlation ID. It never errors;
+     *         if the call itself fails, every destination is reported as failed.
+     */
+    Mono<Map<String, SmsSendResult>> sendBulk(String message, List<ThirdPartyApiDestination> destinations);
+}
@@ -0,0 +1,300 @@
+package com.keshav.NotificationService.service;
+
+import com.keshav.NotificationService.dto.SmsSendResult;
+import com.keshav.NotificationService.dto.ThirdPartyApiDestination;
+import com.keshav.NotificationService.utils.ProviderGate;
+import com.keshav.NotificationService.utils.RateLimiter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Routes each provider call to one of several {@link SmsProvider} backends.
+ * <p>
+ * Every provider has a weight derived from its recent p99 latency and error rate, refreshed periodically. The first
+ * provider for a call is picked at random in proportion to these weights, so that faster and healthier providers
+ * carry more traffic while the others keep receiving enough to measure them. The remaining providers are tried in
+ * order of weight when a provider's gate or throughput cap does not admit the call, or when the call failed before
+ * reaching the provider. A call that may have reached the provider, e.g. one that timed out waiting for the response,
+ * is reported as failed without trying another provider, so that the message is never sent twice.
+ */
+public class SmsProviderRouter {
+    private static final Logger log = LoggerFactory.getLogger(SmsProviderRouter.class);
+
+    // Latencies below this are treated as equal, so that a provider without samples does not take all the traffic.
+    private static final double MIN_LATENCY_MS = 10;
+    // Number of recent calls per provider the p99 latency is computed from.
+    private static final int LATENCY_WINDOW = 512;
+
+    private final List<Route> routes;
+    private final DoubleSupplier random;
+
+    /**
+     * Constructor for SmsProviderRouter.
+     * @param routes The providers to route between.
+     */
+    public SmsProviderRouter(List<Route> routes) {
+        this(routes, () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    SmsProviderRouter(List<Route> routes, DoubleSupplier random) {
+        if (routes.isEmpty()) {
+            throw new IllegalArgumentException("At least one SMS provider must be configured");
+        }
+        this.routes = routes;
+        this.random = random;
+    }
+
+    /**
+     * Sends the same SMS message to several destinations through one provider, failing over to the next provider
+     * if the call could not reach it.
+     * @param message The message content to be sent.
+     * @param destinations The recipients, each with its phone number and correlation ID.
+     * @return A {@link Mono} emitting the outcome for each destination keyed by correlation ID. If no provider
+     *         admitted the call, every destination is reported as rejected.
+     */
+    public Mono<Map<String, SmsSendResult>> sendBulk(String message, List<ThirdPartyApiDestination> destinations) {
+        return Mono.defer(() -> attempt(message, destinations, candidates(), 0, null));
+    }
+
+    private Mono<Map<String, SmsSendResult>> attempt(String message, List<ThirdPartyApiDestination> destinations,
+                                                     List<Route> candidates, int from,
+                                                     Map<String, SmsSendResult> lastFailure) {
+        for (int i = from; i < candidates.size(); i++) {
+            Route route = candidates.get(i);
+            if (!route.tryAcquire(destinations.size())) {
+                continue;
+            }
+            int next = i + 1;
+            return route.send(message, destinations).flatMap(results -> {
+                if (outcomeOf(results).isUnreachable() && next < candidates.size()) {
+                    log.warn("SMS provider {} failed, failing over: [Destinations: {}]", route.getName(), destinations.size());
+                    return attempt(message, destinations, candidates, next, results);
+                }
+                return Mono.just(results);
+            });
+        }
+        return Mono.just(lastFailure != null ? lastFailure : rejected(destinations));
+    }
+
+    /**
+     * Orders the providers for one call: a weighted random pick first, then the others by descending weight.
+     */
+    List<Route> candidates() {
+        List<Route> ordered = new ArrayList<>(routes);
+        if (ordered.size() == 1) {
+            return ordered;
+        }
+        ordered.sort(Comparator.comparingDouble(Route::getWeight).reversed());
+
+        double total = 0;
+        for (Route route : ordered) {
+            total += route.getWeight();
+        }
+        double pick = random.getAsDouble() * total;
+        for (int i = 0; i < ordered.size(); i++) {
+            pick -= ordered.get(i).getWeight();
+            if (pick < 0) {
+                ordered.add(0, ordered.remove(i));
+                break;
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Recomputes each provider's p99 latency and weight.
+     */
+    @Scheduled(fixedDelayString = "${notification.provider.routing.stats-refresh-ms:1000}")
+    public void refreshStats() {
+        for (Route route : routes) {
+            route.refreshStats();
+        }
+    }
+
+    /**
+     * @return {@code true} if every provider's circuit is open.
+     */
+    public boolean isUnavailable() {
+        for (Route route : routes) {
+            if (!route.gate.isOpen()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of calls the providers would currently admit, ignoring throughput caps.
+     */
+    public int getAvailableConcurrency() {
+        int available = 0;
+        for (Route route : routes) {
+            available += route.gate.getAvailable();
+        }
+        return available;
+    }
+
+    public List<Route> getRoutes() {
+        return Collections.unmodifiableList(routes);
+    }
+
+    /**
+     * Reduces the per-destination results of one call to the outcome judged by the provider gate: a provider error
+     * if the call itself failed, otherwise the call's latency.
+     */
+    private static SmsSendResult outcomeOf(Map<String, SmsSendResult> results) {
+        SmsSendResult outcome = null;
+        for (SmsSendResult result : results.values()) {
+            if (result.isProviderError()) {
+                return result;
+            }
+            outcome = result;
+        }
+        return outcome != null ? outcome : SmsSendResult.sent(0);
+    }
+
+    private static Map<String, SmsSendResult> rejected(List<ThirdPartyApiDestination> destinations) {
+        SmsSendResult rejected = SmsSendResult.rejected("No SMS provider available");
+        Map<String, SmsSendResult> results = new HashMap<>();
+        for (ThirdPartyApiDestination destination : destinations) {
+            results.put(destination.getCorrelationId(), rejected);
+        }
+        return results;
+    }
+
+    /**
+     * A provider together with its gate, throughput cap and latency statistics.
+     */
+    public static class Route {
+        private final SmsProvider provider;
+        private final ProviderGate gate;
+        private final RateLimiter rateLimiter;
+        private final Timer latency;
+        private final long[] recentLatencies = new long[LATENCY_WINDOW];
+        private int recentIndex;
+        private int recentCount;
+        private volatile double p99Ms;
+        private volatile double weight;
+
+        /**
+         * Constructor for Route. Metrics are tagged with the provider's name.
+         * @param provider The provider.
+         * @param gate The provider's gate.
+         * @param maxRatePerSecond Maximum number of messages per second sent to the provider, or 0 for no cap.
+         * @param meterRegistry Registry where the provider's metrics are exposed.
+         */
+        public Route(SmsProvider provider, ProviderGate gate, int maxRatePerSecond, MeterRegistry meterRegistry) {
+            this.provider = provider;
+            this.gate = gate;
+            this.rateLimiter = maxRatePerSecond > 0 ? new RateLimiter(maxRatePerSecond) : null;
+            this.latency = Timer.builder("sms.provider.latency")
+                    .description("Latency of SMS provider calls")
+                    .tag("provider", provider.getName())
+                    .publishPercentiles(0.99)
+                    .distributionStatisticExpiry(Duration.ofMinutes(1))
+                    .register(meterRegistry);
+
+            Gauge.builder("sms.provider.gate.limit", gate, ProviderGate::getLimit)
+                    .description("Current concurrency limit of SMS provider calls")
+                    .tag("provider", provider.getName())
+                    .register(meterRegistry);
+            Gauge.builder("sms.provider.gate.in-flight", gate, ProviderGate::getInFlight)
+                    .description("SMS provider calls admitted and not yet completed")
+                    .tag("provider", provider.getName())
+                    .register(meterRegistry);
+            Gauge.builder("sms.provider.gate.state", gate, g -> g.getState().ordinal())
+                    .description("Circuit state of the SMS provider: 0 closed, 1 open, 2 half-open")
+                    .tag("provider", provider.getName())
+                    .register(meterRegistry);
+            Gauge.builder("sms.provider.weight", this, Route::getWeight)
+                    .description("Routing weight of the SMS provider")
+                    .tag("provider", provider.getName())
+                    .register(meterRegistry);
+            refreshStats();
+        }
+
+        public String getName() {
+            return provider.getName();
+        }
+
+        public ProviderGate getGate() {
+            return gate;
+        }
+
+        public double getP99Ms() {
+            return p99Ms;
+        }
+
+        public double getWeight() {
+            return weight;
+        }
+
+        private boolean tryAcquire(int messages) {
+            if (!gate.tryAcquire()) {
+                return false;
+            }
+            if (rateLimiter != null && !rateLimiter.tryAcquire(messages)) {
+                gate.release();
+                return false;
+            }
+            return true;
+        }
+
+        private Mono<Map<String, SmsSendResult>> send(String message, List<ThirdPartyApiDestination> destinations) {
+            AtomicBoolean done = new AtomicBoolean();
+            return provider.sendBulk(message, destinations)
+                    .doOnNext(results -> {
+                        if (done.compareAndSet(false, true)) {
+                            SmsSendResult outcome = outcomeOf(results);
+                            recordLatency(outcome.getLatencyMs());
+                            gate.onResult(outcome);
+                        }
+                    })
+                    .doFinally(signal -> {
+                        // Cancelled or empty, release the permit without judging the provider.
+                        if (done.compareAndSet(false, true)) {
+                            gate.release();
+                        }
+                    });
+        }
+
+        private void recordLatency(long latencyMs) {
+            latency.record(latencyMs, TimeUnit.MILLISECONDS);
+            synchronized (recentLatencies) {
+                recentLatencies[recentIndex] = latencyMs;
+                recentIndex = (recentIndex + 1) % recentLatencies.length;
+                recentCount = Math.min(recentCount + 1, recentLatencies.length);
+            }
+        }
+
+        void refreshStats() {
+            long[] latencies;
+            synchronized (recentLatencies) {
+                latencies = Arrays.copyOf(recentLatencies, recentCount);
+            }
+            if (latencies.length > 0) {
+                Arrays.sort(latencies);
+                p99Ms = latencies[(int) Math.ceil(latencies.length * 0.99) - 1];
+            }
+            weight = gate.isOpen() ? 0 : (1 - gate.getErrorRate()) / Math.max(MIN_LATENCY_MS, p99Ms);
+        }
+    }
+}
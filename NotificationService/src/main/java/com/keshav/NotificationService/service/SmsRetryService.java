@@ -0,0 +1,176 @@
+package com.keshav.NotificationService.service;
+
+import com.keshav.NotificationService.dto.SmsEnvelope;
+import com.keshav.NotificationService.dto.SmsStatusUpdate;
+import com.keshav.NotificationService.model.SmsStatus;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Service;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Schedules SMS requests whose provider call failed for a delayed retry.
+ * <p>
+ * Retries are published to one of three retry topics with fixed nominal delays (10s, 1m and 10m), so that waiting
+ * for a retry never holds up the main topic's partitions. The actual delay of each attempt grows exponentially with
+ * jitter, and is carried in the envelope as a due time; the retry topic is the one with the longest nominal delay
+ * not exceeding it. Once the maximum number of attempts is reached the request is published to the dead-letter topic
+ * and marked as failed.
+ */
+@Service
+public class SmsRetryService {
+    private static final Logger log = LoggerFactory.getLogger(SmsRetryService.class);
+
+    public static final String RETRY_TOPIC_10S = SmsService.SEND_SMS_TOPIC + ".retry-10s";
+    public static final String RETRY_TOPIC_1M = SmsService.SEND_SMS_TOPIC + ".retry-1m";
+    public static final String RETRY_TOPIC_10M = SmsService.SEND_SMS_TOPIC + ".retry-10m";
+    public static final String DEAD_LETTER_TOPIC = SmsService.SEND_SMS_TOPIC + ".dlt";
+    public static final String ERROR_HEADER = "sms-error";
+
+    private static final String[] RETRY_TOPICS = {RETRY_TOPIC_10S, RETRY_TOPIC_1M, RETRY_TOPIC_10M};
+    private static final long[] RETRY_TOPIC_DELAYS_MS = {10_000, 60_000, 600_000};
+
+    private final KafkaTemplate<String, SmsEnvelope> kafkaTemplate;
+    private final int maxAttempts;
+    private final long initialDelayMs;
+    private final double multiplier;
+    private final long maxDelayMs;
+    private final double jitter;
+    private final long sendTimeoutMs;
+
+    /**
+     * Constructor for SmsRetryService.
+     * @param kafkaTemplate Template used to publish retries and dead letters.
+     * @param maxAttempts Number of provider calls after which a request is dead-lettered.
+     * @param initialDelayMs Delay before the first retry.
+     * @param multiplier Factor applied to the delay for each further retry.
+     * @param maxDelayMs Upper bound of the delay.
+     * @param jitter Fraction by which each delay is randomly shortened or lengthened.
+     * @param sendTimeoutMs Maximum time to wait for the broker to acknowledge a retry.
+     */
+    public SmsRetryService(KafkaTemplate<String, SmsEnvelope> kafkaTemplate,
+                           @Value("${notification.sms.retry.max-attempts:4}") int maxAttempts,
+                           @Value("${notification.sms.retry.initial-delay-ms:10000}") long initialDelayMs,
+                           @Value("${notification.sms.retry.multiplier:6}") double multiplier,
+                           @Value("${notification.sms.retry.max-delay-ms:600000}") long maxDelayMs,
+                           @Value("${notification.sms.retry.jitter:0.2}") double jitter,
+                           @Value("${notification.sms.retry.send-timeout-ms:10000}") long sendTimeoutMs) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.maxAttempts = maxAttempts;
+        this.initialDelayMs = initialDelayMs;
+        this.multiplier = multiplier;
+        this.maxDelayMs = maxDelayMs;
+        this.jitter = jitter;
+        this.sendTimeoutMs = sendTimeoutMs;
+    }
+
+    /**
+     * Publishes a retry, or a dead letter once the attempts are exhausted, for each failed request and waits until
+     * the broker has acknowledged all of them.
+     * @param failures The failed envelopes with the error of their last provider call.
+     * @return The status updates to persist for the failed requests.
+     * @throws KafkaException If any retry or dead letter could not be published.
+     */
+    public List<SmsStatusUpdate> scheduleRetries(Map<SmsEnvelope, String> failures) {
+        List<SmsStatusUpdate> statusUpdates = new ArrayList<>(failures.size());
+        List<ListenableFuture<SendResult<String, SmsEnvelope>>> futures = new ArrayList<>(failures.size());
+        long now = System.currentTimeMillis();
+
+        for (Map.Entry<SmsEnvelope, String> failure : failures.entrySet()) {
+            SmsEnvelope envelope = failure.getKey();
+            String error = failure.getValue();
+            int attempts = envelope.getAttempt() + 1;
+            if (attempts >= maxAttempts) {
+                log.error("SMS attempts exhausted, dead-lettering: [Request ID: {}, Attempts: {}]", envelope.getRequestId(), attempts);
+                ProducerRecord<String, SmsEnvelope> deadLetter =
+                        new ProducerRecord<>(DEAD_LETTER_TOPIC, envelope.getRequestId(), envelope.retry(attempts, now));
+                if (error != null) {
+                    deadLetter.headers().add(ERROR_HEADER, error.getBytes(StandardCharsets.UTF_8));
+                }
+                futures.add(kafkaTemplate.send(deadLetter));
+                statusUpdates.add(new SmsStatusUpdate(envelope.getRequestId(), SmsStatus.FAILED, "API_ERROR",
+                        "Failed to send SMS after " + attempts + " attempts.", attempts));
+            } else {
+                long delayMs = backoffDelayMs(attempts);
+                String topic = retryTopicFor(delayMs);
+                log.warn("Scheduling SMS retry: [Request ID: {}, Attempt: {}, Delay: {} ms, Topic: {}]",
+                        envelope.getRequestId(), attempts, delayMs, topic);
+                futures.add(kafkaTemplate.send(topic, envelope.getRequestId(), envelope.retry(attempts, now + delayMs)));
+                statusUpdates.add(new SmsStatusUpdate(envelope.getRequestId(), SmsStatus.PENDING, "API_ERROR",
+                        "Failed to send SMS, retry " + attempts + " scheduled.", attempts));
+            }
+        }
+        awaitAcknowledgments(futures);
+        return statusUpdates;
+    }
+
+    /**
+     * Publishes requests that were not sent because no provider admitted the call to the retry topics, without
+     * counting an attempt, and waits until the broker has acknowledged all of them. Lets a batch be committed without
+     * redelivering the messages of it that were sent.
+     * @param envelopes The deferred envelopes.
+     * @param delayMs Delay before they are processed again.
+     * @throws KafkaException If any of them could not be published.
+     */
+    public void defer(List<SmsEnvelope> envelopes, long delayMs) {
+        List<ListenableFuture<SendResult<String, SmsEnvelope>>> futures = new ArrayList<>(envelopes.size());
+        long dueAt = System.currentTimeMillis() + delayMs;
+        String topic = retryTopicFor(delayMs);
+        for (SmsEnvelope envelope : envelopes) {
+            futures.add(kafkaTemplate.send(topic, envelope.getRequestId(), envelope.retry(envelope.getAttempt(), dueAt)));
+        }
+        log.warn("Deferred {} SMS requests to {} in {} ms", envelopes.size(), topic, delayMs);
+        awaitAcknowledgments(futures);
+    }
+
+    private void awaitAcknowledgments(List<ListenableFuture<SendResult<String, SmsEnvelope>>> futures) {
+        kafkaTemplate.flush();
+
+        for (ListenableFuture<SendResult<String, SmsEnvelope>> future : futures) {
+            try {
+                future.get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new KafkaException("Interrupted while scheduling SMS retries", e);
+            } catch (ExecutionException | TimeoutException e) {
+                throw new KafkaException("Failed to schedule SMS retries", e);
+            }
+        }
+    }
+
+    /**
+     * @param attempts The number of failed attempts so far, at least 1.
+     * @return The delay before the next attempt, with jitter applied.
+     */
+    long backoffDelayMs(int attempts) {
+        double delay = Math.min(maxDelayMs, initialDelayMs * Math.pow(multiplier, attempts - 1));
+        double factor = 1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return (long) (delay * factor);
+    }
+
+    /**
+     * @return The retry topic with the longest nominal delay not exceeding the given delay.
+     */
+    static String retryTopicFor(long delayMs) {
+        for (int i = RETRY_TOPICS.length - 1; i > 0; i--) {
+            if (delayMs >= RETRY_TOPIC_DELAYS_MS[i]) {
+                return RETRY_TOPICS[i];
+            }
+        }
+        return RETRY_TOPICS[0];
+    }
+}
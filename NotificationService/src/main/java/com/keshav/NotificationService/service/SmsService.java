@@ -1,69 +1,109 @@
 package com.keshav.NotificationService.service;
 
 import com.keshav.NotificationService.dto.SmsRequestDto;
+import com.keshav.NotificationService.dto.SmsStatusUpdate;
+import com.keshav.NotificationService.model.SmsOutboxEvent;
 import com.keshav.NotificationService.model.SmsRequest;
+import com.keshav.NotificationService.model.SmsStatus;
+import com.keshav.NotificationService.repository.SmsOutboxRepository;
 import com.keshav.NotificationService.repository.SmsRequestRepository;
+import com.keshav.NotificationService.utils.UuidV7Generator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
-import java.util.UUID;
 
 /**
  * Service class responsible for handling SMS requests.
  * This service creates, updates, and processes SMS requests by interacting with the
- * `SmsRequestRepository` for persistence and sending messages to Kafka for notification processing.
- * Methods include creating SMS requests, handling failures in the Kafka message sending process, and updating the status of the SMS requests.
+ * `SmsRequestRepository` for persistence. New requests are queued for Kafka through the
+ * `sms_outbox` table, which {@link SmsOutboxRelay} drains in the background. Request IDs are time-ordered
+ * UUIDs, so that inserts are appended to the primary key indices.
+ * Methods include creating SMS requests and updating the status of the SMS requests.
  */
 @Service
 public class SmsService {
     private static final Logger log = LoggerFactory.getLogger(SmsService.class);
 
+    public static final String SEND_SMS_TOPIC = "notification.send_sms";
+
     private final SmsRequestRepository smsRequestRepository;
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final SmsOutboxRepository smsOutboxRepository;
+    private final UuidV7Generator requestIdGenerator = new UuidV7Generator();
 
     /**
      * Constructor to initialize the SmsService with necessary dependencies.
      * @param smsRequestRepository The repository to save and retrieve SMS requests.
-     * @param kafkaTemplate The Kafka template to send messages to the notification service.
+     * @param smsOutboxRepository The repository for outbox rows that are relayed to Kafka.
      */
-    public SmsService(SmsRequestRepository smsRequestRepository, KafkaTemplate<String, String> kafkaTemplate) {
+    public SmsService(SmsRequestRepository smsRequestRepository, SmsOutboxRepository smsOutboxRepository) {
         this.smsRequestRepository = smsRequestRepository;
-        this.kafkaTemplate = kafkaTemplate;
+        this.smsOutboxRepository = smsOutboxRepository;
     }
 
     /**
-     * Sends an SMS request by creating a new SMS request record, saving it to the repository,
-     * and sending the request ID to Kafka for processing.
+     * Sends an SMS request by creating a new SMS request record and an outbox row for it
+     * in the same transaction. The outbox row is published to Kafka by {@link SmsOutboxRelay},
+     * so the broker is not on the request path.
      * @param smsRequestDto The DTO containing information for the SMS request (phone number and message).
      * @return The unique request ID for the SMS request.
      */
+    @Transactional
     public String sendSms(SmsRequestDto smsRequestDto) {
-        String requestId = UUID.randomUUID().toString();
+        String requestId = requestIdGenerator.next().toString();
 
         log.info("Creating a new SMS request: [Request ID: {}, PhoneNumber: {}]", requestId, smsRequestDto.getPhoneNumber());
-        SmsRequest smsRequest = new SmsRequest();
-        smsRequest.setId(requestId);
-        smsRequest.setPhoneNumber(smsRequestDto.getPhoneNumber());
-        smsRequest.setMessage(smsRequestDto.getMessage());
-        smsRequest.setStatus("PENDING");
+        SmsRequest smsRequest = createSmsRequest(requestId, smsRequestDto);
         smsRequestRepository.save(smsRequest);
+        smsOutboxRepository.save(createOutboxEvent(requestId));
         log.info("SMS request saved with status 'PENDING': [Request ID: {}]", requestId);
 
-        try {
-            kafkaTemplate.send("notification.send_sms", requestId);
-            log.info("Message sent to Kafka for Request ID: {}", requestId);
-        } catch (Exception e) {
-            String failureCode = "KAFKA_FAILURE";
-            String failureComments = "Failed to publish message to Kafka.";
-            log.error("Kafka Publish Error for Request ID: {} - {}", requestId, e.getMessage(), e);
+        return requestId;
+    }
 
-            updateSmsRequestStatusWithFailure(requestId, "FAILED", failureCode, failureComments);
+    /**
+     * Sends a batch of SMS requests. All requests and their outbox rows are inserted in JDBC batches
+     * within one transaction; the relay then publishes them to Kafka in order.
+     * @param smsRequestDtos The validated DTOs to be sent, in request order.
+     * @return The request IDs, in the same order as the given DTOs.
+     */
+    @Transactional
+    public List<String> sendSmsBatch(List<SmsRequestDto> smsRequestDtos) {
+        List<SmsRequest> smsRequests = new ArrayList<>(smsRequestDtos.size());
+        List<SmsOutboxEvent> outboxEvents = new ArrayList<>(smsRequestDtos.size());
+        List<String> requestIds = new ArrayList<>(smsRequestDtos.size());
+        for (SmsRequestDto smsRequestDto : smsRequestDtos) {
+            String requestId = requestIdGenerator.next().toString();
+            smsRequests.add(createSmsRequest(requestId, smsRequestDto));
+            outboxEvents.add(createOutboxEvent(requestId));
+            requestIds.add(requestId);
         }
+        smsRequestRepository.saveAll(smsRequests);
+        smsOutboxRepository.saveAll(outboxEvents);
+        log.info("Batch of {} SMS requests saved with status 'PENDING'", smsRequests.size());
 
-        return requestId;
+        return requestIds;
+    }
+
+    private SmsRequest createSmsRequest(String requestId, SmsRequestDto smsRequestDto) {
+        SmsRequest smsRequest = new SmsRequest();
+        smsRequest.setId(requestId);
+        smsRequest.setPhoneNumber(smsRequestDto.getPhoneNumber());
+        smsRequest.setMessage(smsRequestDto.getMessage());
+        smsRequest.setStatus(SmsStatus.PENDING);
+        return smsRequest;
+    }
+
+    private SmsOutboxEvent createOutboxEvent(String requestId) {
+        SmsOutboxEvent outboxEvent = new SmsOutboxEvent();
+        outboxEvent.setRequestId(requestId);
+        outboxEvent.setTopic(SEND_SMS_TOPIC);
+        return outboxEvent;
     }
 
     /**
@@ -81,34 +121,67 @@ public class SmsService {
     }
 
     /**
-     * Updates the status of an SMS request.
+     * Retrieves the SMS requests with the given IDs in a single query. IDs without a matching request are ignored.
+     * @param requestIds The unique identifiers of the SMS requests.
+     * @return The SMS requests found, in no particular order.
+     */
+    public List<SmsRequest> getSmsRequestsByIds(Collection<String> requestIds) {
+        return smsRequestRepository.findAllById(requestIds);
+    }
+
+    /**
+     * Moves an SMS request to a new status, clearing its failure details, with one conditional UPDATE.
      * @param requestId The unique identifier of the SMS request.
      * @param status    The new status to set for the SMS request.
+     * @return Whether the status was updated; {@code false} if the request does not exist or its current status may
+     * not move to the new one.
      */
-    public void updateSmsRequestStatus(String requestId, String status) {
-        SmsRequest smsRequest = getSmsRequestById(requestId);
-
-        smsRequest.setStatus(status);
-        smsRequestRepository.save(smsRequest);
-        log.info("Successfully updated status to '{}': [Request ID: {}]", status, requestId);
+    public boolean updateSmsRequestStatus(String requestId, SmsStatus status) {
+        return updateSmsRequestStatusWithFailure(requestId, status, null, null);
     }
 
     /**
-     * Updates the status and includes failure details for an SMS request.
+     * Moves an SMS request to a new status and sets its failure details, with one conditional UPDATE.
      * @param requestId The unique identifier of the SMS request.
      * @param status The new status to set.
      * @param failureCode The failure code that describes the failure type.
      * @param failureComments Additional comments regarding the failure.
+     * @return Whether the status was updated; {@code false} if the request does not exist or its current status may
+     * not move to the new one.
      */
-    public void updateSmsRequestStatusWithFailure(String requestId, String status, String failureCode, String failureComments) {
-        SmsRequest smsRequest = getSmsRequestById(requestId);
-
-        smsRequest.setStatus(status);
-        smsRequest.setFailureCode(failureCode);
-        smsRequest.setFailureComments(failureComments);
-        smsRequestRepository.save(smsRequest);
-        log.info("Successfully updated SMS request with failure details: [Request ID: {}, Status: {}, FailureCode: {}, Comments: {}]",
-                requestId, status, failureCode, failureComments);
+    public boolean updateSmsRequestStatusWithFailure(String requestId, SmsStatus status, String failureCode, String failureComments) {
+        if (!smsRequestRepository.transitionStatus(requestId, status, failureCode, failureComments)) {
+            log.warn("Skipped status update to '{}', the SMS request does not exist or is not in {}: [Request ID: {}]",
+                    status, status.getAllowedPredecessors(), requestId);
+            return false;
+        }
+        log.info("Successfully updated status to '{}': [Request ID: {}, FailureCode: {}, Comments: {}]",
+                status, requestId, failureCode, failureComments);
+        return true;
     }
 
+    /**
+     * Applies a list of status updates, including failure details where present, as batched conditional writes.
+     * Updates not allowed from a request's current status are skipped.
+     * @param statusUpdates The status updates to apply.
+     * @return The number of updates applied, counting those the driver did not report on as applied.
+     */
+    @Transactional
+    public int updateSmsRequestStatuses(List<SmsStatusUpdate> statusUpdates) {
+        if (statusUpdates.isEmpty()) {
+            return 0;
+        }
+        int applied = 0;
+        for (int rows : smsRequestRepository.batchUpdateStatus(statusUpdates)) {
+            if (rows != 0) {
+                applied++;
+            }
+        }
+        if (applied < statusUpdates.size()) {
+            log.warn("Skipped {} of {} SMS request status updates not allowed from the current status",
+                    statusUpdates.size() - applied, statusUpdates.size());
+        }
+        log.info("Successfully updated status of {} SMS requests", applied);
+        return applied;
+    }
 }
@@ -0,0 +1,396 @@
+package com.keshav.NotificationService.service;
+
+import com.keshav.NotificationService.dto.SmsStatusUpdate;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind buffer for SMS request status updates, so that consumers do not wait for MySQL on every message.
+ * <p>
+ * Updates are buffered per request ID, and a later update to a buffered request is merged into it the way the two
+ * conditional writes would have applied one after the other. A background flusher writes the buffer as batched
+ * updates through {@link SmsService#updateSmsRequestStatuses} once {@code batch-size} requests are buffered, or
+ * {@code flush-interval-ms} after the oldest one was buffered. Each update's future completes once the write that
+ * carried it has succeeded, so the caller can commit the message's offset only then. A failed write is retried after
+ * {@code retry-backoff-ms} and its futures stay incomplete until it succeeds. At most {@code max-pending} requests are
+ * buffered; further callers wait for the flusher to make room.
+ */
+@Service
+public class SmsStatusWriter {
+    private static final Logger log = LoggerFactory.getLogger(SmsStatusWriter.class);
+
+    private final SmsService smsService;
+    private final boolean enabled;
+    private final int maxPending;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long retryBackoffMs;
+    private final ExecutorService flusher;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition ready = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final AtomicLong buffered = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+
+    private LinkedHashMap<String, PendingUpdate> pending = new LinkedHashMap<>();
+    private volatile boolean started;
+    private volatile boolean closed;
+
+    /**
+     * Constructor for SmsStatusWriter.
+     * @param smsService Service applying the batched status updates.
+     * @param meterRegistry Registry where the buffer counts and size are exposed.
+     * @param enabled Whether consumers should buffer their status updates; if not, they write them directly.
+     * @param maxPending Maximum number of requests with a buffered update.
+     * @param batchSize Number of buffered requests that triggers a flush, and the maximum written in one batch.
+     * @param flushIntervalMs Longest time an update stays buffered before it is flushed.
+     * @param retryBackoffMs Delay before a failed write is retried.
+     */
+    public SmsStatusWriter(SmsService smsService, MeterRegistry meterRegistry,
+                           @Value("${notification.sms.status.write-behind.enabled:true}") boolean enabled,
+                           @Value("${notification.sms.status.write-behind.max-pending:5000}") int maxPending,
+                           @Value("${notification.sms.status.write-behind.batch-size:500}") int batchSize,
+                           @Value("${notification.sms.status.write-behind.flush-interval-ms:50}") long flushIntervalMs,
+                           @Value("${notification.sms.status.write-behind.retry-backoff-ms:1000}") long retryBackoffMs) {
+        this.smsService = smsService;
+        this.enabled = enabled;
+        this.maxPending = maxPending;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.retryBackoffMs = retryBackoffMs;
+        this.flusher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sms-status-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        FunctionCounter.builder("sms.status.write-behind.updates", buffered, AtomicLong::get)
+                .description("SMS status updates buffered for a later write")
+                .tag("result", "buffered")
+                .register(meterRegistry);
+        FunctionCounter.builder("sms.status.write-behind.updates", coalesced, AtomicLong::get)
+                .description("SMS status updates merged into an update already buffered for the same request")
+                .tag("result", "coalesced")
+                .register(meterRegistry);
+        FunctionCounter.builder("sms.status.write-behind.updates", written, AtomicLong::get)
+                .description("Buffered SMS status updates written to the database")
+                .tag("result", "written")
+                .register(meterRegistry);
+        Gauge.builder("sms.status.write-behind.pending", this, SmsStatusWriter::getPending)
+                .description("SMS requests with a status update waiting to be written")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        started = true;
+        flusher.execute(this::run);
+    }
+
+    /**
+     * @return Whether status updates are buffered.
+     */
+    public boolean isEnabled() {
+        return started && !closed;
+    }
+
+    /**
+     * Buffers status updates, waiting for room if the buffer is full. Once the writer has been shut down the
+     * updates are written directly instead.
+     * @param statusUpdates The status updates to buffer.
+     * @return A future completing once every update has been written.
+     */
+    public CompletableFuture<Void> submit(List<SmsStatusUpdate> statusUpdates) {
+        if (closed) {
+            smsService.updateSmsRequestStatuses(statusUpdates);
+            return CompletableFuture.completedFuture(null);
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>(statusUpdates.size());
+        lock.lock();
+        try {
+            for (SmsStatusUpdate statusUpdate : statusUpdates) {
+                futures.add(add(statusUpdate));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return futures.size() == 1 ? futures.get(0) : CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Buffers a status update, see {@link #submit(List)}.
+     */
+    public CompletableFuture<Void> submit(SmsStatusUpdate statusUpdate) {
+        return submit(Collections.singletonList(statusUpdate));
+    }
+
+    private CompletableFuture<Void> add(SmsStatusUpdate statusUpdate) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        PendingUpdate existing = pending.get(statusUpdate.getRequestId());
+        if (existing != null) {
+            existing.merge(statusUpdate, future);
+            coalesced.incrementAndGet();
+            return future;
+        }
+
+        while (pending.size() >= maxPending && !closed) {
+            try {
+                notFull.await();
+            } catch (InterruptedException e) {
+                // Admit the update over the limit rather than lose it.
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        // The flusher may have taken the request's earlier update while this caller waited.
+        existing = pending.get(statusUpdate.getRequestId());
+        if (existing != null) {
+            existing.merge(statusUpdate, future);
+            coalesced.incrementAndGet();
+            return future;
+        }
+        pending.put(statusUpdate.getRequestId(), new PendingUpdate(statusUpdate, future, System.nanoTime()));
+        buffered.incrementAndGet();
+        if (pending.size() == 1 || pending.size() >= batchSize) {
+            ready.signal();
+        }
+        return future;
+    }
+
+    private void run() {
+        while (!closed) {
+            List<PendingUpdate> batch;
+            try {
+                batch = awaitBatch();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            if (!write(batch)) {
+                requeue(batch);
+                try {
+                    Thread.sleep(retryBackoffMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until a batch is full or its oldest update is due, and takes it out of the buffer.
+     */
+    private List<PendingUpdate> awaitBatch() throws InterruptedException {
+        lock.lock();
+        try {
+            while (!closed && pending.size() < batchSize) {
+                if (pending.isEmpty()) {
+                    ready.await();
+                    continue;
+                }
+                long remaining = pending.values().iterator().next().bufferedAt + flushIntervalNanos - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                ready.awaitNanos(remaining);
+            }
+            return drain(batchSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes whatever is buffered, in batches, until the buffer is empty or a write fails.
+     * @return Whether everything buffered was written.
+     */
+    boolean flush() {
+        List<PendingUpdate> batch;
+        while (!(batch = take()).isEmpty()) {
+            if (!write(batch)) {
+                requeue(batch);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<PendingUpdate> take() {
+        lock.lock();
+        try {
+            return drain(batchSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<PendingUpdate> drain(int max) {
+        List<PendingUpdate> batch = new ArrayList<>(Math.min(max, pending.size()));
+        Iterator<PendingUpdate> iterator = pending.values().iterator();
+        while (iterator.hasNext() && batch.size() < max) {
+            batch.add(iterator.next());
+            iterator.remove();
+        }
+        if (!batch.isEmpty()) {
+            notFull.signalAll();
+        }
+        return batch;
+    }
+
+    /**
+     * @return Whether the batch was written, in which case its futures have been completed.
+     */
+    private boolean write(List<PendingUpdate> batch) {
+        List<SmsStatusUpdate> statusUpdates = new ArrayList<>(batch.size());
+        for (PendingUpdate pendingUpdate : batch) {
+            statusUpdates.add(pendingUpdate.statusUpdate);
+        }
+        try {
+            smsService.updateSmsRequestStatuses(statusUpdates);
+        } catch (Exception e) {
+            log.error("Failed to write {} buffered SMS status updates, retrying in {} ms: {}",
+                    statusUpdates.size(), retryBackoffMs, e.getMessage(), e);
+            return false;
+        }
+        written.addAndGet(batch.size());
+        for (PendingUpdate pendingUpdate : batch) {
+            for (CompletableFuture<Void> future : pendingUpdate.futures) {
+                future.complete(null);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Puts a batch that failed to be written back at the head of the buffer, merging in any update buffered for the
+     * same requests since.
+     */
+    private void requeue(List<PendingUpdate> batch) {
+        lock.lock();
+        try {
+            LinkedHashMap<String, PendingUpdate> requeued = new LinkedHashMap<>();
+            for (PendingUpdate pendingUpdate : batch) {
+                requeued.put(pendingUpdate.statusUpdate.getRequestId(), pendingUpdate);
+            }
+            for (Map.Entry<String, PendingUpdate> entry : pending.entrySet()) {
+                PendingUpdate earlier = requeued.get(entry.getKey());
+                if (earlier != null) {
+                    earlier.merge(entry.getValue());
+                } else {
+                    requeued.put(entry.getKey(), entry.getValue());
+                }
+            }
+            pending = requeued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of requests with a status update waiting to be written.
+     */
+    public int getPending() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the flusher and writes whatever is still buffered. Updates that cannot be written are failed, so that
+     * their messages are not committed and get redelivered.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        lock.lock();
+        try {
+            closed = true;
+            ready.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        flusher.shutdown();
+        if (!flusher.awaitTermination(30, TimeUnit.SECONDS)) {
+            flusher.shutdownNow();
+        }
+        if (!flush()) {
+            List<PendingUpdate> unwritten = take();
+            log.warn("Dropping {} unwritten SMS status updates, their messages will be redelivered", unwritten.size());
+            IllegalStateException error = new IllegalStateException("SMS status writer shut down before the update was written");
+            for (PendingUpdate pendingUpdate : unwritten) {
+                for (CompletableFuture<Void> future : pendingUpdate.futures) {
+                    future.completeExceptionally(error);
+                }
+            }
+        }
+    }
+
+    /**
+     * The merged status update of one request and the futures of every update merged into it.
+     */
+    private static class PendingUpdate {
+        private final List<CompletableFuture<Void>> futures = new ArrayList<>(1);
+        private final long bufferedAt;
+        private SmsStatusUpdate statusUpdate;
+
+        PendingUpdate(SmsStatusUpdate statusUpdate, CompletableFuture<Void> future, long bufferedAt) {
+            this.statusUpdate = statusUpdate;
+            this.bufferedAt = bufferedAt;
+            futures.add(future);
+        }
+
+        /**
+         * Merges a later update: it replaces this one if its status may follow this one's, keeping this one's attempt
+         * count if it has none; otherwise the database would have skipped it and it is dropped.
+         */
+        void merge(SmsStatusUpdate later, CompletableFuture<Void> future) {
+            apply(later);
+            futures.add(future);
+        }
+
+        void merge(PendingUpdate later) {
+            apply(later.statusUpdate);
+            futures.addAll(later.futures);
+        }
+
+        private void apply(SmsStatusUpdate later) {
+            if (later.getStatus().canTransitionFrom(statusUpdate.getStatus())) {
+                Integer attempts = later.getAttempts() != null ? later.getAttempts() : statusUpdate.getAttempts();
+                statusUpdate = new SmsStatusUpdate(later.getRequestId(), later.getStatus(), later.getFailureCode(),
+                        later.getFailureComments(), attempts);
+            }
+        }
+    }
+}
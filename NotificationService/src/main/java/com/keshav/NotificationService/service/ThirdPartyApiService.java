@@ -1,78 +1,82 @@
 package com.keshav.NotificationService.service;
 
-import com.keshav.NotificationService.dto.ThirdPartyApiChannels;
+import com.keshav.NotificationService.dto.SmsSendResult;
 import com.keshav.NotificationService.dto.ThirdPartyApiDestination;
-import com.keshav.NotificationService.dto.ThirdPartyApiSms;
-import com.keshav.NotificationService.dto.ThirdPartyApiSmsRequestBody;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
 
 import java.util.Collections;
-import java.util.Random;
+import java.util.List;
+import java.util.Map;
 
 /**
- * Service for interacting with a third-party API to send SMS messages.
- * Uses a {@link WebClient} to send HTTP requests to the external API.
+ * Service for sending SMS messages through the configured third-party providers.
+ * Each call is routed by {@link SmsProviderRouter} to one of the providers, failing over to the next one when
+ * a provider cannot be reached.
  */
 @Service
 public class ThirdPartyApiService {
-    private final WebClient webClient;
-    private final Random random;
+
+    private final SmsProviderRouter smsProviderRouter;
 
     /**
-     * Constructs a ThirdPartyApiService with the necessary WebClient dependency.
-     * @param webClient The WebClient instance for making HTTP requests.
+     * Constructs a ThirdPartyApiService.
+     * @param smsProviderRouter The router choosing a provider for each call.
      */
-    public ThirdPartyApiService(WebClient webClient) {
-        this.webClient = webClient;
-        this.random = new Random();
+    public ThirdPartyApiService(SmsProviderRouter smsProviderRouter) {
+        this.smsProviderRouter = smsProviderRouter;
     }
 
     /**
-     * Sends an SMS message to a specified phone number via a third-party API.
+     * Sends an SMS message to a specified phone number without blocking the caller.
      * @param message The message content to be sent.
      * @param phoneNumber The recipient's phone number.
      * @param correlationId A unique identifier for tracking the message.
-     * @return {@code true} if the SMS was sent successfully, otherwise {@code false}.
+     * @return A {@link Mono} emitting the outcome of the call. It never errors; failures are reported as a failed
+     *         result, and a rejected result means no provider could take the call.
      */
-    public boolean sendSms(String message, String phoneNumber, String correlationId) {
-        try {
-            ThirdPartyApiSmsRequestBody requestBody = createRequestBody(message, phoneNumber, correlationId);
-            String response = webClient.post()
-                    .bodyValue(requestBody)
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .block();
+    public Mono<SmsSendResult> sendSms(String message, String phoneNumber, String correlationId) {
+        ThirdPartyApiDestination destination = createDestination(phoneNumber, correlationId);
+        return sendBulk(message, Collections.singletonList(destination))
+                .map(results -> results.get(correlationId));
+    }
 
-            // Simulate API success or failure using a random boolean.
-            return random.nextBoolean();
-        } catch (Exception e) {
-            return false;
-        }
+    /**
+     * Sends the same SMS message to several destinations in a single provider call.
+     * Each destination keeps its own correlation ID, which is used to report its outcome.
+     * @param message The message content to be sent.
+     * @param destinations The recipients, each with its phone number and correlation ID.
+     * @return A {@link Mono} emitting the outcome for each destination keyed by correlation ID. It never errors;
+     *         if the call itself fails, every destination is reported as failed.
+     */
+    public Mono<Map<String, SmsSendResult>> sendBulk(String message, List<ThirdPartyApiDestination> destinations) {
+        return smsProviderRouter.sendBulk(message, destinations);
     }
 
     /**
-     * Creates a request body for sending an SMS message.
-     * @param message The SMS text message.
-     * @param phoneNumber The recipient's phone number.
-     * @param correlationId A unique identifier for tracking the request.
-     * @return A {@link ThirdPartyApiSmsRequestBody} containing the formatted request.
+     * @return {@code true} if every provider's circuit is open, so that no call would currently be admitted.
      */
-    private ThirdPartyApiSmsRequestBody createRequestBody(String message, String phoneNumber, String correlationId) {
-        ThirdPartyApiSmsRequestBody requestBody = new ThirdPartyApiSmsRequestBody();
-        requestBody.setDeliveryChannel("sms");
+    public boolean isUnavailable() {
+        return smsProviderRouter.isUnavailable();
+    }
 
-        ThirdPartyApiChannels channels = new ThirdPartyApiChannels();
-        ThirdPartyApiSms sms = new ThirdPartyApiSms();
-        sms.setText(message);
-        channels.setSms(sms);
-        requestBody.setChannels(channels);
+    /**
+     * @return The number of calls the providers would currently admit.
+     */
+    public int getAvailableConcurrency() {
+        return smsProviderRouter.getAvailableConcurrency();
+    }
 
+    /**
+     * Creates a destination for a single recipient.
+     * @param phoneNumber The recipient's phone number.
+     * @param correlationId A unique identifier for tracking the message to this recipient.
+     * @return A {@link ThirdPartyApiDestination} for the recipient.
+     */
+    public static ThirdPartyApiDestination createDestination(String phoneNumber, String correlationId) {
         ThirdPartyApiDestination destination = new ThirdPartyApiDestination();
         destination.setMsisdn(Collections.singletonList(phoneNumber));
         destination.setCorrelationId(correlationId);
-
-        requestBody.setDestination(Collections.singletonList(destination));
-        return requestBody;
+        return destination;
     }
 }
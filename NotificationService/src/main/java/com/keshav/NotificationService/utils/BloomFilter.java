@@ -0,0 +1,160 @@
+package com.keshav.NotificationService.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over strings: {@link #mightContain} never returns {@code false} for a string that was added, and
+ * returns {@code true} for a string that was not added with roughly the configured false-positive probability.
+ * Strings cannot be removed.
+ * <p>
+ * Bit positions are derived from a 64-bit hash of the UTF-8 bytes, so every node computes the same positions for
+ * the same string. {@link #toByteArray} and {@link #fromByteArray} use the bit order of Redis bitmaps (bit 0 is the
+ * most significant bit of the first byte), so a filter can be kept in Redis and updated there with {@code SETBIT}
+ * at the offsets returned by {@link #bitOffsets}.
+ */
+public class BloomFilter {
+
+    private final long bitSize;
+    private final int hashCount;
+    private final AtomicLongArray words;
+
+    /**
+     * Creates an empty filter.
+     * @param bitSize The number of bits.
+     * @param hashCount The number of bits set per string.
+     */
+    public BloomFilter(long bitSize, int hashCount) {
+        if (bitSize <= 0 || bitSize > Integer.MAX_VALUE * 64L || hashCount <= 0) {
+            throw new IllegalArgumentException("Invalid bloom filter size: " + bitSize + " bits, " + hashCount + " hashes");
+        }
+        this.bitSize = bitSize;
+        this.hashCount = hashCount;
+        this.words = new AtomicLongArray((int) ((bitSize + 63) / 64));
+    }
+
+    /**
+     * @param expectedInsertions The number of strings the filter is sized for.
+     * @param falsePositiveRate The false-positive probability at that number of strings.
+     * @return The number of bits needed.
+     */
+    public static long optimalBitSize(long expectedInsertions, double falsePositiveRate) {
+        long n = Math.max(1, expectedInsertions);
+        return Math.max(64, (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+    }
+
+    /**
+     * @return The number of hashes minimising the false-positive rate for the given size.
+     */
+    public static int optimalHashCount(long expectedInsertions, long bitSize) {
+        long n = Math.max(1, expectedInsertions);
+        return Math.max(1, (int) Math.round((double) bitSize / n * Math.log(2)));
+    }
+
+    public long getBitSize() {
+        return bitSize;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * Adds a string.
+     */
+    public void put(String value) {
+        for (long offset : bitOffsets(value)) {
+            int index = (int) (offset >>> 6);
+            long mask = 1L << (offset & 63);
+            long word;
+            do {
+                word = words.get(index);
+                if ((word & mask) != 0) {
+                    break;
+                }
+            } while (!words.compareAndSet(index, word, word | mask));
+        }
+    }
+
+    /**
+     * @return {@code false} if the string was definitely never added.
+     */
+    public boolean mightContain(String value) {
+        for (long offset : bitOffsets(value)) {
+            if ((words.get((int) (offset >>> 6)) & (1L << (offset & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The positions of the bits set for the given string.
+     */
+    public long[] bitOffsets(String value) {
+        return bitOffsets(value, bitSize, hashCount);
+    }
+
+    /**
+     * @return The positions of the bits set for the given string in a filter of the given size, without creating one.
+     */
+    public static long[] bitOffsets(String value, long bitSize, int hashCount) {
+        long h1 = mix(fnv1a(value.getBytes(StandardCharsets.UTF_8)));
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+        long[] offsets = new long[hashCount];
+        for (int i = 0; i < hashCount; i++) {
+            offsets[i] = Math.floorMod(h1 + i * h2, bitSize);
+        }
+        return offsets;
+    }
+
+    /**
+     * @return The bits in Redis bitmap order, {@code ceil(bitSize / 8)} bytes long.
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[(int) ((bitSize + 7) / 8)];
+        for (int i = 0; i < bytes.length; i++) {
+            long word = words.get(i >>> 3);
+            int bits = (int) (word >>> ((i & 7) * 8)) & 0xFF;
+            bytes[i] = (byte) (Integer.reverse(bits) >>> 24);
+        }
+        return bytes;
+    }
+
+    /**
+     * Restores a filter from bytes in Redis bitmap order. Bytes beyond the filter's size are ignored, and missing
+     * trailing bytes are treated as zero, as Redis does for bitmaps that were never written to the end.
+     * @param bytes The bits.
+     * @param bitSize The number of bits of the filter the bytes were taken from.
+     * @param hashCount The number of hashes of the filter the bytes were taken from.
+     * @return The filter.
+     */
+    public static BloomFilter fromByteArray(byte[] bytes, long bitSize, int hashCount) {
+        BloomFilter filter = new BloomFilter(bitSize, hashCount);
+        int length = (int) Math.min(bytes.length, (bitSize + 7) / 8);
+        for (int i = 0; i < length; i++) {
+            long bits = (Integer.reverse(bytes[i] & 0xFF) >>> 24) & 0xFFL;
+            int index = i >>> 3;
+            filter.words.set(index, filter.words.get(index) | (bits << ((i & 7) * 8)));
+        }
+        return filter;
+    }
+
+    private static long fnv1a(byte[] bytes) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : bytes) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
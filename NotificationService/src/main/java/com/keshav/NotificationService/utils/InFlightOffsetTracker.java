@@ -0,0 +1,119 @@
+package com.keshav.NotificationService.utils;
+
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks records that are processed out of order and works out how far each partition can safely be committed.
+ * A partition is only committed up to the record just before its lowest unfinished offset, so a crash never
+ * skips a record that was still in flight.
+ */
+public class InFlightOffsetTracker {
+
+    private final Map<TopicPartition, PartitionState> partitions = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Registers a record that has been handed off for processing.
+     * @param partition The record's partition.
+     * @param offset The record's offset.
+     */
+    public void track(TopicPartition partition, long offset) {
+        partitions.computeIfAbsent(partition, key -> new PartitionState()).track(offset, inFlight);
+    }
+
+    /**
+     * Marks a record as processed.
+     * @param partition The record's partition.
+     * @param offset The record's offset.
+     * @param acknowledgment The record's acknowledgment.
+     * @return The acknowledgment of the highest record that can now be committed, or null if the partition
+     *         cannot advance yet (or has been revoked in the meantime).
+     */
+    public Acknowledgment complete(TopicPartition partition, long offset, Acknowledgment acknowledgment) {
+        PartitionState state = partitions.get(partition);
+        if (state == null) {
+            return null;
+        }
+        return state.complete(offset, acknowledgment, inFlight);
+    }
+
+    /**
+     * @param partition The record's partition.
+     * @param offset The record's offset.
+     * @return {@code true} if the record is tracked and not yet completed.
+     */
+    public boolean isPending(TopicPartition partition, long offset) {
+        PartitionState state = partitions.get(partition);
+        return state != null && state.isPending(offset);
+    }
+
+    /**
+     * Forgets revoked partitions. Their unfinished records will be redelivered to the new owner.
+     * @param revoked The revoked partitions.
+     */
+    public void revoke(Collection<TopicPartition> revoked) {
+        for (TopicPartition partition : revoked) {
+            PartitionState state = partitions.remove(partition);
+            if (state != null) {
+                state.revoke(inFlight);
+            }
+        }
+    }
+
+    /**
+     * @return The number of records handed off and not yet processed, across all partitions.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private static class PartitionState {
+        private final TreeSet<Long> pending = new TreeSet<>();
+        private final TreeMap<Long, Acknowledgment> completed = new TreeMap<>();
+        private boolean revoked;
+
+        synchronized void track(long offset, AtomicInteger inFlight) {
+            if (pending.add(offset)) {
+                inFlight.incrementAndGet();
+            }
+        }
+
+        synchronized boolean isPending(long offset) {
+            return !revoked && pending.contains(offset);
+        }
+
+        synchronized Acknowledgment complete(long offset, Acknowledgment acknowledgment, AtomicInteger inFlight) {
+            if (revoked || !pending.remove(offset)) {
+                return null;
+            }
+            inFlight.decrementAndGet();
+            completed.put(offset, acknowledgment);
+
+            NavigableMap<Long, Acknowledgment> committable = pending.isEmpty()
+                    ? completed
+                    : completed.headMap(pending.first(), false);
+            if (committable.isEmpty()) {
+                return null;
+            }
+            Acknowledgment highest = committable.lastEntry().getValue();
+            committable.clear();
+            return highest;
+        }
+
+        synchronized void revoke(AtomicInteger inFlight) {
+            revoked = true;
+            inFlight.addAndGet(-pending.size());
+            pending.clear();
+            completed.clear();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.keshav.NotificationService.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded in-process cache in front of a remote store, with entries expiring a fixed time after they were loaded.
+ * Once full, the least recently used entry is evicted.
+ * <p>
+ * A value loaded from the remote store can race with an invalidation of the same key: the load reads the old value,
+ * the invalidation arrives, and the load then caches the old value. To prevent this, callers take a
+ * {@link #generation()} before reading the remote store and pass it to {@link #put}; the value is dropped if any
+ * invalidation happened in between.
+ */
+public class NearCache<K, V> {
+
+    private final int maxSize;
+    private final long ttlMs;
+    private final LongSupplier clock;
+    private final LinkedHashMap<K, Entry<V>> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long generation;
+
+    /**
+     * Creates an empty cache.
+     * @param maxSize Maximum number of entries.
+     * @param ttlMs Time after which an entry expires, bounding how stale it can be if an invalidation is lost.
+     */
+    public NearCache(int maxSize, long ttlMs) {
+        this(maxSize, ttlMs, System::currentTimeMillis);
+    }
+
+    NearCache(int maxSize, long ttlMs, LongSupplier clock) {
+        this.maxSize = maxSize;
+        this.ttlMs = ttlMs;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @return The cached value, or {@code null} if the key is absent or has expired.
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && clock.getAsLong() - entry.loadedAt >= ttlMs) {
+            entries.remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * @return A token to pass to {@link #put} for a value about to be loaded from the remote store.
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Caches a value loaded from the remote store, unless an invalidation happened since the given generation.
+     * @param key The key.
+     * @param value The loaded value.
+     * @param generation The {@link #generation()} taken before the value was loaded.
+     */
+    public synchronized void put(K key, V value, long generation) {
+        if (generation != this.generation) {
+            return;
+        }
+        entries.put(key, new Entry<>(value, clock.getAsLong()));
+        if (entries.size() > maxSize) {
+            Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Removes the given key.
+     */
+    public synchronized void invalidate(K key) {
+        generation++;
+        entries.remove(key);
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long loadedAt;
+
+        private Entry(V value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.keshav.NotificationService.utils;
+
+import com.keshav.NotificationService.dto.SmsSendResult;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Admission gate in front of an SMS provider, combining an adaptive concurrency limit with a circuit breaker.
+ * <p>
+ * The concurrency limit follows AIMD: every fast, successful call raises it by {@code 1 / limit} (about one per
+ * round trip of the whole window), and every provider error or slow call cuts it by the backoff ratio. Calls above
+ * the limit are rejected immediately instead of queueing on a degraded provider.
+ * <p>
+ * The circuit breaker watches the error rate over the last calls. Once it crosses the threshold the circuit opens
+ * and every call is rejected for the open duration. After that a single probe call is let through: if it succeeds
+ * the circuit closes again, otherwise it stays open for another period.
+ */
+public class ProviderGate {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final Settings settings;
+    private final LongSupplier clock;
+    private final boolean[] outcomes;
+
+    private State state = State.CLOSED;
+    private double limit;
+    private int inFlight;
+    private long openedAt;
+    private int outcomeIndex;
+    private int outcomeCount;
+    private int errorCount;
+
+    /**
+     * Creates a gate with the given settings.
+     * @param settings The limit and circuit breaker settings.
+     */
+    public ProviderGate(Settings settings) {
+        this(settings, System::currentTimeMillis);
+    }
+
+    ProviderGate(Settings settings, LongSupplier clock) {
+        this.settings = settings;
+        this.clock = clock;
+        this.outcomes = new boolean[settings.getWindowSize()];
+        this.limit = settings.getInitialLimit();
+    }
+
+    /**
+     * @return {@code true} if the circuit is open and calls are currently being short-circuited.
+     */
+    public synchronized boolean isOpen() {
+        return state == State.OPEN && clock.getAsLong() - openedAt < settings.getOpenDurationMs();
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return The current concurrency limit.
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @return The number of calls admitted and not yet completed.
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return The number of calls that would currently be admitted.
+     */
+    public synchronized int getAvailable() {
+        if (isOpen()) {
+            return 0;
+        }
+        if (state != State.CLOSED) {
+            return inFlight == 0 ? 1 : 0;
+        }
+        return Math.max(0, (int) limit - inFlight);
+    }
+
+    /**
+     * @return The error rate over the recent calls.
+     */
+    public synchronized double getErrorRate() {
+        return outcomeCount == 0 ? 0 : (double) errorCount / outcomeCount;
+    }
+
+    /**
+     * Asks to make a provider call. Every admitted call must be followed by {@link #onResult} or {@link #release}.
+     * @return {@code true} if the call is admitted.
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (isOpen()) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+        }
+        int allowed = state == State.HALF_OPEN ? 1 : (int) limit;
+        if (inFlight >= allowed) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Ends an admitted call without judging the provider, e.g. when it was cancelled or never made.
+     */
+    public synchronized void release() {
+        inFlight--;
+    }
+
+    /**
+     * Ends an admitted call and adjusts the limit and circuit state from its outcome.
+     * @param result The outcome of the call.
+     */
+    public synchronized void onResult(SmsSendResult result) {
+        inFlight--;
+        boolean error = result.isProviderError();
+        if (state == State.HALF_OPEN) {
+            if (error) {
+                open();
+            } else {
+                close();
+            }
+            return;
+        }
+
+        if (error || result.getLatencyMs() > settings.getLatencyThresholdMs()) {
+            limit = Math.max(settings.getMinLimit(), limit * settings.getBackoffRatio());
+        } else {
+            limit = Math.min(settings.getMaxLimit(), limit + 1.0 / limit);
+        }
+
+        recordOutcome(error);
+        if (state == State.CLOSED && outcomeCount >= settings.getMinimumCalls()
+                && errorCount >= settings.getErrorRateThreshold() * outcomeCount) {
+            open();
+        }
+    }
+
+    private void recordOutcome(boolean error) {
+        if (outcomeCount == outcomes.length) {
+            if (outcomes[outcomeIndex]) {
+                errorCount--;
+            }
+        } else {
+            outcomeCount++;
+        }
+        outcomes[outcomeIndex] = error;
+        if (error) {
+            errorCount++;
+        }
+        outcomeIndex = (outcomeIndex + 1) % outcomes.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = clock.getAsLong();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        limit = Math.max(limit, settings.getMinLimit());
+        outcomeIndex = 0;
+        outcomeCount = 0;
+        errorCount = 0;
+    }
+
+    /**
+     * Settings of a {@link ProviderGate}.
+     */
+    @Getter
+    @Setter
+    public static class Settings {
+        private int initialLimit = 100;
+        private int minLimit = 1;
+        private int maxLimit = 1000;
+        private long latencyThresholdMs = 1000;
+        private double backoffRatio = 0.9;
+        private double errorRateThreshold = 0.5;
+        private int windowSize = 100;
+        private int minimumCalls = 20;
+        private long openDurationMs = 30000;
+    }
+}
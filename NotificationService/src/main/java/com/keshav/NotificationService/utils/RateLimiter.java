@@ -0,0 +1,47 @@
+package com.keshav.NotificationService.utils;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket limiting throughput to a fixed number of permits per second, with bursts of up to one second's worth.
+ * A request larger than the bucket is admitted once the bucket is full and leaves it in debt, so large requests are
+ * delayed rather than starved.
+ */
+public class RateLimiter {
+
+    private final double permitsPerSecond;
+    private final LongSupplier nanoClock;
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * Creates a full bucket.
+     * @param permitsPerSecond The sustained rate.
+     */
+    public RateLimiter(double permitsPerSecond) {
+        this(permitsPerSecond, System::nanoTime);
+    }
+
+    RateLimiter(double permitsPerSecond, LongSupplier nanoClock) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.nanoClock = nanoClock;
+        this.tokens = permitsPerSecond;
+        this.refilledAt = nanoClock.getAsLong();
+    }
+
+    /**
+     * Takes permits if they are available, without waiting.
+     * @param permits The number of permits.
+     * @return {@code true} if the permits were taken.
+     */
+    public synchronized boolean tryAcquire(int permits) {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(permitsPerSecond, tokens + (now - refilledAt) * permitsPerSecond / 1_000_000_000d);
+        refilledAt = now;
+        if (tokens < Math.min(permits, permitsPerSecond)) {
+            return false;
+        }
+        tokens -= permits;
+        return true;
+    }
+}
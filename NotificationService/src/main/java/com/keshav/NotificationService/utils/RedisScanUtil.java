@@ -0,0 +1,39 @@
+package com.keshav.NotificationService.utils;
+
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.api.async.RedisKeyAsyncCommands;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.concurrent.ExecutionException;
+
+public class RedisScanUtil {
+    private RedisScanUtil() {}
+
+    /**
+     * Runs one {@code SCAN} step on the native Lettuce connection, since Spring's scan cursor cannot be resumed from
+     * a cursor handed out to a client or kept between runs.
+     * @param redisTemplate the template whose connection is used
+     * @param cursor the cursor returned by the previous step, or {@code "0"} to start
+     * @param scanArgs the key pattern and batch size
+     * @return the keys found in this step and the cursor of the next one
+     */
+    @SuppressWarnings("unchecked")
+    public static KeyScanCursor<byte[]> scan(RedisTemplate<?, ?> redisTemplate, String cursor, ScanArgs scanArgs) {
+        return redisTemplate.execute((RedisCallback<KeyScanCursor<byte[]>>) connection -> {
+            RedisKeyAsyncCommands<byte[], byte[]> commands =
+                    (RedisKeyAsyncCommands<byte[], byte[]>) connection.getNativeConnection();
+            try {
+                return commands.scan(ScanCursor.of(cursor), scanArgs).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RedisSystemException("Interrupted while scanning keys", e);
+            } catch (ExecutionException e) {
+                throw new RedisSystemException("Failed to scan keys", e.getCause());
+            }
+        });
+    }
+}
@@ -0,0 +1,196 @@
+package com.keshav.NotificationService.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * In-process counts of recent events, in total and by key, over a sliding window of fixed-width time buckets.
+ * <p>
+ * The buckets form a ring, each one reused once the window has moved past it, so memory stays bounded by the number
+ * of buckets and {@code maxKeysPerBucket}. Counting is lock-free. A bucket that has seen more distinct keys than that
+ * keeps counting its total but stops counting by key, and is then reported as incomplete by {@link #covers}.
+ * <p>
+ * Times are epoch milliseconds, as given by the clock.
+ */
+public class RollingCounter {
+
+    private final long bucketMs;
+    private final int maxKeysPerBucket;
+    private final LongSupplier clock;
+    private final AtomicReferenceArray<Bucket> buckets;
+    private final long createdAt;
+
+    /**
+     * Creates an empty counter.
+     * @param bucketMs Width of each bucket.
+     * @param bucketCount Number of buckets in the window.
+     * @param maxKeysPerBucket Maximum number of distinct keys counted in one bucket.
+     */
+    public RollingCounter(long bucketMs, int bucketCount, int maxKeysPerBucket) {
+        this(bucketMs, bucketCount, maxKeysPerBucket, System::currentTimeMillis);
+    }
+
+    /**
+     * Creates an empty counter on the given clock.
+     * @param clock The source of the current time, in epoch milliseconds.
+     */
+    public RollingCounter(long bucketMs, int bucketCount, int maxKeysPerBucket, LongSupplier clock) {
+        this.bucketMs = bucketMs;
+        this.maxKeysPerBucket = maxKeysPerBucket;
+        this.clock = clock;
+        this.buckets = new AtomicReferenceArray<>(bucketCount);
+        this.createdAt = clock.getAsLong();
+    }
+
+    /**
+     * @return The width of each bucket.
+     */
+    public long getBucketMs() {
+        return bucketMs;
+    }
+
+    /**
+     * Counts an event now.
+     */
+    public void increment(String key) {
+        long now = clock.getAsLong();
+        long start = now - Math.floorMod(now, bucketMs);
+        int index = (int) Math.floorMod(start / bucketMs, (long) buckets.length());
+        Bucket bucket = buckets.get(index);
+        while (bucket == null || bucket.start < start) {
+            Bucket fresh = new Bucket(start);
+            if (buckets.compareAndSet(index, bucket, fresh)) {
+                bucket = fresh;
+                break;
+            }
+            bucket = buckets.get(index);
+        }
+        if (bucket.start == start) {
+            bucket.add(key);
+        }
+    }
+
+    /**
+     * @param startMs The start of a time range ending now, aligned to a bucket.
+     * @param byKey Whether counts by key are needed.
+     * @return Whether every event in the range has been counted: the range is within the window, started after the
+     * counter was created and, if {@code byKey} is set, no bucket in it has run out of room for keys.
+     */
+    public boolean covers(long startMs, boolean byKey) {
+        long now = clock.getAsLong();
+        long oldest = now - Math.floorMod(now, bucketMs) - (buckets.length() - 1) * bucketMs;
+        if (startMs < oldest || startMs < createdAt) {
+            return false;
+        }
+        if (byKey) {
+            for (Bucket bucket : buckets(startMs, now)) {
+                if (bucket.truncated) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sums the counts over consecutive intervals, each a multiple of the bucket width.
+     * @param startMs The start of the first interval, aligned to the interval.
+     * @param endMs The end of the range, inclusive.
+     * @param intervalMs The width of each interval.
+     * @param keyFilter The keys to count, or {@code null} for all events.
+     * @return The count of each interval in the range, including empty ones, by interval start.
+     */
+    public Map<Long, Long> counts(long startMs, long endMs, long intervalMs, Predicate<String> keyFilter) {
+        Map<Long, Long> counts = new TreeMap<>();
+        for (long interval = startMs; interval <= endMs; interval += intervalMs) {
+            counts.put(interval, 0L);
+        }
+        for (Bucket bucket : buckets(startMs, endMs)) {
+            long interval = bucket.start - Math.floorMod(bucket.start - startMs, intervalMs);
+            counts.merge(interval, bucket.count(keyFilter), Long::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * @param startMs The start of the range, aligned to a bucket.
+     * @param endMs The end of the range, inclusive.
+     * @param limit The maximum number of keys.
+     * @param keyFilter The keys to consider, or {@code null} for all.
+     * @return The keys counted most often in the range, with their counts, most frequent first.
+     */
+    public Map<String, Long> top(long startMs, long endMs, int limit, Predicate<String> keyFilter) {
+        Map<String, Long> totals = new HashMap<>();
+        for (Bucket bucket : buckets(startMs, endMs)) {
+            for (Map.Entry<String, LongAdder> entry : bucket.keys.entrySet()) {
+                if (keyFilter == null || keyFilter.test(entry.getKey())) {
+                    totals.merge(entry.getKey(), entry.getValue().sum(), Long::sum);
+                }
+            }
+        }
+        List<Map.Entry<String, Long>> sorted = new ArrayList<>(totals.entrySet());
+        sorted.sort(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        Map<String, Long> top = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : sorted.subList(0, Math.min(limit, sorted.size()))) {
+            top.put(entry.getKey(), entry.getValue());
+        }
+        return top;
+    }
+
+    private List<Bucket> buckets(long startMs, long endMs) {
+        List<Bucket> inRange = new ArrayList<>();
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket != null && bucket.start >= startMs && bucket.start <= endMs) {
+                inRange.add(bucket);
+            }
+        }
+        return inRange;
+    }
+
+    private class Bucket {
+        private final long start;
+        private final LongAdder total = new LongAdder();
+        private final Map<String, LongAdder> keys = new ConcurrentHashMap<>();
+        private volatile boolean truncated;
+
+        private Bucket(long start) {
+            this.start = start;
+        }
+
+        private void add(String key) {
+            total.increment();
+            LongAdder count = keys.get(key);
+            if (count == null) {
+                if (keys.size() >= maxKeysPerBucket) {
+                    truncated = true;
+                    return;
+                }
+                count = keys.computeIfAbsent(key, k -> new LongAdder());
+            }
+            count.increment();
+        }
+
+        private long count(Predicate<String> keyFilter) {
+            if (keyFilter == null) {
+                return total.sum();
+            }
+            long count = 0;
+            for (Map.Entry<String, LongAdder> entry : keys.entrySet()) {
+                if (keyFilter.test(entry.getKey())) {
+                    count += entry.getValue().sum();
+                }
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.keshav.NotificationService.utils;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of byte records on local disk, consumed in order from a persisted checkpoint.
+ * <p>
+ * Records are appended to memory-mapped segment files of a fixed size, {@code segment-<n>.log}, each record framed
+ * by its length and CRC32. A record that does not fit the current segment starts a new one, unless the segments
+ * would then exceed the maximum size, in which case the record is refused. Readers {@link #read} a batch from the
+ * checkpoint and {@link #commit} it once it has been handled; until then, reading again returns the same batch.
+ * Segments behind the checkpoint are deleted.
+ * <p>
+ * Appended records are in the page cache immediately, so they survive the process; {@link #sync} forces them to
+ * the disk. On opening, the end of the journal is found by scanning the last segment, so a record torn by a crash
+ * is ignored along with anything after it.
+ */
+public class SegmentedJournal {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int HEADER_BYTES = 8;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long maxBytes;
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+    private long writeSegment;
+    private int writeOffset;
+    private long checkpointSegment;
+    private int checkpointOffset;
+    private long readSegment;
+    private int readOffset;
+
+    /**
+     * Opens the journal in the given directory, creating it if needed.
+     * @param directory The directory holding the segments and the checkpoint.
+     * @param segmentBytes The size of each segment file.
+     * @param maxBytes The maximum total size of the segment files.
+     */
+    public SegmentedJournal(Path directory, int segmentBytes, long maxBytes) throws IOException {
+        if (segmentBytes <= HEADER_BYTES || maxBytes < segmentBytes) {
+            throw new IllegalArgumentException("Invalid journal size: " + segmentBytes + " byte segments, " + maxBytes + " bytes in total");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long sequence = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                segments.put(sequence, map(sequence));
+            }
+        }
+        if (segments.isEmpty()) {
+            segments.put(0L, map(0));
+        }
+
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        if (Files.exists(checkpoint)) {
+            String[] position = new String(Files.readAllBytes(checkpoint), StandardCharsets.UTF_8).trim().split(" ");
+            checkpointSegment = Long.parseLong(position[0]);
+            checkpointOffset = Integer.parseInt(position[1]);
+        } else {
+            checkpointSegment = segments.firstKey();
+        }
+        deleteSegmentsBefore(checkpointSegment);
+        if (segments.isEmpty()) {
+            segments.put(checkpointSegment, map(checkpointSegment));
+            checkpointOffset = 0;
+        }
+
+        writeSegment = segments.lastKey();
+        writeOffset = endOf(segments.get(writeSegment), 0);
+        readSegment = checkpointSegment;
+        readOffset = checkpointOffset;
+    }
+
+    /**
+     * Appends a record.
+     * @return {@code false} if the journal is full.
+     */
+    public synchronized boolean append(byte[] record) throws IOException {
+        if (record.length == 0 || record.length > segmentBytes - HEADER_BYTES) {
+            throw new IllegalArgumentException("Record of " + record.length + " bytes does not fit a journal segment");
+        }
+        if (writeOffset + HEADER_BYTES + record.length > segmentBytes) {
+            if ((long) (segments.size() + 1) * segmentBytes > maxBytes) {
+                return false;
+            }
+            segments.get(writeSegment).force();
+            writeSegment++;
+            writeOffset = 0;
+            segments.put(writeSegment, map(writeSegment));
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        ByteBuffer buffer = segments.get(writeSegment).duplicate();
+        buffer.position(writeOffset);
+        // The length is written last, so a reader never sees a length without its record.
+        buffer.putInt(writeOffset + 4, (int) crc.getValue());
+        buffer.position(writeOffset + HEADER_BYTES);
+        buffer.put(record);
+        buffer.putInt(writeOffset, record.length);
+        writeOffset += HEADER_BYTES + record.length;
+        return true;
+    }
+
+    /**
+     * Forces the appended records to the disk.
+     */
+    public synchronized void sync() {
+        segments.get(writeSegment).force();
+    }
+
+    /**
+     * Reads records from the checkpoint, without moving it.
+     * @param maxRecords The maximum number of records to read.
+     * @return The records, empty if the journal has been consumed up to its end.
+     */
+    public synchronized List<byte[]> read(int maxRecords) {
+        List<byte[]> records = new ArrayList<>();
+        long segment = checkpointSegment;
+        int offset = checkpointOffset;
+        while (records.size() < maxRecords) {
+            MappedByteBuffer buffer = segments.get(segment);
+            int length = segment == writeSegment ? (offset < writeOffset ? buffer.getInt(offset) : 0) : recordLength(buffer, offset);
+            if (length <= 0) {
+                if (segment == writeSegment) {
+                    break;
+                }
+                segment = segments.higherKey(segment);
+                offset = 0;
+                continue;
+            }
+            byte[] record = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset + HEADER_BYTES);
+            view.get(record);
+            records.add(record);
+            offset += HEADER_BYTES + length;
+        }
+        readSegment = segment;
+        readOffset = offset;
+        return records;
+    }
+
+    /**
+     * Moves the checkpoint past the records returned by the last {@link #read}, and deletes the segments behind it.
+     */
+    public synchronized void commit() throws IOException {
+        checkpointSegment = readSegment;
+        checkpointOffset = readOffset;
+        Path temp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        Files.write(temp, (checkpointSegment + " " + checkpointOffset).getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        deleteSegmentsBefore(checkpointSegment);
+    }
+
+    /**
+     * @return {@code true} if every appended record has been committed.
+     */
+    public synchronized boolean isEmpty() {
+        return checkpointSegment == writeSegment && checkpointOffset >= writeOffset;
+    }
+
+    /**
+     * @return The disk space taken by the segment files.
+     */
+    public synchronized long sizeBytes() {
+        return (long) segments.size() * segmentBytes;
+    }
+
+    private MappedByteBuffer map(long sequence) throws IOException {
+        Path file = directory.resolve(SEGMENT_PREFIX + sequence + SEGMENT_SUFFIX);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(segmentBytes);
+            // The mapping stays valid after the channel is closed.
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+    }
+
+    private void deleteSegmentsBefore(long sequence) throws IOException {
+        Iterator<Map.Entry<Long, MappedByteBuffer>> it = segments.entrySet().iterator();
+        while (it.hasNext()) {
+            long current = it.next().getKey();
+            if (current >= sequence) {
+                break;
+            }
+            it.remove();
+            Files.deleteIfExists(directory.resolve(SEGMENT_PREFIX + current + SEGMENT_SUFFIX));
+        }
+    }
+
+    /**
+     * @return The offset after the last intact record from the given offset on.
+     */
+    private int endOf(MappedByteBuffer buffer, int offset) {
+        int length;
+        while ((length = recordLength(buffer, offset)) > 0) {
+            offset += HEADER_BYTES + length;
+        }
+        return offset;
+    }
+
+    /**
+     * @return The length of the intact record at the given offset, or 0 if there is none.
+     */
+    private int recordLength(MappedByteBuffer buffer, int offset) {
+        if (offset + HEADER_BYTES > segmentBytes) {
+            return 0;
+        }
+        int length = buffer.getInt(offset);
+        if (length <= 0 || length > segmentBytes - offset - HEADER_BYTES) {
+            return 0;
+        }
+        byte[] record = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset + HEADER_BYTES);
+        view.get(record);
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        return (int) crc.getValue() == buffer.getInt(offset + 4) ? length : 0;
+    }
+}
@@ -0,0 +1,99 @@
+package com.keshav.NotificationService.utils;
+
+import com.keshav.NotificationService.dto.SmsEnvelope;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Kafka deserializer for messages written by {@link SmsEnvelopeSerializer}.
+ * Messages that do not start with the envelope marker are legacy messages holding only the request ID as a UTF-8 string.
+ */
+public class SmsEnvelopeDeserializer implements Deserializer<SmsEnvelope> {
+
+    @Override
+    public SmsEnvelope deserialize(String topic, Headers headers, byte[] data) {
+        SmsEnvelope envelope = deserialize(topic, data);
+        if (envelope != null) {
+            Header attempt = headers.lastHeader(SmsEnvelopeSerializer.ATTEMPT_HEADER);
+            Header dueAt = headers.lastHeader(SmsEnvelopeSerializer.DUE_AT_HEADER);
+            try {
+                if (attempt != null) {
+                    envelope.setAttempt(ByteBuffer.wrap(attempt.value()).getInt());
+                }
+                if (dueAt != null) {
+                    envelope.setDueAt(ByteBuffer.wrap(dueAt.value()).getLong());
+                }
+            } catch (BufferUnderflowException e) {
+                throw new SerializationException("Malformed SMS retry headers on topic " + topic, e);
+            }
+        }
+        return envelope;
+    }
+
+    @Override
+    public SmsEnvelope deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if (data.length == 0 || data[0] != SmsEnvelopeSerializer.MARKER) {
+            return SmsEnvelope.ofRequestId(new String(data, StandardCharsets.UTF_8));
+        }
+
+        try {
+            ByteBuffer in = ByteBuffer.wrap(data);
+            in.get();
+            byte version = in.get();
+            if (version != SmsEnvelopeSerializer.VERSION) {
+                throw new SerializationException("Unsupported SMS envelope version: " + version);
+            }
+
+            SmsEnvelope envelope = new SmsEnvelope();
+            long createdAt = in.getLong();
+            if (createdAt >= 0) {
+                envelope.setCreatedAt(LocalDateTime.ofInstant(Instant.ofEpochMilli(createdAt), ZoneOffset.UTC));
+            }
+            envelope.setRequestId(readString(in));
+            envelope.setPhoneNumber(readString(in));
+            envelope.setMessage(readString(in));
+            return envelope;
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new SerializationException("Malformed SMS envelope on topic " + topic, e);
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = readVarInt(in);
+        if (length == 0) {
+            return null;
+        }
+        // The length is untrusted, check it before allocating for it.
+        if (length < 0 || length - 1 > in.remaining()) {
+            throw new SerializationException("SMS envelope string length " + (length - 1) + " exceeds the "
+                    + in.remaining() + " remaining bytes");
+        }
+        byte[] utf8 = new byte[length - 1];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint is too long");
+    }
+}
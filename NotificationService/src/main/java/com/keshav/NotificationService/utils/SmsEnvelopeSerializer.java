@@ -0,0 +1,82 @@
+package com.keshav.NotificationService.utils;
+
+import com.keshav.NotificationService.dto.SmsEnvelope;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+
+/**
+ * Kafka serializer writing {@link SmsEnvelope}s in a compact binary format:
+ * a zero marker byte, a version byte, the creation time in epoch millis, followed by the request ID,
+ * phone number and message as varint length-prefixed UTF-8 strings.
+ * The leading zero byte never starts a legacy ID-only message, which lets {@link SmsEnvelopeDeserializer} tell them apart.
+ * The retry attempt and due time of retried envelopes are written as record headers rather than in the payload.
+ */
+public class SmsEnvelopeSerializer implements Serializer<SmsEnvelope> {
+    static final byte MARKER = 0;
+    static final byte VERSION = 1;
+    public static final String ATTEMPT_HEADER = "sms-attempt";
+    public static final String DUE_AT_HEADER = "sms-due-at";
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, SmsEnvelope envelope) {
+        if (envelope != null && envelope.getAttempt() > 0) {
+            headers.remove(ATTEMPT_HEADER);
+            headers.add(ATTEMPT_HEADER, ByteBuffer.allocate(Integer.BYTES).putInt(envelope.getAttempt()).array());
+            headers.remove(DUE_AT_HEADER);
+            headers.add(DUE_AT_HEADER, ByteBuffer.allocate(Long.BYTES).putLong(envelope.getDueAt()).array());
+        }
+        return serialize(topic, envelope);
+    }
+
+    @Override
+    public byte[] serialize(String topic, SmsEnvelope envelope) {
+        if (envelope == null) {
+            return null;
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + lengthOf(envelope.getMessage()));
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(MARKER);
+            out.writeByte(VERSION);
+            out.writeLong(envelope.getCreatedAt() == null ? -1L
+                    : envelope.getCreatedAt().toInstant(ZoneOffset.UTC).toEpochMilli());
+            writeString(out, envelope.getRequestId());
+            writeString(out, envelope.getPhoneNumber());
+            writeString(out, envelope.getMessage());
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("Failed to serialize SMS envelope for Request ID: " + envelope.getRequestId(), e);
+        }
+    }
+
+    private static int lengthOf(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, utf8.length + 1);
+        out.write(utf8);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+}
@@ -0,0 +1,60 @@
+package com.keshav.NotificationService.utils;
+
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * Generates time-ordered UUIDs (version 7, RFC 9562): a 48-bit Unix millisecond timestamp, a 12-bit counter and
+ * 62 random bits.
+ * <p>
+ * IDs from one generator are strictly increasing, both as UUIDs and in their canonical string form, so rows keyed
+ * by them are appended at the end of a B-tree index instead of being scattered over it. The counter starts at a
+ * random value below half its range each millisecond and is incremented for each further ID in the same millisecond;
+ * if it overflows, or the clock goes back, the timestamp is advanced past the last one used. The random bits keep
+ * IDs unguessable and unique across generators.
+ */
+public class UuidV7Generator {
+
+    private static final int COUNTER_BITS = 12;
+    private static final int MAX_COUNTER = (1 << COUNTER_BITS) - 1;
+
+    private final LongSupplier clock;
+    private final Random random;
+    private long lastMs = -1;
+    private int counter;
+
+    public UuidV7Generator() {
+        this(System::currentTimeMillis, new SecureRandom());
+    }
+
+    UuidV7Generator(LongSupplier clock, Random random) {
+        this.clock = clock;
+        this.random = random;
+    }
+
+    /**
+     * @return A new ID, greater than every ID this generator returned before.
+     */
+    public synchronized UUID next() {
+        long now = clock.getAsLong();
+        if (now > lastMs) {
+            lastMs = now;
+            counter = random.nextInt(1 << (COUNTER_BITS - 1));
+        } else if (++counter > MAX_COUNTER) {
+            lastMs++;
+            counter = random.nextInt(1 << (COUNTER_BITS - 1));
+        }
+        long mostSigBits = (lastMs << 16) | (0x7L << 12) | counter;
+        long leastSigBits = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    /**
+     * @return The Unix millisecond timestamp of a version 7 UUID.
+     */
+    public static long timestampOf(UUID uuid) {
+        return uuid.getMostSignificantBits() >>> 16;
+    }
+}
@@ -0,0 +1,155 @@
+package com.keshav.NotificationService.service;
+
+import com.keshav.NotificationService.dto.SmsEnvelope;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class AsyncSmsDispatcherTest {
+
+    @Mock
+    private SmsProcessingService smsProcessingService;
+
+    @Mock
+    private KafkaListenerEndpointRegistry registry;
+
+    @Mock
+    private MessageListenerContainer container;
+
+    private AsyncSmsDispatcher asyncSmsDispatcher;
+
+    @BeforeEach
+    void setUp() {
+        when(registry.getListenerContainer(AsyncSmsDispatcher.LISTENER_ID)).thenReturn(container);
+        when(smsProcessingService.processSmsRequestWriteBehind(any())).thenReturn(CompletableFuture.completedFuture(null));
+        asyncSmsDispatcher = new AsyncSmsDispatcher(smsProcessingService, registry, new SimpleMeterRegistry(), 4, 2, 10, 20);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        asyncSmsDispatcher.shutdown();
+    }
+
+    private ConsumerRecord<String, SmsEnvelope> record(long offset) {
+        return new ConsumerRecord<>("notification.send_sms", 0, offset, null, SmsEnvelope.ofRequestId("id-" + offset));
+    }
+
+    @Test
+    void testAcknowledgesInOffsetOrder() throws InterruptedException {
+        CountDownLatch firstRecord = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            firstRecord.await(5, TimeUnit.SECONDS);
+            return CompletableFuture.completedFuture(null);
+        }).when(smsProcessingService).processSmsRequestWriteBehind(argThat(envelope -> "id-0".equals(envelope.getRequestId())));
+        Acknowledgment ack0 = mock(Acknowledgment.class);
+        Acknowledgment ack1 = mock(Acknowledgment.class);
+
+        asyncSmsDispatcher.dispatch(record(0), ack0);
+        asyncSmsDispatcher.dispatch(record(1), ack1);
+
+        verify(smsProcessingService, timeout(1000)).processSmsRequestWriteBehind(argThat(envelope -> "id-1".equals(envelope.getRequestId())));
+        Thread.sleep(100);
+        verifyNoInteractions(ack1);
+
+        firstRecord.countDown();
+        verify(ack1, timeout(1000)).acknowledge();
+        verify(ack0, never()).acknowledge();
+        assertEquals(0, asyncSmsDispatcher.getInFlight());
+    }
+
+    @Test
+    void testPausesAtInFlightLimitAndResumes() {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return CompletableFuture.completedFuture(null);
+        }).when(smsProcessingService).processSmsRequestWriteBehind(any());
+
+        asyncSmsDispatcher.dispatch(record(0), mock(Acknowledgment.class));
+        verify(container, never()).pause();
+
+        asyncSmsDispatcher.dispatch(record(1), mock(Acknowledgment.class));
+        verify(container, times(1)).pause();
+
+        when(container.isPauseRequested()).thenReturn(true);
+        release.countDown();
+        verify(container, timeout(1000).atLeastOnce()).resume();
+    }
+
+    @Test
+    void testRetriesRecordDeferredByProviderGate() {
+        doThrow(new ProviderUnavailableException("open"))
+                .doReturn(CompletableFuture.completedFuture(null))
+                .when(smsProcessingService).processSmsRequestWriteBehind(any());
+        Acknowledgment ack = mock(Acknowledgment.class);
+
+        asyncSmsDispatcher.dispatch(record(0), ack);
+
+        verify(ack, timeout(1000)).acknowledge();
+        verify(smsProcessingService, times(2)).processSmsRequestWriteBehind(any());
+        assertEquals(0, asyncSmsDispatcher.getInFlight());
+    }
+
+    @Test
+    void testRetriesRecordWhoseRetryCouldNotBeScheduled() {
+        doThrow(new KafkaException("broker down"))
+                .doReturn(CompletableFuture.completedFuture(null))
+                .when(smsProcessingService).processSmsRequestWriteBehind(any());
+        Acknowledgment ack = mock(Acknowledgment.class);
+
+        asyncSmsDispatcher.dispatch(record(0), ack);
+
+        verify(ack, timeout(1000)).acknowledge();
+        verify(smsProcessingService, times(2)).processSmsRequestWriteBehind(any());
+        assertEquals(0, asyncSmsDispatcher.getInFlight());
+    }
+
+    @Test
+    void testCompletesRecordThatCouldNotBeDeserialized() {
+        Acknowledgment ack = mock(Acknowledgment.class);
+
+        asyncSmsDispatcher.dispatch(new ConsumerRecord<>("notification.send_sms", 0, 0L, null, null), ack);
+
+        verify(ack).acknowledge();
+        verify(smsProcessingService, never()).processSmsRequestWriteBehind(any());
+        assertEquals(0, asyncSmsDispatcher.getInFlight());
+    }
+
+    @Test
+    void testAcknowledgesOnlyOnceStatusIsWritten() throws InterruptedException {
+        CompletableFuture<Void> persisted = new CompletableFuture<>();
+        when(smsProcessingService.processSmsRequestWriteBehind(any())).thenReturn(persisted);
+        Acknowledgment ack = mock(Acknowledgment.class);
+
+        asyncSmsDispatcher.dispatch(record(0), ack);
+
+        verify(smsProcessingService, timeout(1000)).processSmsRequestWriteBehind(any());
+        Thread.sleep(100);
+        verifyNoInteractions(ack);
+        assertEquals(1, asyncSmsDispatcher.getInFlight());
+
+        persisted.complete(null);
+        verify(ack, timeout(1000)).acknowledge();
+        assertEquals(0, asyncSmsDispatcher.getInFlight());
+    }
+}
@@ -0,0 +1,113 @@
+package com.keshav.NotificationService.service;
+
+import com.keshav.NotificationService.dto.BlacklistImportStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class BlacklistImportServiceTest {
+
+    @Mock
+    private BlacklistService blacklistService;
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private HashOperations<String, Object, Object> hashOperations;
+
+    @TempDir
+    Path tempDir;
+
+    private BlacklistImportService importService;
+
+    @BeforeEach
+    public void setUp() {
+        lenient().when(redisTemplate.opsForHash()).thenReturn(hashOperations);
+        importService = new BlacklistImportService(blacklistService, redisTemplate, 2, tempDir.toString(), 1, 60000);
+    }
+
+    private Path csv(String... lines) throws IOException {
+        Path file = tempDir.resolve("dnd.csv");
+        Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private BlacklistImportStatus newStatus() {
+        BlacklistImportStatus status = new BlacklistImportStatus();
+        status.setImportId("import-1");
+        return status;
+    }
+
+    @Test
+    public void testRunImport_WritesInChunks() throws IOException {
+        Path file = csv("phoneNumber,source", "+919876543210,dnd", "\"+919876543211\"", "not-a-number", "", "+919876543212");
+        BlacklistImportStatus status = newStatus();
+
+        importService.runImport(status, file);
+
+        verify(blacklistService).addToBlacklistPipelined(Arrays.asList("+919876543210", "+919876543211"));
+        verify(blacklistService).addToBlacklistPipelined(Collections.singletonList("+919876543212"));
+        assertEquals(BlacklistImportStatus.COMPLETED, status.getStatus());
+        assertEquals(3, status.getImported());
+        assertEquals(1, status.getInvalid());
+        assertEquals(6, status.getLinesProcessed());
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void testRunImport_FailureKeepsLastCompletedChunk() throws IOException {
+        Path file = csv("+919876543210", "+919876543211", "+919876543212", "+919876543213");
+        doNothing().doThrow(new RedisConnectionFailureException("Connection lost"))
+                .when(blacklistService).addToBlacklistPipelined(anyList());
+        BlacklistImportStatus status = newStatus();
+
+        importService.runImport(status, file);
+
+        assertEquals(BlacklistImportStatus.FAILED, status.getStatus());
+        assertEquals(2, status.getLinesProcessed());
+        assertEquals(2, status.getImported());
+        assertNotNull(status.getError());
+    }
+
+    @Test
+    public void testRunImport_ResumeSkipsProcessedLines() throws IOException {
+        Path file = csv("+919876543210", "+919876543211", "+919876543212", "+919876543213");
+        BlacklistImportStatus status = newStatus();
+        status.setLinesProcessed(2);
+        status.setImported(2);
+
+        importService.runImport(status, file);
+
+        verify(blacklistService, times(1)).addToBlacklistPipelined(anyList());
+        verify(blacklistService).addToBlacklistPipelined(Arrays.asList("+919876543212", "+919876543213"));
+        assertEquals(4, status.getImported());
+        assertEquals(BlacklistImportStatus.COMPLETED, status.getStatus());
+    }
+
+    @Test
+    public void testParsePhoneNumber() {
+        assertEquals("+919876543210", BlacklistImportService.parsePhoneNumber(" +919876543210 ,x"));
+        assertEquals("9876543210", BlacklistImportService.parsePhoneNumber("\"9876543210\""));
+        assertNull(BlacklistImportService.parsePhoneNumber("phoneNumber"));
+        assertNull(BlacklistImportService.parsePhoneNumber("12"));
+    }
+}
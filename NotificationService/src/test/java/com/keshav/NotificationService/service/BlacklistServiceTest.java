@@ -1,15 +1,25 @@
 package com.keshav.NotificationService.service;
 
+import com.keshav.NotificationService.dto.BlacklistPage;
 import com.keshav.NotificationService.dto.BlacklistRequestDto;
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.api.async.RedisKeyAsyncCommands;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
@@ -18,6 +28,7 @@ import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -26,13 +37,19 @@ public class BlacklistServiceTest {
     @Mock
     private RedisTemplate<String, String> redisTemplate;
 
-    @InjectMocks
+    @Mock
+    private BlacklistFilter blacklistFilter;
+
+    private SimpleMeterRegistry meterRegistry;
     private BlacklistService blacklistService;
 
     private final String BLACKLIST_KEY = "blacklist";
 
     @BeforeEach
     public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        lenient().when(blacklistFilter.mightBeBlacklisted(anyString())).thenReturn(true);
+        blacklistService = new BlacklistService(redisTemplate, new KeyBlacklistStore(redisTemplate), blacklistFilter, meterRegistry, true, 30000, 1000);
     }
 
     @Test
@@ -60,29 +77,52 @@ public class BlacklistServiceTest {
     }
 
     @Test
-    public void testGetBlacklist() {
-        Set<String> keys = new HashSet<>(Arrays.asList("blacklist:1234567890", "blacklist:0987654321"));
-
-        when(redisTemplate.keys(BLACKLIST_KEY + ":*")).thenReturn(keys);
-
-        List<String> blacklist = blacklistService.getBlacklist();
-
-        assertEquals(2, blacklist.size());
-        assertTrue(blacklist.contains("1234567890"));
-        assertTrue(blacklist.contains("0987654321"));
-
-        verify(redisTemplate, times(1)).keys(BLACKLIST_KEY + ":*");
+    @SuppressWarnings("unchecked")
+    public void testGetBlacklistPage_ScansUntilLimitReached() throws Exception {
+        RedisConnection connection = mock(RedisConnection.class);
+        RedisKeyAsyncCommands<byte[], byte[]> commands = mock(RedisKeyAsyncCommands.class);
+        when(connection.getNativeConnection()).thenReturn(commands);
+        when(redisTemplate.execute(any(RedisCallback.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0, RedisCallback.class).doInRedis(connection));
+        RedisFuture<KeyScanCursor<byte[]>> first = scanResult("17", false, "blacklist:1234567890");
+        RedisFuture<KeyScanCursor<byte[]>> second = scanResult("42", false, "blacklist:0987654321");
+        when(commands.scan(any(ScanCursor.class), any(ScanArgs.class))).thenReturn(first, second);
+
+        BlacklistPage page = blacklistService.getBlacklistPage("0", 2);
+
+        assertEquals(Arrays.asList("1234567890", "0987654321"), page.getPhoneNumbers());
+        assertEquals("42", page.getNextCursor());
+        verify(redisTemplate, never()).keys(anyString());
     }
 
     @Test
-    public void testGetBlacklist_Empty() {
-        when(redisTemplate.keys(BLACKLIST_KEY + ":*")).thenReturn(Collections.emptySet());
-
-        List<String> blacklist = blacklistService.getBlacklist();
-
-        assertTrue(blacklist.isEmpty());
+    @SuppressWarnings("unchecked")
+    public void testGetBlacklistPage_LastPage() throws Exception {
+        RedisConnection connection = mock(RedisConnection.class);
+        RedisKeyAsyncCommands<byte[], byte[]> commands = mock(RedisKeyAsyncCommands.class);
+        when(connection.getNativeConnection()).thenReturn(commands);
+        when(redisTemplate.execute(any(RedisCallback.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0, RedisCallback.class).doInRedis(connection));
+        RedisFuture<KeyScanCursor<byte[]>> last = scanResult("0", true, "blacklist:1234567890");
+        when(commands.scan(any(ScanCursor.class), any(ScanArgs.class))).thenReturn(last);
+
+        BlacklistPage page = blacklistService.getBlacklistPage("17", 100);
+
+        assertEquals(Collections.singletonList("1234567890"), page.getPhoneNumbers());
+        assertNull(page.getNextCursor());
+    }
 
-        verify(redisTemplate, times(1)).keys(BLACKLIST_KEY + ":*");
+    @SuppressWarnings("unchecked")
+    private static RedisFuture<KeyScanCursor<byte[]>> scanResult(String cursor, boolean finished, String... keys) throws Exception {
+        KeyScanCursor<byte[]> scanCursor = new KeyScanCursor<>();
+        scanCursor.setCursor(cursor);
+        scanCursor.setFinished(finished);
+        for (String key : keys) {
+            scanCursor.getKeys().add(key.getBytes(StandardCharsets.UTF_8));
+        }
+        RedisFuture<KeyScanCursor<byte[]>> future = mock(RedisFuture.class);
+        when(future.get()).thenReturn(scanCursor);
+        return future;
     }
 
     @Test
@@ -110,5 +150,109 @@ public class BlacklistServiceTest {
 
         verify(redisTemplate, times(1)).hasKey(BLACKLIST_KEY + ":" + phoneNumber);
     }
-}
 
+    @Test
+    public void testFindBlacklisted() {
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.multiGet(Arrays.asList("blacklist:1234567890", "blacklist:0987654321")))
+                .thenReturn(Arrays.asList(null, "BLACKLISTED"));
+
+        Set<String> blacklisted = blacklistService.findBlacklisted(Arrays.asList("1234567890", "0987654321"));
+
+        assertEquals(Collections.singleton("0987654321"), blacklisted);
+        verify(redisTemplate, never()).hasKey(anyString());
+    }
+
+    @Test
+    public void testIsBlacklisted_ServedFromCache() {
+        String phoneNumber = "1234567890";
+        when(redisTemplate.hasKey(BLACKLIST_KEY + ":" + phoneNumber)).thenReturn(false);
+
+        assertFalse(blacklistService.isBlacklisted(phoneNumber));
+        assertFalse(blacklistService.isBlacklisted(phoneNumber));
+
+        verify(redisTemplate, times(1)).hasKey(BLACKLIST_KEY + ":" + phoneNumber);
+        assertEquals(1, meterRegistry.get("blacklist.cache.requests").tag("result", "hit").functionCounter().count());
+        assertEquals(1, meterRegistry.get("blacklist.cache.requests").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    public void testOnInvalidation_ReloadsFromRedis() {
+        String phoneNumber = "1234567890";
+        when(redisTemplate.hasKey(BLACKLIST_KEY + ":" + phoneNumber)).thenReturn(false, true);
+
+        assertFalse(blacklistService.isBlacklisted(phoneNumber));
+        blacklistService.onInvalidation("0987654321," + phoneNumber);
+
+        assertTrue(blacklistService.isBlacklisted(phoneNumber));
+        verify(redisTemplate, times(2)).hasKey(BLACKLIST_KEY + ":" + phoneNumber);
+    }
+
+    @Test
+    public void testAddToBlacklist_PublishesInvalidation() {
+        BlacklistRequestDto requestDto = new BlacklistRequestDto();
+        requestDto.setPhoneNumbers(Arrays.asList("1234567890", "0987654321"));
+        when(redisTemplate.hasKey(BLACKLIST_KEY + ":1234567890")).thenReturn(false, true);
+
+        assertFalse(blacklistService.isBlacklisted("1234567890"));
+        blacklistService.addToBlacklist(requestDto);
+
+        verify(redisTemplate).convertAndSend(BlacklistService.INVALIDATION_CHANNEL, "1234567890,0987654321");
+        assertTrue(blacklistService.isBlacklisted("1234567890"));
+    }
+
+    @Test
+    public void testFindBlacklisted_QueriesOnlyUncachedNumbers() {
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(redisTemplate.hasKey(BLACKLIST_KEY + ":1234567890")).thenReturn(true);
+        when(valueOperations.multiGet(Collections.singletonList("blacklist:0987654321")))
+                .thenReturn(Collections.singletonList(null));
+
+        assertTrue(blacklistService.isBlacklisted("1234567890"));
+        Set<String> blacklisted = blacklistService.findBlacklisted(Arrays.asList("1234567890", "0987654321"));
+
+        assertEquals(Collections.singleton("1234567890"), blacklisted);
+    }
+
+    @Test
+    public void testIsBlacklisted_RuledOutByFilter() {
+        when(blacklistFilter.mightBeBlacklisted("1234567890")).thenReturn(false);
+
+        assertFalse(blacklistService.isBlacklisted("1234567890"));
+        assertTrue(blacklistService.findBlacklisted(Collections.singletonList("1234567890")).isEmpty());
+
+        verify(redisTemplate, never()).hasKey(anyString());
+        verify(redisTemplate, never()).opsForValue();
+    }
+
+    @Test
+    public void testOnInvalidation_AddsToFilter() {
+        blacklistService.onInvalidation("1234567890,0987654321");
+
+        verify(blacklistFilter).onChanged(Arrays.asList("1234567890", "0987654321"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFindBlacklisted_LargeLookupIsPipelinedInChunks() {
+        List<String> phoneNumbers = new ArrayList<>();
+        List<Object> firstChunk = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            phoneNumbers.add("+91987654" + (1000 + i));
+            if (i < 500) {
+                firstChunk.add(i == 7 ? "BLACKLISTED" : null);
+            }
+        }
+        List<Object> secondChunk = new ArrayList<>(Collections.nCopies(100, null));
+        secondChunk.set(99, "BLACKLISTED");
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(Arrays.asList(firstChunk, secondChunk));
+
+        Set<String> blacklisted = blacklistService.findBlacklisted(phoneNumbers);
+
+        assertEquals(new HashSet<>(Arrays.asList("+919876541007", "+919876541599")), blacklisted);
+        verify(redisTemplate, never()).opsForValue();
+        verify(redisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+    }
+}
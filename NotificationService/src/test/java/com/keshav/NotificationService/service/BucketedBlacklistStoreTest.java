@@ -0,0 +1,118 @@
+package com.keshav.NotificationService.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class BucketedBlacklistStoreTest {
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private HashOperations<String, Object, Object> hashOperations;
+
+    private BucketedBlacklistStore store;
+
+    @BeforeEach
+    public void setUp() {
+        lenient().when(redisTemplate.getStringSerializer()).thenReturn(new StringRedisSerializer());
+        lenient().when(redisTemplate.opsForHash()).thenReturn(hashOperations);
+        store = new BucketedBlacklistStore(redisTemplate, 2, false, 1000, 30000);
+    }
+
+    private static String expiresIn(long seconds) {
+        return Long.toString(System.currentTimeMillis() / 1000 + seconds);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testBucketsByPrefix() {
+        assertEquals("blacklist-bucket:+9198765432", store.bucketKey("+919876543210"));
+        assertEquals("10", store.suffix("+919876543210"));
+        assertEquals("blacklist-bucket:", store.bucketKey("5"));
+        assertEquals("5", store.suffix("5"));
+    }
+
+    @Test
+    public void testAddWritesFieldsAndExpiresEachBucketOnce() {
+        RedisConnection connection = mock(RedisConnection.class);
+
+        store.add(connection, Arrays.asList("+919876543210", "+919876543211"), 600);
+
+        verify(connection).hSet(eq(bytes("blacklist-bucket:+9198765432")), eq(bytes("10")), any(byte[].class));
+        verify(connection).hSet(eq(bytes("blacklist-bucket:+9198765432")), eq(bytes("11")), any(byte[].class));
+        verify(connection, times(1)).expire(bytes("blacklist-bucket:+9198765432"), 600);
+    }
+
+    @Test
+    public void testContainsChecksEntryExpiry() {
+        when(hashOperations.get("blacklist-bucket:+9198765432", "10")).thenReturn(expiresIn(60));
+        when(hashOperations.get("blacklist-bucket:+9198765432", "11")).thenReturn(expiresIn(-60));
+
+        assertTrue(store.contains("+919876543210"));
+        assertFalse(store.contains("+919876543211"));
+        assertFalse(store.contains("+919876543212"));
+        verify(redisTemplate, never()).hasKey(any());
+    }
+
+    @Test
+    public void testFallsBackToKeysWhileMigrating() {
+        store = new BucketedBlacklistStore(redisTemplate, 2, true, 1000, 30000);
+        when(redisTemplate.hasKey("blacklist:+919876543210")).thenReturn(true);
+
+        assertTrue(store.contains("+919876543210"));
+        assertTrue(store.isMigrating());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFindBlacklistedWithLegacyFallback() {
+        store = new BucketedBlacklistStore(redisTemplate, 2, true, 1000, 30000);
+        when(redisTemplate.executePipelined(any(RedisCallback.class)))
+                .thenReturn(Collections.singletonList(Arrays.asList(expiresIn(60), null, expiresIn(-60))));
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.multiGet(Collections.singletonList("blacklist:+919876543211")))
+                .thenReturn(Collections.singletonList("BLACKLISTED"));
+
+        Set<String> blacklisted = store.findBlacklisted(Arrays.asList("+919876543210", "+919876543211", "+919876543212"));
+
+        assertEquals(2, blacklisted.size());
+        assertTrue(blacklisted.contains("+919876543210"));
+        assertTrue(blacklisted.contains("+919876543211"));
+    }
+
+    @Test
+    public void testMigrationStopsOnceDone() {
+        store = new BucketedBlacklistStore(redisTemplate, 2, true, 1000, 30000);
+        when(hashOperations.get("blacklist-migration", "done")).thenReturn("1700000000000");
+
+        store.migrateStep();
+
+        assertFalse(store.isMigrating());
+        verify(redisTemplate, never()).opsForValue();
+    }
+}
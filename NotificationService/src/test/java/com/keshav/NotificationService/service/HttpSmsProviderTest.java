@@ -0,0 +1,34 @@
+package com.keshav.NotificationService.service;
+
+import io.netty.handler.timeout.ReadTimeoutException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.net.ConnectException;
+import java.net.URI;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpSmsProviderTest {
+
+    private static WebClientRequestException requestException(Throwable cause) {
+        return new WebClientRequestException(cause, HttpMethod.POST, URI.create("http://provider"), new HttpHeaders());
+    }
+
+    @Test
+    void testOnlyFailuresBeforeTheProviderAcceptedTheMessageAreUnreachable() {
+        assertTrue(HttpSmsProvider.isUnreachable(requestException(new ConnectException("Connection refused"))));
+        assertTrue(HttpSmsProvider.isUnreachable(WebClientResponseException.create(
+                HttpStatus.SERVICE_UNAVAILABLE.value(), "Service Unavailable", null, null, null)));
+
+        assertFalse(HttpSmsProvider.isUnreachable(requestException(ReadTimeoutException.INSTANCE)));
+        assertFalse(HttpSmsProvider.isUnreachable(new TimeoutException("Did not observe any item")));
+        assertFalse(HttpSmsProvider.isUnreachable(WebClientResponseException.create(
+                HttpStatus.INTERNAL_SERVER_ERROR.value(), "Internal Server Error", null, null, null)));
+    }
+}
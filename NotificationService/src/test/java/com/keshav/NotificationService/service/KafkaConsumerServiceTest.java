@@ -1,10 +1,19 @@
 package com.keshav.NotificationService.service;
 
+import com.keshav.NotificationService.dto.SmsEnvelope;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -13,13 +22,117 @@ public class KafkaConsumerServiceTest {
     @Mock
     private SmsProcessingService smsProcessingService;
 
-    @InjectMocks
+    @Mock
+    private AsyncSmsDispatcher asyncSmsDispatcher;
+
     private KafkaConsumerService kafkaConsumerService;
 
+    @BeforeEach
+    public void setUp() {
+        kafkaConsumerService = new KafkaConsumerService(smsProcessingService, asyncSmsDispatcher, 1000, 30000);
+    }
+
     @Test
     public void testConsumeMessage() {
-        String requestId = "12345678";
-        kafkaConsumerService.consumeMessage(requestId);
-        verify(smsProcessingService, times(1)).processSmsRequest(requestId);
+        SmsEnvelope envelope = SmsEnvelope.ofRequestId("12345678");
+        kafkaConsumerService.consumeMessage(envelope);
+        verify(smsProcessingService, times(1)).processSmsRequest(envelope);
+    }
+
+    @Test
+    public void testConsumeBatch() {
+        List<SmsEnvelope> envelopes = Collections.singletonList(SmsEnvelope.ofRequestId("12345678"));
+        Acknowledgment acknowledgment = mock(Acknowledgment.class);
+
+        kafkaConsumerService.consumeBatch(envelopes, acknowledgment);
+
+        verify(smsProcessingService, times(1)).processSmsBatch(envelopes);
+        verify(acknowledgment, times(1)).acknowledge();
+    }
+
+    @Test
+    public void testConsumeBatch_SkipsMessagesThatCouldNotBeDeserialized() {
+        List<SmsEnvelope> envelopes = Arrays.asList(SmsEnvelope.ofRequestId("1"), null, SmsEnvelope.ofRequestId("3"));
+        Acknowledgment acknowledgment = mock(Acknowledgment.class);
+
+        kafkaConsumerService.consumeBatch(envelopes, acknowledgment);
+
+        verify(smsProcessingService, times(1)).processSmsBatch(Arrays.asList(envelopes.get(0), envelopes.get(2)));
+        verify(acknowledgment, times(1)).acknowledge();
+    }
+
+    @Test
+    public void testConsumeAsync_MessageThatCouldNotBeDeserialized() {
+        ConsumerRecord<String, SmsEnvelope> record = new ConsumerRecord<>("notification.send_sms", 0, 42L, null, null);
+        Acknowledgment acknowledgment = mock(Acknowledgment.class);
+
+        kafkaConsumerService.consumeAsync(record, acknowledgment);
+
+        verify(asyncSmsDispatcher, times(1)).dispatch(record, acknowledgment);
+    }
+
+    @Test
+    public void testConsumeBatch_NoAckOnFailure() {
+        List<SmsEnvelope> envelopes = Collections.singletonList(SmsEnvelope.ofRequestId("12345678"));
+        Acknowledgment acknowledgment = mock(Acknowledgment.class);
+        doThrow(new RuntimeException("DB down")).when(smsProcessingService).processSmsBatch(envelopes);
+
+        try {
+            kafkaConsumerService.consumeBatch(envelopes, acknowledgment);
+        } catch (RuntimeException expected) {
+            // the container redelivers the batch
+        }
+
+        verifyNoInteractions(acknowledgment);
+    }
+
+    @Test
+    public void testConsumeAsync() {
+        ConsumerRecord<String, SmsEnvelope> record =
+                new ConsumerRecord<>("notification.send_sms", 0, 42L, null, SmsEnvelope.ofRequestId("12345678"));
+        Acknowledgment acknowledgment = mock(Acknowledgment.class);
+
+        kafkaConsumerService.consumeAsync(record, acknowledgment);
+
+        verify(asyncSmsDispatcher, times(1)).dispatch(record, acknowledgment);
+        verifyNoInteractions(smsProcessingService);
+    }
+
+    @Test
+    public void testConsumeBatch_RedeliversWholeBatchWhenEverythingIsDeferred() {
+        List<SmsEnvelope> envelopes = Arrays.asList(SmsEnvelope.ofRequestId("1"), SmsEnvelope.ofRequestId("2"));
+        Acknowledgment acknowledgment = mock(Acknowledgment.class);
+        when(smsProcessingService.processSmsBatch(envelopes)).thenReturn(envelopes);
+
+        kafkaConsumerService.consumeBatch(envelopes, acknowledgment);
+
+        verify(acknowledgment, times(1)).nack(0, Duration.ofMillis(1000));
+        verify(acknowledgment, never()).acknowledge();
+    }
+
+    private ConsumerRecord<String, SmsEnvelope> retryRecord(long dueAt) {
+        SmsEnvelope envelope = SmsEnvelope.ofRequestId("12345678").retry(1, dueAt);
+        return new ConsumerRecord<>(SmsRetryService.RETRY_TOPIC_10S, 0, 7L, null, envelope);
+    }
+
+    @Test
+    public void testConsumeRetry_NotYetDueIsRedeliveredLater() {
+        Acknowledgment acknowledgment = mock(Acknowledgment.class);
+
+        kafkaConsumerService.consumeRetry(retryRecord(System.currentTimeMillis() + 600_000), acknowledgment);
+
+        verify(acknowledgment, times(1)).nack(Duration.ofMillis(30000));
+        verifyNoInteractions(smsProcessingService);
+    }
+
+    @Test
+    public void testConsumeRetry_DueIsProcessed() {
+        ConsumerRecord<String, SmsEnvelope> record = retryRecord(System.currentTimeMillis() - 1);
+        Acknowledgment acknowledgment = mock(Acknowledgment.class);
+
+        kafkaConsumerService.consumeRetry(record, acknowledgment);
+
+        verify(smsProcessingService, times(1)).processSmsRequest(record.value());
+        verify(acknowledgment, times(1)).acknowledge();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,105 @@
+package com.keshav.NotificationService.service;
+
+import com.keshav.NotificationService.dto.SmsSendResult;
+import com.keshav.NotificationService.dto.ThirdPartyApiDestination;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SmsAggregatorTest {
+
+    @Mock
+    private ThirdPartyApiService thirdPartyApiService;
+
+    private void respondSentForEveryDestination() {
+        when(thirdPartyApiService.sendBulk(anyString(), anyList())).thenAnswer(invocation -> {
+            List<ThirdPartyApiDestination> destinations = invocation.getArgument(1);
+            Map<String, SmsSendResult> results = new HashMap<>();
+            for (ThirdPartyApiDestination destination : destinations) {
+                results.put(destination.getCorrelationId(), SmsSendResult.sent(5));
+            }
+            return Mono.just(results);
+        });
+    }
+
+    @Test
+    void testSubmit_FlushesWhenGroupIsFull() {
+        respondSentForEveryDestination();
+        SmsAggregator aggregator = new SmsAggregator(thirdPartyApiService, true, 60000, 2, "batch");
+
+        Mono<SmsSendResult> first = aggregator.submit("Hello", "+919876543210", "1").cache();
+        first.subscribe();
+        SmsSendResult second = aggregator.submit("Hello", "+919876543211", "2").block(Duration.ofSeconds(5));
+
+        assertTrue(second.isSuccess());
+        assertTrue(first.block(Duration.ofSeconds(5)).isSuccess());
+        ArgumentCaptor<List<ThirdPartyApiDestination>> captor = ArgumentCaptor.forClass(List.class);
+        verify(thirdPartyApiService, times(1)).sendBulk(eq("Hello"), captor.capture());
+        assertEquals(2, captor.getValue().size());
+    }
+
+    @Test
+    void testSubmit_FlushesWhenWindowExpires() {
+        respondSentForEveryDestination();
+        SmsAggregator aggregator = new SmsAggregator(thirdPartyApiService, true, 20, 100, "batch");
+
+        SmsSendResult result = aggregator.submit("Hello", "+919876543210", "1").block(Duration.ofSeconds(5));
+
+        assertTrue(result.isSuccess());
+        verify(thirdPartyApiService, times(1)).sendBulk(eq("Hello"), anyList());
+    }
+
+    @Test
+    void testSubmit_DifferentTextIsNotGrouped() {
+        respondSentForEveryDestination();
+        SmsAggregator aggregator = new SmsAggregator(thirdPartyApiService, true, 20, 100, "batch");
+
+        Mono<SmsSendResult> first = aggregator.submit("Hello", "+919876543210", "1").cache();
+        first.subscribe();
+        aggregator.submit("Bye", "+919876543211", "2").block(Duration.ofSeconds(5));
+        first.block(Duration.ofSeconds(5));
+
+        verify(thirdPartyApiService).sendBulk(eq("Hello"), anyList());
+        verify(thirdPartyApiService).sendBulk(eq("Bye"), anyList());
+    }
+
+    @Test
+    void testSubmit_ProviderErrorFailsEveryMessage() {
+        when(thirdPartyApiService.sendBulk(anyString(), anyList())).thenReturn(Mono.error(new IllegalStateException("down")));
+        SmsAggregator aggregator = new SmsAggregator(thirdPartyApiService, true, 20, 100, "batch");
+
+        SmsSendResult result = aggregator.submit("Hello", "+919876543210", "1").block(Duration.ofSeconds(5));
+
+        assertFalse(result.isSuccess());
+    }
+
+    @Test
+    void testSubmit_SendsDuplicateCorrelationIdOnce() {
+        respondSentForEveryDestination();
+        SmsAggregator aggregator = new SmsAggregator(thirdPartyApiService, true, 60000, 2, "batch");
+
+        Mono<SmsSendResult> first = aggregator.submit("Hello", "+919876543210", "1").cache();
+        first.subscribe();
+        SmsSendResult second = aggregator.submit("Hello", "+919876543210", "1").block(Duration.ofSeconds(5));
+
+        assertTrue(second.isSuccess());
+        assertTrue(first.block(Duration.ofSeconds(5)).isSuccess());
+        ArgumentCaptor<List<ThirdPartyApiDestination>> captor = ArgumentCaptor.forClass(List.class);
+        verify(thirdPartyApiService, times(1)).sendBulk(eq("Hello"), captor.capture());
+        assertEquals(1, captor.getValue().size());
+    }
+}
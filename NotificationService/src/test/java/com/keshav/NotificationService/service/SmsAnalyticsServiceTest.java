@@ -0,0 +1,129 @@
+package com.keshav.NotificationService.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.keshav.NotificationService.dto.SmsSendAnalytics;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SmsAnalyticsServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Clock clock = Clock.fixed(Instant.parse("2024-05-01T10:30:00Z"), ZoneOffset.UTC);
+    private RestClient restClient;
+    private SmsAnalyticsService smsAnalyticsService;
+
+    @BeforeEach
+    void setUp() {
+        restClient = mock(RestClient.class);
+        SmsLogIndexManager smsLogIndexManager = new SmsLogIndexManager(null, "yyyy.MM.dd", 90);
+        smsAnalyticsService = new SmsAnalyticsService(restClient, smsLogIndexManager, objectMapper, true, 60, 1000, 100, clock);
+    }
+
+    @Test
+    void testGetSendAnalytics_ServesRecentRangeFromRollup() throws IOException {
+        smsAnalyticsService.recordSend("+911111111111");
+        smsAnalyticsService.recordSend("+911111111111");
+        smsAnalyticsService.recordSend("+14155550100");
+
+        SmsSendAnalytics analytics = smsAnalyticsService.getSendAnalytics(LocalDateTime.of(2024, 5, 1, 10, 32),
+                LocalDateTime.of(2024, 5, 1, 10, 40), "5m", null, "+91", 10);
+
+        assertEquals(SmsSendAnalytics.ROLLUP, analytics.getSource());
+        assertEquals(3, analytics.getSends().size());
+        assertEquals("2024-05-01T10:30:00", analytics.getSends().get(0).getStart());
+        assertEquals(2, analytics.getSends().get(0).getCount());
+        assertEquals("2024-05-01T10:40:00", analytics.getSends().get(2).getStart());
+        assertEquals(0, analytics.getSends().get(1).getCount());
+        assertEquals(1, analytics.getTopRecipients().size());
+        assertEquals("+911111111111", analytics.getTopRecipients().get(0).getPhoneNumber());
+        verifyNoInteractions(restClient);
+    }
+
+    @Test
+    void testGetSendAnalytics_AggregatesOlderRangeInElasticsearch() throws IOException {
+        Response response = mock(Response.class);
+        when(response.getEntity()).thenReturn(new StringEntity("{\"aggregations\": {"
+                + "\"sends\": {\"buckets\": [{\"key_as_string\": \"2024-04-30T00:00:00\", \"doc_count\": 7}, "
+                + "{\"key_as_string\": \"2024-05-01T00:00:00\", \"doc_count\": 3}]}, "
+                + "\"top_recipients\": {\"buckets\": [{\"key\": \"+911111111111\", \"doc_count\": 6}]}}}",
+                ContentType.APPLICATION_JSON));
+        when(restClient.performRequest(any(Request.class))).thenReturn(response);
+
+        SmsSendAnalytics analytics = smsAnalyticsService.getSendAnalytics(LocalDateTime.of(2024, 4, 30, 8, 0),
+                LocalDateTime.of(2024, 5, 1, 10, 0), "1d", "+911111111111", null, 5);
+
+        ArgumentCaptor<Request> captor = ArgumentCaptor.forClass(Request.class);
+        verify(restClient).performRequest(captor.capture());
+        Request request = captor.getValue();
+        assertEquals("/sms-logs-v2-2024.04.30,sms-logs-v2-2024.05.01/_search", request.getEndpoint());
+        JsonNode body = objectMapper.readTree(EntityUtils.toString(request.getEntity()));
+        assertEquals(0, body.path("size").asInt());
+        JsonNode histogram = body.path("aggs").path("sends").path("date_histogram");
+        assertEquals("1d", histogram.path("fixed_interval").asText());
+        assertEquals("2024-04-30T00:00:00", histogram.path("extended_bounds").path("min").asText());
+        assertEquals(5, body.path("aggs").path("top_recipients").path("terms").path("size").asInt());
+        assertTrue(body.path("query").toString().contains("+911111111111"));
+
+        assertEquals(SmsSendAnalytics.ELASTICSEARCH, analytics.getSource());
+        assertEquals(2, analytics.getSends().size());
+        assertEquals(7, analytics.getSends().get(0).getCount());
+        assertEquals(6, analytics.getTopRecipients().get(0).getCount());
+    }
+
+    @Test
+    void testGetSendAnalytics_AggregatesTextMappedIndicesOnRuntimeField() throws IOException {
+        SmsLogIndexManager smsLogIndexManager = mock(SmsLogIndexManager.class);
+        IndexCoordinates indices = IndexCoordinates.of("sms-logs-v2-2024.04.30", "sms-logs");
+        when(smsLogIndexManager.indicesFor(any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(indices);
+        when(smsLogIndexManager.includesUnmigrated(indices)).thenReturn(true);
+        smsAnalyticsService = new SmsAnalyticsService(restClient, smsLogIndexManager, objectMapper, true, 60, 1000, 100, clock);
+        Response response = mock(Response.class);
+        when(response.getEntity()).thenReturn(new StringEntity("{\"aggregations\": {}}", ContentType.APPLICATION_JSON));
+        when(restClient.performRequest(any(Request.class))).thenReturn(response);
+
+        smsAnalyticsService.getSendAnalytics(LocalDateTime.of(2024, 4, 30, 8, 0),
+                LocalDateTime.of(2024, 4, 30, 10, 0), "1h", null, "+91", 5);
+
+        ArgumentCaptor<Request> captor = ArgumentCaptor.forClass(Request.class);
+        verify(restClient).performRequest(captor.capture());
+        JsonNode body = objectMapper.readTree(EntityUtils.toString(captor.getValue().getEntity()));
+        assertEquals("recipient", body.path("aggs").path("top_recipients").path("terms").path("field").asText());
+        assertEquals("keyword", body.path("runtime_mappings").path("recipient").path("type").asText());
+        // The standard analyzer indexed the numbers in text-mapped indices without the leading +.
+        JsonNode byMapping = body.path("query").path("bool").path("filter").get(1).path("bool").path("should");
+        assertEquals("+91", byMapping.get(0).path("bool").path("filter").get(1).path("prefix").path("phoneNumber")
+                .path("value").asText());
+        assertEquals("91", byMapping.get(1).path("bool").path("filter").get(0).path("prefix").path("phoneNumber")
+                .path("value").asText());
+    }
+
+    @Test
+    void testGetSendAnalytics_RejectsInvalidIntervalsAndRanges() {
+        LocalDateTime start = LocalDateTime.of(2024, 5, 1, 0, 0);
+        assertThrows(IllegalArgumentException.class,
+                () -> smsAnalyticsService.getSendAnalytics(start, start.plusHours(1), "1w", null, null, 10));
+        assertThrows(IllegalArgumentException.class,
+                () -> smsAnalyticsService.getSendAnalytics(start, start.minusHours(1), "1h", null, null, 10));
+        assertThrows(IllegalArgumentException.class,
+                () -> smsAnalyticsService.getSendAnalytics(start, start.plusDays(10), "1m", null, null, 10));
+    }
+}
@@ -0,0 +1,133 @@
+package com.keshav.NotificationService.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexInformation;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.index.AliasAction;
+import org.springframework.data.elasticsearch.core.index.AliasActions;
+import org.springframework.data.elasticsearch.core.index.AliasData;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SmsLogIndexManagerTest {
+
+    private final ElasticsearchOperations elasticsearchOperations = mock(ElasticsearchOperations.class);
+    private final Clock clock = Clock.fixed(Instant.parse("2024-05-10T12:00:00Z"), ZoneOffset.UTC);
+    private final List<String> created = new ArrayList<>();
+    private final List<String> deleted = new ArrayList<>();
+    private final List<AliasActions> aliased = new ArrayList<>();
+
+    private void givenIndices(String... names) {
+        List<String> existing = Arrays.asList(names);
+        IndexOperations patternOps = mock(IndexOperations.class);
+        List<IndexInformation> information = new ArrayList<>();
+        for (String name : existing) {
+            information.add(IndexInformation.of(name, null, null, null));
+        }
+        when(patternOps.getInformation()).thenReturn(information);
+        when(elasticsearchOperations.indexOps(any(Class.class))).thenReturn(mock(IndexOperations.class));
+        when(elasticsearchOperations.indexOps(any(IndexCoordinates.class))).thenAnswer(invocation -> {
+            String name = invocation.<IndexCoordinates>getArgument(0).getIndexName();
+            if (name.endsWith("*")) {
+                return patternOps;
+            }
+            IndexOperations indexOps = mock(IndexOperations.class);
+            when(indexOps.exists()).thenReturn(existing.contains(name));
+            when(indexOps.create()).then(i -> created.add(name));
+            when(indexOps.delete()).then(i -> deleted.add(name));
+            when(indexOps.getAliasesForIndex((String[]) any())).thenReturn(Collections.singletonMap("sms-logs",
+                    Collections.singleton(AliasData.of(SmsLogIndexManager.READ_ALIAS, null, null, null, null, null))));
+            when(indexOps.alias(any(AliasActions.class))).then(i -> aliased.add(i.getArgument(0)));
+            return indexOps;
+        });
+    }
+
+    @Test
+    void testIndicesFor_DailyIndicesOverlappingRange() {
+        givenIndices();
+        SmsLogIndexManager manager = new SmsLogIndexManager(elasticsearchOperations, "yyyy.MM.dd", 90, clock);
+
+        IndexCoordinates indices = manager.indicesFor(LocalDateTime.of(2024, 4, 30, 22, 0), LocalDateTime.of(2024, 5, 2, 1, 0));
+
+        assertArrayEquals(new String[]{"sms-logs-v2-2024.04.30", "sms-logs-v2-2024.05.01", "sms-logs-v2-2024.05.02"},
+                indices.getIndexNames());
+    }
+
+    @Test
+    void testIndicesFor_MonthlyIndicesAndLongRanges() {
+        givenIndices();
+        SmsLogIndexManager monthly = new SmsLogIndexManager(elasticsearchOperations, "yyyy.MM", 90, clock);
+        SmsLogIndexManager daily = new SmsLogIndexManager(elasticsearchOperations, "yyyy.MM.dd", 90, clock);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 15, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2024, 5, 1, 0, 0);
+
+        assertArrayEquals(new String[]{"sms-logs-v2-2024.01", "sms-logs-v2-2024.02", "sms-logs-v2-2024.03",
+                "sms-logs-v2-2024.04", "sms-logs-v2-2024.05"}, monthly.indicesFor(start, end).getIndexNames());
+        assertArrayEquals(new String[]{SmsLogIndexManager.READ_ALIAS}, daily.indicesFor(start, end).getIndexNames());
+        assertEquals("sms-logs-v2-2024.05", monthly.indexFor(null));
+    }
+
+    @Test
+    void testIndicesFor_IncludesOverlappingIndicesNotMigratedYet() {
+        givenIndices("sms-logs", "sms-logs-2024.04.01", "sms-logs-2024.05.01", "sms-logs-v2-2024.05.01");
+        SmsLogIndexManager manager = new SmsLogIndexManager(elasticsearchOperations, "yyyy.MM.dd", 90, clock);
+
+        IndexCoordinates indices = manager.indicesFor(LocalDateTime.of(2024, 4, 30, 22, 0), LocalDateTime.of(2024, 5, 2, 1, 0));
+
+        assertArrayEquals(new String[]{"sms-logs-v2-2024.04.30", "sms-logs-v2-2024.05.01", "sms-logs-v2-2024.05.02",
+                "sms-logs", "sms-logs-2024.05.01"}, indices.getIndexNames());
+    }
+
+    @Test
+    void testMaintain_CreatesUpcomingIndicesAndDropsExpiredOnes() {
+        givenIndices("sms-logs-v2-2024.02.09", "sms-logs-v2-2024.02.10", "sms-logs-v2-2024.05.10",
+                "sms-logs-2024.02.08", "sms-logs-2024.05.09", "sms-logs-reindex");
+
+        new SmsLogIndexManager(elasticsearchOperations, "yyyy.MM.dd", 90, clock).maintain();
+
+        assertEquals(Arrays.asList("sms-logs-v2-2024.05.11"), created);
+        assertEquals(Arrays.asList("sms-logs-v2-2024.02.09", "sms-logs-2024.02.08"), deleted);
+    }
+
+    @Test
+    void testMaintain_AddsIndicesNotMigratedYetToReadAlias() {
+        givenIndices("sms-logs", "sms-logs-2024.05.09", "sms-logs-v2-2024.05.10");
+
+        new SmsLogIndexManager(elasticsearchOperations, "yyyy.MM.dd", 90, clock).maintain();
+
+        assertEquals(1, aliased.size());
+        AliasAction.Add add = (AliasAction.Add) aliased.get(0).getActions().get(0);
+        assertArrayEquals(new String[]{"sms-logs-2024.05.09"}, add.getParameters().getIndices());
+        assertArrayEquals(new String[]{SmsLogIndexManager.READ_ALIAS}, add.getParameters().getAliases());
+    }
+
+    @Test
+    void testIncludesUnmigrated() {
+        givenIndices("sms-logs-v2-2024.05.10");
+        SmsLogIndexManager manager = new SmsLogIndexManager(elasticsearchOperations, "yyyy.MM.dd", 90, clock);
+
+        assertFalse(manager.includesUnmigrated(IndexCoordinates.of("sms-logs-v2-2024.05.10", SmsLogIndexManager.READ_ALIAS)));
+        assertTrue(manager.includesUnmigrated(IndexCoordinates.of("sms-logs-v2-2024.05.10", "sms-logs-2024.05.09")));
+    }
+
+    @Test
+    void testIndicesToMigrate_LegacyAndFirstMappingIndices() {
+        givenIndices("sms-logs", "sms-logs-v2-2024.05.10", "sms-logs-2024.05.09", "sms-logs-reindex");
+
+        List<String> indices = new SmsLogIndexManager(elasticsearchOperations, "yyyy.MM.dd", 90, clock).indicesToMigrate();
+
+        assertEquals(Arrays.asList("sms-logs", "sms-logs-2024.05.09"), indices);
+    }
+}
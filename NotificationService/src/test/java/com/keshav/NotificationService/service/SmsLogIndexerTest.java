@@ -0,0 +1,228 @@
+package com.keshav.NotificationService.service;
+
+import com.keshav.NotificationService.model.SmsLog;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.elasticsearch.BulkFailureException;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+class SmsLogIndexerTest {
+
+    private ElasticsearchOperations elasticsearchOperations;
+    private SmsLogIndexManager smsLogIndexManager;
+    private SmsLogSpool smsLogSpool;
+    private MeterRegistry meterRegistry;
+    private List<List<String>> bulkRequests;
+
+    @BeforeEach
+    void setUp() {
+        elasticsearchOperations = mock(ElasticsearchOperations.class);
+        smsLogIndexManager = new SmsLogIndexManager(elasticsearchOperations, "yyyy.MM.dd", 90);
+        smsLogSpool = mock(SmsLogSpool.class);
+        meterRegistry = new SimpleMeterRegistry();
+        bulkRequests = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    private SmsLogIndexer indexer(int maxActions, int queueCapacity, int maxRetries) {
+        return new SmsLogIndexer(elasticsearchOperations, smsLogIndexManager, smsLogSpool, meterRegistry, true, maxActions, 200, queueCapacity,
+                10, maxRetries, 1, 5000);
+    }
+
+    private static SmsLog smsLog(String id) {
+        SmsLog smsLog = new SmsLog();
+        smsLog.setId(id);
+        smsLog.setPhoneNumber("+1234567890");
+        smsLog.setMessage("Test message");
+        return smsLog;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void recordBulkRequests() {
+        when(elasticsearchOperations.bulkIndex(anyList(), any(IndexCoordinates.class))).thenAnswer(invocation -> {
+            List<String> ids = new ArrayList<>();
+            for (IndexQuery query : (List<IndexQuery>) invocation.getArgument(0)) {
+                ids.add(query.getId());
+            }
+            bulkRequests.add(ids);
+            return Collections.emptyList();
+        });
+    }
+
+    private double documents(String result) {
+        return meterRegistry.get("sms.log.index.documents").tag("result", result).functionCounter().count();
+    }
+
+    @Test
+    void testIndex_FlushesInBulkRequestsOfMaxActions() throws InterruptedException {
+        recordBulkRequests();
+        SmsLogIndexer indexer = indexer(2, 100, 3);
+        indexer.start();
+        for (String id : new String[]{"a", "b", "c", "d", "e"}) {
+            indexer.index(smsLog(id));
+        }
+        indexer.shutdown();
+
+        List<String> indexedIds = new ArrayList<>();
+        for (List<String> request : bulkRequests) {
+            assertTrue(request.size() <= 2);
+            indexedIds.addAll(request);
+        }
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), indexedIds);
+        assertEquals(5, documents("indexed"));
+        verify(elasticsearchOperations, never()).save(any(SmsLog.class));
+    }
+
+    @Test
+    void testIndex_RetriesOnlyRejectedDocuments() throws InterruptedException {
+        when(elasticsearchOperations.bulkIndex(anyList(), any(IndexCoordinates.class)))
+                .thenThrow(new BulkFailureException("rejected", Collections.singletonMap("b", "es_rejected_execution_exception")))
+                .thenReturn(Collections.emptyList());
+
+        SmsLogIndexer indexer = indexer(10, 100, 3);
+        indexer.start();
+        indexer.index(smsLog("a"));
+        indexer.index(smsLog("b"));
+        indexer.index(smsLog("c"));
+        indexer.shutdown();
+
+        ArgumentCaptor<List<IndexQuery>> captor = captor();
+        verify(elasticsearchOperations, times(2)).bulkIndex(captor.capture(), any(IndexCoordinates.class));
+        assertEquals(3, captor.getAllValues().get(0).size());
+        List<IndexQuery> retry = captor.getAllValues().get(1);
+        assertEquals(1, retry.size());
+        assertEquals("b", retry.get(0).getId());
+        assertTrue(retry.get(0).getIndexName().startsWith(SmsLogIndexManager.INDEX_PREFIX));
+        assertEquals(3, documents("indexed"));
+        assertEquals(1, documents("retried"));
+    }
+
+    @Test
+    void testIndex_DropsDocumentsAfterMaxRetries() throws InterruptedException {
+        when(elasticsearchOperations.bulkIndex(anyList(), any(IndexCoordinates.class)))
+                .thenThrow(new RuntimeException("Connection refused"));
+
+        SmsLogIndexer indexer = indexer(10, 100, 2);
+        indexer.start();
+        indexer.index(smsLog("a"));
+        indexer.shutdown();
+
+        verify(elasticsearchOperations, times(3)).bulkIndex(anyList(), any(IndexCoordinates.class));
+        assertEquals(0, documents("indexed"));
+        assertEquals(2, documents("retried"));
+        assertEquals(1, documents("dropped"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testIndex_SpoolsDocumentsAfterMaxRetries() throws InterruptedException {
+        when(elasticsearchOperations.bulkIndex(anyList(), any(IndexCoordinates.class)))
+                .thenThrow(new RuntimeException("Connection refused"));
+        when(smsLogSpool.spill(anyList())).thenAnswer(invocation -> ((List<SmsLog>) invocation.getArgument(0)).size());
+
+        SmsLogIndexer indexer = indexer(10, 100, 1);
+        indexer.start();
+        indexer.index(smsLog("a"));
+        indexer.index(smsLog("b"));
+        indexer.shutdown();
+
+        // The logs are spooled in one or two batches, depending on whether the flusher took "a" before "b" was queued.
+        ArgumentCaptor<List<SmsLog>> captor = ArgumentCaptor.forClass((Class<List<SmsLog>>) (Class<?>) List.class);
+        verify(smsLogSpool, atLeastOnce()).spill(captor.capture());
+        List<String> spooled = new ArrayList<>();
+        for (List<SmsLog> smsLogs : captor.getAllValues()) {
+            for (SmsLog smsLog : smsLogs) {
+                spooled.add(smsLog.getId());
+            }
+        }
+        assertEquals(Arrays.asList("a", "b"), spooled);
+        assertEquals(0, documents("dropped"));
+    }
+
+    @Test
+    void testIndex_SpoolsWithoutWaitingWhenQueueFull() throws InterruptedException {
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(elasticsearchOperations.bulkIndex(anyList(), any(IndexCoordinates.class))).thenAnswer(invocation -> {
+            flushing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return Collections.emptyList();
+        });
+        when(smsLogSpool.isEnabled()).thenReturn(true);
+        when(smsLogSpool.spill(anyList())).thenReturn(1);
+
+        SmsLogIndexer indexer = new SmsLogIndexer(elasticsearchOperations, smsLogIndexManager, smsLogSpool, meterRegistry, true, 1, 200, 1,
+                60000, 3, 1, 5000);
+        indexer.start();
+        indexer.index(smsLog("a"));
+        assertTrue(flushing.await(5, TimeUnit.SECONDS));
+        indexer.index(smsLog("b"));
+        long start = System.currentTimeMillis();
+        indexer.index(smsLog("c"));
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        verify(smsLogSpool).spill(argThat(logs -> logs.size() == 1 && "c".equals(logs.get(0).getId())));
+
+        release.countDown();
+        indexer.shutdown();
+        assertEquals(0, documents("dropped"));
+    }
+
+    @Test
+    void testIndex_DropsWhenQueueStaysFull() throws InterruptedException {
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(elasticsearchOperations.bulkIndex(anyList(), any(IndexCoordinates.class))).thenAnswer(invocation -> {
+            flushing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return Collections.emptyList();
+        });
+
+        SmsLogIndexer indexer = indexer(1, 1, 3);
+        indexer.start();
+        indexer.index(smsLog("a"));
+        assertTrue(flushing.await(5, TimeUnit.SECONDS));
+        indexer.index(smsLog("b"));
+        indexer.index(smsLog("c"));
+        assertEquals(1, documents("dropped"));
+
+        release.countDown();
+        indexer.shutdown();
+        assertEquals(2, documents("indexed"));
+    }
+
+    @Test
+    void testIndex_IndexesDirectlyWhenDisabled() {
+        SmsLogIndexer indexer = new SmsLogIndexer(elasticsearchOperations, smsLogIndexManager, smsLogSpool, meterRegistry, false, 10, 50, 100,
+                10, 3, 1, 5000);
+        indexer.start();
+        SmsLog smsLog = smsLog("a");
+        smsLog.setSentAt(LocalDateTime.of(2024, 5, 1, 23, 59));
+        indexer.index(smsLog);
+
+        verify(elasticsearchOperations).save(smsLog, IndexCoordinates.of("sms-logs-v2-2024.05.01"));
+        verify(elasticsearchOperations, never()).bulkIndex(anyList(), any(IndexCoordinates.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<IndexQuery>> captor() {
+        return ArgumentCaptor.forClass((Class<List<IndexQuery>>) (Class<?>) List.class);
+    }
+}
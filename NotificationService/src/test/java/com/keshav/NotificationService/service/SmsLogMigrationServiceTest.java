@@ -0,0 +1,134 @@
+package com.keshav.NotificationService.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.index.AliasAction;
+import org.springframework.data.elasticsearch.core.index.AliasActions;
+import org.springframework.data.elasticsearch.core.index.AliasData;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.reindex.ReindexRequest;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SmsLogMigrationServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // Documents of the migration index, by old index.
+    private final Map<String, JsonNode> stored = new HashMap<>();
+    private final Map<String, String> tasks = new HashMap<>();
+    private ElasticsearchOperations elasticsearchOperations;
+    private RestClient restClient;
+    private SmsLogIndexManager smsLogIndexManager;
+    private IndexOperations legacyOps;
+    private IndexOperations partitionOps;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        elasticsearchOperations = mock(ElasticsearchOperations.class);
+        restClient = mock(RestClient.class);
+        smsLogIndexManager = mock(SmsLogIndexManager.class);
+        legacyOps = mock(IndexOperations.class);
+        partitionOps = mock(IndexOperations.class);
+        when(smsLogIndexManager.indicesToMigrate()).thenReturn(Arrays.asList("sms-logs", "sms-logs-2024.05.09"));
+        when(smsLogIndexManager.indexFor(null)).thenReturn("sms-logs-v2-2024.05.10");
+        when(smsLogIndexManager.getDatePattern()).thenReturn("yyyy.MM.dd");
+        when(elasticsearchOperations.indexOps(IndexCoordinates.of("sms-logs"))).thenReturn(legacyOps);
+        when(elasticsearchOperations.indexOps(IndexCoordinates.of("sms-logs-2024.05.09"))).thenReturn(partitionOps);
+        when(legacyOps.getAliasesForIndex("sms-logs")).thenReturn(Collections.singletonMap("sms-logs",
+                Collections.singleton(AliasData.of(SmsLogIndexManager.READ_ALIAS, null, null, null, null, null))));
+        when(elasticsearchOperations.submitReindex(any())).thenReturn("node:1", "node:2");
+        when(restClient.performRequest(any(Request.class))).thenAnswer(invocation -> handle(invocation.getArgument(0)));
+    }
+
+    /**
+     * Serves the migration index and the tasks API.
+     */
+    private Response handle(Request request) throws Exception {
+        String endpoint = request.getEndpoint();
+        String body = "{}";
+        if (endpoint.equals("/" + SmsLogMigrationService.MIGRATION_INDEX + "/_search")) {
+            ObjectNode response = objectMapper.createObjectNode();
+            ArrayNode hits = response.putObject("hits").putArray("hits");
+            for (Map.Entry<String, JsonNode> entry : stored.entrySet()) {
+                hits.addObject().put("_id", entry.getKey()).set("_source", entry.getValue());
+            }
+            body = response.toString();
+        } else if (endpoint.startsWith("/" + SmsLogMigrationService.MIGRATION_INDEX + "/_doc/")) {
+            stored.put(endpoint.substring(endpoint.lastIndexOf('/') + 1), objectMapper.readTree(EntityUtils.toString(request.getEntity())));
+        } else if (endpoint.startsWith("/_tasks/")) {
+            body = tasks.get(endpoint.substring("/_tasks/".length()));
+        }
+        Response response = mock(Response.class);
+        when(response.getEntity()).thenReturn(new StringEntity(body, ContentType.APPLICATION_JSON));
+        return response;
+    }
+
+    private SmsLogMigrationService newService() {
+        return new SmsLogMigrationService(elasticsearchOperations, restClient, smsLogIndexManager);
+    }
+
+    @Test
+    void testStart_ReindexesEachOldIndexIntoCurrentIndices() throws Exception {
+        Map<String, String> status = newService().start();
+
+        ArgumentCaptor<ReindexRequest> captor = ArgumentCaptor.forClass(ReindexRequest.class);
+        verify(elasticsearchOperations, times(2)).submitReindex(captor.capture());
+        ReindexRequest request = captor.getAllValues().get(0);
+        assertArrayEquals(new String[]{"sms-logs"}, request.getSource().getIndexes().getIndexNames());
+        assertEquals(IndexQuery.OpType.CREATE, request.getDest().getOpType());
+        assertTrue(request.getScript().getSource().contains("ctx._index = 'sms-logs-v2-'"));
+        assertTrue(request.getScript().getSource().contains("DateTimeFormatter.ofPattern('yyyy.MM.dd')"));
+
+        // The old indices stay searchable while they are reindexed.
+        verify(legacyOps, never()).alias(any(AliasActions.class));
+        assertEquals(SmsLogMigrationService.RUNNING, status.get("sms-logs"));
+        assertEquals(SmsLogMigrationService.RUNNING, status.get("sms-logs-2024.05.09"));
+        assertEquals("node:1", stored.get("sms-logs").path("taskId").asText());
+
+        // Another node, or this one after a restart, does not start them again.
+        newService().start();
+        verify(elasticsearchOperations, times(2)).submitReindex(any());
+    }
+
+    @Test
+    void testCheckTasks_DropsOldIndexOnlyAfterCleanCompletion() throws Exception {
+        newService().start();
+        tasks.put("node:1", "{\"completed\": true, \"response\": {\"total\": 10, \"failures\": []}}");
+        tasks.put("node:2", "{\"completed\": true, \"response\": {\"total\": 10, \"failures\": [{\"cause\": {}}]}}");
+
+        SmsLogMigrationService restarted = newService();
+        restarted.checkTasks();
+
+        ArgumentCaptor<AliasActions> captor = ArgumentCaptor.forClass(AliasActions.class);
+        verify(legacyOps).alias(captor.capture());
+        List<AliasAction> actions = captor.getValue().getActions();
+        assertEquals(2, actions.size());
+        assertTrue(actions.get(0) instanceof AliasAction.Remove);
+        assertTrue(actions.get(1) instanceof AliasAction.RemoveIndex);
+        verify(partitionOps, never()).alias(any(AliasActions.class));
+        assertEquals(SmsLogMigrationService.COMPLETED, restarted.getStatus().get("sms-logs"));
+        assertEquals(SmsLogMigrationService.FAILED, restarted.getStatus().get("sms-logs-2024.05.09"));
+    }
+}
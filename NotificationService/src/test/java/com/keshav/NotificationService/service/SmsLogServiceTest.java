@@ -1,15 +1,24 @@
 package com.keshav.NotificationService.service;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.keshav.NotificationService.dto.SmsLogPage;
 import com.keshav.NotificationService.model.SmsLog;
-import com.keshav.NotificationService.repository.SmsLogRepository;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.data.domain.*;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
@@ -21,66 +30,139 @@ import static org.mockito.Mockito.*;
 class SmsLogServiceTest {
 
     @Mock
-    private SmsLogRepository smsLogRepository;
+    private SmsLogIndexer smsLogIndexer;
 
-    @InjectMocks
-    private SmsLogService smsLogService;
+    @Mock
+    private SmsLogIndexManager smsLogIndexManager;
+
+    @Mock
+    private RestClient restClient;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final List<Request> requests = new ArrayList<>();
+    private final List<JsonNode> requestBodies = new ArrayList<>();
 
-    private SmsLog smsLog;
+    private SmsLogService smsLogService;
 
     @BeforeEach
     void setUp() {
-        smsLog = new SmsLog();
-        smsLog.setPhoneNumber("+1234567890");
-        smsLog.setMessage("Test message");
-        smsLog.setSentAt(LocalDateTime.now());
+        smsLogService = new SmsLogService(smsLogIndexer, smsLogIndexManager, restClient, objectMapper, "2m");
     }
 
-    @Test
-    void testSaveSmsLog() {
-        smsLogService.saveSmsLog(smsLog.getId(), smsLog.getPhoneNumber(), smsLog.getMessage());
+    private void givenResponses(String... responses) throws IOException {
+        List<String> remaining = new ArrayList<>();
+        for (String response : responses) {
+            remaining.add(response);
+        }
+        when(restClient.performRequest(any(Request.class))).thenAnswer(invocation -> {
+            Request request = invocation.getArgument(0);
+            requests.add(request);
+            requestBodies.add(request.getEntity() != null
+                    ? objectMapper.readTree(EntityUtils.toString(request.getEntity())) : null);
+            Response response = mock(Response.class);
+            if (!request.getMethod().equals("DELETE")) {
+                when(response.getEntity()).thenReturn(new StringEntity(remaining.remove(0), ContentType.APPLICATION_JSON));
+            }
+            return response;
+        });
+    }
 
-        verify(smsLogRepository, times(1)).save(any(SmsLog.class));
+    private static String hits(String pitId, int count) {
+        StringBuilder hits = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            hits.append(i > 0 ? "," : "").append("{\"_id\": \"id-").append(i).append("\", \"_source\": {")
+                    .append("\"_class\": \"com.keshav.NotificationService.model.SmsLog\", \"phoneNumber\": \"+1234567890\", ")
+                    .append("\"message\": \"Test message\", \"sentAt\": \"2024-05-01T10:00:0").append(i).append("\"}, ")
+                    .append("\"sort\": [1714557600000, ").append(i).append("]}");
+        }
+        return "{\"pit_id\": \"" + pitId + "\", \"hits\": {\"hits\": [" + hits + "]}}";
     }
 
     @Test
-    void testGetSmsLogsByPhoneNumberAndDateRange_Success() {
-        LocalDateTime startTime = LocalDateTime.now().minusDays(1);
-        LocalDateTime endTime = LocalDateTime.now();
-        Pageable pageable = PageRequest.of(0, 10);
-
-        List<SmsLog> smsLogsList = new ArrayList<>();
-        smsLogsList.add(smsLog);
-        Page<SmsLog> mockPage = new PageImpl<>(smsLogsList);
-
-        when(smsLogRepository.findByPhoneNumberAndSentAtBetween(anyString(), any(), any(), any()))
-                .thenReturn(mockPage);
-
-        Page<SmsLog> result = smsLogService.getSmsLogsByPhoneNumberAndDateRange(smsLog.getPhoneNumber(), startTime, endTime, 0, 10);
+    void testSaveSmsLog() {
+        smsLogService.saveSmsLog("id-1", "+1234567890", "Test message");
 
-        assertNotNull(result);
-        assertEquals(1, result.getTotalElements());
-        assertEquals(smsLog.getPhoneNumber(), result.getContent().get(0).getPhoneNumber());
+        verify(smsLogIndexer, times(1)).index(argThat(smsLog -> smsLog.getId().equals("id-1")
+                && smsLog.getSentAt() != null));
+    }
 
-        verify(smsLogRepository, times(1)).findByPhoneNumberAndSentAtBetween(anyString(), any(), any(), any());
+    @Test
+    void testGetSmsLogsByPhoneNumberAndDateRange_PagesWithPointInTime() throws IOException {
+        LocalDateTime startTime = LocalDateTime.of(2024, 5, 1, 0, 0);
+        LocalDateTime endTime = LocalDateTime.of(2024, 5, 2, 0, 0);
+        when(smsLogIndexManager.indicesFor(startTime, endTime))
+                .thenReturn(IndexCoordinates.of("sms-logs-v2-2024.05.01", "sms-logs-v2-2024.05.02"));
+        givenResponses("{\"id\": \"pit-1\"}", hits("pit-2", 2), hits("pit-3", 1));
+
+        SmsLogPage first = smsLogService.getSmsLogsByPhoneNumberAndDateRange("+1234567890", startTime, endTime, null, 2);
+
+        assertEquals("/sms-logs-v2-2024.05.01,sms-logs-v2-2024.05.02/_pit", requests.get(0).getEndpoint());
+        assertEquals("true", requests.get(0).getParameters().get("ignore_unavailable"));
+        JsonNode search = requestBodies.get(1);
+        assertEquals("pit-1", search.path("pit").path("id").asText());
+        JsonNode byMapping = search.path("query").path("bool").path("filter").get(0).path("bool").path("should");
+        assertEquals("+1234567890", byMapping.get(0).path("bool").path("filter").get(1).path("term")
+                .path("phoneNumber").path("value").asText());
+        assertTrue(search.path("query").path("bool").path("must").isMissingNode());
+        assertFalse(search.has("search_after"));
+        assertEquals(2, first.getSmsLogs().size());
+        assertEquals("id-0", first.getSmsLogs().get(0).getId());
+        assertEquals(LocalDateTime.of(2024, 5, 1, 10, 0, 0), first.getSmsLogs().get(0).getSentAt());
+        assertNotNull(first.getNextCursor());
+
+        SmsLogPage second = smsLogService.getSmsLogsByPhoneNumberAndDateRange("+1234567890", startTime, endTime,
+                first.getNextCursor(), 2);
+
+        search = requestBodies.get(2);
+        assertEquals("pit-2", search.path("pit").path("id").asText());
+        assertEquals("[1714557600000,1]", search.path("search_after").toString());
+        assertEquals(1, second.getSmsLogs().size());
+        assertNull(second.getNextCursor());
+        assertEquals("DELETE", requests.get(3).getMethod());
+        assertEquals("pit-3", requestBodies.get(3).path("id").asText());
     }
 
     @Test
-    void testGetSmsLogsByText_Success() {
-        Pageable pageable = PageRequest.of(0, 10);
+    void testGetSmsLogsByPhoneNumberAndDateRange_MatchesTextMappedIndices() throws IOException {
+        LocalDateTime startTime = LocalDateTime.of(2024, 5, 1, 0, 0);
+        LocalDateTime endTime = LocalDateTime.of(2024, 5, 1, 23, 0);
+        when(smsLogIndexManager.indicesFor(startTime, endTime))
+                .thenReturn(IndexCoordinates.of("sms-logs-v2-2024.05.01", SmsLogIndexManager.LEGACY_INDEX));
+        givenResponses("{\"id\": \"pit-1\"}", hits("pit-1", 1));
+
+        SmsLogPage page = smsLogService.getSmsLogsByPhoneNumberAndDateRange("+1234567890", startTime, endTime, null, 2);
+
+        assertEquals("/sms-logs-v2-2024.05.01,sms-logs/_pit", requests.get(0).getEndpoint());
+        JsonNode phoneNumber = requestBodies.get(1).path("query").path("bool").path("filter").get(0).path("bool");
+        assertEquals(1, phoneNumber.path("minimum_should_match").asInt());
+        // Text-mapped indices analyzed the number into 1234567890, which a term query for +1234567890 never matches.
+        JsonNode old = phoneNumber.path("should").get(1).path("bool");
+        assertEquals(SmsLogIndexManager.INDEX_PREFIX, old.path("must_not").get(0).path("prefix").path("_index")
+                .path("value").asText());
+        JsonNode match = old.path("filter").get(0).path("match").path("phoneNumber");
+        assertEquals("+1234567890", match.path("query").asText());
+        assertEquals("AND", match.path("operator").asText());
+        assertEquals(1, page.getSmsLogs().size());
+    }
 
-        List<SmsLog> smsLogsList = new ArrayList<>();
-        smsLogsList.add(smsLog);
-        Page<SmsLog> mockPage = new PageImpl<>(smsLogsList);
+    @Test
+    void testGetSmsLogsByText_SearchesReadAlias() throws IOException {
+        givenResponses("{\"id\": \"pit-1\"}", hits("pit-1", 0));
 
-        when(smsLogRepository.findByMessagePhrase(anyString(), any()))
-                .thenReturn(mockPage);
+        SmsLogPage page = smsLogService.getSmsLogsByText("Test", null, 10);
 
-        Page<SmsLog> result = smsLogService.getSmsLogsByText("Test", 0, 10);
+        assertEquals("/" + SmsLogIndexManager.READ_ALIAS + "/_pit", requests.get(0).getEndpoint());
+        assertEquals("Test", requestBodies.get(1).path("query").path("match_phrase").path("message").path("query").asText());
+        assertTrue(page.getSmsLogs().isEmpty());
+        assertNull(page.getNextCursor());
+    }
 
-        assertNotNull(result);
-        assertEquals(1, result.getTotalElements());
-        assertEquals("Test message", result.getContent().get(0).getMessage());
-        verify(smsLogRepository, times(1)).findByMessagePhrase(anyString(), any());
+    @Test
+    void testGetSmsLogsByText_InvalidCursor() {
+        assertThrows(IllegalArgumentException.class, () -> smsLogService.getSmsLogsByText("Test", "not-a-cursor", 10));
+        assertThrows(IllegalArgumentException.class, () -> smsLogService.getSmsLogsByText("Test",
+                smsLogService.encodeCursor("pit-1", objectMapper.createObjectNode()), 10));
+        verifyNoInteractions(restClient);
     }
 }
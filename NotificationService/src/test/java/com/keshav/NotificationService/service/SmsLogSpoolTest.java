@@ -0,0 +1,154 @@
+package com.keshav.NotificationService.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.keshav.NotificationService.model.SmsLog;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.elasticsearch.BulkFailureException;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class SmsLogSpoolTest {
+
+    @TempDir
+    Path directory;
+
+    private ElasticsearchOperations elasticsearchOperations;
+    private MeterRegistry meterRegistry;
+    private SmsLogSpool spool;
+
+    @BeforeEach
+    void setUp() {
+        elasticsearchOperations = mock(ElasticsearchOperations.class);
+        meterRegistry = new SimpleMeterRegistry();
+        spool = spool(1 << 20);
+        spool.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        spool.shutdown();
+    }
+
+    private SmsLogSpool spool(long maxBytes) {
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        return new SmsLogSpool(elasticsearchOperations, new SmsLogIndexManager(elasticsearchOperations, "yyyy.MM.dd", 90),
+                objectMapper, meterRegistry, true, directory.toString(), 1 << 16, maxBytes, 2, 60000);
+    }
+
+    private static SmsLog smsLog(String id) {
+        SmsLog smsLog = new SmsLog();
+        smsLog.setId(id);
+        smsLog.setPhoneNumber("+1234567890");
+        smsLog.setMessage("Test message");
+        smsLog.setSentAt(LocalDateTime.of(2024, 5, 1, 12, 0));
+        return smsLog;
+    }
+
+    private double records(String result) {
+        return meterRegistry.get("sms.log.spool.records").tag("result", result).functionCounter().count();
+    }
+
+    @Test
+    void testReplay_IndexesSpooledLogsInBatches() {
+        assertEquals(3, spool.spill(Arrays.asList(smsLog("a"), smsLog("b"), smsLog("c"))));
+
+        spool.replay();
+
+        ArgumentCaptor<List<IndexQuery>> captor = captor();
+        verify(elasticsearchOperations, times(2)).bulkIndex(captor.capture(), any(IndexCoordinates.class));
+        assertEquals(2, captor.getAllValues().get(0).size());
+        IndexQuery last = captor.getAllValues().get(1).get(0);
+        assertEquals("c", last.getId());
+        assertEquals("sms-logs-v2-2024.05.01", last.getIndexName());
+        assertEquals(LocalDateTime.of(2024, 5, 1, 12, 0), ((SmsLog) last.getObject()).getSentAt());
+        assertEquals(3, records("replayed"));
+
+        spool.replay();
+        verify(elasticsearchOperations, times(2)).bulkIndex(anyList(), any(IndexCoordinates.class));
+    }
+
+    @Test
+    void testReplay_KeepsLogsWhileElasticsearchIsUnavailable() {
+        when(elasticsearchOperations.bulkIndex(anyList(), any(IndexCoordinates.class)))
+                .thenThrow(new RuntimeException("Connection refused"))
+                .thenThrow(new BulkFailureException("rejected", Collections.singletonMap("a", "es_rejected_execution_exception")))
+                .thenReturn(Collections.emptyList());
+        spool.spill(Collections.singletonList(smsLog("a")));
+
+        spool.replay();
+        spool.replay();
+        assertEquals(0, records("replayed"));
+
+        spool.replay();
+        assertEquals(1, records("replayed"));
+        verify(elasticsearchOperations, times(3)).bulkIndex(anyList(), any(IndexCoordinates.class));
+    }
+
+    @Test
+    void testReplay_DropsLogsRejectedForGood() {
+        when(elasticsearchOperations.bulkIndex(anyList(), any(IndexCoordinates.class)))
+                .thenThrow(new BulkFailureException("rejected", Collections.singletonMap("a", "mapper_parsing_exception")));
+        spool.spill(Arrays.asList(smsLog("a"), smsLog("b")));
+
+        spool.replay();
+        spool.replay();
+
+        verify(elasticsearchOperations, times(1)).bulkIndex(anyList(), any(IndexCoordinates.class));
+        assertEquals(1, records("replayed"));
+        assertEquals(1, records("dropped"));
+    }
+
+    @Test
+    void testSpill_StopsWhenFull() throws InterruptedException {
+        spool.shutdown();
+        meterRegistry = new SimpleMeterRegistry();
+        spool = spool(1 << 16);
+        spool.start();
+        SmsLog large = smsLog("a");
+        char[] message = new char[40000];
+        Arrays.fill(message, 'x');
+        large.setMessage(new String(message));
+
+        assertEquals(1, spool.spill(Arrays.asList(large, large)));
+        assertEquals(1, records("spooled"));
+    }
+
+    @Test
+    void testSpill_SurvivesRestart() throws InterruptedException {
+        spool.spill(Collections.singletonList(smsLog("a")));
+        spool.shutdown();
+        spool = spool(1 << 20);
+        spool.start();
+
+        spool.replay();
+
+        ArgumentCaptor<List<IndexQuery>> captor = captor();
+        verify(elasticsearchOperations).bulkIndex(captor.capture(), any(IndexCoordinates.class));
+        assertEquals("a", captor.getValue().get(0).getId());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<IndexQuery>> captor() {
+        return ArgumentCaptor.forClass((Class<List<IndexQuery>>) (Class<?>) List.class);
+    }
+}
@@ -0,0 +1,155 @@
+package com.keshav.NotificationService.service;
+
+import com.keshav.NotificationService.dto.SmsEnvelope;
+import com.keshav.NotificationService.model.SmsOutboxEvent;
+import com.keshav.NotificationService.model.SmsRequest;
+import com.keshav.NotificationService.repository.SmsOutboxRepository;
+import com.keshav.NotificationService.repository.SmsRequestRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SmsOutboxRelayTest {
+
+    @Mock
+    private SmsOutboxRepository smsOutboxRepository;
+
+    @Mock
+    private SmsRequestRepository smsRequestRepository;
+
+    @Mock
+    private KafkaTemplate<String, SmsEnvelope> kafkaTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private SmsOutboxRelay smsOutboxRelay;
+
+    @BeforeEach
+    void setUp() {
+        smsOutboxRelay = new SmsOutboxRelay(smsOutboxRepository, smsRequestRepository, kafkaTemplate, transactionManager,
+                new SimpleMeterRegistry(), 10, 1000, 1000);
+    }
+
+    private SmsOutboxEvent event(String requestId) {
+        SmsOutboxEvent event = new SmsOutboxEvent();
+        event.setRequestId(requestId);
+        event.setTopic("notification.send_sms");
+        return event;
+    }
+
+    private SettableListenableFuture<SendResult<String, SmsEnvelope>> future(boolean success) {
+        SettableListenableFuture<SendResult<String, SmsEnvelope>> future = new SettableListenableFuture<>();
+        if (success) {
+            future.set(null);
+        } else {
+            future.setException(new RuntimeException("Kafka error"));
+        }
+        return future;
+    }
+
+    @Test
+    void testRelay_PublishesAndDeletesInOrder() {
+        when(smsOutboxRepository.acquireLease(anyString())).thenReturn(1L);
+        when(smsOutboxRepository.findAllByOrderByCreatedAtAscRequestIdAsc(any(Pageable.class)))
+                .thenReturn(Arrays.asList(event("1"), event("2")));
+        SmsRequest smsRequest = new SmsRequest();
+        smsRequest.setId("1");
+        smsRequest.setPhoneNumber("+919876543210");
+        smsRequest.setMessage("Hello");
+        when(smsRequestRepository.findAllById(Arrays.asList("1", "2"))).thenReturn(Collections.singletonList(smsRequest));
+        when(kafkaTemplate.send(eq("notification.send_sms"), eq("1"), argThat((SmsEnvelope envelope) ->
+                "1".equals(envelope.getRequestId()) && envelope.isComplete()))).thenReturn(future(true));
+        when(kafkaTemplate.send(eq("notification.send_sms"), eq("2"), argThat((SmsEnvelope envelope) ->
+                "2".equals(envelope.getRequestId()) && !envelope.isComplete()))).thenReturn(future(true));
+
+        smsOutboxRelay.relay();
+
+        verify(kafkaTemplate, times(1)).flush();
+        verify(smsOutboxRepository, times(1)).deleteAllByIdInBatch(Arrays.asList("1", "2"));
+        assertEquals("2", smsOutboxRelay.getLastRelayedRequestId());
+        verify(smsOutboxRepository, times(1)).releaseLease(anyString());
+    }
+
+    @Test
+    void testRelay_KeepsRowsFromFirstFailure() {
+        when(smsOutboxRepository.acquireLease(anyString())).thenReturn(1L);
+        when(smsOutboxRepository.findAllByOrderByCreatedAtAscRequestIdAsc(any(Pageable.class)))
+                .thenReturn(Arrays.asList(event("1"), event("2"), event("3")));
+        when(kafkaTemplate.send(eq("notification.send_sms"), anyString(), any(SmsEnvelope.class)))
+                .thenReturn(future(true), future(false), future(true));
+
+        smsOutboxRelay.relay();
+
+        verify(smsOutboxRepository, times(1)).deleteAllByIdInBatch(Collections.singletonList("1"));
+        assertEquals("1", smsOutboxRelay.getLastRelayedRequestId());
+    }
+
+    @Test
+    void testRelay_SkipsWhileAnotherNodeHoldsLease() {
+        when(smsOutboxRepository.acquireLease(anyString())).thenReturn(0L);
+
+        smsOutboxRelay.relay();
+
+        verify(smsOutboxRepository, never()).findAllByOrderByCreatedAtAscRequestIdAsc(any(Pageable.class));
+        verify(smsOutboxRepository, never()).releaseLease(anyString());
+        verifyNoInteractions(kafkaTemplate);
+    }
+
+    @Test
+    void testRelay_StopsStartingBatchesAfterMaxRunTime() {
+        SmsOutboxRelay relay = new SmsOutboxRelay(smsOutboxRepository, smsRequestRepository, kafkaTemplate, transactionManager,
+                new SimpleMeterRegistry(), 1, 1000, 0);
+        when(smsOutboxRepository.acquireLease(anyString())).thenReturn(1L);
+        // A full batch every time, as under a sustained backlog.
+        when(smsOutboxRepository.findAllByOrderByCreatedAtAscRequestIdAsc(any(Pageable.class)))
+                .thenReturn(Collections.singletonList(event("1")));
+        when(kafkaTemplate.send(eq("notification.send_sms"), anyString(), any(SmsEnvelope.class))).thenReturn(future(true));
+
+        relay.relay();
+
+        verify(smsOutboxRepository, times(1)).findAllByOrderByCreatedAtAscRequestIdAsc(any(Pageable.class));
+    }
+
+    @Test
+    void testRelay_EmptyOutbox() {
+        when(smsOutboxRepository.acquireLease(anyString())).thenReturn(1L);
+        when(smsOutboxRepository.findAllByOrderByCreatedAtAscRequestIdAsc(any(Pageable.class)))
+                .thenReturn(Collections.emptyList());
+
+        smsOutboxRelay.relay();
+
+        verifyNoInteractions(kafkaTemplate);
+        verify(smsOutboxRepository, never()).deleteAllByIdInBatch(any());
+    }
+
+    @Test
+    void testRefreshLag() {
+        SmsOutboxEvent oldest = event("1");
+        oldest.setCreatedAt(LocalDateTime.now().minusSeconds(30));
+        when(smsOutboxRepository.count()).thenReturn(5L);
+        when(smsOutboxRepository.findFirstByOrderByCreatedAtAsc()).thenReturn(Optional.of(oldest));
+
+        smsOutboxRelay.refreshLag();
+
+        assertEquals(5L, smsOutboxRelay.getPendingCount());
+        assertTrue(smsOutboxRelay.getLag().getSeconds() >= 30);
+    }
+}
@@ -1,12 +1,26 @@
 package com.keshav.NotificationService.service;
 
+import com.keshav.NotificationService.dto.SmsEnvelope;
+import com.keshav.NotificationService.dto.SmsSendResult;
+import com.keshav.NotificationService.dto.SmsStatusUpdate;
 import com.keshav.NotificationService.model.SmsRequest;
+import com.keshav.NotificationService.model.SmsStatus;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.KafkaException;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -24,47 +38,93 @@ class SmsProcessingServiceTest {
     @Mock
     private SmsLogService smsLogService;
 
-    @InjectMocks
+    @Mock
+    private SmsAggregator smsAggregator;
+
+    @Mock
+    private SmsRetryService smsRetryService;
+
+    @Mock
+    private SmsAnalyticsService smsAnalyticsService;
+
+    @Mock
+    private SmsStatusWriter smsStatusWriter;
+
     private SmsProcessingService smsProcessingService;
 
     private SmsRequest smsRequest;
+    private SmsEnvelope envelope;
     private final String requestId = "12345";
     private final String phoneNumber = "+1234567890";
     private final String message = "Hello, this is a test SMS!";
 
     @BeforeEach
     void setUp() {
+        smsProcessingService = new SmsProcessingService(smsService, blacklistService, thirdPartyApiService, smsLogService, smsAggregator, smsRetryService, smsAnalyticsService, smsStatusWriter, 4, 1000, 0);
+
         smsRequest = new SmsRequest();
         smsRequest.setId(requestId);
         smsRequest.setPhoneNumber(phoneNumber);
         smsRequest.setMessage(message);
+        smsRequest.setStatus(SmsStatus.PENDING);
+
+        envelope = SmsEnvelope.from(smsRequest);
     }
 
     @Test
     void testConsumeMessage_Success() {
-        when(smsService.getSmsRequestById(requestId)).thenReturn(smsRequest);
         when(blacklistService.isBlacklisted(phoneNumber)).thenReturn(false);
-        when(thirdPartyApiService.sendSms(phoneNumber, requestId, message)).thenReturn(true);
+        when(thirdPartyApiService.sendSms(message, phoneNumber, requestId)).thenReturn(Mono.just(SmsSendResult.sent(10)));
 
-        smsProcessingService.processSmsRequest(requestId);
+        smsProcessingService.processSmsRequest(envelope);
 
-        verify(smsService, times(1)).getSmsRequestById(requestId);
+        verify(smsService, never()).getSmsRequestById(anyString());
         verify(blacklistService, times(1)).isBlacklisted(phoneNumber);
-        verify(thirdPartyApiService, times(1)).sendSms(phoneNumber, requestId, message);
-        verify(smsService, times(1)).updateSmsRequestStatus(requestId, "SENT");
+        verify(thirdPartyApiService, times(1)).sendSms(message, phoneNumber, requestId);
+        verify(smsService, times(1)).updateSmsRequestStatus(requestId, SmsStatus.SENT);
         verify(smsLogService, times(1)).saveSmsLog(requestId, phoneNumber, message);
+        verify(smsAnalyticsService).recordSend(phoneNumber);
     }
 
     @Test
-    void testConsumeMessage_BlacklistedPhoneNumber() {
+    void testConsumeMessageWriteBehind_HandsStatusToWriter() {
+        CompletableFuture<Void> persisted = new CompletableFuture<>();
+        when(smsStatusWriter.isEnabled()).thenReturn(true);
+        when(smsStatusWriter.submit(any(SmsStatusUpdate.class))).thenReturn(persisted);
+        when(blacklistService.isBlacklisted(phoneNumber)).thenReturn(false);
+        when(thirdPartyApiService.sendSms(message, phoneNumber, requestId)).thenReturn(Mono.just(SmsSendResult.sent(10)));
+
+        assertSame(persisted, smsProcessingService.processSmsRequestWriteBehind(envelope));
+
+        ArgumentCaptor<SmsStatusUpdate> captor = ArgumentCaptor.forClass(SmsStatusUpdate.class);
+        verify(smsStatusWriter).submit(captor.capture());
+        assertEquals(requestId, captor.getValue().getRequestId());
+        assertEquals(SmsStatus.SENT, captor.getValue().getStatus());
+        verify(smsService, never()).updateSmsRequestStatus(anyString(), any(SmsStatus.class));
+        verify(smsLogService).saveSmsLog(requestId, phoneNumber, message);
+    }
+
+    @Test
+    void testConsumeMessage_LegacyRequestId() {
         when(smsService.getSmsRequestById(requestId)).thenReturn(smsRequest);
-        when(blacklistService.isBlacklisted(phoneNumber)).thenReturn(true);
+        when(blacklistService.isBlacklisted(phoneNumber)).thenReturn(false);
+        when(thirdPartyApiService.sendSms(message, phoneNumber, requestId)).thenReturn(Mono.just(SmsSendResult.sent(10)));
 
-        smsProcessingService.processSmsRequest(requestId);
+        smsProcessingService.processSmsRequest(SmsEnvelope.ofRequestId(requestId));
 
         verify(smsService, times(1)).getSmsRequestById(requestId);
+        verify(thirdPartyApiService, times(1)).sendSms(message, phoneNumber, requestId);
+        verify(smsService, times(1)).updateSmsRequestStatus(requestId, SmsStatus.SENT);
+    }
+
+    @Test
+    void testConsumeMessage_BlacklistedPhoneNumber() {
+        when(blacklistService.isBlacklisted(phoneNumber)).thenReturn(true);
+
+        smsProcessingService.processSmsRequest(envelope);
+
         verify(blacklistService, times(1)).isBlacklisted(phoneNumber);
-        verify(smsService, times(1)).updateSmsRequestStatusWithFailure(eq(requestId), eq("FAILED"), eq("BLACKLISTED"), anyString());
+        verify(smsService, times(1)).updateSmsRequestStatusWithFailure(eq(requestId), eq(SmsStatus.FAILED), eq("BLACKLISTED"), anyString());
 
         verifyNoInteractions(thirdPartyApiService);
         verifyNoInteractions(smsLogService);
@@ -72,28 +132,54 @@ class SmsProcessingServiceTest {
 
     @Test
     void testConsumeMessage_ApiFailure() {
-        when(smsService.getSmsRequestById(requestId)).thenReturn(smsRequest);
         when(blacklistService.isBlacklisted(phoneNumber)).thenReturn(false);
-        when(thirdPartyApiService.sendSms(phoneNumber, requestId, message)).thenReturn(false);
+        when(thirdPartyApiService.sendSms(message, phoneNumber, requestId)).thenReturn(Mono.just(SmsSendResult.failed("Provider error", 10)));
+
+        List<SmsStatusUpdate> retryUpdates = Collections.singletonList(
+                new SmsStatusUpdate(requestId, SmsStatus.PENDING, "API_ERROR", "Failed to send SMS, retry 1 scheduled.", 1));
+        when(smsRetryService.scheduleRetries(Collections.singletonMap(envelope, "Provider error"))).thenReturn(retryUpdates);
 
-        smsProcessingService.processSmsRequest(requestId);
+        smsProcessingService.processSmsRequest(envelope);
 
-        verify(smsService, times(1)).updateSmsRequestStatusWithFailure(eq(requestId), eq("FAILED"), eq("API_ERROR"), anyString());
+        verify(smsService, times(1)).updateSmsRequestStatuses(retryUpdates);
+        verify(smsService, never()).updateSmsRequestStatusWithFailure(anyString(), any(SmsStatus.class), anyString(), anyString());
 
         verifyNoInteractions(smsLogService);
     }
 
+    @Test
+    void testConsumeMessage_RetrySchedulingFailurePropagates() {
+        when(blacklistService.isBlacklisted(phoneNumber)).thenReturn(false);
+        when(thirdPartyApiService.sendSms(message, phoneNumber, requestId)).thenReturn(Mono.just(SmsSendResult.failed("Provider error", 10)));
+        when(smsRetryService.scheduleRetries(anyMap())).thenThrow(new KafkaException("broker down"));
+
+        assertThrows(KafkaException.class, () -> smsProcessingService.processSmsRequest(envelope));
+
+        verify(smsService, never()).updateSmsRequestStatuses(anyList());
+    }
+
+    @Test
+    void testConsumeMessage_ProviderUnavailableLeavesRequestPending() {
+        when(blacklistService.isBlacklisted(phoneNumber)).thenReturn(false);
+        when(thirdPartyApiService.sendSms(message, phoneNumber, requestId)).thenReturn(Mono.just(SmsSendResult.rejected("open")));
+
+        assertThrows(ProviderUnavailableException.class, () -> smsProcessingService.processSmsRequest(envelope));
+
+        verify(smsService, never()).updateSmsRequestStatus(anyString(), any(SmsStatus.class));
+        verify(smsService, never()).updateSmsRequestStatusWithFailure(anyString(), any(SmsStatus.class), anyString(), anyString());
+        verifyNoInteractions(smsLogService);
+    }
+
     @Test
     void testConsumeMessage_ElasticsearchFailure() {
-        when(smsService.getSmsRequestById(requestId)).thenReturn(smsRequest);
         when(blacklistService.isBlacklisted(phoneNumber)).thenReturn(false);
-        when(thirdPartyApiService.sendSms(phoneNumber, requestId, message)).thenReturn(true);
+        when(thirdPartyApiService.sendSms(message, phoneNumber, requestId)).thenReturn(Mono.just(SmsSendResult.sent(10)));
 
         doThrow(new RuntimeException("Elasticsearch Down")).when(smsLogService).saveSmsLog(requestId, phoneNumber, message);
 
-        smsProcessingService.processSmsRequest(requestId);
+        smsProcessingService.processSmsRequest(envelope);
 
-        verify(smsService, times(1)).updateSmsRequestStatus(requestId, "SENT");
+        verify(smsService, times(1)).updateSmsRequestStatus(requestId, SmsStatus.SENT);
         verify(smsLogService, times(1)).saveSmsLog(requestId, phoneNumber, message);
     }
 
@@ -101,7 +187,7 @@ class SmsProcessingServiceTest {
     void testConsumeMessage_InvalidRequestId() {
         when(smsService.getSmsRequestById(requestId)).thenThrow(new IllegalArgumentException("Invalid Request ID"));
 
-        smsProcessingService.processSmsRequest(requestId);
+        smsProcessingService.processSmsRequest(SmsEnvelope.ofRequestId(requestId));
 
         verify(smsService, times(1)).getSmsRequestById(requestId);
         verifyNoInteractions(blacklistService);
@@ -113,11 +199,163 @@ class SmsProcessingServiceTest {
     void testConsumeMessage_UnexpectedException() {
         when(smsService.getSmsRequestById(requestId)).thenThrow(new RuntimeException("Unexpected Error"));
 
-        smsProcessingService.processSmsRequest(requestId);
+        smsProcessingService.processSmsRequest(SmsEnvelope.ofRequestId(requestId));
 
         verify(smsService, times(1)).getSmsRequestById(requestId);
         verifyNoInteractions(blacklistService);
         verifyNoInteractions(thirdPartyApiService);
         verifyNoInteractions(smsLogService);
     }
+
+    private SmsEnvelope envelope(String id, String phone) {
+        SmsEnvelope batchEnvelope = new SmsEnvelope();
+        batchEnvelope.setRequestId(id);
+        batchEnvelope.setPhoneNumber(phone);
+        batchEnvelope.setMessage(message);
+        return batchEnvelope;
+    }
+
+    private void givenPendingRequests(String... ids) {
+        List<SmsRequest> smsRequests = new ArrayList<>();
+        for (String id : ids) {
+            SmsRequest pending = new SmsRequest();
+            pending.setId(id);
+            pending.setStatus(SmsStatus.PENDING);
+            smsRequests.add(pending);
+        }
+        when(smsService.getSmsRequestsByIds(anyList())).thenReturn(smsRequests);
+    }
+
+    @Test
+    void testProcessSmsBatch() {
+        SmsEnvelope sent = envelope("1", "+911111111111");
+        SmsEnvelope blacklisted = envelope("2", "+912222222222");
+        SmsEnvelope failed = envelope("3", "+913333333333");
+        givenPendingRequests("1", "2", "3");
+        when(blacklistService.findBlacklisted(anyList())).thenReturn(Collections.singleton("+912222222222"));
+        when(thirdPartyApiService.sendSms(message, "+911111111111", "1")).thenReturn(Mono.just(SmsSendResult.sent(10)));
+        when(thirdPartyApiService.sendSms(message, "+913333333333", "3")).thenReturn(Mono.just(SmsSendResult.failed("Provider error", 10)));
+        when(smsRetryService.scheduleRetries(Collections.singletonMap(failed, "Provider error"))).thenReturn(Collections.singletonList(
+                new SmsStatusUpdate("3", SmsStatus.PENDING, "API_ERROR", "Failed to send SMS, retry 1 scheduled.", 1)));
+
+        assertTrue(smsProcessingService.processSmsBatch(Arrays.asList(sent, blacklisted, failed)).isEmpty());
+
+        verify(smsService, times(1)).getSmsRequestsByIds(Arrays.asList("1", "2", "3"));
+        verify(blacklistService, times(1)).findBlacklisted(Arrays.asList("+911111111111", "+912222222222", "+913333333333"));
+        ArgumentCaptor<List<SmsStatusUpdate>> captor = ArgumentCaptor.forClass((Class<List<SmsStatusUpdate>>) (Class<?>) List.class);
+        verify(smsService, times(2)).updateSmsRequestStatuses(captor.capture());
+        // The blacklisted and sent requests are written first, the retried one once its retry is scheduled.
+        List<SmsStatusUpdate> first = captor.getAllValues().get(0);
+        assertEquals(2, first.size());
+        assertEquals("BLACKLISTED", first.get(0).getFailureCode());
+        assertEquals(SmsStatus.SENT, first.get(1).getStatus());
+        List<SmsStatusUpdate> second = captor.getAllValues().get(1);
+        assertEquals(1, second.size());
+        assertEquals("API_ERROR", second.get(0).getFailureCode());
+        verify(smsLogService, times(1)).saveSmsLog("1", "+911111111111", message);
+        verify(smsAnalyticsService).recordSend("+911111111111");
+        verifyNoMoreInteractions(smsLogService);
+    }
+
+    @Test
+    void testProcessSmsBatch_ResolvesLegacyEnvelopesInOneQuery() {
+        when(smsService.getSmsRequestsByIds(Arrays.asList(requestId, "missing"))).thenReturn(Collections.singletonList(smsRequest));
+        when(blacklistService.findBlacklisted(anyList())).thenReturn(Collections.emptySet());
+        when(thirdPartyApiService.sendSms(message, phoneNumber, requestId)).thenReturn(Mono.just(SmsSendResult.sent(10)));
+
+        smsProcessingService.processSmsBatch(Arrays.asList(SmsEnvelope.ofRequestId(requestId), SmsEnvelope.ofRequestId("missing")));
+
+        verify(smsService, times(1)).getSmsRequestsByIds(anyList());
+        verify(smsService, times(1)).updateSmsRequestStatuses(argThat((List<SmsStatusUpdate> updates) ->
+                updates.size() == 1 && SmsStatus.SENT == updates.get(0).getStatus()));
+    }
+
+    @Test
+    void testProcessSmsBatch_SkipsRequestsAlreadyProcessed() {
+        SmsRequest sent = new SmsRequest();
+        sent.setId("1");
+        sent.setStatus(SmsStatus.SENT);
+        SmsRequest retried = new SmsRequest();
+        retried.setId("2");
+        retried.setStatus(SmsStatus.PENDING);
+        retried.setAttempts(1);
+        when(smsService.getSmsRequestsByIds(anyList())).thenReturn(Arrays.asList(sent, retried));
+
+        List<SmsEnvelope> deferred = smsProcessingService.processSmsBatch(
+                Arrays.asList(envelope("1", "+911111111111"), envelope("2", "+912222222222")));
+
+        assertTrue(deferred.isEmpty());
+        verifyNoInteractions(blacklistService, smsRetryService);
+        verify(thirdPartyApiService, never()).sendSms(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void testProcessSmsBatch_StatusWriteIsRetriedOnceSent() {
+        givenPendingRequests(requestId);
+        when(blacklistService.findBlacklisted(anyList())).thenReturn(Collections.emptySet());
+        when(thirdPartyApiService.sendSms(message, phoneNumber, requestId)).thenReturn(Mono.just(SmsSendResult.sent(10)));
+        when(smsService.updateSmsRequestStatuses(anyList())).thenThrow(new RuntimeException("DB down")).thenReturn(1);
+
+        assertTrue(smsProcessingService.processSmsBatch(Collections.singletonList(envelope)).isEmpty());
+
+        verify(smsService, times(2)).updateSmsRequestStatuses(anyList());
+        verify(smsLogService, times(1)).saveSmsLog(requestId, phoneNumber, message);
+    }
+
+    @Test
+    void testProcessSmsBatch_RetrySchedulingIsRetriedOnceSent() {
+        givenPendingRequests(requestId);
+        List<SmsStatusUpdate> retryUpdates = Collections.singletonList(
+                new SmsStatusUpdate(requestId, SmsStatus.PENDING, "API_ERROR", "Failed to send SMS, retry 1 scheduled.", 1));
+        when(blacklistService.findBlacklisted(anyList())).thenReturn(Collections.emptySet());
+        when(thirdPartyApiService.sendSms(message, phoneNumber, requestId)).thenReturn(Mono.just(SmsSendResult.failed("Provider error", 10)));
+        when(smsRetryService.scheduleRetries(anyMap())).thenThrow(new KafkaException("broker down")).thenReturn(retryUpdates);
+
+        assertTrue(smsProcessingService.processSmsBatch(Collections.singletonList(envelope)).isEmpty());
+
+        verify(smsRetryService, times(2)).scheduleRetries(anyMap());
+        verify(smsService, times(1)).updateSmsRequestStatuses(retryUpdates);
+    }
+
+    @Test
+    void testProcessSmsBatch_RejectedMessagesAreDeferred() {
+        SmsEnvelope sent = envelope("1", "+911111111111");
+        SmsEnvelope rejected = envelope("2", "+912222222222");
+        givenPendingRequests("1", "2");
+        when(blacklistService.findBlacklisted(anyList())).thenReturn(Collections.emptySet());
+        when(thirdPartyApiService.sendSms(message, "+911111111111", "1")).thenReturn(Mono.just(SmsSendResult.sent(10)));
+        when(thirdPartyApiService.sendSms(message, "+912222222222", "2")).thenReturn(Mono.just(SmsSendResult.rejected("limit")));
+
+        List<SmsEnvelope> deferred = smsProcessingService.processSmsBatch(Arrays.asList(sent, rejected));
+
+        // "1" was sent, so the batch is committed and only "2" is republished.
+        assertTrue(deferred.isEmpty());
+        verify(smsRetryService, times(1)).defer(Collections.singletonList(rejected), 1000);
+        verify(smsService, times(1)).updateSmsRequestStatuses(argThat((List<SmsStatusUpdate> updates) ->
+                updates.size() == 1 && "1".equals(updates.get(0).getRequestId())));
+    }
+
+    @Test
+    void testProcessSmsBatch_NothingAdmittedRedeliversWholeBatch() {
+        givenPendingRequests(requestId);
+        when(blacklistService.findBlacklisted(anyList())).thenReturn(Collections.emptySet());
+        when(thirdPartyApiService.sendSms(message, phoneNumber, requestId)).thenReturn(Mono.just(SmsSendResult.rejected("limit")));
+        List<SmsEnvelope> batch = Collections.singletonList(envelope);
+
+        assertSame(batch, smsProcessingService.processSmsBatch(batch));
+
+        verify(smsService, never()).updateSmsRequestStatuses(anyList());
+        verifyNoInteractions(smsRetryService);
+    }
+
+    @Test
+    void testProcessSmsBatch_UnavailableProvidersDeferWholeBatch() {
+        when(thirdPartyApiService.isUnavailable()).thenReturn(true);
+        List<SmsEnvelope> batch = Collections.singletonList(envelope);
+
+        assertSame(batch, smsProcessingService.processSmsBatch(batch));
+
+        verify(thirdPartyApiService, never()).sendSms(anyString(), anyString(), anyString());
+        verifyNoInteractions(blacklistService, smsService);
+    }
 }
@@ -0,0 +1,140 @@
+package com.keshav.NotificationService.service;
+
+import com.keshav.NotificationService.dto.SmsSendResult;
+import com.keshav.NotificationService.dto.ThirdPartyApiDestination;
+import com.keshav.NotificationService.utils.ProviderGate;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmsProviderRouterTest {
+
+    private final List<ThirdPartyApiDestination> destinations =
+            Collections.singletonList(ThirdPartyApiService.createDestination("+919876543210", "1"));
+
+    private static class StubProvider implements SmsProvider {
+        private final String name;
+        private final SmsSendResult result;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        StubProvider(String name, SmsSendResult result) {
+            this.name = name;
+            this.result = result;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Mono<Map<String, SmsSendResult>> sendBulk(String message, List<ThirdPartyApiDestination> destinations) {
+            calls.incrementAndGet();
+            Map<String, SmsSendResult> results = new HashMap<>();
+            for (ThirdPartyApiDestination destination : destinations) {
+                results.put(destination.getCorrelationId(), result);
+            }
+            return Mono.just(results);
+        }
+    }
+
+    private SmsProviderRouter.Route route(SmsProvider provider, int maxRatePerSecond) {
+        ProviderGate.Settings settings = new ProviderGate.Settings();
+        settings.setMinimumCalls(1);
+        return new SmsProviderRouter.Route(provider, new ProviderGate(settings), maxRatePerSecond, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void testFailsOverWhenProviderCannotBeReached() {
+        StubProvider failing = new StubProvider("failing", SmsSendResult.unreachable("connection refused", 10));
+        StubProvider healthy = new StubProvider("healthy", SmsSendResult.sent(10));
+        SmsProviderRouter router = new SmsProviderRouter(Arrays.asList(route(failing, 0), route(healthy, 0)), () -> 0);
+
+        SmsSendResult result = router.sendBulk("Hello", destinations).block().get("1");
+
+        assertTrue(result.isSuccess());
+        assertEquals(1, failing.calls.get());
+        assertEquals(1, healthy.calls.get());
+    }
+
+    @Test
+    void testDoesNotFailOverWhenCallMayHaveReachedProvider() {
+        StubProvider timingOut = new StubProvider("timing-out", SmsSendResult.failed("read timeout", 10));
+        StubProvider healthy = new StubProvider("healthy", SmsSendResult.sent(10));
+        SmsProviderRouter router = new SmsProviderRouter(Arrays.asList(route(timingOut, 0), route(healthy, 0)), () -> 0);
+
+        SmsSendResult result = router.sendBulk("Hello", destinations).block().get("1");
+
+        assertFalse(result.isSuccess());
+        assertEquals(1, timingOut.calls.get());
+        assertEquals(0, healthy.calls.get());
+    }
+
+    @Test
+    void testSkipsProviderWithOpenCircuit() {
+        StubProvider failing = new StubProvider("failing", SmsSendResult.unreachable("connection refused", 10));
+        StubProvider healthy = new StubProvider("healthy", SmsSendResult.sent(10));
+        SmsProviderRouter router = new SmsProviderRouter(Arrays.asList(route(failing, 0), route(healthy, 0)), () -> 0);
+        router.sendBulk("Hello", destinations).block();
+        router.refreshStats();
+
+        router.sendBulk("Hello", destinations).block();
+
+        assertEquals(1, failing.calls.get());
+        assertEquals(2, healthy.calls.get());
+    }
+
+    @Test
+    void testSkipsProviderAboveThroughputCap() {
+        StubProvider capped = new StubProvider("capped", SmsSendResult.sent(10));
+        StubProvider other = new StubProvider("other", SmsSendResult.sent(10));
+        SmsProviderRouter router = new SmsProviderRouter(Arrays.asList(route(capped, 1), route(other, 0)), () -> 0);
+
+        router.sendBulk("Hello", destinations).block();
+        router.sendBulk("Hello", destinations).block();
+
+        assertEquals(1, capped.calls.get());
+        assertEquals(1, other.calls.get());
+    }
+
+    @Test
+    void testRejectsWhenNoProviderAdmitsTheCall() {
+        StubProvider failing = new StubProvider("failing", SmsSendResult.failed("timeout", 10));
+        SmsProviderRouter router = new SmsProviderRouter(Collections.singletonList(route(failing, 0)));
+        assertFalse(router.sendBulk("Hello", destinations).block().get("1").isRejected());
+
+        assertTrue(router.isUnavailable());
+        assertTrue(router.sendBulk("Hello", destinations).block().get("1").isRejected());
+    }
+
+    @Test
+    void testPrefersLowerLatency() {
+        StubProvider slow = new StubProvider("slow", SmsSendResult.sent(500));
+        StubProvider fast = new StubProvider("fast", SmsSendResult.sent(20));
+        SmsProviderRouter.Route slowRoute = route(slow, 0);
+        SmsProviderRouter.Route fastRoute = route(fast, 0);
+        AtomicInteger picks = new AtomicInteger();
+        // Alternate between both providers while their weights are still equal, then pick from the middle.
+        SmsProviderRouter router = new SmsProviderRouter(Arrays.asList(slowRoute, fastRoute),
+                () -> picks.get() < 20 ? (picks.getAndIncrement() % 2 == 0 ? 0 : 0.99) : 0.5);
+        for (int i = 0; i < 20; i++) {
+            router.sendBulk("Hello", destinations).block();
+        }
+        assertEquals(10, slow.calls.get());
+        assertEquals(10, fast.calls.get());
+        router.refreshStats();
+
+        assertEquals(500, slowRoute.getP99Ms());
+        assertTrue(fastRoute.getWeight() > slowRoute.getWeight());
+        assertSame(fastRoute, router.candidates().get(0));
+    }
+}
@@ -0,0 +1,120 @@
+package com.keshav.NotificationService.service;
+
+import com.keshav.NotificationService.dto.SmsEnvelope;
+import com.keshav.NotificationService.dto.SmsStatusUpdate;
+import com.keshav.NotificationService.model.SmsStatus;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SmsRetryServiceTest {
+
+    @Mock
+    private KafkaTemplate<String, SmsEnvelope> kafkaTemplate;
+
+    private SmsRetryService smsRetryService;
+
+    private SmsEnvelope envelope;
+
+    @BeforeEach
+    void setUp() {
+        smsRetryService = new SmsRetryService(kafkaTemplate, 3, 10000, 6, 600000, 0, 1000);
+        envelope = new SmsEnvelope();
+        envelope.setRequestId("12345");
+        envelope.setPhoneNumber("+919876543210");
+        envelope.setMessage("Hello");
+    }
+
+    private static SettableListenableFuture<SendResult<String, SmsEnvelope>> acknowledged() {
+        SettableListenableFuture<SendResult<String, SmsEnvelope>> future = new SettableListenableFuture<>();
+        future.set(null);
+        return future;
+    }
+
+    @Test
+    void testFirstFailureIsRetriedAfterTenSeconds() {
+        when(kafkaTemplate.send(anyString(), anyString(), any(SmsEnvelope.class))).thenReturn(acknowledged());
+        long before = System.currentTimeMillis();
+
+        List<SmsStatusUpdate> updates = smsRetryService.scheduleRetries(Collections.singletonMap(envelope, "timeout"));
+
+        ArgumentCaptor<SmsEnvelope> retry = ArgumentCaptor.forClass(SmsEnvelope.class);
+        verify(kafkaTemplate).send(eq(SmsRetryService.RETRY_TOPIC_10S), eq("12345"), retry.capture());
+        assertEquals(1, retry.getValue().getAttempt());
+        assertTrue(retry.getValue().getDueAt() >= before + 10000);
+        assertEquals(SmsStatus.PENDING, updates.get(0).getStatus());
+        assertEquals(1, updates.get(0).getAttempts());
+    }
+
+    @Test
+    void testSecondFailureUsesOneMinuteTopic() {
+        when(kafkaTemplate.send(anyString(), anyString(), any(SmsEnvelope.class))).thenReturn(acknowledged());
+
+        smsRetryService.scheduleRetries(Collections.singletonMap(envelope.retry(1, 0), "timeout"));
+
+        verify(kafkaTemplate).send(eq(SmsRetryService.RETRY_TOPIC_1M), eq("12345"), any(SmsEnvelope.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testExhaustedAttemptsAreDeadLettered() {
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(acknowledged());
+
+        List<SmsStatusUpdate> updates = smsRetryService.scheduleRetries(Collections.singletonMap(envelope.retry(2, 0), "timeout"));
+
+        ArgumentCaptor<ProducerRecord<String, SmsEnvelope>> deadLetter = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate).send(deadLetter.capture());
+        assertEquals(SmsRetryService.DEAD_LETTER_TOPIC, deadLetter.getValue().topic());
+        assertNotNull(deadLetter.getValue().headers().lastHeader(SmsRetryService.ERROR_HEADER));
+        assertEquals(SmsStatus.FAILED, updates.get(0).getStatus());
+        assertEquals(3, updates.get(0).getAttempts());
+    }
+
+    @Test
+    void testPublishFailureIsThrown() {
+        SettableListenableFuture<SendResult<String, SmsEnvelope>> failed = new SettableListenableFuture<>();
+        failed.setException(new RuntimeException("broker down"));
+        when(kafkaTemplate.send(anyString(), anyString(), any(SmsEnvelope.class))).thenReturn(failed);
+
+        assertThrows(KafkaException.class, () -> smsRetryService.scheduleRetries(Collections.singletonMap(envelope, "timeout")));
+    }
+
+    @Test
+    void testDeferredRequestsKeepTheirAttemptCount() {
+        when(kafkaTemplate.send(anyString(), anyString(), any(SmsEnvelope.class))).thenReturn(acknowledged());
+        long before = System.currentTimeMillis();
+
+        smsRetryService.defer(Collections.singletonList(envelope.retry(1, 0)), 1000);
+
+        ArgumentCaptor<SmsEnvelope> deferred = ArgumentCaptor.forClass(SmsEnvelope.class);
+        verify(kafkaTemplate).send(eq(SmsRetryService.RETRY_TOPIC_10S), eq("12345"), deferred.capture());
+        assertEquals(1, deferred.getValue().getAttempt());
+        assertTrue(deferred.getValue().getDueAt() >= before + 1000);
+    }
+
+    @Test
+    void testRetryTopicForDelay() {
+        assertEquals(SmsRetryService.RETRY_TOPIC_10S, SmsRetryService.retryTopicFor(5000));
+        assertEquals(SmsRetryService.RETRY_TOPIC_10S, SmsRetryService.retryTopicFor(59000));
+        assertEquals(SmsRetryService.RETRY_TOPIC_1M, SmsRetryService.retryTopicFor(360000));
+        assertEquals(SmsRetryService.RETRY_TOPIC_10M, SmsRetryService.retryTopicFor(600000));
+    }
+}
@@ -1,7 +1,11 @@
 package com.keshav.NotificationService.service;
 
 import com.keshav.NotificationService.dto.SmsRequestDto;
+import com.keshav.NotificationService.dto.SmsStatusUpdate;
+import com.keshav.NotificationService.model.SmsOutboxEvent;
 import com.keshav.NotificationService.model.SmsRequest;
+import com.keshav.NotificationService.model.SmsStatus;
+import com.keshav.NotificationService.repository.SmsOutboxRepository;
 import com.keshav.NotificationService.repository.SmsRequestRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,8 +13,10 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.kafka.core.KafkaTemplate;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -24,7 +30,7 @@ class SmsServiceTest {
     private SmsRequestRepository smsRequestRepository;
 
     @Mock
-    private KafkaTemplate<String, String> kafkaTemplate;
+    private SmsOutboxRepository smsOutboxRepository;
 
     @InjectMocks
     private SmsService smsService;
@@ -44,39 +50,34 @@ class SmsServiceTest {
         smsRequest.setId(requestId);
         smsRequest.setPhoneNumber(smsRequestDto.getPhoneNumber());
         smsRequest.setMessage(smsRequestDto.getMessage());
-        smsRequest.setStatus("PENDING");
+        smsRequest.setStatus(SmsStatus.PENDING);
     }
 
     @Test
     void testSendSms_Success() {
         when(smsRequestRepository.save(any(SmsRequest.class))).thenReturn(smsRequest);
-        when(kafkaTemplate.send(anyString(), anyString())).thenReturn(null);
 
         String returnedRequestId = smsService.sendSms(smsRequestDto);
 
         assertNotNull(returnedRequestId);
         verify(smsRequestRepository, times(1)).save(any(SmsRequest.class));
-        verify(kafkaTemplate, times(1)).send(eq("notification.send_sms"), anyString());
+        verify(smsOutboxRepository, times(1)).save(argThat((SmsOutboxEvent event) ->
+                returnedRequestId.equals(event.getRequestId()) && "notification.send_sms".equals(event.getTopic())));
     }
 
-
     @Test
-    void testSendSms_KafkaFailure() {
-        when(smsRequestRepository.save(any(SmsRequest.class))).thenReturn(smsRequest);
-        when(smsRequestRepository.findById(anyString())).thenReturn(Optional.of(smsRequest));
-        when(kafkaTemplate.send(anyString(), anyString())).thenThrow(new RuntimeException("Kafka error"));
-
-        String returnedRequestId = smsService.sendSms(smsRequestDto);
-
-        assertNotNull(returnedRequestId);
-        verify(smsRequestRepository, times(2)).save(any(SmsRequest.class));
-        verify(kafkaTemplate, times(1)).send(eq("notification.send_sms"), anyString());
-        verify(smsRequestRepository, times(1)).findById(anyString());
-        assertEquals("FAILED", smsRequest.getStatus());
+    void testSendSmsBatch_Success() {
+        List<String> requestIds = smsService.sendSmsBatch(Arrays.asList(smsRequestDto, smsRequestDto));
+
+        assertEquals(2, requestIds.size());
+        assertTrue(requestIds.get(0).compareTo(requestIds.get(1)) < 0);
+        assertEquals(7, UUID.fromString(requestIds.get(0)).version());
+        verify(smsRequestRepository, times(1)).saveAll(argThat((List<SmsRequest> requests) ->
+                requests.size() == 2 && requests.get(0).isNew() && requests.get(1).isNew()));
+        verify(smsOutboxRepository, times(1)).saveAll(argThat((List<SmsOutboxEvent> events) ->
+                events.size() == 2 && requestIds.get(0).equals(events.get(0).getRequestId())));
     }
 
-
-
     @Test
     void testGetSmsRequestById_Success() {
         when(smsRequestRepository.findById(requestId)).thenReturn(Optional.of(smsRequest));
@@ -100,25 +101,39 @@ class SmsServiceTest {
 
     @Test
     void testUpdateSmsRequestStatus_Success() {
-        when(smsRequestRepository.findById(requestId)).thenReturn(Optional.of(smsRequest));
+        when(smsRequestRepository.transitionStatus(requestId, SmsStatus.SENT, null, null)).thenReturn(true);
 
-        smsService.updateSmsRequestStatus(requestId, "SENT");
+        assertTrue(smsService.updateSmsRequestStatus(requestId, SmsStatus.SENT));
 
-        assertEquals("SENT", smsRequest.getStatus());
-        verify(smsRequestRepository, times(1)).save(smsRequest);
+        verify(smsRequestRepository, never()).findById(anyString());
+        verify(smsRequestRepository, never()).save(any(SmsRequest.class));
     }
 
     @Test
-    void testUpdateSmsRequestStatusWithFailure_Success() {
-        when(smsRequestRepository.findById(requestId)).thenReturn(Optional.of(smsRequest));
+    void testUpdateSmsRequestStatusWithFailure_NotAllowedFromCurrentStatus() {
+        when(smsRequestRepository.transitionStatus(requestId, SmsStatus.FAILED, "API_ERROR", "Service unavailable")).thenReturn(false);
+
+        assertFalse(smsService.updateSmsRequestStatusWithFailure(requestId, SmsStatus.FAILED, "API_ERROR", "Service unavailable"));
+
+        verify(smsRequestRepository, times(1)).transitionStatus(requestId, SmsStatus.FAILED, "API_ERROR", "Service unavailable");
+    }
 
-        smsService.updateSmsRequestStatusWithFailure(requestId, "FAILED", "API_ERROR", "Service unavailable");
+    @Test
+    void testUpdateSmsRequestStatuses_SingleBatch() {
+        List<SmsStatusUpdate> updates = Arrays.asList(SmsStatusUpdate.of("1", SmsStatus.SENT),
+                new SmsStatusUpdate("2", SmsStatus.FAILED, "API_ERROR", "Failed to send SMS."));
+        when(smsRequestRepository.batchUpdateStatus(updates)).thenReturn(new int[]{1, 0});
 
-        assertEquals("FAILED", smsRequest.getStatus());
-        assertEquals("API_ERROR", smsRequest.getFailureCode());
-        assertEquals("Service unavailable", smsRequest.getFailureComments());
+        assertEquals(1, smsService.updateSmsRequestStatuses(updates));
 
-        verify(smsRequestRepository, times(1)).save(smsRequest);
+        verify(smsRequestRepository, times(1)).batchUpdateStatus(updates);
+        verify(smsRequestRepository, never()).findById(anyString());
     }
 
+    @Test
+    void testUpdateSmsRequestStatuses_Empty() {
+        smsService.updateSmsRequestStatuses(Collections.emptyList());
+
+        verifyNoInteractions(smsRequestRepository);
+    }
 }
@@ -0,0 +1,103 @@
+package com.keshav.NotificationService.service;
+
+import com.keshav.NotificationService.dto.SmsStatusUpdate;
+import com.keshav.NotificationService.model.SmsStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class SmsStatusWriterTest {
+
+    private SmsService smsService;
+    private SmsStatusWriter smsStatusWriter;
+
+    @BeforeEach
+    void setUp() {
+        smsService = mock(SmsService.class);
+        smsStatusWriter = new SmsStatusWriter(smsService, new SimpleMeterRegistry(), true, 100, 2, 50, 10);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<SmsStatusUpdate> captureWrite(int times) {
+        ArgumentCaptor<List<SmsStatusUpdate>> captor = ArgumentCaptor.forClass(List.class);
+        verify(smsService, times(times)).updateSmsRequestStatuses(captor.capture());
+        return captor.getValue();
+    }
+
+    @Test
+    void testCoalescesUpdatesToTheSameRequest() {
+        CompletableFuture<Void> retry = smsStatusWriter.submit(new SmsStatusUpdate("id-1", SmsStatus.PENDING, "API_ERROR", "retry 1", 1));
+        CompletableFuture<Void> sent = smsStatusWriter.submit(SmsStatusUpdate.of("id-1", SmsStatus.SENT));
+        CompletableFuture<Void> late = smsStatusWriter.submit(new SmsStatusUpdate("id-1", SmsStatus.FAILED, "API_ERROR", "late"));
+        assertEquals(1, smsStatusWriter.getPending());
+
+        assertTrue(smsStatusWriter.flush());
+
+        List<SmsStatusUpdate> written = captureWrite(1);
+        assertEquals(1, written.size());
+        assertEquals(SmsStatus.SENT, written.get(0).getStatus());
+        assertNull(written.get(0).getFailureCode());
+        assertEquals(1, written.get(0).getAttempts());
+        assertTrue(retry.isDone() && sent.isDone() && late.isDone());
+    }
+
+    @Test
+    void testWritesInBatchesAndCompletesFuturesOnlyAfterTheWrite() {
+        CompletableFuture<Void> all = smsStatusWriter.submit(Arrays.asList(SmsStatusUpdate.of("id-1", SmsStatus.SENT),
+                SmsStatusUpdate.of("id-2", SmsStatus.SENT), SmsStatusUpdate.of("id-3", SmsStatus.SENT)));
+        assertFalse(all.isDone());
+
+        assertTrue(smsStatusWriter.flush());
+
+        assertEquals(1, captureWrite(2).size());
+        assertTrue(all.isDone());
+        assertEquals(0, smsStatusWriter.getPending());
+    }
+
+    @Test
+    void testKeepsFailedWriteBufferedAndMergesNewerUpdates() {
+        doThrow(new RuntimeException("db down")).doReturn(1).when(smsService).updateSmsRequestStatuses(anyList());
+        CompletableFuture<Void> retry = smsStatusWriter.submit(new SmsStatusUpdate("id-1", SmsStatus.PENDING, "API_ERROR", "retry 1", 1));
+
+        assertFalse(smsStatusWriter.flush());
+        assertFalse(retry.isDone());
+        CompletableFuture<Void> sent = smsStatusWriter.submit(SmsStatusUpdate.of("id-1", SmsStatus.SENT));
+        assertEquals(1, smsStatusWriter.getPending());
+
+        assertTrue(smsStatusWriter.flush());
+        assertEquals(SmsStatus.SENT, captureWrite(2).get(0).getStatus());
+        assertTrue(retry.isDone() && sent.isDone());
+    }
+
+    @Test
+    void testFlushesOnIntervalOnceStarted() throws Exception {
+        smsStatusWriter.start();
+        CompletableFuture<Void> sent = smsStatusWriter.submit(SmsStatusUpdate.of("id-1", SmsStatus.SENT));
+
+        sent.get(1, TimeUnit.SECONDS);
+        smsStatusWriter.shutdown();
+
+        verify(smsService, times(1)).updateSmsRequestStatuses(anyList());
+        assertFalse(smsStatusWriter.isEnabled());
+    }
+
+    @Test
+    void testFailsUnwrittenUpdatesOnShutdown() throws InterruptedException {
+        doThrow(new RuntimeException("db down")).when(smsService).updateSmsRequestStatuses(anyList());
+        CompletableFuture<Void> sent = smsStatusWriter.submit(SmsStatusUpdate.of("id-1", SmsStatus.SENT));
+
+        smsStatusWriter.shutdown();
+
+        assertTrue(sent.isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,88 @@
+package com.keshav.NotificationService.service;
+
+import com.keshav.NotificationService.dto.SmsSendResult;
+import com.keshav.NotificationService.utils.ProviderGate;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThirdPartyApiServiceTest {
+
+    private ThirdPartyApiService serviceResponding(Mono<ClientResponse> response) {
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> response)
+                .build();
+        SmsProviderRouter.Route route = new SmsProviderRouter.Route(new HttpSmsProvider("test", webClient),
+                new ProviderGate(new ProviderGate.Settings()), 0, new SimpleMeterRegistry());
+        return new ThirdPartyApiService(new SmsProviderRouter(Collections.singletonList(route)));
+    }
+
+    @Test
+    void testSendSms_ReturnsResultWithoutErrors() {
+        ThirdPartyApiService service = serviceResponding(Mono.just(ClientResponse.create(HttpStatus.OK).body("{}").build()));
+
+        SmsSendResult result = service.sendSms("Hello", "+919876543210", "12345").block();
+
+        assertNotNull(result);
+        assertTrue(result.getLatencyMs() >= 0);
+    }
+
+    @Test
+    void testSendSms_ServerErrorIsFailedResult() {
+        ThirdPartyApiService service = serviceResponding(Mono.just(ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build()));
+
+        SmsSendResult result = service.sendSms("Hello", "+919876543210", "12345").block();
+
+        assertNotNull(result);
+        assertFalse(result.isSuccess());
+        assertEquals(SmsSendResult.Status.FAILED, result.getStatus());
+    }
+
+    @Test
+    void testSendSms_TimeoutIsFailedResult() {
+        ThirdPartyApiService service = serviceResponding(Mono.error(new TimeoutException("response timeout")));
+
+        SmsSendResult result = service.sendSms("Hello", "+919876543210", "12345").block();
+
+        assertNotNull(result);
+        assertFalse(result.isSuccess());
+        assertTrue(result.getError().contains("response timeout"));
+    }
+
+    @Test
+    void testSendBulk_ReturnsResultPerDestination() {
+        ThirdPartyApiService service = serviceResponding(Mono.just(ClientResponse.create(HttpStatus.OK).body("{}").build()));
+
+        Map<String, SmsSendResult> results = service.sendBulk("Hello", Arrays.asList(
+                ThirdPartyApiService.createDestination("+919876543210", "1"),
+                ThirdPartyApiService.createDestination("+919876543211", "2"))).block();
+
+        assertNotNull(results);
+        assertEquals(2, results.size());
+        assertTrue(results.containsKey("1"));
+        assertTrue(results.containsKey("2"));
+    }
+
+    @Test
+    void testSendBulk_ErrorFailsEveryDestination() {
+        ThirdPartyApiService service = serviceResponding(Mono.just(ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build()));
+
+        Map<String, SmsSendResult> results = service.sendBulk("Hello", Arrays.asList(
+                ThirdPartyApiService.createDestination("+919876543210", "1"),
+                ThirdPartyApiService.createDestination("+919876543211", "2"))).block();
+
+        assertNotNull(results);
+        assertFalse(results.get("1").isSuccess());
+        assertFalse(results.get("2").isSuccess());
+    }
+}
@@ -0,0 +1,55 @@
+package com.keshav.NotificationService.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterTest {
+
+    private static final int INSERTIONS = 10000;
+
+    private BloomFilter newFilter() {
+        long bitSize = BloomFilter.optimalBitSize(INSERTIONS, 0.01);
+        return new BloomFilter(bitSize, BloomFilter.optimalHashCount(INSERTIONS, bitSize));
+    }
+
+    @Test
+    void testNoFalseNegativesAndBoundedFalsePositives() {
+        BloomFilter filter = newFilter();
+        for (int i = 0; i < INSERTIONS; i++) {
+            filter.put("91" + (9000000000L + i));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < INSERTIONS; i++) {
+            assertTrue(filter.mightContain("91" + (9000000000L + i)));
+            if (filter.mightContain("91" + (8000000000L + i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < INSERTIONS * 0.02, "False positives: " + falsePositives);
+    }
+
+    @Test
+    void testByteArrayRoundTrip() {
+        BloomFilter filter = newFilter();
+        filter.put("919876543210");
+
+        BloomFilter restored = BloomFilter.fromByteArray(filter.toByteArray(), filter.getBitSize(), filter.getHashCount());
+
+        assertTrue(restored.mightContain("919876543210"));
+        assertArrayEquals(filter.toByteArray(), restored.toByteArray());
+    }
+
+    @Test
+    void testByteArrayUsesRedisBitOrder() {
+        BloomFilter filter = new BloomFilter(64, 1);
+        long offset = filter.bitOffsets("919876543210")[0];
+        filter.put("919876543210");
+
+        byte[] bytes = filter.toByteArray();
+
+        // SETBIT offset sets bit (7 - offset % 8) of byte offset / 8.
+        assertEquals((byte) (0x80 >>> (offset % 8)), bytes[(int) (offset / 8)]);
+    }
+}
@@ -0,0 +1,69 @@
+package com.keshav.NotificationService.utils;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class InFlightOffsetTrackerTest {
+
+    private final TopicPartition partition = new TopicPartition("notification.send_sms", 0);
+    private final InFlightOffsetTracker tracker = new InFlightOffsetTracker();
+
+    @Test
+    void testCommitsOnlyUpToLowestUnfinishedOffset() {
+        Acknowledgment ack10 = mock(Acknowledgment.class);
+        Acknowledgment ack11 = mock(Acknowledgment.class);
+        Acknowledgment ack12 = mock(Acknowledgment.class);
+        tracker.track(partition, 10);
+        tracker.track(partition, 11);
+        tracker.track(partition, 12);
+
+        assertNull(tracker.complete(partition, 12, ack12));
+        assertNull(tracker.complete(partition, 11, ack11));
+        assertEquals(1, tracker.getInFlight());
+
+        assertSame(ack12, tracker.complete(partition, 10, ack10));
+        assertEquals(0, tracker.getInFlight());
+    }
+
+    @Test
+    void testCommitsContiguousPrefix() {
+        Acknowledgment ack10 = mock(Acknowledgment.class);
+        Acknowledgment ack11 = mock(Acknowledgment.class);
+        tracker.track(partition, 10);
+        tracker.track(partition, 11);
+        tracker.track(partition, 12);
+
+        assertSame(ack10, tracker.complete(partition, 10, ack10));
+        assertSame(ack11, tracker.complete(partition, 11, ack11));
+        assertEquals(1, tracker.getInFlight());
+    }
+
+    @Test
+    void testPartitionsAreIndependent() {
+        TopicPartition other = new TopicPartition("notification.send_sms", 1);
+        Acknowledgment ack = mock(Acknowledgment.class);
+        tracker.track(partition, 10);
+        tracker.track(other, 5);
+
+        assertSame(ack, tracker.complete(other, 5, ack));
+        assertEquals(1, tracker.getInFlight());
+    }
+
+    @Test
+    void testRevokedPartitionIsForgotten() {
+        tracker.track(partition, 10);
+        tracker.track(partition, 11);
+
+        tracker.revoke(Collections.singletonList(partition));
+
+        assertEquals(0, tracker.getInFlight());
+        assertNull(tracker.complete(partition, 10, mock(Acknowledgment.class)));
+        assertEquals(0, tracker.getInFlight());
+    }
+}
@@ -0,0 +1,47 @@
+package com.keshav.NotificationService.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NearCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final NearCache<String, Boolean> cache = new NearCache<>(2, 1000, now::get);
+
+    @Test
+    void testEntryExpiresAfterTtl() {
+        cache.put("a", true, cache.generation());
+        now.set(999);
+        assertEquals(Boolean.TRUE, cache.get("a"));
+
+        now.set(1000);
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsed() {
+        cache.put("a", true, cache.generation());
+        cache.put("b", false, cache.generation());
+        cache.get("a");
+        cache.put("c", true, cache.generation());
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    void testDropsLoadRacingWithInvalidation() {
+        long generation = cache.generation();
+        cache.invalidate("a");
+        cache.put("a", false, generation);
+
+        assertNull(cache.get("a"));
+    }
+}
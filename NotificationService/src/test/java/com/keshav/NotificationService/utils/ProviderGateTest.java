@@ -0,0 +1,100 @@
+package com.keshav.NotificationService.utils;
+
+import com.keshav.NotificationService.dto.SmsSendResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProviderGateTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private ProviderGate gate(int initialLimit) {
+        ProviderGate.Settings settings = new ProviderGate.Settings();
+        settings.setInitialLimit(initialLimit);
+        settings.setMinLimit(1);
+        settings.setMaxLimit(10);
+        settings.setLatencyThresholdMs(100);
+        settings.setBackoffRatio(0.5);
+        settings.setErrorRateThreshold(0.5);
+        settings.setWindowSize(4);
+        settings.setMinimumCalls(4);
+        settings.setOpenDurationMs(1000);
+        return new ProviderGate(settings, now::get);
+    }
+
+    private boolean send(ProviderGate gate, SmsSendResult result) {
+        if (!gate.tryAcquire()) {
+            return false;
+        }
+        gate.onResult(result);
+        return true;
+    }
+
+    @Test
+    void testRejectsCallsAboveLimit() {
+        ProviderGate gate = gate(1);
+        assertTrue(gate.tryAcquire());
+
+        assertFalse(gate.tryAcquire());
+
+        gate.release();
+        assertEquals(0, gate.getInFlight());
+        assertTrue(send(gate, SmsSendResult.sent(10)));
+    }
+
+    @Test
+    void testLimitGrowsOnSuccessAndShrinksOnSlowCalls() {
+        ProviderGate gate = gate(2);
+        for (int i = 0; i < 10; i++) {
+            send(gate, SmsSendResult.sent(10));
+        }
+        assertTrue(gate.getLimit() > 2);
+
+        int limit = gate.getLimit();
+        send(gate, SmsSendResult.sent(500));
+        assertTrue(gate.getLimit() < limit);
+    }
+
+    @Test
+    void testDeclinedMessagesDoNotCountAsProviderErrors() {
+        ProviderGate gate = gate(5);
+        for (int i = 0; i < 4; i++) {
+            send(gate, SmsSendResult.declined("Provider rejected the message", 10));
+        }
+        assertEquals(ProviderGate.State.CLOSED, gate.getState());
+    }
+
+    @Test
+    void testCircuitOpensOnErrorsAndClosesAfterSuccessfulProbe() {
+        ProviderGate gate = gate(5);
+        send(gate, SmsSendResult.sent(10));
+        send(gate, SmsSendResult.sent(10));
+        send(gate, SmsSendResult.failed("timeout", 10));
+        send(gate, SmsSendResult.failed("timeout", 10));
+
+        assertTrue(gate.isOpen());
+        assertEquals(0.5, gate.getErrorRate());
+        assertFalse(send(gate, SmsSendResult.sent(10)));
+
+        now.addAndGet(1000);
+        assertFalse(gate.isOpen());
+        assertTrue(send(gate, SmsSendResult.sent(10)));
+        assertEquals(ProviderGate.State.CLOSED, gate.getState());
+    }
+
+    @Test
+    void testFailedProbeReopensCircuit() {
+        ProviderGate gate = gate(5);
+        for (int i = 0; i < 4; i++) {
+            send(gate, SmsSendResult.failed("timeout", 10));
+        }
+        now.addAndGet(1000);
+
+        send(gate, SmsSendResult.failed("timeout", 10));
+
+        assertTrue(gate.isOpen());
+    }
+}
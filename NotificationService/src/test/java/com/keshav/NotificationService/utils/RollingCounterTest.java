@@ -0,0 +1,75 @@
+package com.keshav.NotificationService.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RollingCounterTest {
+
+    private static final long MINUTE = 60_000;
+
+    private final AtomicLong now = new AtomicLong(100 * MINUTE);
+    private final RollingCounter counter = new RollingCounter(MINUTE, 10, 3, now::get);
+
+    @Test
+    void testCountsPerIntervalIncludingEmptyOnes() {
+        now.set(100 * MINUTE + 1);
+        counter.increment("+1");
+        counter.increment("+2");
+        now.set(101 * MINUTE);
+        counter.increment("+1");
+        now.set(103 * MINUTE + 30_000);
+        counter.increment("+3");
+
+        Map<Long, Long> counts = counter.counts(100 * MINUTE, now.get(), 2 * MINUTE, null);
+        assertEquals(Arrays.asList(100 * MINUTE, 102 * MINUTE), Arrays.asList(counts.keySet().toArray()));
+        assertEquals(3L, counts.get(100 * MINUTE));
+        assertEquals(1L, counts.get(102 * MINUTE));
+
+        assertEquals(2L, counter.counts(100 * MINUTE, now.get(), 2 * MINUTE, "+1"::equals).get(100 * MINUTE));
+        assertEquals(0L, counter.counts(100 * MINUTE, now.get(), 2 * MINUTE, "+1"::equals).get(102 * MINUTE));
+    }
+
+    @Test
+    void testTopKeysMostFrequentFirst() {
+        for (String key : new String[]{"+1", "+2", "+2", "+3", "+3", "+3"}) {
+            counter.increment(key);
+        }
+
+        Map<String, Long> top = counter.top(100 * MINUTE, now.get(), 2, null);
+        assertEquals(Arrays.asList("+3", "+2"), Arrays.asList(top.keySet().toArray()));
+        assertEquals(3L, top.get("+3"));
+        assertEquals(1, counter.top(100 * MINUTE, now.get(), 2, key -> key.startsWith("+1")).size());
+    }
+
+    @Test
+    void testReusesBucketsOnceTheWindowHasMoved() {
+        counter.increment("+1");
+        now.set(110 * MINUTE);
+        counter.increment("+2");
+
+        assertFalse(counter.covers(100 * MINUTE, false));
+        assertTrue(counter.covers(101 * MINUTE, false));
+        Map<Long, Long> counts = counter.counts(101 * MINUTE, now.get(), MINUTE, null);
+        assertEquals(0L, counts.get(101 * MINUTE));
+        assertEquals(1L, counts.get(110 * MINUTE));
+    }
+
+    @Test
+    void testDoesNotCoverKeysOfTruncatedBucketsOrTimeBeforeCreation() {
+        now.set(100 * MINUTE + 1);
+        RollingCounter late = new RollingCounter(MINUTE, 10, 3, now::get);
+        assertFalse(late.covers(100 * MINUTE, false));
+
+        for (String key : new String[]{"+1", "+2", "+3", "+4"}) {
+            counter.increment(key);
+        }
+        assertTrue(counter.covers(100 * MINUTE, false));
+        assertFalse(counter.covers(100 * MINUTE, true));
+        assertEquals(4L, counter.counts(100 * MINUTE, now.get(), MINUTE, null).get(100 * MINUTE));
+    }
+}
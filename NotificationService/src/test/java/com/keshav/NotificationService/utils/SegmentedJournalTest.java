@@ -0,0 +1,108 @@
+package com.keshav.NotificationService.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentedJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private static byte[] record(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> values(List<byte[]> records) {
+        List<String> values = new ArrayList<>();
+        for (byte[] record : records) {
+            values.add(new String(record, StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    @Test
+    void testReadsFromCheckpointUntilCommitted() throws IOException {
+        SegmentedJournal journal = new SegmentedJournal(directory, 1024, 4096);
+        assertTrue(journal.isEmpty());
+        journal.append(record("a"));
+        journal.append(record("b"));
+        journal.append(record("c"));
+
+        assertEquals(Arrays.asList("a", "b"), values(journal.read(2)));
+        assertEquals(Arrays.asList("a", "b"), values(journal.read(2)));
+        journal.commit();
+        assertEquals(Arrays.asList("c"), values(journal.read(2)));
+        journal.commit();
+        assertTrue(journal.read(2).isEmpty());
+        assertTrue(journal.isEmpty());
+    }
+
+    @Test
+    void testRotatesSegmentsAndDeletesConsumedOnes() throws IOException {
+        // 8 byte header plus 20 bytes per record, three records per segment.
+        SegmentedJournal journal = new SegmentedJournal(directory, 90, 270);
+        for (int i = 0; i < 9; i++) {
+            assertTrue(journal.append(record(String.format("record-%013d", i))));
+        }
+        assertFalse(journal.append(record(String.format("record-%013d", 9))));
+        assertEquals(270, journal.sizeBytes());
+
+        assertEquals(4, journal.read(4).size());
+        journal.commit();
+        assertEquals(180, journal.sizeBytes());
+        assertFalse(Files.exists(directory.resolve("segment-0.log")));
+        assertTrue(journal.append(record(String.format("record-%013d", 9))));
+
+        List<String> rest = values(journal.read(100));
+        assertEquals(6, rest.size());
+        assertEquals(String.format("record-%013d", 4), rest.get(0));
+        assertEquals(String.format("record-%013d", 9), rest.get(5));
+    }
+
+    @Test
+    void testRecoversCheckpointAndEndAfterReopening() throws IOException {
+        SegmentedJournal journal = new SegmentedJournal(directory, 90, 270);
+        for (int i = 0; i < 5; i++) {
+            journal.append(record(String.format("record-%013d", i)));
+        }
+        journal.read(2);
+        journal.commit();
+        journal.sync();
+
+        SegmentedJournal reopened = new SegmentedJournal(directory, 90, 270);
+        reopened.append(record(String.format("record-%013d", 5)));
+        List<String> values = values(reopened.read(100));
+        assertEquals(4, values.size());
+        assertEquals(String.format("record-%013d", 2), values.get(0));
+        assertEquals(String.format("record-%013d", 5), values.get(3));
+    }
+
+    @Test
+    void testIgnoresTornRecordAfterReopening() throws IOException {
+        SegmentedJournal journal = new SegmentedJournal(directory, 1024, 4096);
+        journal.append(record("intact"));
+        journal.append(record("torn"));
+        journal.sync();
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve("segment-0.log").toFile(), "rw")) {
+            // Corrupt the last byte of the second record.
+            file.seek(8 + 6 + 8 + 3);
+            file.write('x');
+        }
+
+        SegmentedJournal reopened = new SegmentedJournal(directory, 1024, 4096);
+        assertEquals(Arrays.asList("intact"), values(reopened.read(10)));
+        reopened.append(record("next"));
+        assertEquals(Arrays.asList("intact", "next"), values(reopened.read(10)));
+    }
+}
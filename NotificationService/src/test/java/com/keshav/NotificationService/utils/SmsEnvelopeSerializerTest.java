@@ -0,0 +1,89 @@
+package com.keshav.NotificationService.utils;
+
+import com.keshav.NotificationService.dto.SmsEnvelope;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmsEnvelopeSerializerTest {
+
+    private final SmsEnvelopeSerializer serializer = new SmsEnvelopeSerializer();
+    private final SmsEnvelopeDeserializer deserializer = new SmsEnvelopeDeserializer();
+
+    @Test
+    void testRoundTrip() {
+        SmsEnvelope envelope = new SmsEnvelope();
+        envelope.setRequestId("0b9d2c2e-3c5e-4f5a-9b7e-5d8f6a7b8c9d");
+        envelope.setPhoneNumber("+919876543210");
+        envelope.setMessage("Your OTP is 1234 — नमस्ते");
+        envelope.setCreatedAt(LocalDateTime.of(2024, 1, 2, 3, 4, 5, 6_000_000));
+
+        SmsEnvelope decoded = deserializer.deserialize("notification.send_sms", serializer.serialize("notification.send_sms", envelope));
+
+        assertEquals(envelope.getRequestId(), decoded.getRequestId());
+        assertEquals(envelope.getPhoneNumber(), decoded.getPhoneNumber());
+        assertEquals(envelope.getMessage(), decoded.getMessage());
+        assertEquals(envelope.getCreatedAt(), decoded.getCreatedAt());
+        assertTrue(decoded.isComplete());
+    }
+
+    @Test
+    void testRetryHeadersRoundTrip() {
+        SmsEnvelope envelope = new SmsEnvelope();
+        envelope.setRequestId("0b9d2c2e-3c5e-4f5a-9b7e-5d8f6a7b8c9d");
+        envelope.setPhoneNumber("+919876543210");
+        envelope.setMessage("Hello");
+        Headers headers = new RecordHeaders();
+
+        byte[] data = serializer.serialize("notification.send_sms.retry-10s", headers, envelope.retry(2, 1700000000000L));
+        SmsEnvelope decoded = deserializer.deserialize("notification.send_sms.retry-10s", headers, data);
+
+        assertEquals(2, decoded.getAttempt());
+        assertEquals(1700000000000L, decoded.getDueAt());
+        assertEquals(envelope.getMessage(), decoded.getMessage());
+    }
+
+    @Test
+    void testFirstAttemptHasNoRetryHeaders() {
+        SmsEnvelope envelope = SmsEnvelope.ofRequestId("12345");
+        Headers headers = new RecordHeaders();
+
+        SmsEnvelope decoded = deserializer.deserialize("notification.send_sms", headers,
+                serializer.serialize("notification.send_sms", headers, envelope));
+
+        assertFalse(headers.iterator().hasNext());
+        assertEquals(0, decoded.getAttempt());
+    }
+
+    @Test
+    void testLegacyRequestIdMessage() {
+        String requestId = "0b9d2c2e-3c5e-4f5a-9b7e-5d8f6a7b8c9d";
+
+        SmsEnvelope decoded = deserializer.deserialize("notification.send_sms", requestId.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(requestId, decoded.getRequestId());
+        assertFalse(decoded.isComplete());
+    }
+
+    @Test
+    void testMalformedEnvelope() {
+        byte[] truncated = new byte[]{0, 1, 0, 0};
+
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("notification.send_sms", truncated));
+    }
+
+    @Test
+    void testStringLongerThanRecordIsRejectedBeforeAllocating() {
+        // Marker, version, no creation time, then a request ID claiming about 2 GB.
+        byte[] corrupt = new byte[]{SmsEnvelopeSerializer.MARKER, SmsEnvelopeSerializer.VERSION,
+                -1, -1, -1, -1, -1, -1, -1, -1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 'a'};
+
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("notification.send_sms", corrupt));
+    }
+}
@@ -0,0 +1,46 @@
+package com.keshav.NotificationService.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UuidV7GeneratorTest {
+
+    private final AtomicLong now = new AtomicLong(1714557600000L);
+    private final UuidV7Generator generator = new UuidV7Generator(now::get, new Random(42));
+
+    @Test
+    void testEncodesVersionVariantAndTimestamp() {
+        UUID uuid = generator.next();
+
+        assertEquals(7, uuid.version());
+        assertEquals(2, uuid.variant());
+        assertEquals(1714557600000L, UuidV7Generator.timestampOf(uuid));
+    }
+
+    @Test
+    void testIncreasesWithinTheSameMillisecond() {
+        String previous = generator.next().toString();
+        for (int i = 0; i < 10000; i++) {
+            String next = generator.next().toString();
+            assertTrue(next.compareTo(previous) > 0, next + " after " + previous);
+            previous = next;
+        }
+        // The counter overflowed, so the timestamp was advanced.
+        assertTrue(UuidV7Generator.timestampOf(UUID.fromString(previous)) > now.get());
+    }
+
+    @Test
+    void testIncreasesWhenTheClockGoesBack() {
+        UUID first = generator.next();
+        now.addAndGet(-1000);
+        UUID second = generator.next();
+
+        assertTrue(second.toString().compareTo(first.toString()) > 0);
+        assertEquals(UuidV7Generator.timestampOf(first), UuidV7Generator.timestampOf(second));
+    }
+}